@@ -0,0 +1,632 @@
+/*
+ * com.yy.netty.channel.epoll.Native 的 JNI 实现
+ *
+ * 只封装了 epoll 传输层用到的最少的系统调用：epoll、eventfd、非阻塞 socket 的 bind/listen/accept/connect、
+ * read/write/writev，以及几个 socket 选项。所有函数都是无状态的，文件描述符由 Java 层管理。
+ * 约定：
+ *   1、read/write/accept 遇到 EAGAIN 不抛异常，返回 0（accept 返回 -1），由 Java 层决定是否等待下一次 epoll 事件；
+ *   2、read 读到 EOF 返回 -1，和 NIO 的约定一样；
+ *   3、其余错误都直接抛出 java.io.IOException（连接相关的抛 java.net.ConnectException，绑定相关的抛 java.net.BindException）。
+ *
+ * 编译：见同目录下的 Makefile
+ */
+#define _GNU_SOURCE
+#include <jni.h>
+#include <errno.h>
+#include <fcntl.h>
+#include <limits.h>
+#include <stddef.h>
+#include <stdint.h>
+#include <stdio.h>
+#include <string.h>
+#include <unistd.h>
+#include <arpa/inet.h>
+#include <netinet/in.h>
+#include <netinet/ip.h>
+#include <netinet/tcp.h>
+#include <sys/epoll.h>
+#include <sys/eventfd.h>
+#include <sys/socket.h>
+#include <sys/uio.h>
+
+#define NATIVE_CLASSNAME "com/yy/netty/channel/epoll/Native"
+
+#ifndef IOV_MAX
+#define IOV_MAX 1024
+#endif
+
+/* 一次 writev 最多用到的 iovec 数，超过的部分留给下一次写 */
+#define MAX_IOV 1024
+
+static jclass ioExceptionClass = NULL;
+static jclass connectExceptionClass = NULL;
+static jclass bindExceptionClass = NULL;
+
+/* java.nio.Buffer 的 position 和 limit 字段，writev 时直接读字段，避免每个 ByteBuffer 都回调一次 Java 方法 */
+static jfieldID bufferPositionId = NULL;
+static jfieldID bufferLimitId = NULL;
+
+static void throwException(JNIEnv* env, jclass clazz, const char* method, int err) {
+    char msg[256];
+    snprintf(msg, sizeof(msg), "%s(..) failed: %s", method, strerror(err));
+    (*env)->ThrowNew(env, clazz, msg);
+}
+
+static void throwIOException(JNIEnv* env, const char* method, int err) {
+    throwException(env, ioExceptionClass, method, err);
+}
+
+static void throwConnectException(JNIEnv* env, const char* method, int err) {
+    throwException(env, connectExceptionClass, method, err);
+}
+
+static void throwBindException(JNIEnv* env, const char* method, int err) {
+    throwException(env, bindExceptionClass, method, err);
+}
+
+/* ------------------------------------------ 地址转换 ------------------------------------------ */
+
+/**
+ * 把 Java 层传下来的地址（4 字节 IPv4 或 16 字节 IPv6）转换成 sockaddr，
+ * IPv6 的 socket 上使用 IPv4 地址时转换成 IPv4 映射地址 ::ffff:a.b.c.d
+ */
+static int toSockaddr(JNIEnv* env, jboolean ipv6, jbyteArray address, jint scopeId, jint port,
+                      struct sockaddr_storage* addr, socklen_t* addrSize) {
+    jsize len = (*env)->GetArrayLength(env, address);
+    jbyte bytes[16];
+    if (len != 4 && len != 16) {
+        return -1;
+    }
+    (*env)->GetByteArrayRegion(env, address, 0, len, bytes);
+    memset(addr, 0, sizeof(struct sockaddr_storage));
+    if (ipv6) {
+        struct sockaddr_in6* ip6 = (struct sockaddr_in6*) addr;
+        ip6->sin6_family = AF_INET6;
+        ip6->sin6_port = htons((uint16_t) port);
+        ip6->sin6_scope_id = (uint32_t) scopeId;
+        if (len == 4) {
+            ip6->sin6_addr.s6_addr[10] = 0xff;
+            ip6->sin6_addr.s6_addr[11] = 0xff;
+            memcpy(&ip6->sin6_addr.s6_addr[12], bytes, 4);
+        } else {
+            memcpy(&ip6->sin6_addr.s6_addr, bytes, 16);
+        }
+        *addrSize = sizeof(struct sockaddr_in6);
+    } else {
+        struct sockaddr_in* ip4 = (struct sockaddr_in*) addr;
+        if (len != 4) {
+            return -1;
+        }
+        ip4->sin_family = AF_INET;
+        ip4->sin_port = htons((uint16_t) port);
+        memcpy(&ip4->sin_addr.s_addr, bytes, 4);
+        *addrSize = sizeof(struct sockaddr_in);
+    }
+    return 0;
+}
+
+/**
+ * 把 sockaddr 转换成 byte[]：地址（4 或 16 字节）+ 端口（4 字节，大端）+ scopeId（4 字节，大端）
+ * IPv4 映射地址会还原成 4 字节的 IPv4 地址
+ */
+static jbyteArray fromSockaddr(JNIEnv* env, const struct sockaddr_storage* addr) {
+    jbyte buf[24];
+    int addrLen;
+    uint32_t port;
+    uint32_t scopeId = 0;
+    if (addr->ss_family == AF_INET) {
+        const struct sockaddr_in* ip4 = (const struct sockaddr_in*) addr;
+        memcpy(buf, &ip4->sin_addr.s_addr, 4);
+        addrLen = 4;
+        port = ntohs(ip4->sin_port);
+    } else if (addr->ss_family == AF_INET6) {
+        const struct sockaddr_in6* ip6 = (const struct sockaddr_in6*) addr;
+        if (IN6_IS_ADDR_V4MAPPED(&ip6->sin6_addr)) {
+            memcpy(buf, &ip6->sin6_addr.s6_addr[12], 4);
+            addrLen = 4;
+        } else {
+            memcpy(buf, &ip6->sin6_addr.s6_addr, 16);
+            addrLen = 16;
+            scopeId = ip6->sin6_scope_id;
+        }
+        port = ntohs(ip6->sin6_port);
+    } else {
+        return NULL;
+    }
+    buf[addrLen] = (jbyte) (port >> 24);
+    buf[addrLen + 1] = (jbyte) (port >> 16);
+    buf[addrLen + 2] = (jbyte) (port >> 8);
+    buf[addrLen + 3] = (jbyte) port;
+    buf[addrLen + 4] = (jbyte) (scopeId >> 24);
+    buf[addrLen + 5] = (jbyte) (scopeId >> 16);
+    buf[addrLen + 6] = (jbyte) (scopeId >> 8);
+    buf[addrLen + 7] = (jbyte) scopeId;
+
+    jbyteArray result = (*env)->NewByteArray(env, addrLen + 8);
+    if (result != NULL) {
+        (*env)->SetByteArrayRegion(env, result, 0, addrLen + 8, buf);
+    }
+    return result;
+}
+
+/* ------------------------------------------ epoll 和 eventfd ------------------------------------------ */
+
+static jint netty_epoll_native_epollCreate(JNIEnv* env, jclass clazz) {
+    int efd = epoll_create1(EPOLL_CLOEXEC);
+    if (efd < 0) {
+        throwIOException(env, "epoll_create1", errno);
+    }
+    return efd;
+}
+
+static jint netty_epoll_native_eventFd(JNIEnv* env, jclass clazz) {
+    int efd = eventfd(0, EFD_CLOEXEC | EFD_NONBLOCK);
+    if (efd < 0) {
+        throwIOException(env, "eventfd", errno);
+    }
+    return efd;
+}
+
+static void netty_epoll_native_eventFdWrite(JNIEnv* env, jclass clazz, jint fd, jlong value) {
+    if (eventfd_write(fd, (eventfd_t) value) < 0 && errno != EAGAIN) {
+        throwIOException(env, "eventfd_write", errno);
+    }
+}
+
+static void netty_epoll_native_eventFdRead(JNIEnv* env, jclass clazz, jint fd) {
+    eventfd_t value;
+    if (eventfd_read(fd, &value) < 0 && errno != EAGAIN) {
+        throwIOException(env, "eventfd_read", errno);
+    }
+}
+
+static jint netty_epoll_native_epollWait(JNIEnv* env, jclass clazz, jint efd, jobject events,
+                                         jint maxEvents, jint timeout) {
+    struct epoll_event* ev = (struct epoll_event*) (*env)->GetDirectBufferAddress(env, events);
+    int ready = epoll_wait(efd, ev, maxEvents, timeout);
+    if (ready < 0) {
+        if (errno == EINTR) {
+            /* 被信号打断了，当作没有事件返回，事件循环会重新计算超时时间再等待 */
+            return 0;
+        }
+        throwIOException(env, "epoll_wait", errno);
+    }
+    return ready;
+}
+
+static void epollCtl(JNIEnv* env, const char* method, int efd, int op, int fd, jint flags) {
+    struct epoll_event ev;
+    memset(&ev, 0, sizeof(ev));
+    ev.events = (uint32_t) flags;
+    ev.data.fd = fd;
+    if (epoll_ctl(efd, op, fd, &ev) < 0) {
+        throwIOException(env, method, errno);
+    }
+}
+
+static void netty_epoll_native_epollCtlAdd(JNIEnv* env, jclass clazz, jint efd, jint fd, jint flags) {
+    epollCtl(env, "epoll_ctl_add", efd, EPOLL_CTL_ADD, fd, flags);
+}
+
+static void netty_epoll_native_epollCtlMod(JNIEnv* env, jclass clazz, jint efd, jint fd, jint flags) {
+    epollCtl(env, "epoll_ctl_mod", efd, EPOLL_CTL_MOD, fd, flags);
+}
+
+static void netty_epoll_native_epollCtlDel(JNIEnv* env, jclass clazz, jint efd, jint fd) {
+    struct epoll_event ev;
+    memset(&ev, 0, sizeof(ev));
+    if (epoll_ctl(efd, EPOLL_CTL_DEL, fd, &ev) < 0) {
+        throwIOException(env, "epoll_ctl_del", errno);
+    }
+}
+
+static jint netty_epoll_native_sizeofEpollEvent(JNIEnv* env, jclass clazz) {
+    return (jint) sizeof(struct epoll_event);
+}
+
+static jint netty_epoll_native_offsetofEpollData(JNIEnv* env, jclass clazz) {
+    return (jint) offsetof(struct epoll_event, data);
+}
+
+static jint netty_epoll_native_epollin(JNIEnv* env, jclass clazz) {
+    return EPOLLIN;
+}
+
+static jint netty_epoll_native_epollout(JNIEnv* env, jclass clazz) {
+    return EPOLLOUT;
+}
+
+static jint netty_epoll_native_epollrdhup(JNIEnv* env, jclass clazz) {
+    return EPOLLRDHUP;
+}
+
+static jint netty_epoll_native_epollerr(JNIEnv* env, jclass clazz) {
+    return EPOLLERR;
+}
+
+static jint netty_epoll_native_epollet(JNIEnv* env, jclass clazz) {
+    return (jint) EPOLLET;
+}
+
+/* ------------------------------------------ socket ------------------------------------------ */
+
+static jboolean netty_epoll_native_isIPv6Supported(JNIEnv* env, jclass clazz) {
+    int fd = socket(AF_INET6, SOCK_STREAM | SOCK_CLOEXEC, 0);
+    if (fd < 0) {
+        return JNI_FALSE;
+    }
+    close(fd);
+    return JNI_TRUE;
+}
+
+static jint netty_epoll_native_socketStream(JNIEnv* env, jclass clazz, jboolean ipv6) {
+    int fd = socket(ipv6 ? AF_INET6 : AF_INET, SOCK_STREAM | SOCK_NONBLOCK | SOCK_CLOEXEC, 0);
+    if (fd < 0) {
+        throwIOException(env, "socket", errno);
+        return -1;
+    }
+    if (ipv6) {
+        /* 同时支持 IPv4 和 IPv6 */
+        int v6only = 0;
+        setsockopt(fd, IPPROTO_IPV6, IPV6_V6ONLY, &v6only, sizeof(v6only));
+    }
+    return fd;
+}
+
+static void netty_epoll_native_bind(JNIEnv* env, jclass clazz, jint fd, jboolean ipv6, jbyteArray address,
+                                    jint scopeId, jint port) {
+    struct sockaddr_storage addr;
+    socklen_t addrSize;
+    if (toSockaddr(env, ipv6, address, scopeId, port, &addr, &addrSize) < 0) {
+        throwBindException(env, "bind", EAFNOSUPPORT);
+        return;
+    }
+    if (bind(fd, (struct sockaddr*) &addr, addrSize) < 0) {
+        throwBindException(env, "bind", errno);
+    }
+}
+
+static void netty_epoll_native_listen(JNIEnv* env, jclass clazz, jint fd, jint backlog) {
+    if (listen(fd, backlog) < 0) {
+        throwIOException(env, "listen", errno);
+    }
+}
+
+static jint netty_epoll_native_accept(JNIEnv* env, jclass clazz, jint fd) {
+    int child;
+    do {
+        child = accept4(fd, NULL, NULL, SOCK_NONBLOCK | SOCK_CLOEXEC);
+    } while (child < 0 && errno == EINTR);
+    if (child < 0) {
+        if (errno == EAGAIN || errno == EWOULDBLOCK) {
+            return -1;
+        }
+        throwIOException(env, "accept", errno);
+        return -1;
+    }
+    return child;
+}
+
+static jboolean netty_epoll_native_connect(JNIEnv* env, jclass clazz, jint fd, jboolean ipv6, jbyteArray address,
+                                           jint scopeId, jint port) {
+    struct sockaddr_storage addr;
+    socklen_t addrSize;
+    int res;
+    if (toSockaddr(env, ipv6, address, scopeId, port, &addr, &addrSize) < 0) {
+        throwConnectException(env, "connect", EAFNOSUPPORT);
+        return JNI_FALSE;
+    }
+    do {
+        res = connect(fd, (struct sockaddr*) &addr, addrSize);
+    } while (res < 0 && errno == EINTR);
+    if (res < 0) {
+        if (errno == EINPROGRESS) {
+            /* 连接还在进行中，等 EPOLLOUT 事件到来后再调用 finishConnect */
+            return JNI_FALSE;
+        }
+        throwConnectException(env, "connect", errno);
+        return JNI_FALSE;
+    }
+    return JNI_TRUE;
+}
+
+static jboolean netty_epoll_native_finishConnect(JNIEnv* env, jclass clazz, jint fd) {
+    int err = 0;
+    socklen_t len = sizeof(err);
+    if (getsockopt(fd, SOL_SOCKET, SO_ERROR, &err, &len) < 0) {
+        throwConnectException(env, "finishConnect", errno);
+        return JNI_FALSE;
+    }
+    if (err == 0) {
+        return JNI_TRUE;
+    }
+    if (err == EINPROGRESS) {
+        return JNI_FALSE;
+    }
+    throwConnectException(env, "finishConnect", err);
+    return JNI_FALSE;
+}
+
+static jbyteArray netty_epoll_native_localAddress(JNIEnv* env, jclass clazz, jint fd) {
+    struct sockaddr_storage addr;
+    socklen_t len = sizeof(addr);
+    if (getsockname(fd, (struct sockaddr*) &addr, &len) < 0) {
+        return NULL;
+    }
+    return fromSockaddr(env, &addr);
+}
+
+static jbyteArray netty_epoll_native_remoteAddress(JNIEnv* env, jclass clazz, jint fd) {
+    struct sockaddr_storage addr;
+    socklen_t len = sizeof(addr);
+    if (getpeername(fd, (struct sockaddr*) &addr, &len) < 0) {
+        return NULL;
+    }
+    return fromSockaddr(env, &addr);
+}
+
+static jint netty_epoll_native_read(JNIEnv* env, jclass clazz, jint fd, jobject buffer, jint pos, jint limit) {
+    char* base = (char*) (*env)->GetDirectBufferAddress(env, buffer);
+    ssize_t res;
+    do {
+        res = read(fd, base + pos, (size_t) (limit - pos));
+    } while (res < 0 && errno == EINTR);
+    if (res > 0) {
+        return (jint) res;
+    }
+    if (res == 0) {
+        return -1;
+    }
+    if (errno == EAGAIN || errno == EWOULDBLOCK) {
+        return 0;
+    }
+    throwIOException(env, "read", errno);
+    return -1;
+}
+
+static jint netty_epoll_native_write(JNIEnv* env, jclass clazz, jint fd, jobject buffer, jint pos, jint limit) {
+    char* base = (char*) (*env)->GetDirectBufferAddress(env, buffer);
+    ssize_t res;
+    do {
+        res = write(fd, base + pos, (size_t) (limit - pos));
+    } while (res < 0 && errno == EINTR);
+    if (res >= 0) {
+        return (jint) res;
+    }
+    if (errno == EAGAIN || errno == EWOULDBLOCK) {
+        return 0;
+    }
+    throwIOException(env, "write", errno);
+    return -1;
+}
+
+static jlong netty_epoll_native_writev(JNIEnv* env, jclass clazz, jint fd, jobjectArray buffers,
+                                       jint offset, jint length, jlong maxBytesPerWrite) {
+    struct iovec iov[MAX_IOV];
+    int iovCnt = 0;
+    jlong bytes = 0;
+    int end = offset + (length < MAX_IOV ? length : MAX_IOV);
+    int i;
+    ssize_t res;
+
+    for (i = offset; i < end; i++) {
+        jobject buffer = (*env)->GetObjectArrayElement(env, buffers, i);
+        char* base = (char*) (*env)->GetDirectBufferAddress(env, buffer);
+        jint pos = (*env)->GetIntField(env, buffer, bufferPositionId);
+        jint limit = (*env)->GetIntField(env, buffer, bufferLimitId);
+        size_t len = (size_t) (limit - pos);
+        (*env)->DeleteLocalRef(env, buffer);
+        if (len == 0) {
+            continue;
+        }
+        if (bytes + (jlong) len > maxBytesPerWrite && iovCnt > 0) {
+            break;
+        }
+        iov[iovCnt].iov_base = base + pos;
+        iov[iovCnt].iov_len = len;
+        iovCnt++;
+        bytes += (jlong) len;
+    }
+    if (iovCnt == 0) {
+        return 0;
+    }
+
+    do {
+        res = writev(fd, iov, iovCnt);
+    } while (res < 0 && errno == EINTR);
+    if (res >= 0) {
+        return (jlong) res;
+    }
+    if (errno == EAGAIN || errno == EWOULDBLOCK) {
+        return 0;
+    }
+    throwIOException(env, "writev", errno);
+    return -1;
+}
+
+static void netty_epoll_native_shutdown(JNIEnv* env, jclass clazz, jint fd, jboolean read, jboolean write) {
+    int how;
+    if (read && write) {
+        how = SHUT_RDWR;
+    } else if (read) {
+        how = SHUT_RD;
+    } else if (write) {
+        how = SHUT_WR;
+    } else {
+        return;
+    }
+    if (shutdown(fd, how) < 0 && errno != ENOTCONN) {
+        throwIOException(env, "shutdown", errno);
+    }
+}
+
+static void netty_epoll_native_close(JNIEnv* env, jclass clazz, jint fd) {
+    /* close 被信号打断时文件描述符已经释放了，不能重试 */
+    if (close(fd) < 0 && errno != EINTR) {
+        throwIOException(env, "close", errno);
+    }
+}
+
+/* ------------------------------------------ socket 选项 ------------------------------------------ */
+
+static void netty_epoll_native_setIntOption(JNIEnv* env, jclass clazz, jint fd, jint level, jint optname,
+                                            jint value) {
+    int v = value;
+    if (setsockopt(fd, level, optname, &v, sizeof(v)) < 0) {
+        throwIOException(env, "setsockopt", errno);
+    }
+}
+
+static jint netty_epoll_native_getIntOption(JNIEnv* env, jclass clazz, jint fd, jint level, jint optname) {
+    int v = 0;
+    socklen_t len = sizeof(v);
+    if (getsockopt(fd, level, optname, &v, &len) < 0) {
+        throwIOException(env, "getsockopt", errno);
+        return -1;
+    }
+    return v;
+}
+
+static void netty_epoll_native_setSoLinger(JNIEnv* env, jclass clazz, jint fd, jint value) {
+    struct linger l;
+    l.l_onoff = value < 0 ? 0 : 1;
+    l.l_linger = value < 0 ? 0 : value;
+    if (setsockopt(fd, SOL_SOCKET, SO_LINGER, &l, sizeof(l)) < 0) {
+        throwIOException(env, "setsockopt", errno);
+    }
+}
+
+static jint netty_epoll_native_getSoLinger(JNIEnv* env, jclass clazz, jint fd) {
+    struct linger l;
+    socklen_t len = sizeof(l);
+    if (getsockopt(fd, SOL_SOCKET, SO_LINGER, &l, &len) < 0) {
+        throwIOException(env, "getsockopt", errno);
+        return -1;
+    }
+    return l.l_onoff ? l.l_linger : -1;
+}
+
+static jint netty_epoll_native_solSocket(JNIEnv* env, jclass clazz) { return SOL_SOCKET; }
+static jint netty_epoll_native_soReuseaddr(JNIEnv* env, jclass clazz) { return SO_REUSEADDR; }
+static jint netty_epoll_native_soReuseport(JNIEnv* env, jclass clazz) { return SO_REUSEPORT; }
+static jint netty_epoll_native_soKeepalive(JNIEnv* env, jclass clazz) { return SO_KEEPALIVE; }
+static jint netty_epoll_native_soSndbuf(JNIEnv* env, jclass clazz) { return SO_SNDBUF; }
+static jint netty_epoll_native_soRcvbuf(JNIEnv* env, jclass clazz) { return SO_RCVBUF; }
+static jint netty_epoll_native_ipprotoIp(JNIEnv* env, jclass clazz) { return IPPROTO_IP; }
+static jint netty_epoll_native_ipTos(JNIEnv* env, jclass clazz) { return IP_TOS; }
+static jint netty_epoll_native_ipprotoTcp(JNIEnv* env, jclass clazz) { return IPPROTO_TCP; }
+static jint netty_epoll_native_tcpNodelay(JNIEnv* env, jclass clazz) { return TCP_NODELAY; }
+static jint netty_epoll_native_tcpCork(JNIEnv* env, jclass clazz) { return TCP_CORK; }
+static jint netty_epoll_native_tcpQuickack(JNIEnv* env, jclass clazz) { return TCP_QUICKACK; }
+
+/* ------------------------------------------ 注册 ------------------------------------------ */
+
+static const JNINativeMethod methods[] = {
+    { "epollCreate", "()I", (void*) netty_epoll_native_epollCreate },
+    { "eventFd", "()I", (void*) netty_epoll_native_eventFd },
+    { "eventFdWrite", "(IJ)V", (void*) netty_epoll_native_eventFdWrite },
+    { "eventFdRead", "(I)V", (void*) netty_epoll_native_eventFdRead },
+    { "epollWait", "(ILjava/nio/ByteBuffer;II)I", (void*) netty_epoll_native_epollWait },
+    { "epollCtlAdd", "(III)V", (void*) netty_epoll_native_epollCtlAdd },
+    { "epollCtlMod", "(III)V", (void*) netty_epoll_native_epollCtlMod },
+    { "epollCtlDel", "(II)V", (void*) netty_epoll_native_epollCtlDel },
+    { "sizeofEpollEvent", "()I", (void*) netty_epoll_native_sizeofEpollEvent },
+    { "offsetofEpollData", "()I", (void*) netty_epoll_native_offsetofEpollData },
+    { "epollin", "()I", (void*) netty_epoll_native_epollin },
+    { "epollout", "()I", (void*) netty_epoll_native_epollout },
+    { "epollrdhup", "()I", (void*) netty_epoll_native_epollrdhup },
+    { "epollerr", "()I", (void*) netty_epoll_native_epollerr },
+    { "epollet", "()I", (void*) netty_epoll_native_epollet },
+    { "isIPv6Supported", "()Z", (void*) netty_epoll_native_isIPv6Supported },
+    { "socketStream", "(Z)I", (void*) netty_epoll_native_socketStream },
+    { "bind", "(IZ[BII)V", (void*) netty_epoll_native_bind },
+    { "listen", "(II)V", (void*) netty_epoll_native_listen },
+    { "accept", "(I)I", (void*) netty_epoll_native_accept },
+    { "connect", "(IZ[BII)Z", (void*) netty_epoll_native_connect },
+    { "finishConnect", "(I)Z", (void*) netty_epoll_native_finishConnect },
+    { "localAddress", "(I)[B", (void*) netty_epoll_native_localAddress },
+    { "remoteAddress", "(I)[B", (void*) netty_epoll_native_remoteAddress },
+    { "read", "(ILjava/nio/ByteBuffer;II)I", (void*) netty_epoll_native_read },
+    { "write", "(ILjava/nio/ByteBuffer;II)I", (void*) netty_epoll_native_write },
+    { "writev", "(I[Ljava/nio/ByteBuffer;IIJ)J", (void*) netty_epoll_native_writev },
+    { "shutdown", "(IZZ)V", (void*) netty_epoll_native_shutdown },
+    { "close", "(I)V", (void*) netty_epoll_native_close },
+    { "setIntOption", "(IIII)V", (void*) netty_epoll_native_setIntOption },
+    { "getIntOption", "(III)I", (void*) netty_epoll_native_getIntOption },
+    { "setSoLinger", "(II)V", (void*) netty_epoll_native_setSoLinger },
+    { "getSoLinger", "(I)I", (void*) netty_epoll_native_getSoLinger },
+    { "solSocket", "()I", (void*) netty_epoll_native_solSocket },
+    { "soReuseaddr", "()I", (void*) netty_epoll_native_soReuseaddr },
+    { "soReuseport", "()I", (void*) netty_epoll_native_soReuseport },
+    { "soKeepalive", "()I", (void*) netty_epoll_native_soKeepalive },
+    { "soSndbuf", "()I", (void*) netty_epoll_native_soSndbuf },
+    { "soRcvbuf", "()I", (void*) netty_epoll_native_soRcvbuf },
+    { "ipprotoIp", "()I", (void*) netty_epoll_native_ipprotoIp },
+    { "ipTos", "()I", (void*) netty_epoll_native_ipTos },
+    { "ipprotoTcp", "()I", (void*) netty_epoll_native_ipprotoTcp },
+    { "tcpNodelay", "()I", (void*) netty_epoll_native_tcpNodelay },
+    { "tcpCork", "()I", (void*) netty_epoll_native_tcpCork },
+    { "tcpQuickack", "()I", (void*) netty_epoll_native_tcpQuickack }
+};
+
+static jclass newGlobalClassRef(JNIEnv* env, const char* name) {
+    jclass local = (*env)->FindClass(env, name);
+    jclass global;
+    if (local == NULL) {
+        return NULL;
+    }
+    global = (jclass) (*env)->NewGlobalRef(env, local);
+    (*env)->DeleteLocalRef(env, local);
+    return global;
+}
+
+JNIEXPORT jint JNI_OnLoad(JavaVM* vm, void* reserved) {
+    JNIEnv* env;
+    jclass nativeClass;
+    jclass bufferClass;
+    if ((*vm)->GetEnv(vm, (void**) &env, JNI_VERSION_1_6) != JNI_OK) {
+        return JNI_ERR;
+    }
+
+    nativeClass = (*env)->FindClass(env, NATIVE_CLASSNAME);
+    if (nativeClass == NULL) {
+        return JNI_ERR;
+    }
+    if ((*env)->RegisterNatives(env, nativeClass, methods, sizeof(methods) / sizeof(methods[0])) != 0) {
+        return JNI_ERR;
+    }
+
+    ioExceptionClass = newGlobalClassRef(env, "java/io/IOException");
+    connectExceptionClass = newGlobalClassRef(env, "java/net/ConnectException");
+    bindExceptionClass = newGlobalClassRef(env, "java/net/BindException");
+    if (ioExceptionClass == NULL || connectExceptionClass == NULL || bindExceptionClass == NULL) {
+        return JNI_ERR;
+    }
+
+    bufferClass = (*env)->FindClass(env, "java/nio/Buffer");
+    if (bufferClass == NULL) {
+        return JNI_ERR;
+    }
+    bufferPositionId = (*env)->GetFieldID(env, bufferClass, "position", "I");
+    bufferLimitId = (*env)->GetFieldID(env, bufferClass, "limit", "I");
+    if (bufferPositionId == NULL || bufferLimitId == NULL) {
+        return JNI_ERR;
+    }
+    return JNI_VERSION_1_6;
+}
+
+JNIEXPORT void JNI_OnUnload(JavaVM* vm, void* reserved) {
+    JNIEnv* env;
+    if ((*vm)->GetEnv(vm, (void**) &env, JNI_VERSION_1_6) != JNI_OK) {
+        return;
+    }
+    if (ioExceptionClass != NULL) {
+        (*env)->DeleteGlobalRef(env, ioExceptionClass);
+    }
+    if (connectExceptionClass != NULL) {
+        (*env)->DeleteGlobalRef(env, connectExceptionClass);
+    }
+    if (bindExceptionClass != NULL) {
+        (*env)->DeleteGlobalRef(env, bindExceptionClass);
+    }
+}
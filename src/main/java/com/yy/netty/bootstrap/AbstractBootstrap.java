@@ -239,6 +239,16 @@ public abstract class AbstractBootstrap<B extends AbstractBootstrap<B, C>, C ext
     }
 
     final ChannelFuture initAndRegister() {
+        return initAndRegister(config().group());
+    }
+
+    /**
+     * 创建、初始化channel，并注册到指定的线程组上，registerGroup也可以是一个EventLoop，这时channel就注册到这个EventLoop上
+     *
+     * @param registerGroup
+     * @return
+     */
+    final ChannelFuture initAndRegister(EventLoopGroup registerGroup) {
         Channel channel = null;
         try {
             //在这里初始化服务端channel，反射创建对象调用的无参构造器
@@ -249,12 +259,12 @@ public abstract class AbstractBootstrap<B extends AbstractBootstrap<B, C>, C ext
             if (channel != null) {
                 //出现异常则强制关闭channel
                 channel.unsafe().closeForcibly();
-                //返回一个赋值为失败的future
-                return new DefaultChannelPromise(channel, channel.eventLoop()).setFailure(t);
+                //返回一个赋值为失败的future，channel还没有注册，没有自己的EventLoop，借用group中的一个来通知监听器
+                return new DefaultChannelPromise(channel, registerGroup.next()).setFailure(t);
             }
         }
         //在这里把channel注册到‘主’线程组的执行器上， 服务端对应着boss线程组的执行器，客户端对应着worker线程组的执行器
-        ChannelFuture regFuture = config().group().register(channel);
+        ChannelFuture regFuture = registerGroup.register(channel);
         if (regFuture.cause() != null) {
             //出现异常，但是注册成功了，则直接关闭channel，该方法还未实现，等后面，开发到优雅停机和释放资源时，会填充close方法
             if (channel.isRegistered()) {
@@ -309,10 +319,27 @@ public abstract class AbstractBootstrap<B extends AbstractBootstrap<B, C>, C ext
         return doBind(ObjectUtil.checkNotNull(localAddress, "localAddress"));
     }
 
-    private ChannelFuture doBind(final SocketAddress localAddress) {
+    /**
+     * 创建、注册一个channel并把它绑定到本地地址，ServerBootstrap在多个acceptor的模式下会重写这个方法
+     *
+     * @param localAddress
+     * @return
+     */
+    ChannelFuture doBind(final SocketAddress localAddress) {
+        return doBind(localAddress, config().group());
+    }
+
+    /**
+     * 创建一个channel，注册到指定的线程组（或者EventLoop）上，再绑定到本地地址
+     *
+     * @param localAddress
+     * @param registerGroup
+     * @return
+     */
+    final ChannelFuture doBind(final SocketAddress localAddress, EventLoopGroup registerGroup) {
         // 1、完成对指定channel的创建，这里其实就是服务端的channel了，然后将其注册到boss组中的单线程执行器的selector上（不带任务感兴趣事件的注册行为，其实就是为了将channel和一个EventLoop进行绑定），
         // 这里还没法成功注册accep事件，因为还没进行端口绑定，在下面绑定端口的逻辑里会真正为channel注册accept事件
-        final ChannelFuture regFuture = initAndRegister();
+        final ChannelFuture regFuture = initAndRegister(registerGroup);
         // 2、得到创建的channel
         Channel channel = regFuture.channel();
         // 初始化绑定阶段出错了，那么直接返回
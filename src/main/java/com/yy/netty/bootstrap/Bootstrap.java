@@ -46,7 +46,13 @@ public class Bootstrap extends AbstractBootstrap<Bootstrap, Channel> {
         return connect(new InetSocketAddress(inetHost, inetPort));
     }
 
-    private ChannelFuture connect(InetSocketAddress remoteAddress) {
+    /**
+     * 连接至目标地址，除了InetSocketAddress，也可以是LocalAddress这样的非网络地址
+     *
+     * @param remoteAddress
+     * @return
+     */
+    public ChannelFuture connect(SocketAddress remoteAddress) {
         ObjectUtil.checkNotNull(remoteAddress, "remoteAddress");
         return doResolveAndConnect(remoteAddress, null);
     }
@@ -0,0 +1,113 @@
+package com.yy.netty.bootstrap;
+
+import com.yy.netty.channel.Channel;
+import com.yy.netty.channel.ChannelFuture;
+import com.yy.netty.channel.ChannelFutureListener;
+import com.yy.netty.channel.DefaultChannelPromise;
+import com.yy.netty.util.concurrent.EventExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ServerBootstrap开启多个acceptor（SO_REUSEPORT）时bind方法返回的future：
+ * 同一个端口上的所有服务端channel都绑定成功了，它才成功；只要有一个失败，就关闭其他所有channel，整体失败。
+ * channel()返回的是第一个服务端channel，channels()返回所有的服务端channel
+ */
+public final class CompositeBindFuture extends DefaultChannelPromise {
+
+    // 一共要绑定多少个服务端channel
+    private final int expected;
+
+    // 已经开始绑定的服务端channel，访问时要加锁
+    private final List<Channel> channels;
+
+    // 已经完成绑定（成功或失败）的个数，访问时要加锁
+    private int done;
+
+    // 第一个绑定失败的原因，访问时要加锁
+    private Throwable cause;
+
+    private final ChannelFutureListener childListener = new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) {
+            boolean complete;
+            Throwable cause;
+            synchronized (CompositeBindFuture.this) {
+                done++;
+                if (!future.isSuccess() && CompositeBindFuture.this.cause == null) {
+                    CompositeBindFuture.this.cause = future.cause();
+                }
+                complete = done == expected;
+                cause = CompositeBindFuture.this.cause;
+            }
+            if (!complete) {
+                return;
+            }
+            if (cause == null) {
+                trySuccess();
+            } else {
+                // 有一个没绑定成功，其他已经绑定上的也要关掉，不能只留下一部分在监听
+                closeAll();
+                tryFailure(cause);
+            }
+        }
+    };
+
+    /**
+     * @param first    第一个服务端channel
+     * @param executor 通知监听器的执行器，第一个channel可能没有注册成功，不能用它的EventLoop
+     * @param expected 一共要绑定多少个服务端channel
+     */
+    CompositeBindFuture(Channel first, EventExecutor executor, int expected) {
+        super(first, executor);
+        this.expected = expected;
+        this.channels = new ArrayList<Channel>(expected);
+    }
+
+    /**
+     * 加入一个服务端channel的绑定结果
+     *
+     * @param future
+     */
+    void add(ChannelFuture future) {
+        synchronized (this) {
+            channels.add(future.channel());
+        }
+        future.addListener(childListener);
+    }
+
+    /**
+     * 还没把所有的服务端channel加进来就已经确定失败了，比如第一个channel就没绑定成功
+     *
+     * @param cause
+     */
+    void fail(Throwable cause) {
+        closeAll();
+        tryFailure(cause);
+    }
+
+    /**
+     * 返回所有的服务端channel
+     *
+     * @return
+     */
+    public List<Channel> channels() {
+        synchronized (this) {
+            return Collections.unmodifiableList(new ArrayList<Channel>(channels));
+        }
+    }
+
+    /**
+     * 关闭所有的服务端channel，close()会切换到channel自己的EventLoop中执行，完成closeFuture并触发channelInactive等事件。
+     * 初始化或者注册失败的channel已经被强制关闭了，它可能还没有EventLoop，不用再关
+     */
+    private void closeAll() {
+        for (Channel ch : channels()) {
+            if (ch.isOpen()) {
+                ch.close();
+            }
+        }
+    }
+}
@@ -1,15 +1,18 @@
 package com.yy.netty.bootstrap;
 
-import com.yy.netty.channel.Channel;
-import com.yy.netty.channel.ChannelOption;
-import com.yy.netty.channel.EventLoopGroup;
+import com.yy.netty.channel.*;
 import com.yy.netty.util.AttributeKey;
+import com.yy.netty.util.concurrent.EventExecutor;
 import com.yy.netty.util.internal.ObjectUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.SocketAddress;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @Description:服务端Socket网络搭建引导类，引导实现对ServerSocketChannel的NIO事件处理，最终实现服务端ip：port的绑定，同时接受各个客户端的连接请求和数据的io读取
@@ -29,6 +32,12 @@ public class ServerBootstrap extends AbstractBootstrap<ServerBootstrap, Channel>
 
     private final ServerBootstrapConfig config = new ServerBootstrapConfig(this);
 
+    // 客户端channel的handler，每个accept得到的客户端channel都会把它添加到自己的pipeline中，一般是一个ChannelInitializer
+    private volatile ChannelHandler childHandler;
+
+    // 同一个端口上监听的服务端channel的个数，大于1时每个channel都开启SO_REUSEPORT，分别注册到boss线程组中不同的EventLoop上
+    private volatile int reusePortAcceptors = 1;
+
 
     public ServerBootstrap() {
 
@@ -37,6 +46,8 @@ public class ServerBootstrap extends AbstractBootstrap<ServerBootstrap, Channel>
     private ServerBootstrap(ServerBootstrap bootstrap) {
         super(bootstrap);
         childGroup = bootstrap.childGroup;
+        childHandler = bootstrap.childHandler;
+        reusePortAcceptors = bootstrap.reusePortAcceptors;
         synchronized (bootstrap.childOptions) {
             childOptions.putAll(bootstrap.childOptions);
         }
@@ -113,6 +124,69 @@ public class ServerBootstrap extends AbstractBootstrap<ServerBootstrap, Channel>
         return this;
     }
 
+    /**
+     * 设置客户端channel的handler
+     *
+     * @param childHandler
+     * @return
+     */
+    public ServerBootstrap childHandler(ChannelHandler childHandler) {
+        this.childHandler = ObjectUtil.checkNotNull(childHandler, "childHandler");
+        return this;
+    }
+
+    /**
+     * 设置同一个端口上监听的服务端channel的个数。
+     * 只有一个服务端channel时，所有连接都由一个boss线程accept，连接风暴时它就成了瓶颈；
+     * 设置为n（n > 1）之后，bind会创建n个开启了SO_REUSEPORT的服务端channel绑定到同一个端口上，
+     * 每个channel注册到boss线程组中不同的EventLoop上，由内核把新连接分散给它们。
+     * boss线程组的线程数不能少于n，否则bind时会抛出IllegalStateException。
+     * epoll传输层总是支持的，NIO传输层需要JDK 9以上，不支持时bind返回的future会失败
+     *
+     * @param reusePortAcceptors
+     * @return
+     */
+    public ServerBootstrap reusePortAcceptors(int reusePortAcceptors) {
+        this.reusePortAcceptors = ObjectUtil.checkPositive(reusePortAcceptors, "reusePortAcceptors");
+        return this;
+    }
+
+    /**
+     * 多个acceptor的模式下，创建n个服务端channel绑定到同一个端口上，返回的CompositeBindFuture在所有channel都绑定成功后才成功。
+     * 先绑定第一个，成功之后其余的再绑定到它实际绑定的地址上，这样绑定0端口时所有channel也会在同一个端口上。
+     * 第i个channel注册到boss线程组的第i个EventLoop上，不交给group.next()去选，
+     * 否则负载感知的选择器可能把几个channel选到同一个EventLoop上，多个acceptor就失去了意义
+     *
+     * @param localAddress
+     * @return
+     */
+    @Override
+    ChannelFuture doBind(SocketAddress localAddress) {
+        final int acceptors = reusePortAcceptors;
+        if (acceptors <= 1) {
+            return super.doBind(localAddress);
+        }
+        final List<EventLoop> bossLoops = bossLoops();
+        final ChannelFuture first = doBind(localAddress, bossLoops.get(0));
+        // 第一个channel初始化失败的话就不会注册，也就没有EventLoop，所以要显式指定通知监听器的执行器
+        final CompositeBindFuture composite = new CompositeBindFuture(first.channel(), bossLoops.get(0), acceptors);
+        composite.add(first);
+        first.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (!future.isSuccess()) {
+                    composite.fail(future.cause());
+                    return;
+                }
+                SocketAddress boundAddress = future.channel().localAddress();
+                for (int i = 1; i < acceptors; i++) {
+                    composite.add(doBind(boundAddress, bossLoops.get(i)));
+                }
+            }
+        });
+        return composite;
+    }
+
     /**
      * 初始化channel
      * 主要是增加服务端channel的参数的设置逻辑
@@ -128,6 +202,11 @@ public class ServerBootstrap extends AbstractBootstrap<ServerBootstrap, Channel>
             // 把初始化时用户配置的参数全都放到channel的config类中
             setChannelOptions(channel, options);
         }
+        if (reusePortAcceptors > 1 && !channel.config().setOption(ChannelOption.SO_REUSEPORT, true)) {
+            // 不开启SO_REUSEPORT的话，除了第一个以外的channel都会因为端口被占用而绑定失败，这里直接给出明确的原因
+            throw new UnsupportedOperationException(
+                    "SO_REUSEPORT is not supported by " + channel.getClass().getSimpleName() + " on this platform");
+        }
         // 得到服务端channel的共享参数
         final Map<AttributeKey<?>, Object> attrs = attrs0();
         synchronized (attrs) {
@@ -136,6 +215,34 @@ public class ServerBootstrap extends AbstractBootstrap<ServerBootstrap, Channel>
                 channel.attr((AttributeKey<Object>) e.getKey()).set(e.getValue());
             }
         }
+
+        ChannelPipeline p = channel.pipeline();
+        // 把客户端channel要用到的配置都拷贝一份，后面用户再修改引导类，也不会影响到已经启动的服务端
+        final EventLoopGroup currentChildGroup = childGroup;
+        final ChannelHandler currentChildHandler = childHandler;
+        final Map.Entry<ChannelOption<?>, Object>[] currentChildOptions;
+        final Map.Entry<AttributeKey<?>, Object>[] currentChildAttrs;
+        synchronized (childOptions) {
+            currentChildOptions = childOptions.entrySet().toArray(newOptionArray(0));
+        }
+        synchronized (childAttrs) {
+            currentChildAttrs = childAttrs.entrySet().toArray(newAttrArray(0));
+        }
+
+        // 这时候服务端channel还没有注册，所以先添加一个ChannelInitializer，等channel注册成功之后，
+        // 再由它把ServerBootstrapAcceptor添加到服务端channel的pipeline中
+        p.addLast(new ChannelInitializer<Channel>() {
+            @Override
+            public void initChannel(final Channel ch) throws Exception {
+                ch.eventLoop().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        ch.pipeline().addLast(new ServerBootstrapAcceptor(
+                                ch, currentChildGroup, currentChildHandler, currentChildOptions, currentChildAttrs));
+                    }
+                });
+            }
+        });
     }
 
     /**
@@ -150,20 +257,135 @@ public class ServerBootstrap extends AbstractBootstrap<ServerBootstrap, Channel>
             logger.warn("childGroup is not set. Using parentGroup instead.");
             childGroup = config.group();
         }
+        if (childHandler == null) {
+            throw new IllegalStateException("childHandler not set");
+        }
+        if (reusePortAcceptors > 1) {
+            int bossLoops = bossLoops().size();
+            if (reusePortAcceptors > bossLoops) {
+                // 每个acceptor要独占一个boss线程
+                throw new IllegalStateException("reusePortAcceptors (" + reusePortAcceptors +
+                        ") exceeds the number of boss event loops (" + bossLoops + ")");
+            }
+        }
         return this;
     }
 
+    /**
+     * boss线程组中所有的EventLoop
+     *
+     * @return
+     */
+    private List<EventLoop> bossLoops() {
+        List<EventLoop> loops = new ArrayList<EventLoop>();
+        for (EventExecutor executor : config.group()) {
+            loops.add((EventLoop) executor);
+        }
+        return loops;
+    }
+
     public EventLoopGroup childGroup() {
         return childGroup;
     }
 
+    final ChannelHandler childHandler() {
+        return childHandler;
+    }
+
+    final int reusePortAcceptors() {
+        return reusePortAcceptors;
+    }
+
     @Override
     public final ServerBootstrapConfig config() {
         return config;
     }
 
+    @SuppressWarnings("unchecked")
+    private static Map.Entry<AttributeKey<?>, Object>[] newAttrArray(int size) {
+        return (Map.Entry<AttributeKey<?>, Object>[]) new Map.Entry<?, ?>[size];
+    }
+
+    @SuppressWarnings("unchecked")
     private static Map.Entry<ChannelOption<?>, Object>[] newOptionArray(int size) {
-        return new Map.Entry[size];
+        return (Map.Entry<ChannelOption<?>, Object>[]) new Map.Entry<?, ?>[size];
+    }
+
+    /**
+     * 服务端channel的pipeline中的入站处理器，专门处理accept得到的客户端channel：
+     * 给客户端channel添加childHandler，设置childOptions和childAttrs，然后把它注册到childGroup中的一个EventLoop上，
+     * 从此以后这个客户端channel的读写事件都由这个EventLoop处理
+     */
+    private static class ServerBootstrapAcceptor extends ChannelInboundHandlerAdapter {
+
+        private final EventLoopGroup childGroup;
+        private final ChannelHandler childHandler;
+        private final Map.Entry<ChannelOption<?>, Object>[] childOptions;
+        private final Map.Entry<AttributeKey<?>, Object>[] childAttrs;
+        // accept出错之后，过一段时间重新开启服务端channel的自动读的任务
+        private final Runnable enableAutoReadTask;
+
+        ServerBootstrapAcceptor(final Channel channel, EventLoopGroup childGroup, ChannelHandler childHandler,
+                                Map.Entry<ChannelOption<?>, Object>[] childOptions, Map.Entry<AttributeKey<?>, Object>[] childAttrs) {
+            this.childGroup = childGroup;
+            this.childHandler = childHandler;
+            this.childOptions = childOptions;
+            this.childAttrs = childAttrs;
+
+            enableAutoReadTask = new Runnable() {
+                @Override
+                public void run() {
+                    channel.config().setAutoRead(true);
+                }
+            };
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            // 服务端channel读到的“消息”就是客户端channel
+            final Channel child = (Channel) msg;
+
+            child.pipeline().addLast(childHandler);
+
+            setChannelOptions(child, childOptions);
+
+            for (Map.Entry<AttributeKey<?>, Object> e : childAttrs) {
+                child.attr((AttributeKey<Object>) e.getKey()).set(e.getValue());
+            }
+
+            try {
+                // 从childGroup中选一个EventLoop，把客户端channel注册上去，注册成功后就会触发channelActive，开始监听读事件
+                childGroup.register(child).addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) throws Exception {
+                        if (!future.isSuccess()) {
+                            forceClose(child, future.cause());
+                        }
+                    }
+                });
+            } catch (Throwable t) {
+                forceClose(child, t);
+            }
+        }
+
+        private static void forceClose(Channel child, Throwable t) {
+            child.unsafe().closeForcibly();
+            logger.warn("Failed to register an accepted channel: {}", child, t);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            final ChannelConfig config = ctx.channel().config();
+            if (config.isAutoRead()) {
+                // accept出错一般是文件描述符用完了之类的问题，马上再accept多半还是会出错，
+                // 所以先停止自动读，1秒之后再重新开启，让服务端有机会恢复
+                config.setAutoRead(false);
+                ctx.channel().eventLoop().schedule(enableAutoReadTask, 1, TimeUnit.SECONDS);
+            }
+            // 继续传播异常，让用户的handler也有机会处理
+            ctx.fireExceptionCaught(cause);
+        }
     }
 
 
@@ -1,6 +1,7 @@
 package com.yy.netty.bootstrap;
 
 import com.yy.netty.channel.Channel;
+import com.yy.netty.channel.ChannelHandler;
 import com.yy.netty.channel.EventLoopGroup;
 import com.yy.netty.util.internal.StringUtil;
 
@@ -14,6 +15,14 @@ public class ServerBootstrapConfig extends AbstractBootstrapConfig<ServerBootstr
         return bootstrap.childGroup();
     }
 
+    public ChannelHandler childHandler() {
+        return bootstrap.childHandler();
+    }
+
+    public int reusePortAcceptors() {
+        return bootstrap.reusePortAcceptors();
+    }
+
     /**
      * 重写toString方法，增加对workGroup的描述信息，在服务端引导类中，这个workGroup还是很重要的
      * @return
@@ -29,6 +38,12 @@ public class ServerBootstrapConfig extends AbstractBootstrapConfig<ServerBootstr
             buf.append(StringUtil.simpleClassName(childGroup));
             buf.append(", ");
         }
+        ChannelHandler childHandler = childHandler();
+        if (childHandler != null) {
+            buf.append("childHandler: ");
+            buf.append(childHandler);
+            buf.append(", ");
+        }
         if (buf.charAt(buf.length() - 1) == '(') {
             buf.append(')');
         } else {
@@ -0,0 +1,547 @@
+package com.yy.netty.buffer;
+
+import com.yy.netty.util.IllegalReferenceCountException;
+import com.yy.netty.util.internal.StringUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.charset.Charset;
+
+import static com.yy.netty.util.internal.ObjectUtil.checkPositiveOrZero;
+
+/**
+ * ByteBuf的骨架实现，读写指针的维护、边界检查、自动扩容以及read/write方法都在这一层完成，
+ * 子类只需要实现和底层内存打交道的那部分方法（_getXXX/_setXXX、getBytes/setBytes等）
+ */
+public abstract class AbstractByteBuf extends ByteBuf {
+
+    // 读指针
+    int readerIndex;
+
+    // 写指针
+    int writerIndex;
+
+    // 读写指针的标记位置，配合resetReaderIndex/resetWriterIndex使用
+    private int markedReaderIndex;
+
+    private int markedWriterIndex;
+
+    // 最大容量
+    private int maxCapacity;
+
+    protected AbstractByteBuf(int maxCapacity) {
+        checkPositiveOrZero(maxCapacity, "maxCapacity");
+        this.maxCapacity = maxCapacity;
+    }
+
+    @Override
+    public int maxCapacity() {
+        return maxCapacity;
+    }
+
+    // 池化的ByteBuf在复用的时候需要重新设置最大容量
+    protected final void maxCapacity(int maxCapacity) {
+        this.maxCapacity = maxCapacity;
+    }
+
+    @Override
+    public int readerIndex() {
+        return readerIndex;
+    }
+
+    @Override
+    public ByteBuf readerIndex(int readerIndex) {
+        if (readerIndex < 0 || readerIndex > writerIndex) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "readerIndex: %d (expected: 0 <= readerIndex <= writerIndex(%d))", readerIndex, writerIndex));
+        }
+        this.readerIndex = readerIndex;
+        return this;
+    }
+
+    @Override
+    public int writerIndex() {
+        return writerIndex;
+    }
+
+    @Override
+    public ByteBuf writerIndex(int writerIndex) {
+        if (writerIndex < readerIndex || writerIndex > capacity()) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "writerIndex: %d (expected: readerIndex(%d) <= writerIndex <= capacity(%d))",
+                    writerIndex, readerIndex, capacity()));
+        }
+        this.writerIndex = writerIndex;
+        return this;
+    }
+
+    @Override
+    public ByteBuf setIndex(int readerIndex, int writerIndex) {
+        if (readerIndex < 0 || readerIndex > writerIndex || writerIndex > capacity()) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "readerIndex: %d, writerIndex: %d (expected: 0 <= readerIndex <= writerIndex <= capacity(%d))",
+                    readerIndex, writerIndex, capacity()));
+        }
+        setIndex0(readerIndex, writerIndex);
+        return this;
+    }
+
+    final void setIndex0(int readerIndex, int writerIndex) {
+        this.readerIndex = readerIndex;
+        this.writerIndex = writerIndex;
+    }
+
+    final void discardMarks() {
+        markedReaderIndex = markedWriterIndex = 0;
+    }
+
+    @Override
+    public int readableBytes() {
+        return writerIndex - readerIndex;
+    }
+
+    @Override
+    public int writableBytes() {
+        return capacity() - writerIndex;
+    }
+
+    @Override
+    public int maxWritableBytes() {
+        return maxCapacity() - writerIndex;
+    }
+
+    @Override
+    public boolean isReadable() {
+        return writerIndex > readerIndex;
+    }
+
+    @Override
+    public boolean isReadable(int numBytes) {
+        return writerIndex - readerIndex >= numBytes;
+    }
+
+    @Override
+    public boolean isWritable() {
+        return capacity() > writerIndex;
+    }
+
+    @Override
+    public boolean isWritable(int numBytes) {
+        return capacity() - writerIndex >= numBytes;
+    }
+
+    @Override
+    public ByteBuf clear() {
+        readerIndex = writerIndex = 0;
+        return this;
+    }
+
+    @Override
+    public ByteBuf markReaderIndex() {
+        markedReaderIndex = readerIndex;
+        return this;
+    }
+
+    @Override
+    public ByteBuf resetReaderIndex() {
+        readerIndex(markedReaderIndex);
+        return this;
+    }
+
+    @Override
+    public ByteBuf markWriterIndex() {
+        markedWriterIndex = writerIndex;
+        return this;
+    }
+
+    @Override
+    public ByteBuf resetWriterIndex() {
+        writerIndex(markedWriterIndex);
+        return this;
+    }
+
+    @Override
+    public ByteBuf discardReadBytes() {
+        ensureAccessible();
+        if (readerIndex == 0) {
+            return this;
+        }
+        if (readerIndex != writerIndex) {
+            // 把未读的数据挪到头部
+            setBytes(0, this, readerIndex, writerIndex - readerIndex);
+            writerIndex -= readerIndex;
+            markedReaderIndex = Math.max(markedReaderIndex - readerIndex, 0);
+            markedWriterIndex = Math.max(markedWriterIndex - readerIndex, 0);
+            readerIndex = 0;
+        } else {
+            markedReaderIndex = markedWriterIndex = 0;
+            writerIndex = readerIndex = 0;
+        }
+        return this;
+    }
+
+    @Override
+    public ByteBuf ensureWritable(int minWritableBytes) {
+        checkPositiveOrZero(minWritableBytes, "minWritableBytes");
+        ensureWritable0(minWritableBytes);
+        return this;
+    }
+
+    final void ensureWritable0(int minWritableBytes) {
+        ensureAccessible();
+        if (minWritableBytes <= writableBytes()) {
+            return;
+        }
+        if (minWritableBytes > maxCapacity - writerIndex) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "writerIndex(%d) + minWritableBytes(%d) exceeds maxCapacity(%d): %s",
+                    writerIndex, minWritableBytes, maxCapacity, this));
+        }
+        // 容量不够了，由分配器计算出扩容后的新容量，然后扩容
+        int newCapacity = alloc().calculateNewCapacity(writerIndex + minWritableBytes, maxCapacity);
+        capacity(newCapacity);
+    }
+
+    // ---------------------------------------- get/set ----------------------------------------
+
+    @Override
+    public byte getByte(int index) {
+        checkIndex(index, 1);
+        return _getByte(index);
+    }
+
+    @Override
+    public short getShort(int index) {
+        checkIndex(index, 2);
+        return _getShort(index);
+    }
+
+    @Override
+    public int getInt(int index) {
+        checkIndex(index, 4);
+        return _getInt(index);
+    }
+
+    @Override
+    public long getLong(int index) {
+        checkIndex(index, 8);
+        return _getLong(index);
+    }
+
+    @Override
+    public ByteBuf setByte(int index, int value) {
+        checkIndex(index, 1);
+        _setByte(index, value);
+        return this;
+    }
+
+    @Override
+    public ByteBuf setShort(int index, int value) {
+        checkIndex(index, 2);
+        _setShort(index, value);
+        return this;
+    }
+
+    @Override
+    public ByteBuf setInt(int index, int value) {
+        checkIndex(index, 4);
+        _setInt(index, value);
+        return this;
+    }
+
+    @Override
+    public ByteBuf setLong(int index, long value) {
+        checkIndex(index, 8);
+        _setLong(index, value);
+        return this;
+    }
+
+    // 下面这些方法由子类根据底层内存的类型去实现，调用之前边界已经检查过了
+    protected abstract byte _getByte(int index);
+
+    protected abstract short _getShort(int index);
+
+    protected abstract int _getInt(int index);
+
+    protected abstract long _getLong(int index);
+
+    protected abstract void _setByte(int index, int value);
+
+    protected abstract void _setShort(int index, int value);
+
+    protected abstract void _setInt(int index, int value);
+
+    protected abstract void _setLong(int index, long value);
+
+    // ---------------------------------------- read/write ----------------------------------------
+
+    @Override
+    public byte readByte() {
+        checkReadableBytes0(1);
+        int i = readerIndex;
+        byte b = _getByte(i);
+        readerIndex = i + 1;
+        return b;
+    }
+
+    @Override
+    public short readShort() {
+        checkReadableBytes0(2);
+        short v = _getShort(readerIndex);
+        readerIndex += 2;
+        return v;
+    }
+
+    @Override
+    public int readInt() {
+        checkReadableBytes0(4);
+        int v = _getInt(readerIndex);
+        readerIndex += 4;
+        return v;
+    }
+
+    @Override
+    public long readLong() {
+        checkReadableBytes0(8);
+        long v = _getLong(readerIndex);
+        readerIndex += 8;
+        return v;
+    }
+
+    @Override
+    public ByteBuf readBytes(byte[] dst) {
+        readBytes(dst, 0, dst.length);
+        return this;
+    }
+
+    @Override
+    public ByteBuf readBytes(byte[] dst, int dstIndex, int length) {
+        checkReadableBytes(length);
+        getBytes(readerIndex, dst, dstIndex, length);
+        readerIndex += length;
+        return this;
+    }
+
+    @Override
+    public ByteBuf readBytes(ByteBuf dst, int length) {
+        if (length > dst.writableBytes()) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "length(%d) exceeds dst.writableBytes(%d) where dst is: %s", length, dst.writableBytes(), dst));
+        }
+        checkReadableBytes(length);
+        getBytes(readerIndex, dst, dst.writerIndex(), length);
+        readerIndex += length;
+        dst.writerIndex(dst.writerIndex() + length);
+        return this;
+    }
+
+    @Override
+    public int readBytes(GatheringByteChannel out, int length) throws IOException {
+        checkReadableBytes(length);
+        int readBytes = getBytes(readerIndex, out, length);
+        readerIndex += readBytes;
+        return readBytes;
+    }
+
+    @Override
+    public ByteBuf skipBytes(int length) {
+        checkReadableBytes(length);
+        readerIndex += length;
+        return this;
+    }
+
+    @Override
+    public ByteBuf writeByte(int value) {
+        ensureWritable0(1);
+        _setByte(writerIndex++, value);
+        return this;
+    }
+
+    @Override
+    public ByteBuf writeShort(int value) {
+        ensureWritable0(2);
+        _setShort(writerIndex, value);
+        writerIndex += 2;
+        return this;
+    }
+
+    @Override
+    public ByteBuf writeInt(int value) {
+        ensureWritable0(4);
+        _setInt(writerIndex, value);
+        writerIndex += 4;
+        return this;
+    }
+
+    @Override
+    public ByteBuf writeLong(long value) {
+        ensureWritable0(8);
+        _setLong(writerIndex, value);
+        writerIndex += 8;
+        return this;
+    }
+
+    @Override
+    public ByteBuf writeBytes(byte[] src) {
+        writeBytes(src, 0, src.length);
+        return this;
+    }
+
+    @Override
+    public ByteBuf writeBytes(byte[] src, int srcIndex, int length) {
+        ensureWritable(length);
+        setBytes(writerIndex, src, srcIndex, length);
+        writerIndex += length;
+        return this;
+    }
+
+    @Override
+    public ByteBuf writeBytes(ByteBuf src) {
+        int length = src.readableBytes();
+        writeBytes(src, src.readerIndex(), length);
+        // 源ByteBuf的读指针也要跟着移动
+        src.readerIndex(src.readerIndex() + length);
+        return this;
+    }
+
+    @Override
+    public ByteBuf writeBytes(ByteBuf src, int srcIndex, int length) {
+        ensureWritable(length);
+        setBytes(writerIndex, src, srcIndex, length);
+        writerIndex += length;
+        return this;
+    }
+
+    @Override
+    public ByteBuf writeBytes(ByteBuffer src) {
+        int length = src.remaining();
+        ensureWritable0(length);
+        setBytes(writerIndex, src);
+        writerIndex += length;
+        return this;
+    }
+
+    @Override
+    public int writeBytes(ScatteringByteChannel in, int length) throws IOException {
+        ensureWritable(length);
+        int writtenBytes = setBytes(writerIndex, in, length);
+        if (writtenBytes > 0) {
+            writerIndex += writtenBytes;
+        }
+        return writtenBytes;
+    }
+
+    // ---------------------------------------- nio ----------------------------------------
+
+    @Override
+    public ByteBuffer nioBuffer() {
+        return nioBuffer(readerIndex, readableBytes());
+    }
+
+    @Override
+    public ByteBuffer[] nioBuffers(int index, int length) {
+        return new ByteBuffer[]{nioBuffer(index, length)};
+    }
+
+    // ---------------------------------------- 其他 ----------------------------------------
+
+    @Override
+    public String toString(Charset charset) {
+        return toString(readerIndex, readableBytes(), charset);
+    }
+
+    @Override
+    public String toString(int index, int length, Charset charset) {
+        if (length == 0) {
+            return "";
+        }
+        checkIndex(index, length);
+        if (hasArray()) {
+            return new String(array(), arrayOffset() + index, length, charset);
+        }
+        byte[] tmp = new byte[length];
+        getBytes(index, tmp, 0, length);
+        return new String(tmp, charset);
+    }
+
+    @Override
+    public String toString() {
+        if (refCnt() == 0) {
+            return StringUtil.simpleClassName(this) + "(freed)";
+        }
+        return StringUtil.simpleClassName(this) + "(ridx: " + readerIndex + ", widx: " + writerIndex +
+                ", cap: " + capacity() + (maxCapacity != Integer.MAX_VALUE ? "/" + maxCapacity : "") + ')';
+    }
+
+    // ---------------------------------------- 边界检查 ----------------------------------------
+
+    protected final void checkIndex(int index, int fieldLength) {
+        ensureAccessible();
+        checkIndex0(index, fieldLength);
+    }
+
+    final void checkIndex0(int index, int fieldLength) {
+        if (isOutOfBounds(index, fieldLength, capacity())) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "index: %d, length: %d (expected: range(0, %d))", index, fieldLength, capacity()));
+        }
+    }
+
+    protected final void checkSrcIndex(int index, int length, int srcIndex, int srcCapacity) {
+        checkIndex(index, length);
+        if (isOutOfBounds(srcIndex, length, srcCapacity)) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "srcIndex: %d, length: %d (expected: range(0, %d))", srcIndex, length, srcCapacity));
+        }
+    }
+
+    protected final void checkDstIndex(int index, int length, int dstIndex, int dstCapacity) {
+        checkIndex(index, length);
+        if (isOutOfBounds(dstIndex, length, dstCapacity)) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "dstIndex: %d, length: %d (expected: range(0, %d))", dstIndex, length, dstCapacity));
+        }
+    }
+
+    protected final void checkReadableBytes(int minimumReadableBytes) {
+        checkPositiveOrZero(minimumReadableBytes, "minimumReadableBytes");
+        checkReadableBytes0(minimumReadableBytes);
+    }
+
+    private void checkReadableBytes0(int minimumReadableBytes) {
+        ensureAccessible();
+        if (readerIndex > writerIndex - minimumReadableBytes) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "readerIndex(%d) + length(%d) exceeds writerIndex(%d): %s",
+                    readerIndex, minimumReadableBytes, writerIndex, this));
+        }
+    }
+
+    // 引用计数已经为0的ByteBuf不允许再被访问
+    protected final void ensureAccessible() {
+        if (refCnt() == 0) {
+            throw new IllegalReferenceCountException(0);
+        }
+    }
+
+    // 用位运算一次性判断index、length、index + length是否越界
+    static boolean isOutOfBounds(int index, int length, int capacity) {
+        return (index | length | (index + length) | (capacity - (index + length))) < 0;
+    }
+
+    // 调整容量时如果新容量比写指针还小，需要把读写指针截断到新容量
+    final void trimIndicesToCapacity(int newCapacity) {
+        if (writerIndex > newCapacity) {
+            setIndex0(Math.min(readerIndex, newCapacity), newCapacity);
+        }
+    }
+
+    final void checkNewCapacity(int newCapacity) {
+        ensureAccessible();
+        if (newCapacity < 0 || newCapacity > maxCapacity()) {
+            throw new IllegalArgumentException("newCapacity: " + newCapacity + " (expected: 0-" + maxCapacity() + ')');
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.yy.netty.buffer;
+
+import com.yy.netty.util.internal.StringUtil;
+
+import static com.yy.netty.util.internal.ObjectUtil.checkPositiveOrZero;
+
+/**
+ * 内存分配器的骨架实现，把各种重载的分配方法最终都收敛到newHeapBuffer和newDirectBuffer两个抽象方法上
+ */
+public abstract class AbstractByteBufAllocator implements ByteBufAllocator {
+
+    // 默认初始容量
+    static final int DEFAULT_INITIAL_CAPACITY = 256;
+
+    // 默认最大容量
+    static final int DEFAULT_MAX_CAPACITY = Integer.MAX_VALUE;
+
+    // 扩容阈值4MiB，小于这个值时容量翻倍增长，大于这个值时每次增长4MiB
+    static final int CALCULATE_THRESHOLD = 1048576 * 4;
+
+    // 是否优先分配堆外内存
+    private final boolean directByDefault;
+
+    protected AbstractByteBufAllocator() {
+        this(false);
+    }
+
+    protected AbstractByteBufAllocator(boolean preferDirect) {
+        directByDefault = preferDirect;
+    }
+
+    @Override
+    public ByteBuf buffer() {
+        if (directByDefault) {
+            return directBuffer();
+        }
+        return heapBuffer();
+    }
+
+    @Override
+    public ByteBuf buffer(int initialCapacity) {
+        if (directByDefault) {
+            return directBuffer(initialCapacity);
+        }
+        return heapBuffer(initialCapacity);
+    }
+
+    @Override
+    public ByteBuf buffer(int initialCapacity, int maxCapacity) {
+        if (directByDefault) {
+            return directBuffer(initialCapacity, maxCapacity);
+        }
+        return heapBuffer(initialCapacity, maxCapacity);
+    }
+
+    @Override
+    public ByteBuf ioBuffer() {
+        return directBuffer(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    @Override
+    public ByteBuf ioBuffer(int initialCapacity) {
+        return directBuffer(initialCapacity);
+    }
+
+    @Override
+    public ByteBuf ioBuffer(int initialCapacity, int maxCapacity) {
+        return directBuffer(initialCapacity, maxCapacity);
+    }
+
+    @Override
+    public ByteBuf heapBuffer() {
+        return heapBuffer(DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_CAPACITY);
+    }
+
+    @Override
+    public ByteBuf heapBuffer(int initialCapacity) {
+        return heapBuffer(initialCapacity, DEFAULT_MAX_CAPACITY);
+    }
+
+    @Override
+    public ByteBuf heapBuffer(int initialCapacity, int maxCapacity) {
+        validate(initialCapacity, maxCapacity);
+        return newHeapBuffer(initialCapacity, maxCapacity);
+    }
+
+    @Override
+    public ByteBuf directBuffer() {
+        return directBuffer(DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_CAPACITY);
+    }
+
+    @Override
+    public ByteBuf directBuffer(int initialCapacity) {
+        return directBuffer(initialCapacity, DEFAULT_MAX_CAPACITY);
+    }
+
+    @Override
+    public ByteBuf directBuffer(int initialCapacity, int maxCapacity) {
+        validate(initialCapacity, maxCapacity);
+        return newDirectBuffer(initialCapacity, maxCapacity);
+    }
+
+    private static void validate(int initialCapacity, int maxCapacity) {
+        checkPositiveOrZero(initialCapacity, "initialCapacity");
+        if (initialCapacity > maxCapacity) {
+            throw new IllegalArgumentException(String.format(
+                    "initialCapacity: %d (expected: not greater than maxCapacity(%d)",
+                    initialCapacity, maxCapacity));
+        }
+    }
+
+    @Override
+    public int calculateNewCapacity(int minNewCapacity, int maxCapacity) {
+        checkPositiveOrZero(minNewCapacity, "minNewCapacity");
+        if (minNewCapacity > maxCapacity) {
+            throw new IllegalArgumentException(String.format(
+                    "minNewCapacity: %d (expected: not greater than maxCapacity(%d)",
+                    minNewCapacity, maxCapacity));
+        }
+        final int threshold = CALCULATE_THRESHOLD;
+
+        if (minNewCapacity == threshold) {
+            return threshold;
+        }
+
+        // 超过阈值之后，不再翻倍，而是每次增加一个阈值的大小
+        if (minNewCapacity > threshold) {
+            int newCapacity = minNewCapacity / threshold * threshold;
+            if (newCapacity > maxCapacity - threshold) {
+                newCapacity = maxCapacity;
+            } else {
+                newCapacity += threshold;
+            }
+            return newCapacity;
+        }
+
+        // 没超过阈值，从64开始翻倍，直到大于等于minNewCapacity
+        int newCapacity = 64;
+        while (newCapacity < minNewCapacity) {
+            newCapacity <<= 1;
+        }
+
+        return Math.min(newCapacity, maxCapacity);
+    }
+
+    // 由子类实现具体的堆内存分配
+    protected abstract ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity);
+
+    // 由子类实现具体的堆外内存分配
+    protected abstract ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity);
+
+    @Override
+    public String toString() {
+        return StringUtil.simpleClassName(this) + "(directByDefault: " + directByDefault + ')';
+    }
+}
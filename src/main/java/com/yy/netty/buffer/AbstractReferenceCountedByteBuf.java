@@ -0,0 +1,91 @@
+package com.yy.netty.buffer;
+
+import com.yy.netty.util.IllegalReferenceCountException;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import static com.yy.netty.util.internal.ObjectUtil.checkPositive;
+
+/**
+ * 实现了引用计数的ByteBuf抽象类，引用计数用原子更新器来维护，保证多线程下retain/release的正确性
+ * 当引用计数减为0时，调用deallocate方法真正地释放内存，由子类实现
+ */
+public abstract class AbstractReferenceCountedByteBuf extends AbstractByteBuf {
+
+    private static final AtomicIntegerFieldUpdater<AbstractReferenceCountedByteBuf> REFCNT_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(AbstractReferenceCountedByteBuf.class, "refCnt");
+
+    // 引用计数，刚创建时为1
+    private volatile int refCnt = 1;
+
+    protected AbstractReferenceCountedByteBuf(int maxCapacity) {
+        super(maxCapacity);
+    }
+
+    @Override
+    public int refCnt() {
+        return refCnt;
+    }
+
+    // 池化的ByteBuf被复用时，需要把引用计数重置为1，此时没有别的线程能看到这个对象，所以直接设置就行
+    protected final void setRefCnt(int refCnt) {
+        REFCNT_UPDATER.set(this, refCnt);
+    }
+
+    @Override
+    public ByteBuf retain() {
+        return retain0(1);
+    }
+
+    @Override
+    public ByteBuf retain(int increment) {
+        return retain0(checkPositive(increment, "increment"));
+    }
+
+    private ByteBuf retain0(int increment) {
+        for (;;) {
+            int refCnt = this.refCnt;
+            final int nextCnt = refCnt + increment;
+            // 引用计数为0之后就不能再retain了，nextCnt <= increment说明要么refCnt为0，要么溢出了
+            if (nextCnt <= increment) {
+                throw new IllegalReferenceCountException(refCnt, increment);
+            }
+            if (REFCNT_UPDATER.compareAndSet(this, refCnt, nextCnt)) {
+                break;
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return release0(1);
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return release0(checkPositive(decrement, "decrement"));
+    }
+
+    private boolean release0(int decrement) {
+        for (;;) {
+            int refCnt = this.refCnt;
+            if (refCnt < decrement) {
+                throw new IllegalReferenceCountException(refCnt, -decrement);
+            }
+            if (REFCNT_UPDATER.compareAndSet(this, refCnt, refCnt - decrement)) {
+                if (refCnt == decrement) {
+                    // 引用计数减为0了，真正释放内存
+                    deallocate();
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 引用计数为0时调用，释放底层内存
+     */
+    protected abstract void deallocate();
+}
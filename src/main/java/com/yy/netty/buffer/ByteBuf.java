@@ -0,0 +1,203 @@
+package com.yy.netty.buffer;
+
+import com.yy.netty.util.ReferenceCounted;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * netty自己的字节容器，用来替代jdk原生的ByteBuffer
+ * <p>
+ * 和ByteBuffer相比，ByteBuf有两个最重要的改进：
+ * 1、读写分别用readerIndex和writerIndex两个指针维护，读写切换时不再需要flip，
+ * 0 <= readerIndex <= writerIndex <= capacity，[readerIndex, writerIndex)是可读的区域，[writerIndex, capacity)是可写的区域；
+ * 2、ByteBuf实现了ReferenceCounted接口，引入了引用计数，这样池化的ByteBuf在用完之后就能明确地知道什么时候可以把内存归还到内存池中，
+ * 这也是池化能够实现的前提。
+ * </p>
+ * <p>
+ * 这里只保留了读写数据时最常用的一部分方法，get/set开头的方法不会改变读写指针，read/write开头的方法会移动读写指针
+ * </p>
+ */
+public abstract class ByteBuf implements ReferenceCounted {
+
+    // ---------------------------------------- 容量相关 ----------------------------------------
+
+    // 当前容量
+    public abstract int capacity();
+
+    // 调整容量，扩容和缩容都可以
+    public abstract ByteBuf capacity(int newCapacity);
+
+    // 最大容量，writeXXX时自动扩容不会超过这个值
+    public abstract int maxCapacity();
+
+    // 创建该ByteBuf的内存分配器
+    public abstract ByteBufAllocator alloc();
+
+    // 是否是堆外内存
+    public abstract boolean isDirect();
+
+    // ---------------------------------------- 读写指针相关 ----------------------------------------
+
+    public abstract int readerIndex();
+
+    public abstract ByteBuf readerIndex(int readerIndex);
+
+    public abstract int writerIndex();
+
+    public abstract ByteBuf writerIndex(int writerIndex);
+
+    public abstract ByteBuf setIndex(int readerIndex, int writerIndex);
+
+    // 可读字节数：writerIndex - readerIndex
+    public abstract int readableBytes();
+
+    // 可写字节数：capacity - writerIndex
+    public abstract int writableBytes();
+
+    // 最多还能写的字节数：maxCapacity - writerIndex
+    public abstract int maxWritableBytes();
+
+    public abstract boolean isReadable();
+
+    public abstract boolean isReadable(int size);
+
+    public abstract boolean isWritable();
+
+    public abstract boolean isWritable(int size);
+
+    // 读写指针都归零，但并不会清除数据
+    public abstract ByteBuf clear();
+
+    public abstract ByteBuf markReaderIndex();
+
+    public abstract ByteBuf resetReaderIndex();
+
+    public abstract ByteBuf markWriterIndex();
+
+    public abstract ByteBuf resetWriterIndex();
+
+    // 丢弃已经读过的字节，把[readerIndex, writerIndex)的数据整体挪到头部
+    public abstract ByteBuf discardReadBytes();
+
+    // 确保还能写入minWritableBytes个字节，不够的话会自动扩容
+    public abstract ByteBuf ensureWritable(int minWritableBytes);
+
+    // ---------------------------------------- 绝对位置的get/set，不改变读写指针 ----------------------------------------
+
+    public abstract byte getByte(int index);
+
+    public abstract short getShort(int index);
+
+    public abstract int getInt(int index);
+
+    public abstract long getLong(int index);
+
+    public abstract ByteBuf getBytes(int index, byte[] dst, int dstIndex, int length);
+
+    public abstract ByteBuf getBytes(int index, ByteBuf dst, int dstIndex, int length);
+
+    public abstract ByteBuf getBytes(int index, ByteBuffer dst);
+
+    // 把该ByteBuf中从index开始的length个字节写入到jdk的channel中，返回实际写入的字节数
+    public abstract int getBytes(int index, GatheringByteChannel out, int length) throws IOException;
+
+    public abstract ByteBuf setByte(int index, int value);
+
+    public abstract ByteBuf setShort(int index, int value);
+
+    public abstract ByteBuf setInt(int index, int value);
+
+    public abstract ByteBuf setLong(int index, long value);
+
+    public abstract ByteBuf setBytes(int index, byte[] src, int srcIndex, int length);
+
+    public abstract ByteBuf setBytes(int index, ByteBuf src, int srcIndex, int length);
+
+    public abstract ByteBuf setBytes(int index, ByteBuffer src);
+
+    // 从jdk的channel中读取最多length个字节，放到该ByteBuf从index开始的位置，返回实际读取的字节数，-1表示channel已经关闭了
+    public abstract int setBytes(int index, ScatteringByteChannel in, int length) throws IOException;
+
+    // ---------------------------------------- 相对位置的read/write，会移动读写指针 ----------------------------------------
+
+    public abstract byte readByte();
+
+    public abstract short readShort();
+
+    public abstract int readInt();
+
+    public abstract long readLong();
+
+    public abstract ByteBuf readBytes(byte[] dst);
+
+    public abstract ByteBuf readBytes(byte[] dst, int dstIndex, int length);
+
+    public abstract ByteBuf readBytes(ByteBuf dst, int length);
+
+    public abstract int readBytes(GatheringByteChannel out, int length) throws IOException;
+
+    public abstract ByteBuf skipBytes(int length);
+
+    public abstract ByteBuf writeByte(int value);
+
+    public abstract ByteBuf writeShort(int value);
+
+    public abstract ByteBuf writeInt(int value);
+
+    public abstract ByteBuf writeLong(long value);
+
+    public abstract ByteBuf writeBytes(byte[] src);
+
+    public abstract ByteBuf writeBytes(byte[] src, int srcIndex, int length);
+
+    public abstract ByteBuf writeBytes(ByteBuf src);
+
+    public abstract ByteBuf writeBytes(ByteBuf src, int srcIndex, int length);
+
+    public abstract ByteBuf writeBytes(ByteBuffer src);
+
+    public abstract int writeBytes(ScatteringByteChannel in, int length) throws IOException;
+
+    // ---------------------------------------- 和jdk的ByteBuffer互相转换 ----------------------------------------
+
+    // 该ByteBuf底层由几个ByteBuffer组成，目前的实现都是1个
+    public abstract int nioBufferCount();
+
+    // 把[readerIndex, writerIndex)的区域暴露成一个ByteBuffer，和ByteBuf共享内存，但读写指针互相独立
+    public abstract ByteBuffer nioBuffer();
+
+    public abstract ByteBuffer nioBuffer(int index, int length);
+
+    // 和nioBuffer类似，但返回的是内部缓存复用的ByteBuffer对象，只能在IO操作内部临时使用，不会有额外的对象创建
+    public abstract ByteBuffer internalNioBuffer(int index, int length);
+
+    public abstract ByteBuffer[] nioBuffers(int index, int length);
+
+    // 是否由byte[]支撑，堆内存的ByteBuf才有
+    public abstract boolean hasArray();
+
+    public abstract byte[] array();
+
+    public abstract int arrayOffset();
+
+    // ---------------------------------------- 其他 ----------------------------------------
+
+    // 把可读区域解码成字符串
+    public abstract String toString(Charset charset);
+
+    public abstract String toString(int index, int length, Charset charset);
+
+    @Override
+    public abstract String toString();
+
+    @Override
+    public abstract ByteBuf retain();
+
+    @Override
+    public abstract ByteBuf retain(int increment);
+
+}
@@ -0,0 +1,45 @@
+package com.yy.netty.buffer;
+
+/**
+ * ByteBuf的内存分配器接口，默认使用池化的分配器
+ * <p>
+ * heapBuffer分配堆内存，directBuffer分配堆外内存，ioBuffer是专门给IO读写用的，优先分配堆外内存，
+ * 这样在往jdk的channel中读写数据时，就省去了jdk内部从堆内存到堆外内存的那次拷贝
+ * </p>
+ */
+public interface ByteBufAllocator {
+
+    ByteBufAllocator DEFAULT = PooledByteBufAllocator.DEFAULT;
+
+    // 根据分配器的偏好分配堆内存或者堆外内存
+    ByteBuf buffer();
+
+    ByteBuf buffer(int initialCapacity);
+
+    ByteBuf buffer(int initialCapacity, int maxCapacity);
+
+    // 分配适合用于IO操作的ByteBuf，一般是堆外内存
+    ByteBuf ioBuffer();
+
+    ByteBuf ioBuffer(int initialCapacity);
+
+    ByteBuf ioBuffer(int initialCapacity, int maxCapacity);
+
+    ByteBuf heapBuffer();
+
+    ByteBuf heapBuffer(int initialCapacity);
+
+    ByteBuf heapBuffer(int initialCapacity, int maxCapacity);
+
+    ByteBuf directBuffer();
+
+    ByteBuf directBuffer(int initialCapacity);
+
+    ByteBuf directBuffer(int initialCapacity, int maxCapacity);
+
+    // 该分配器分配的是否是池化的堆外内存
+    boolean isDirectBufferPooled();
+
+    // ByteBuf扩容时计算新容量，minNewCapacity是至少需要的容量
+    int calculateNewCapacity(int minNewCapacity, int maxCapacity);
+}
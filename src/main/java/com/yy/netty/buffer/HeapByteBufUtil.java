@@ -0,0 +1,64 @@
+package com.yy.netty.buffer;
+
+/**
+ * 堆内存ByteBuf（底层是byte[]）的多字节读写工具类，统一按大端序处理
+ * 池化和非池化的堆内存ByteBuf都用这里的方法
+ */
+final class HeapByteBufUtil {
+
+    static byte getByte(byte[] memory, int index) {
+        return memory[index];
+    }
+
+    static short getShort(byte[] memory, int index) {
+        return (short) (memory[index] << 8 | memory[index + 1] & 0xFF);
+    }
+
+    static int getInt(byte[] memory, int index) {
+        return (memory[index] & 0xff) << 24 |
+                (memory[index + 1] & 0xff) << 16 |
+                (memory[index + 2] & 0xff) << 8 |
+                memory[index + 3] & 0xff;
+    }
+
+    static long getLong(byte[] memory, int index) {
+        return ((long) memory[index] & 0xff) << 56 |
+                ((long) memory[index + 1] & 0xff) << 48 |
+                ((long) memory[index + 2] & 0xff) << 40 |
+                ((long) memory[index + 3] & 0xff) << 32 |
+                ((long) memory[index + 4] & 0xff) << 24 |
+                ((long) memory[index + 5] & 0xff) << 16 |
+                ((long) memory[index + 6] & 0xff) << 8 |
+                (long) memory[index + 7] & 0xff;
+    }
+
+    static void setByte(byte[] memory, int index, int value) {
+        memory[index] = (byte) value;
+    }
+
+    static void setShort(byte[] memory, int index, int value) {
+        memory[index] = (byte) (value >>> 8);
+        memory[index + 1] = (byte) value;
+    }
+
+    static void setInt(byte[] memory, int index, int value) {
+        memory[index] = (byte) (value >>> 24);
+        memory[index + 1] = (byte) (value >>> 16);
+        memory[index + 2] = (byte) (value >>> 8);
+        memory[index + 3] = (byte) value;
+    }
+
+    static void setLong(byte[] memory, int index, long value) {
+        memory[index] = (byte) (value >>> 56);
+        memory[index + 1] = (byte) (value >>> 48);
+        memory[index + 2] = (byte) (value >>> 40);
+        memory[index + 3] = (byte) (value >>> 32);
+        memory[index + 4] = (byte) (value >>> 24);
+        memory[index + 5] = (byte) (value >>> 16);
+        memory[index + 6] = (byte) (value >>> 8);
+        memory[index + 7] = (byte) value;
+    }
+
+    private HeapByteBufUtil() {
+    }
+}
@@ -0,0 +1,448 @@
+package com.yy.netty.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.yy.netty.util.internal.ObjectUtil.checkPositiveOrZero;
+
+/**
+ * 内存池的竞技场，一个PooledByteBufAllocator中有多个arena，每个线程会绑定到其中一个使用人数最少的arena上，以此来减少锁竞争
+ * <p>
+ * 内存按照规格分成了这样几类：
+ * tiny：   [16B, 512B)，按16B对齐，对应32个subpage链表
+ * small：  [512B, pageSize)，按2的幂对齐，默认是512B、1KiB、2KiB、4KiB这4个subpage链表
+ * normal： [pageSize, chunkSize]，按2的幂对齐，由chunk的伙伴算法分配
+ * huge：   大于chunkSize，不池化，直接单独创建一个unpooled的chunk
+ * </p>
+ */
+abstract class PoolArena<T> {
+
+    enum SizeClass {
+        Tiny,
+        Small,
+        Normal
+    }
+
+    // tiny规格的subpage链表个数，512 / 16 = 32
+    static final int numTinySubpagePools = 512 >>> 4;
+
+    final PooledByteBufAllocator parent;
+
+    private final int maxOrder;
+
+    final int pageSize;
+
+    final int pageShifts;
+
+    final int chunkSize;
+
+    final int subpageOverflowMask;
+
+    // small规格的subpage链表个数
+    final int numSmallSubpagePools;
+
+    private final PoolSubpage<T>[] tinySubpagePools;
+
+    private final PoolSubpage<T>[] smallSubpagePools;
+
+    // 按照使用率分组的chunk链表
+    private final PoolChunkList<T> q050;
+
+    private final PoolChunkList<T> q025;
+
+    private final PoolChunkList<T> q000;
+
+    private final PoolChunkList<T> qInit;
+
+    private final PoolChunkList<T> q075;
+
+    private final PoolChunkList<T> q100;
+
+    // 绑定到该arena上的线程个数，新线程会选择绑定线程数最少的arena
+    final AtomicInteger numThreadCaches = new AtomicInteger();
+
+    protected PoolArena(PooledByteBufAllocator parent, int pageSize, int maxOrder, int pageShifts, int chunkSize) {
+        this.parent = parent;
+        this.pageSize = pageSize;
+        this.maxOrder = maxOrder;
+        this.pageShifts = pageShifts;
+        this.chunkSize = chunkSize;
+        subpageOverflowMask = ~(pageSize - 1);
+        tinySubpagePools = newSubpagePoolArray(numTinySubpagePools);
+        for (int i = 0; i < tinySubpagePools.length; i++) {
+            tinySubpagePools[i] = newSubpagePoolHead(pageSize);
+        }
+
+        // 512 = 2^9，所以small规格的个数是pageShifts - 9
+        numSmallSubpagePools = pageShifts - 9;
+        smallSubpagePools = newSubpagePoolArray(numSmallSubpagePools);
+        for (int i = 0; i < smallSubpagePools.length; i++) {
+            smallSubpagePools[i] = newSubpagePoolHead(pageSize);
+        }
+
+        q100 = new PoolChunkList<T>(this, null, 100, Integer.MAX_VALUE, chunkSize);
+        q075 = new PoolChunkList<T>(this, q100, 75, 100, chunkSize);
+        q050 = new PoolChunkList<T>(this, q075, 50, 100, chunkSize);
+        q025 = new PoolChunkList<T>(this, q050, 25, 75, chunkSize);
+        q000 = new PoolChunkList<T>(this, q025, 1, 50, chunkSize);
+        qInit = new PoolChunkList<T>(this, q000, Integer.MIN_VALUE, 25, chunkSize);
+
+        q100.prevList(q075);
+        q075.prevList(q050);
+        q050.prevList(q025);
+        q025.prevList(q000);
+        q000.prevList(null);
+        qInit.prevList(qInit);
+    }
+
+    private PoolSubpage<T> newSubpagePoolHead(int pageSize) {
+        PoolSubpage<T> head = new PoolSubpage<T>(pageSize);
+        head.prev = head;
+        head.next = head;
+        return head;
+    }
+
+    @SuppressWarnings("unchecked")
+    private PoolSubpage<T>[] newSubpagePoolArray(int size) {
+        return (PoolSubpage<T>[]) new PoolSubpage<?>[size];
+    }
+
+    abstract boolean isDirect();
+
+    PooledByteBuf<T> allocate(PoolThreadCache cache, int reqCapacity, int maxCapacity) {
+        // 先从对象池中拿一个ByteBuf的外壳对象，然后再给它分配真正的内存
+        PooledByteBuf<T> buf = newByteBuf(maxCapacity);
+        allocate(cache, buf, reqCapacity);
+        return buf;
+    }
+
+    static int tinyIdx(int normCapacity) {
+        return normCapacity >>> 4;
+    }
+
+    static int smallIdx(int normCapacity) {
+        int tableIdx = 0;
+        int i = normCapacity >>> 10;
+        while (i != 0) {
+            i >>>= 1;
+            tableIdx++;
+        }
+        return tableIdx;
+    }
+
+    // 容量小于pageSize
+    boolean isTinyOrSmall(int normCapacity) {
+        return (normCapacity & subpageOverflowMask) == 0;
+    }
+
+    // 容量小于512
+    static boolean isTiny(int normCapacity) {
+        return (normCapacity & 0xFFFFFE00) == 0;
+    }
+
+    private void allocate(PoolThreadCache cache, PooledByteBuf<T> buf, final int reqCapacity) {
+        final int normCapacity = normalizeCapacity(reqCapacity);
+        if (isTinyOrSmall(normCapacity)) {
+            int tableIdx;
+            PoolSubpage<T>[] table;
+            boolean tiny = isTiny(normCapacity);
+            // 优先从线程缓存中分配，缓存命中的话就完全不需要加锁了
+            if (tiny) {
+                if (cache.allocateTiny(this, buf, reqCapacity, normCapacity)) {
+                    return;
+                }
+                tableIdx = tinyIdx(normCapacity);
+                table = tinySubpagePools;
+            } else {
+                if (cache.allocateSmall(this, buf, reqCapacity, normCapacity)) {
+                    return;
+                }
+                tableIdx = smallIdx(normCapacity);
+                table = smallSubpagePools;
+            }
+
+            final PoolSubpage<T> head = table[tableIdx];
+
+            // 先看看对应规格的subpage链表中有没有还有空闲小块的subpage，有的话直接分配，只需要对链表头加锁
+            synchronized (head) {
+                final PoolSubpage<T> s = head.next;
+                if (s != head) {
+                    long handle = s.allocate();
+                    s.chunk.initBufWithSubpage(buf, handle, reqCapacity);
+                    return;
+                }
+            }
+            // 没有的话，就要从chunk中分配一个新的page出来作为subpage
+            synchronized (this) {
+                allocateNormal(buf, reqCapacity, normCapacity);
+            }
+            return;
+        }
+        if (normCapacity <= chunkSize) {
+            if (cache.allocateNormal(this, buf, reqCapacity, normCapacity)) {
+                return;
+            }
+            synchronized (this) {
+                allocateNormal(buf, reqCapacity, normCapacity);
+            }
+        } else {
+            allocateHuge(buf, reqCapacity);
+        }
+    }
+
+    // 调用方需要持有arena的锁
+    private void allocateNormal(PooledByteBuf<T> buf, int reqCapacity, int normCapacity) {
+        // 这个查找顺序是netty作者权衡过的，优先从使用率适中的chunk中分配，既能提高内存利用率，又能让空闲的chunk尽快被回收
+        if (q050.allocate(buf, reqCapacity, normCapacity) || q025.allocate(buf, reqCapacity, normCapacity) ||
+                q000.allocate(buf, reqCapacity, normCapacity) || qInit.allocate(buf, reqCapacity, normCapacity) ||
+                q075.allocate(buf, reqCapacity, normCapacity)) {
+            return;
+        }
+
+        // 所有的chunk都分配不了，新建一个chunk
+        PoolChunk<T> c = newChunk(pageSize, maxOrder, pageShifts, chunkSize);
+        c.allocate(buf, reqCapacity, normCapacity);
+        qInit.add(c);
+    }
+
+    private void allocateHuge(PooledByteBuf<T> buf, int reqCapacity) {
+        PoolChunk<T> chunk = newUnpooledChunk(reqCapacity);
+        buf.initUnpooled(chunk, reqCapacity);
+    }
+
+    void free(PoolChunk<T> chunk, long handle, int normCapacity, PoolThreadCache cache) {
+        if (chunk.unpooled) {
+            destroyChunk(chunk);
+        } else {
+            SizeClass sizeClass = sizeClass(normCapacity);
+            // cache是分配该内存的线程的缓存，不管当前是哪个线程在释放，都先尝试还给它的缓存，放不下才还给arena
+            if (cache != null && cache.add(this, chunk, handle, normCapacity, sizeClass)) {
+                return;
+            }
+            freeChunk(chunk, handle);
+        }
+    }
+
+    private SizeClass sizeClass(int normCapacity) {
+        if (!isTinyOrSmall(normCapacity)) {
+            return SizeClass.Normal;
+        }
+        return isTiny(normCapacity) ? SizeClass.Tiny : SizeClass.Small;
+    }
+
+    void freeChunk(PoolChunk<T> chunk, long handle) {
+        final boolean destroyChunk;
+        synchronized (this) {
+            destroyChunk = !chunk.parent.free(chunk, handle);
+        }
+        if (destroyChunk) {
+            // 在锁外面销毁chunk
+            destroyChunk(chunk);
+        }
+    }
+
+    PoolSubpage<T> findSubpagePoolHead(int elemSize) {
+        int tableIdx;
+        PoolSubpage<T>[] table;
+        if (isTiny(elemSize)) {
+            tableIdx = elemSize >>> 4;
+            table = tinySubpagePools;
+        } else {
+            tableIdx = 0;
+            elemSize >>>= 10;
+            while (elemSize != 0) {
+                elemSize >>>= 1;
+                tableIdx++;
+            }
+            table = smallSubpagePools;
+        }
+
+        return table[tableIdx];
+    }
+
+    /**
+     * 把申请的容量规整到对应规格：
+     * 大于等于chunkSize的不做处理；大于等于512的向上取整到2的幂；小于512的向上取整到16的倍数
+     */
+    int normalizeCapacity(int reqCapacity) {
+        checkPositiveOrZero(reqCapacity, "reqCapacity");
+
+        if (reqCapacity >= chunkSize) {
+            return reqCapacity;
+        }
+
+        if (!isTiny(reqCapacity)) {
+            int normalizedCapacity = reqCapacity;
+            normalizedCapacity--;
+            normalizedCapacity |= normalizedCapacity >>> 1;
+            normalizedCapacity |= normalizedCapacity >>> 2;
+            normalizedCapacity |= normalizedCapacity >>> 4;
+            normalizedCapacity |= normalizedCapacity >>> 8;
+            normalizedCapacity |= normalizedCapacity >>> 16;
+            normalizedCapacity++;
+
+            if (normalizedCapacity < 0) {
+                normalizedCapacity >>>= 1;
+            }
+            return normalizedCapacity;
+        }
+
+        if ((reqCapacity & 15) == 0) {
+            return reqCapacity;
+        }
+
+        return (reqCapacity & ~15) + 16;
+    }
+
+    /**
+     * ByteBuf扩容或者缩容时，重新分配一块内存，把数据拷贝过去，然后释放旧的内存
+     */
+    void reallocate(PooledByteBuf<T> buf, int newCapacity, boolean freeOldMemory) {
+        int oldCapacity = buf.length;
+        if (oldCapacity == newCapacity) {
+            return;
+        }
+
+        PoolChunk<T> oldChunk = buf.chunk;
+        long oldHandle = buf.handle;
+        T oldMemory = buf.memory;
+        int oldOffset = buf.offset;
+        int oldMaxLength = buf.maxLength;
+        PoolThreadCache oldCache = buf.cache;
+        int readerIndex = buf.readerIndex();
+        int writerIndex = buf.writerIndex();
+
+        allocate(parent.threadCache(), buf, newCapacity);
+        if (newCapacity > oldCapacity) {
+            memoryCopy(oldMemory, oldOffset, buf.memory, buf.offset, oldCapacity);
+        } else {
+            if (readerIndex < newCapacity) {
+                if (writerIndex > newCapacity) {
+                    writerIndex = newCapacity;
+                }
+                memoryCopy(oldMemory, oldOffset + readerIndex,
+                        buf.memory, buf.offset + readerIndex, writerIndex - readerIndex);
+            } else {
+                readerIndex = writerIndex = newCapacity;
+            }
+        }
+
+        buf.setIndex(readerIndex, writerIndex);
+
+        if (freeOldMemory) {
+            free(oldChunk, oldHandle, oldMaxLength, oldCache);
+        }
+    }
+
+    protected abstract PoolChunk<T> newChunk(int pageSize, int maxOrder, int pageShifts, int chunkSize);
+
+    protected abstract PoolChunk<T> newUnpooledChunk(int capacity);
+
+    protected abstract PooledByteBuf<T> newByteBuf(int maxCapacity);
+
+    protected abstract void memoryCopy(T src, int srcOffset, T dst, int dstOffset, int length);
+
+    protected abstract void destroyChunk(PoolChunk<T> chunk);
+
+    @Override
+    public String toString() {
+        return "Chunk(s) at 0~25%:" + System.lineSeparator() + qInit + System.lineSeparator() +
+                "Chunk(s) at 0~50%:" + System.lineSeparator() + q000 + System.lineSeparator() +
+                "Chunk(s) at 25~75%:" + System.lineSeparator() + q025 + System.lineSeparator() +
+                "Chunk(s) at 50~100%:" + System.lineSeparator() + q050 + System.lineSeparator() +
+                "Chunk(s) at 75~100%:" + System.lineSeparator() + q075 + System.lineSeparator() +
+                "Chunk(s) at 100%:" + System.lineSeparator() + q100;
+    }
+
+    /**
+     * 堆内存的arena，chunk的内存是一个byte[]
+     */
+    static final class HeapArena extends PoolArena<byte[]> {
+
+        HeapArena(PooledByteBufAllocator parent, int pageSize, int maxOrder, int pageShifts, int chunkSize) {
+            super(parent, pageSize, maxOrder, pageShifts, chunkSize);
+        }
+
+        @Override
+        boolean isDirect() {
+            return false;
+        }
+
+        @Override
+        protected PoolChunk<byte[]> newChunk(int pageSize, int maxOrder, int pageShifts, int chunkSize) {
+            return new PoolChunk<byte[]>(this, new byte[chunkSize], pageSize, maxOrder, pageShifts, chunkSize, 0);
+        }
+
+        @Override
+        protected PoolChunk<byte[]> newUnpooledChunk(int capacity) {
+            return new PoolChunk<byte[]>(this, new byte[capacity], capacity, 0);
+        }
+
+        @Override
+        protected void destroyChunk(PoolChunk<byte[]> chunk) {
+            // 堆内存交给GC回收就行了
+        }
+
+        @Override
+        protected PooledByteBuf<byte[]> newByteBuf(int maxCapacity) {
+            return PooledHeapByteBuf.newInstance(maxCapacity);
+        }
+
+        @Override
+        protected void memoryCopy(byte[] src, int srcOffset, byte[] dst, int dstOffset, int length) {
+            if (length == 0) {
+                return;
+            }
+            System.arraycopy(src, srcOffset, dst, dstOffset, length);
+        }
+    }
+
+    /**
+     * 堆外内存的arena，chunk的内存是一个DirectByteBuffer
+     */
+    static final class DirectArena extends PoolArena<ByteBuffer> {
+
+        DirectArena(PooledByteBufAllocator parent, int pageSize, int maxOrder, int pageShifts, int chunkSize) {
+            super(parent, pageSize, maxOrder, pageShifts, chunkSize);
+        }
+
+        @Override
+        boolean isDirect() {
+            return true;
+        }
+
+        @Override
+        protected PoolChunk<ByteBuffer> newChunk(int pageSize, int maxOrder, int pageShifts, int chunkSize) {
+            return new PoolChunk<ByteBuffer>(this, ByteBuffer.allocateDirect(chunkSize),
+                    pageSize, maxOrder, pageShifts, chunkSize, 0);
+        }
+
+        @Override
+        protected PoolChunk<ByteBuffer> newUnpooledChunk(int capacity) {
+            return new PoolChunk<ByteBuffer>(this, ByteBuffer.allocateDirect(capacity), capacity, 0);
+        }
+
+        @Override
+        protected void destroyChunk(PoolChunk<ByteBuffer> chunk) {
+            // 没有引入Unsafe，堆外内存交给DirectByteBuffer的Cleaner在GC时释放
+        }
+
+        @Override
+        protected PooledByteBuf<ByteBuffer> newByteBuf(int maxCapacity) {
+            return PooledDirectByteBuf.newInstance(maxCapacity);
+        }
+
+        @Override
+        protected void memoryCopy(ByteBuffer src, int srcOffset, ByteBuffer dst, int dstOffset, int length) {
+            if (length == 0) {
+                return;
+            }
+            // 用duplicate出来的ByteBuffer来拷贝，避免修改原ByteBuffer的position和limit
+            src = src.duplicate();
+            dst = dst.duplicate();
+            src.position(srcOffset).limit(srcOffset + length);
+            dst.position(dstOffset);
+            dst.put(src);
+        }
+    }
+}
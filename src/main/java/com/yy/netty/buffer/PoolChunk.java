@@ -0,0 +1,376 @@
+package com.yy.netty.buffer;
+
+/**
+ * 内存池向操作系统（或者jvm堆）申请内存的最小单位，默认一个chunk是16MiB
+ * <p>
+ * chunk内部把内存划分成一个个page（默认8KiB），并用一棵满二叉树（memoryMap）来管理这些page，这就是伙伴算法：
+ * 树的第d层有2^d个节点，每个节点代表chunkSize / 2^d大小的一段连续内存，叶子节点就是一个page，
+ * memoryMap[id]记录的是以该节点为根的子树中，能分配的最浅的那一层的层号，等于maxOrder + 1时表示该节点已经不可分配了。
+ * 分配时只需要从根节点往下找到一个值等于目标层号的节点即可，时间复杂度是O(log n)
+ * </p>
+ * <p>
+ * handle是一个long，低32位是memoryMap的下标，高32位是subpage中bitmap的下标（page级别的分配高32位为0）
+ * </p>
+ */
+final class PoolChunk<T> {
+
+    private static final int INTEGER_SIZE_MINUS_ONE = Integer.SIZE - 1;
+
+    // 所属的arena
+    final PoolArena<T> arena;
+
+    // 真正的内存，堆内存是byte[]，堆外内存是ByteBuffer
+    final T memory;
+
+    // 超过chunkSize的大内存不池化，单独创建一个chunk
+    final boolean unpooled;
+
+    final int offset;
+
+    // 伙伴算法的满二叉树
+    private final byte[] memoryMap;
+
+    // 记录每个节点所在的层号，初始化后就不会变了
+    private final byte[] depthMap;
+
+    // 每个叶子节点（page）对应的subpage
+    private final PoolSubpage<T>[] subpages;
+
+    // 用来判断申请的容量是否大于等于pageSize
+    private final int subpageOverflowMask;
+
+    private final int pageSize;
+
+    private final int pageShifts;
+
+    private final int maxOrder;
+
+    private final int chunkSize;
+
+    private final int log2ChunkSize;
+
+    // 叶子节点的个数，也就是page的个数
+    private final int maxSubpageAllocs;
+
+    // 节点不可分配时的标记值
+    private final byte unusable;
+
+    // 剩余可分配的字节数
+    private int freeBytes;
+
+    // chunk所在的PoolChunkList，以及在该链表中的前后节点
+    PoolChunkList<T> parent;
+
+    PoolChunk<T> prev;
+
+    PoolChunk<T> next;
+
+    PoolChunk(PoolArena<T> arena, T memory, int pageSize, int maxOrder, int pageShifts, int chunkSize, int offset) {
+        unpooled = false;
+        this.arena = arena;
+        this.memory = memory;
+        this.pageSize = pageSize;
+        this.pageShifts = pageShifts;
+        this.maxOrder = maxOrder;
+        this.chunkSize = chunkSize;
+        this.offset = offset;
+        unusable = (byte) (maxOrder + 1);
+        log2ChunkSize = log2(chunkSize);
+        subpageOverflowMask = ~(pageSize - 1);
+        freeBytes = chunkSize;
+
+        maxSubpageAllocs = 1 << maxOrder;
+
+        // 满二叉树的节点下标从1开始
+        memoryMap = new byte[maxSubpageAllocs << 1];
+        depthMap = new byte[memoryMap.length];
+        int memoryMapIndex = 1;
+        for (int d = 0; d <= maxOrder; ++d) {
+            int depth = 1 << d;
+            for (int p = 0; p < depth; ++p) {
+                memoryMap[memoryMapIndex] = (byte) d;
+                depthMap[memoryMapIndex] = (byte) d;
+                memoryMapIndex++;
+            }
+        }
+
+        subpages = newSubpageArray(maxSubpageAllocs);
+    }
+
+    /**
+     * 创建一个不池化的chunk
+     */
+    PoolChunk(PoolArena<T> arena, T memory, int size, int offset) {
+        unpooled = true;
+        this.arena = arena;
+        this.memory = memory;
+        this.offset = offset;
+        memoryMap = null;
+        depthMap = null;
+        subpages = null;
+        subpageOverflowMask = 0;
+        pageSize = 0;
+        pageShifts = 0;
+        maxOrder = 0;
+        unusable = (byte) (maxOrder + 1);
+        chunkSize = size;
+        log2ChunkSize = log2(chunkSize);
+        maxSubpageAllocs = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private PoolSubpage<T>[] newSubpageArray(int size) {
+        return (PoolSubpage<T>[]) new PoolSubpage<?>[size];
+    }
+
+    // chunk的使用率，百分比
+    int usage() {
+        final int freeBytes;
+        synchronized (arena) {
+            freeBytes = this.freeBytes;
+        }
+        return usage(freeBytes);
+    }
+
+    private int usage(int freeBytes) {
+        if (freeBytes == 0) {
+            return 100;
+        }
+
+        int freePercentage = (int) (freeBytes * 100L / chunkSize);
+        if (freePercentage == 0) {
+            return 99;
+        }
+        return 100 - freePercentage;
+    }
+
+    /**
+     * 从该chunk中分配内存，并用分配到的内存初始化buf
+     *
+     * @return 分配失败返回false
+     */
+    boolean allocate(PooledByteBuf<T> buf, int reqCapacity, int normCapacity) {
+        final long handle;
+        if ((normCapacity & subpageOverflowMask) != 0) {
+            // 大于等于pageSize，按page分配
+            handle = allocateRun(normCapacity);
+        } else {
+            // 小于pageSize，分配一个subpage中的小块
+            handle = allocateSubpage(normCapacity);
+        }
+
+        if (handle < 0) {
+            return false;
+        }
+        initBuf(buf, handle, reqCapacity);
+        return true;
+    }
+
+    /**
+     * 节点被分配之后，从该节点往上更新父节点的值，父节点的值等于两个子节点中较小的那个
+     */
+    private void updateParentsAlloc(int id) {
+        while (id > 1) {
+            int parentId = id >>> 1;
+            byte val1 = value(id);
+            byte val2 = value(id ^ 1);
+            byte val = val1 < val2 ? val1 : val2;
+            setValue(parentId, val);
+            id = parentId;
+        }
+    }
+
+    /**
+     * 节点被释放之后，从该节点往上更新父节点的值，如果两个子节点都完全空闲了，父节点也恢复成完全空闲
+     */
+    private void updateParentsFree(int id) {
+        int logChild = depth(id) + 1;
+        while (id > 1) {
+            int parentId = id >>> 1;
+            byte val1 = value(id);
+            byte val2 = value(id ^ 1);
+            logChild -= 1;
+
+            if (val1 == logChild && val2 == logChild) {
+                setValue(parentId, (byte) (logChild - 1));
+            } else {
+                byte val = val1 < val2 ? val1 : val2;
+                setValue(parentId, val);
+            }
+
+            id = parentId;
+        }
+    }
+
+    /**
+     * 在第d层找一个可用的节点
+     *
+     * @return 节点在memoryMap中的下标，找不到返回-1
+     */
+    private int allocateNode(int d) {
+        int id = 1;
+        // 第d层节点的下标都大于等于1 << d，用来判断是否已经走到了第d层
+        int initial = -(1 << d);
+        byte val = value(id);
+        if (val > d) {
+            return -1;
+        }
+        while (val < d || (id & initial) == 0) {
+            id <<= 1;
+            val = value(id);
+            if (val > d) {
+                // 左子节点不满足，换成右子节点
+                id ^= 1;
+                val = value(id);
+            }
+        }
+        setValue(id, unusable);
+        updateParentsAlloc(id);
+        return id;
+    }
+
+    private long allocateRun(int normCapacity) {
+        int d = maxOrder - (log2(normCapacity) - pageShifts);
+        int id = allocateNode(d);
+        if (id < 0) {
+            return id;
+        }
+        freeBytes -= runLength(id);
+        return id;
+    }
+
+    private long allocateSubpage(int normCapacity) {
+        // 找到对应规格的subpage链表头，分配过程中要对头节点加锁
+        PoolSubpage<T> head = arena.findSubpagePoolHead(normCapacity);
+        int d = maxOrder;
+        synchronized (head) {
+            int id = allocateNode(d);
+            if (id < 0) {
+                return id;
+            }
+
+            final PoolSubpage<T>[] subpages = this.subpages;
+            final int pageSize = this.pageSize;
+
+            freeBytes -= pageSize;
+
+            int subpageIdx = subpageIdx(id);
+            PoolSubpage<T> subpage = subpages[subpageIdx];
+            if (subpage == null) {
+                subpage = new PoolSubpage<T>(head, this, id, runOffset(id), pageSize, normCapacity);
+                subpages[subpageIdx] = subpage;
+            } else {
+                subpage.init(head, normCapacity);
+            }
+            return subpage.allocate();
+        }
+    }
+
+    /**
+     * 释放handle对应的内存，调用方需要持有arena的锁
+     */
+    void free(long handle) {
+        int memoryMapIdx = memoryMapIdx(handle);
+        int bitmapIdx = bitmapIdx(handle);
+
+        if (bitmapIdx != 0) {
+            // 释放的是subpage中的一个小块
+            PoolSubpage<T> subpage = subpages[subpageIdx(memoryMapIdx)];
+            PoolSubpage<T> head = arena.findSubpagePoolHead(subpage.elemSize);
+            synchronized (head) {
+                if (subpage.free(head, bitmapIdx & 0x3FFFFFFF)) {
+                    return;
+                }
+            }
+        }
+        freeBytes += runLength(memoryMapIdx);
+        setValue(memoryMapIdx, depth(memoryMapIdx));
+        updateParentsFree(memoryMapIdx);
+    }
+
+    void initBuf(PooledByteBuf<T> buf, long handle, int reqCapacity) {
+        int memoryMapIdx = memoryMapIdx(handle);
+        int bitmapIdx = bitmapIdx(handle);
+        if (bitmapIdx == 0) {
+            buf.init(this, handle, runOffset(memoryMapIdx) + offset, reqCapacity, runLength(memoryMapIdx),
+                    arena.parent.threadCache());
+        } else {
+            initBufWithSubpage(buf, handle, bitmapIdx, reqCapacity);
+        }
+    }
+
+    void initBufWithSubpage(PooledByteBuf<T> buf, long handle, int reqCapacity) {
+        initBufWithSubpage(buf, handle, bitmapIdx(handle), reqCapacity);
+    }
+
+    private void initBufWithSubpage(PooledByteBuf<T> buf, long handle, int bitmapIdx, int reqCapacity) {
+        int memoryMapIdx = memoryMapIdx(handle);
+        PoolSubpage<T> subpage = subpages[subpageIdx(memoryMapIdx)];
+        buf.init(this, handle,
+                runOffset(memoryMapIdx) + (bitmapIdx & 0x3FFFFFFF) * subpage.elemSize + offset,
+                reqCapacity, subpage.elemSize, arena.parent.threadCache());
+    }
+
+    private byte value(int id) {
+        return memoryMap[id];
+    }
+
+    private void setValue(int id, byte val) {
+        memoryMap[id] = val;
+    }
+
+    private byte depth(int id) {
+        return depthMap[id];
+    }
+
+    private static int log2(int val) {
+        return INTEGER_SIZE_MINUS_ONE - Integer.numberOfLeadingZeros(val);
+    }
+
+    // 节点代表的内存长度
+    private int runLength(int id) {
+        return 1 << log2ChunkSize - depth(id);
+    }
+
+    // 节点代表的内存在chunk中的偏移量
+    private int runOffset(int id) {
+        int shift = id ^ 1 << depth(id);
+        return shift * runLength(id);
+    }
+
+    private int subpageIdx(int memoryMapIdx) {
+        return memoryMapIdx ^ maxSubpageAllocs;
+    }
+
+    static int memoryMapIdx(long handle) {
+        return (int) handle;
+    }
+
+    static int bitmapIdx(long handle) {
+        return (int) (handle >>> Integer.SIZE);
+    }
+
+    int chunkSize() {
+        return chunkSize;
+    }
+
+    int freeBytes() {
+        synchronized (arena) {
+            return freeBytes;
+        }
+    }
+
+    void destroy() {
+        arena.destroyChunk(this);
+    }
+
+    @Override
+    public String toString() {
+        final int freeBytes;
+        synchronized (arena) {
+            freeBytes = this.freeBytes;
+        }
+        return "Chunk(" + Integer.toHexString(System.identityHashCode(this)) + ": " + usage(freeBytes) + "%, " +
+                (chunkSize - freeBytes) + '/' + chunkSize + ')';
+    }
+}
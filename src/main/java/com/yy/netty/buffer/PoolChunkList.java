@@ -0,0 +1,152 @@
+package com.yy.netty.buffer;
+
+/**
+ * 按照使用率把chunk分组串起来的链表，PoolArena中有6个这样的链表：qInit、q000、q025、q050、q075、q100
+ * <p>
+ * chunk的使用率变化后，会在这些链表之间移动：使用率超过maxUsage就移动到nextList，低于minUsage就移动到prevList，
+ * q000的prevList为null，所以q000中的chunk完全空闲后就会被销毁，把内存还给系统
+ * </p>
+ */
+final class PoolChunkList<T> {
+
+    private final PoolArena<T> arena;
+
+    private final PoolChunkList<T> nextList;
+
+    private final int minUsage;
+
+    private final int maxUsage;
+
+    // 该链表中的chunk最多还能分配的内存大小，超过的话就不用在这个链表中找了
+    private final int maxCapacity;
+
+    private PoolChunk<T> head;
+
+    private PoolChunkList<T> prevList;
+
+    PoolChunkList(PoolArena<T> arena, PoolChunkList<T> nextList, int minUsage, int maxUsage, int chunkSize) {
+        this.arena = arena;
+        this.nextList = nextList;
+        this.minUsage = minUsage;
+        this.maxUsage = maxUsage;
+        maxCapacity = calculateMaxCapacity(minUsage, chunkSize);
+    }
+
+    private static int calculateMaxCapacity(int minUsage, int chunkSize) {
+        minUsage = minUsage0(minUsage);
+
+        if (minUsage == 100) {
+            // q100中的chunk已经满了，不能再分配了
+            return 0;
+        }
+        return (int) (chunkSize * (100L - minUsage) / 100L);
+    }
+
+    void prevList(PoolChunkList<T> prevList) {
+        this.prevList = prevList;
+    }
+
+    boolean allocate(PooledByteBuf<T> buf, int reqCapacity, int normCapacity) {
+        if (normCapacity > maxCapacity) {
+            return false;
+        }
+
+        for (PoolChunk<T> cur = head; cur != null; cur = cur.next) {
+            if (cur.allocate(buf, reqCapacity, normCapacity)) {
+                if (cur.usage() >= maxUsage) {
+                    remove(cur);
+                    nextList.add(cur);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return false表示该chunk需要被销毁
+     */
+    boolean free(PoolChunk<T> chunk, long handle) {
+        chunk.free(handle);
+        if (chunk.usage() < minUsage) {
+            remove(chunk);
+            return move0(chunk);
+        }
+        return true;
+    }
+
+    private boolean move(PoolChunk<T> chunk) {
+        if (chunk.usage() < minUsage) {
+            return move0(chunk);
+        }
+        add0(chunk);
+        return true;
+    }
+
+    private boolean move0(PoolChunk<T> chunk) {
+        if (prevList == null) {
+            return false;
+        }
+        return prevList.move(chunk);
+    }
+
+    void add(PoolChunk<T> chunk) {
+        if (chunk.usage() >= maxUsage) {
+            nextList.add(chunk);
+            return;
+        }
+        add0(chunk);
+    }
+
+    void add0(PoolChunk<T> chunk) {
+        chunk.parent = this;
+        if (head == null) {
+            head = chunk;
+            chunk.prev = null;
+            chunk.next = null;
+        } else {
+            chunk.prev = null;
+            chunk.next = head;
+            head.prev = chunk;
+            head = chunk;
+        }
+    }
+
+    private void remove(PoolChunk<T> cur) {
+        if (cur == head) {
+            head = cur.next;
+            if (head != null) {
+                head.prev = null;
+            }
+        } else {
+            PoolChunk<T> next = cur.next;
+            cur.prev.next = next;
+            if (next != null) {
+                next.prev = cur.prev;
+            }
+        }
+    }
+
+    private static int minUsage0(int value) {
+        return Math.max(1, value);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        synchronized (arena) {
+            if (head == null) {
+                return "none";
+            }
+            for (PoolChunk<T> cur = head; ; ) {
+                buf.append(cur);
+                cur = cur.next;
+                if (cur == null) {
+                    break;
+                }
+                buf.append(System.lineSeparator());
+            }
+        }
+        return buf.toString();
+    }
+}
@@ -0,0 +1,222 @@
+package com.yy.netty.buffer;
+
+/**
+ * 小于pageSize的内存（tiny和small）分配时，会先从chunk中分配出一个page，然后把这个page按照elemSize等分成多个小块，
+ * 用一个位图bitmap记录每个小块是否被使用了，这就是PoolSubpage
+ * <p>
+ * 相同elemSize的PoolSubpage会被串成一个双向链表，链表的头节点存放在PoolArena的tinySubpagePools和smallSubpagePools数组中，
+ * 这样下次再分配相同规格的内存时，直接从链表中找到还有空闲小块的subpage就可以了
+ * </p>
+ */
+final class PoolSubpage<T> {
+
+    // 该subpage所属的chunk
+    final PoolChunk<T> chunk;
+
+    // 该subpage对应的page在chunk的memoryMap中的下标
+    private final int memoryMapIdx;
+
+    // 该subpage在chunk中的偏移量
+    private final int runOffset;
+
+    private final int pageSize;
+
+    // 位图，每一位表示一个小块是否被使用，一个long可以表示64个小块
+    private final long[] bitmap;
+
+    // 双向链表的前后指针
+    PoolSubpage<T> prev;
+
+    PoolSubpage<T> next;
+
+    // 为false时表示该subpage已经从链表中移除，不能再分配了
+    boolean doNotDestroy;
+
+    // 每个小块的大小
+    int elemSize;
+
+    // 小块的总个数
+    private int maxNumElems;
+
+    // bitmap中真正用到的long的个数
+    private int bitmapLength;
+
+    // 下一个可用小块的下标，释放小块时会记录在这里，下次分配时直接用，省去了查找
+    private int nextAvail;
+
+    // 剩余可用小块的个数
+    private int numAvail;
+
+    /**
+     * 创建链表的头节点，头节点不分配内存
+     */
+    PoolSubpage(int pageSize) {
+        chunk = null;
+        memoryMapIdx = -1;
+        runOffset = -1;
+        elemSize = -1;
+        this.pageSize = pageSize;
+        bitmap = null;
+    }
+
+    PoolSubpage(PoolSubpage<T> head, PoolChunk<T> chunk, int memoryMapIdx, int runOffset, int pageSize, int elemSize) {
+        this.chunk = chunk;
+        this.memoryMapIdx = memoryMapIdx;
+        this.runOffset = runOffset;
+        this.pageSize = pageSize;
+        // 最小的elemSize是16，所以一个page最多有pageSize / 16个小块，需要pageSize / 16 / 64个long来表示
+        bitmap = new long[pageSize >>> 10];
+        init(head, elemSize);
+    }
+
+    void init(PoolSubpage<T> head, int elemSize) {
+        doNotDestroy = true;
+        this.elemSize = elemSize;
+        if (elemSize != 0) {
+            maxNumElems = numAvail = pageSize / elemSize;
+            nextAvail = 0;
+            bitmapLength = maxNumElems >>> 6;
+            if ((maxNumElems & 63) != 0) {
+                bitmapLength++;
+            }
+
+            for (int i = 0; i < bitmapLength; i++) {
+                bitmap[i] = 0;
+            }
+        }
+        addToPool(head);
+    }
+
+    /**
+     * 分配一个小块，返回值是该小块的handle，handle的高32位是小块在bitmap中的下标，低32位是page在memoryMap中的下标
+     */
+    long allocate() {
+        if (elemSize == 0) {
+            return toHandle(0);
+        }
+
+        if (numAvail == 0 || !doNotDestroy) {
+            return -1;
+        }
+
+        final int bitmapIdx = getNextAvail();
+        int q = bitmapIdx >>> 6;
+        int r = bitmapIdx & 63;
+        bitmap[q] |= 1L << r;
+
+        // 小块分配完了，就从链表中移除，不再参与分配
+        if (--numAvail == 0) {
+            removeFromPool();
+        }
+
+        return toHandle(bitmapIdx);
+    }
+
+    /**
+     * 释放一个小块
+     *
+     * @return true表示该subpage还在使用中，false表示该subpage已经完全空闲且从链表中移除了，可以把整个page归还给chunk
+     */
+    boolean free(PoolSubpage<T> head, int bitmapIdx) {
+        if (elemSize == 0) {
+            return true;
+        }
+        int q = bitmapIdx >>> 6;
+        int r = bitmapIdx & 63;
+        bitmap[q] ^= 1L << r;
+
+        setNextAvail(bitmapIdx);
+
+        if (numAvail++ == 0) {
+            // 之前小块被分配完了，已经从链表中移除了，现在有空闲的小块了，重新加入链表
+            addToPool(head);
+            return true;
+        }
+
+        if (numAvail != maxNumElems) {
+            return true;
+        } else {
+            // subpage完全空闲了
+            if (prev == next) {
+                // 链表中只剩这一个subpage了，保留它，避免频繁地创建和销毁
+                return true;
+            }
+
+            doNotDestroy = false;
+            removeFromPool();
+            return false;
+        }
+    }
+
+    private void addToPool(PoolSubpage<T> head) {
+        prev = head;
+        next = head.next;
+        next.prev = this;
+        head.next = this;
+    }
+
+    private void removeFromPool() {
+        prev.next = next;
+        next.prev = prev;
+        next = null;
+        prev = null;
+    }
+
+    private void setNextAvail(int bitmapIdx) {
+        nextAvail = bitmapIdx;
+    }
+
+    private int getNextAvail() {
+        int nextAvail = this.nextAvail;
+        if (nextAvail >= 0) {
+            this.nextAvail = -1;
+            return nextAvail;
+        }
+        return findNextAvail();
+    }
+
+    private int findNextAvail() {
+        final long[] bitmap = this.bitmap;
+        final int bitmapLength = this.bitmapLength;
+        for (int i = 0; i < bitmapLength; i++) {
+            long bits = bitmap[i];
+            // 不是全1，说明这个long里还有空闲的小块
+            if (~bits != 0) {
+                return findNextAvail0(i, bits);
+            }
+        }
+        return -1;
+    }
+
+    private int findNextAvail0(int i, long bits) {
+        final int maxNumElems = this.maxNumElems;
+        final int baseVal = i << 6;
+
+        for (int j = 0; j < 64; j++) {
+            if ((bits & 1) == 0) {
+                int val = baseVal | j;
+                if (val < maxNumElems) {
+                    return val;
+                } else {
+                    break;
+                }
+            }
+            bits >>>= 1;
+        }
+        return -1;
+    }
+
+    // 高位的0x40000000是一个标记，用来区分bitmapIdx为0的subpage分配和普通的page分配
+    private long toHandle(int bitmapIdx) {
+        return 0x4000000000000000L | (long) bitmapIdx << 32 | memoryMapIdx;
+    }
+
+    @Override
+    public String toString() {
+        if (chunk == null) {
+            return "(" + memoryMapIdx + ": not in use)";
+        }
+        return "(" + memoryMapIdx + ": " + (maxNumElems - numAvail) + '/' + maxNumElems +
+                ", offset: " + runOffset + ", length: " + pageSize + ", elemSize: " + elemSize + ')';
+    }
+}
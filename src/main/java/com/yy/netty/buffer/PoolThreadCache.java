@@ -0,0 +1,485 @@
+package com.yy.netty.buffer;
+
+import com.yy.netty.buffer.PoolArena.SizeClass;
+import com.yy.netty.util.internal.MathUtil;
+import com.yy.netty.util.internal.MpscArrayQueue;
+import com.yy.netty.util.internal.ObjectPool;
+import com.yy.netty.util.internal.ObjectPool.Handle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.yy.netty.util.internal.ObjectUtil.checkPositiveOrZero;
+
+/**
+ * 线程级别的内存池缓存，每个线程持有一个，通过PooledByteBufAllocator中的ThreadLocal获取
+ * <p>
+ * 1、记录当前线程绑定的heapArena和directArena：线程第一次分配内存时，会选择一个绑定线程数最少的arena，之后该线程的所有分配都走这个arena；
+ * 2、对于EventLoop线程，还会按照tiny、small、normal三种规格缓存释放掉的内存（chunk + handle）。
+ * 池化ByteBuf释放时，内存不会马上还给arena，而是先放进分配它的那个线程的缓存中，该线程下次分配同规格的内存时直接从缓存中取，
+ * 这样绝大多数的分配和释放都不需要再去抢arena的锁了。
+ * </p>
+ * <p>
+ * 缓存队列是MPSC的无锁队列：ByteBuf在别的线程被释放时，那个线程作为生产者把内存放回所属线程的缓存队列，
+ * 只有所属线程自己会从队列中取出来分配，整个交接过程不需要加锁
+ * </p>
+ */
+final class PoolThreadCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PoolThreadCache.class);
+
+    final PoolArena<byte[]> heapArena;
+
+    final PoolArena<ByteBuffer> directArena;
+
+    // 按规格分的缓存数组，数组下标和arena中subpage链表数组的下标含义一致
+    private final MemoryRegionCache<byte[]>[] tinySubPageHeapCaches;
+
+    private final MemoryRegionCache<byte[]>[] smallSubPageHeapCaches;
+
+    private final MemoryRegionCache<ByteBuffer>[] tinySubPageDirectCaches;
+
+    private final MemoryRegionCache<ByteBuffer>[] smallSubPageDirectCaches;
+
+    private final MemoryRegionCache<byte[]>[] normalHeapCaches;
+
+    private final MemoryRegionCache<ByteBuffer>[] normalDirectCaches;
+
+    // normal规格缓存数组下标的计算需要用到的位移数，就是log2(pageSize)
+    private final int numShiftsNormalDirect;
+
+    private final int numShiftsNormalHeap;
+
+    // 每分配这么多次，就清理一次缓存中长时间没有用到的内存，把它们还给arena
+    private final int freeSweepAllocationThreshold;
+
+    private int allocations;
+
+    // 线程结束时FastThreadLocal的onRemoval和finalize都会调用free，保证只释放一次
+    private final AtomicBoolean freed = new AtomicBoolean();
+
+    PoolThreadCache(PoolArena<byte[]> heapArena, PoolArena<ByteBuffer> directArena,
+                    int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+                    int maxCachedBufferCapacity, int freeSweepAllocationThreshold) {
+        checkPositiveOrZero(maxCachedBufferCapacity, "maxCachedBufferCapacity");
+        this.freeSweepAllocationThreshold = freeSweepAllocationThreshold;
+        this.heapArena = heapArena;
+        this.directArena = directArena;
+        if (directArena != null) {
+            tinySubPageDirectCaches = createSubPageCaches(
+                    tinyCacheSize, PoolArena.numTinySubpagePools, SizeClass.Tiny);
+            smallSubPageDirectCaches = createSubPageCaches(
+                    smallCacheSize, directArena.numSmallSubpagePools, SizeClass.Small);
+
+            numShiftsNormalDirect = log2(directArena.pageSize);
+            normalDirectCaches = createNormalCaches(
+                    normalCacheSize, maxCachedBufferCapacity, directArena);
+
+            directArena.numThreadCaches.getAndIncrement();
+        } else {
+            tinySubPageDirectCaches = null;
+            smallSubPageDirectCaches = null;
+            normalDirectCaches = null;
+            numShiftsNormalDirect = -1;
+        }
+        if (heapArena != null) {
+            tinySubPageHeapCaches = createSubPageCaches(
+                    tinyCacheSize, PoolArena.numTinySubpagePools, SizeClass.Tiny);
+            smallSubPageHeapCaches = createSubPageCaches(
+                    smallCacheSize, heapArena.numSmallSubpagePools, SizeClass.Small);
+
+            numShiftsNormalHeap = log2(heapArena.pageSize);
+            normalHeapCaches = createNormalCaches(
+                    normalCacheSize, maxCachedBufferCapacity, heapArena);
+
+            heapArena.numThreadCaches.getAndIncrement();
+        } else {
+            tinySubPageHeapCaches = null;
+            smallSubPageHeapCaches = null;
+            normalHeapCaches = null;
+            numShiftsNormalHeap = -1;
+        }
+
+        // 开启了缓存，就必须有清理的阈值，否则缓存中的内存永远不会还给arena
+        if ((tinySubPageDirectCaches != null || smallSubPageDirectCaches != null || normalDirectCaches != null
+                || tinySubPageHeapCaches != null || smallSubPageHeapCaches != null || normalHeapCaches != null)
+                && freeSweepAllocationThreshold < 1) {
+            throw new IllegalArgumentException("freeSweepAllocationThreshold: "
+                    + freeSweepAllocationThreshold + " (expected: > 0)");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> MemoryRegionCache<T>[] createSubPageCaches(
+            int cacheSize, int numCaches, SizeClass sizeClass) {
+        if (cacheSize > 0 && numCaches > 0) {
+            MemoryRegionCache<T>[] cache = (MemoryRegionCache<T>[]) new MemoryRegionCache<?>[numCaches];
+            for (int i = 0; i < cache.length; i++) {
+                cache[i] = new SubPageMemoryRegionCache<T>(cacheSize, sizeClass);
+            }
+            return cache;
+        } else {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> MemoryRegionCache<T>[] createNormalCaches(
+            int cacheSize, int maxCachedBufferCapacity, PoolArena<T> area) {
+        if (cacheSize > 0 && maxCachedBufferCapacity > 0) {
+            // normal规格只缓存不超过maxCachedBufferCapacity的内存，pageSize、2*pageSize、4*pageSize...各一个缓存
+            int max = Math.min(area.chunkSize, maxCachedBufferCapacity);
+            int arraySize = Math.max(1, log2(max / area.pageSize) + 1);
+
+            MemoryRegionCache<T>[] cache = (MemoryRegionCache<T>[]) new MemoryRegionCache<?>[arraySize];
+            for (int i = 0; i < cache.length; i++) {
+                cache[i] = new NormalMemoryRegionCache<T>(cacheSize);
+            }
+            return cache;
+        } else {
+            return null;
+        }
+    }
+
+    private static int log2(int val) {
+        int res = 0;
+        while (val > 1) {
+            val >>= 1;
+            res++;
+        }
+        return res;
+    }
+
+    /**
+     * 尝试从缓存中分配tiny规格的内存
+     *
+     * @return 分配成功返回true
+     */
+    boolean allocateTiny(PoolArena<?> area, PooledByteBuf<?> buf, int reqCapacity, int normCapacity) {
+        return allocate(cacheForTiny(area, normCapacity), buf, reqCapacity);
+    }
+
+    boolean allocateSmall(PoolArena<?> area, PooledByteBuf<?> buf, int reqCapacity, int normCapacity) {
+        return allocate(cacheForSmall(area, normCapacity), buf, reqCapacity);
+    }
+
+    boolean allocateNormal(PoolArena<?> area, PooledByteBuf<?> buf, int reqCapacity, int normCapacity) {
+        return allocate(cacheForNormal(area, normCapacity), buf, reqCapacity);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private boolean allocate(MemoryRegionCache<?> cache, PooledByteBuf buf, int reqCapacity) {
+        if (cache == null) {
+            return false;
+        }
+        boolean allocated = cache.allocate(buf, reqCapacity);
+        if (++allocations >= freeSweepAllocationThreshold) {
+            allocations = 0;
+            trim();
+        }
+        return allocated;
+    }
+
+    /**
+     * 把释放的内存放入缓存，可以在任意线程调用
+     *
+     * @return 缓存满了或者该规格不缓存时返回false，调用方需要把内存直接还给arena
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    boolean add(PoolArena<?> area, PoolChunk chunk, long handle, int normCapacity, SizeClass sizeClass) {
+        MemoryRegionCache<?> cache = cache(area, normCapacity, sizeClass);
+        if (cache == null) {
+            return false;
+        }
+        return cache.add(chunk, handle);
+    }
+
+    private MemoryRegionCache<?> cache(PoolArena<?> area, int normCapacity, SizeClass sizeClass) {
+        switch (sizeClass) {
+            case Normal:
+                return cacheForNormal(area, normCapacity);
+            case Small:
+                return cacheForSmall(area, normCapacity);
+            case Tiny:
+                return cacheForTiny(area, normCapacity);
+            default:
+                throw new Error();
+        }
+    }
+
+    /**
+     * ThreadLocal在线程结束时不会通知我们，所以在缓存对象被GC回收之前，把缓存的内存还给arena，避免内存泄漏
+     */
+    @Override
+    protected void finalize() throws Throwable {
+        try {
+            super.finalize();
+        } finally {
+            free();
+        }
+    }
+
+    /**
+     * 线程不再使用该缓存时调用，把缓存的内存全部还给arena，并解除和arena的绑定
+     */
+    void free() {
+        if (!freed.compareAndSet(false, true)) {
+            return;
+        }
+        int numFreed = free(tinySubPageDirectCaches) +
+                free(smallSubPageDirectCaches) +
+                free(normalDirectCaches) +
+                free(tinySubPageHeapCaches) +
+                free(smallSubPageHeapCaches) +
+                free(normalHeapCaches);
+
+        if (numFreed > 0 && logger.isDebugEnabled()) {
+            logger.debug("Freed {} thread-local buffer(s) from thread: {}", numFreed, Thread.currentThread().getName());
+        }
+
+        if (directArena != null) {
+            directArena.numThreadCaches.getAndDecrement();
+        }
+
+        if (heapArena != null) {
+            heapArena.numThreadCaches.getAndDecrement();
+        }
+    }
+
+    private static int free(MemoryRegionCache<?>[] caches) {
+        if (caches == null) {
+            return 0;
+        }
+
+        int numFreed = 0;
+        for (MemoryRegionCache<?> c : caches) {
+            numFreed += free(c);
+        }
+        return numFreed;
+    }
+
+    private static int free(MemoryRegionCache<?> cache) {
+        if (cache == null) {
+            return 0;
+        }
+        return cache.free();
+    }
+
+    void trim() {
+        trim(tinySubPageDirectCaches);
+        trim(smallSubPageDirectCaches);
+        trim(normalDirectCaches);
+        trim(tinySubPageHeapCaches);
+        trim(smallSubPageHeapCaches);
+        trim(normalHeapCaches);
+    }
+
+    private static void trim(MemoryRegionCache<?>[] caches) {
+        if (caches == null) {
+            return;
+        }
+        for (MemoryRegionCache<?> c : caches) {
+            trim(c);
+        }
+    }
+
+    private static void trim(MemoryRegionCache<?> cache) {
+        if (cache == null) {
+            return;
+        }
+        cache.trim();
+    }
+
+    private MemoryRegionCache<?> cacheForTiny(PoolArena<?> area, int normCapacity) {
+        int idx = PoolArena.tinyIdx(normCapacity);
+        if (area.isDirect()) {
+            return cache(tinySubPageDirectCaches, idx);
+        }
+        return cache(tinySubPageHeapCaches, idx);
+    }
+
+    private MemoryRegionCache<?> cacheForSmall(PoolArena<?> area, int normCapacity) {
+        int idx = PoolArena.smallIdx(normCapacity);
+        if (area.isDirect()) {
+            return cache(smallSubPageDirectCaches, idx);
+        }
+        return cache(smallSubPageHeapCaches, idx);
+    }
+
+    private MemoryRegionCache<?> cacheForNormal(PoolArena<?> area, int normCapacity) {
+        if (area.isDirect()) {
+            int idx = log2(normCapacity >> numShiftsNormalDirect);
+            return cache(normalDirectCaches, idx);
+        }
+        int idx = log2(normCapacity >> numShiftsNormalHeap);
+        return cache(normalHeapCaches, idx);
+    }
+
+    private static <T> MemoryRegionCache<T> cache(MemoryRegionCache<T>[] cache, int idx) {
+        if (cache == null || idx > cache.length - 1) {
+            return null;
+        }
+        return cache[idx];
+    }
+
+    /**
+     * tiny和small规格的缓存
+     */
+    private static final class SubPageMemoryRegionCache<T> extends MemoryRegionCache<T> {
+        SubPageMemoryRegionCache(int size, SizeClass sizeClass) {
+            super(size, sizeClass);
+        }
+
+        @Override
+        protected void initBuf(PoolChunk<T> chunk, long handle, PooledByteBuf<T> buf, int reqCapacity) {
+            chunk.initBufWithSubpage(buf, handle, reqCapacity);
+        }
+    }
+
+    /**
+     * normal规格的缓存
+     */
+    private static final class NormalMemoryRegionCache<T> extends MemoryRegionCache<T> {
+        NormalMemoryRegionCache(int size) {
+            super(size, SizeClass.Normal);
+        }
+
+        @Override
+        protected void initBuf(PoolChunk<T> chunk, long handle, PooledByteBuf<T> buf, int reqCapacity) {
+            chunk.initBuf(buf, handle, reqCapacity);
+        }
+    }
+
+    /**
+     * 某一个规格的内存缓存，内部是一个有界的MPSC队列，队列中的每个元素记录了一段内存（chunk + handle）
+     */
+    private abstract static class MemoryRegionCache<T> {
+
+        private final int size;
+
+        private final Queue<Entry<T>> queue;
+
+        private final SizeClass sizeClass;
+
+        // 两次trim之间从该缓存分配的次数
+        private int allocations;
+
+        MemoryRegionCache(int size, SizeClass sizeClass) {
+            this.size = MathUtil.safeFindNextPositivePowerOfTwo(size);
+            queue = new MpscArrayQueue<Entry<T>>(this.size);
+            this.sizeClass = sizeClass;
+        }
+
+        /**
+         * 用缓存的内存初始化buf
+         */
+        protected abstract void initBuf(PoolChunk<T> chunk, long handle, PooledByteBuf<T> buf, int reqCapacity);
+
+        /**
+         * 把内存放入缓存，队列满了就返回false
+         */
+        @SuppressWarnings("unchecked")
+        public final boolean add(PoolChunk<T> chunk, long handle) {
+            Entry<T> entry = newEntry(chunk, handle);
+            boolean queued = queue.offer(entry);
+            if (!queued) {
+                // 没放进去，马上回收entry对象
+                entry.recycle();
+            }
+
+            return queued;
+        }
+
+        /**
+         * 从缓存中取出一段内存来初始化buf，只有缓存所属的线程会调用
+         */
+        public final boolean allocate(PooledByteBuf<T> buf, int reqCapacity) {
+            Entry<T> entry = queue.poll();
+            if (entry == null) {
+                return false;
+            }
+            initBuf(entry.chunk, entry.handle, buf, reqCapacity);
+            entry.recycle();
+
+            ++allocations;
+            return true;
+        }
+
+        public final int free() {
+            return free(Integer.MAX_VALUE);
+        }
+
+        private int free(int max) {
+            int numFreed = 0;
+            for (; numFreed < max; numFreed++) {
+                Entry<T> entry = queue.poll();
+                if (entry != null) {
+                    freeEntry(entry);
+                } else {
+                    return numFreed;
+                }
+            }
+            return numFreed;
+        }
+
+        /**
+         * 上次trim之后分配次数比缓存容量少，说明缓存的内存有富余，把富余的部分还给arena
+         */
+        public final void trim() {
+            int free = size - allocations;
+            allocations = 0;
+
+            if (free > 0) {
+                free(free);
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void freeEntry(Entry entry) {
+            PoolChunk chunk = entry.chunk;
+            long handle = entry.handle;
+
+            entry.recycle();
+            chunk.arena.freeChunk(chunk, handle);
+        }
+
+        static final class Entry<T> {
+
+            final Handle<Entry<?>> recyclerHandle;
+
+            PoolChunk<T> chunk;
+
+            long handle = -1;
+
+            Entry(Handle<Entry<?>> recyclerHandle) {
+                this.recyclerHandle = recyclerHandle;
+            }
+
+            void recycle() {
+                chunk = null;
+                handle = -1;
+                recyclerHandle.recycle(this);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Entry<T> newEntry(PoolChunk<T> chunk, long handle) {
+            Entry<T> entry = RECYCLER.get();
+            entry.chunk = chunk;
+            entry.handle = handle;
+            return entry;
+        }
+
+        @SuppressWarnings("rawtypes")
+        private static final ObjectPool<Entry> RECYCLER = ObjectPool.newPool(new ObjectPool.ObjectCreator<Entry>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Entry newObject(Handle<Entry> handle) {
+                return new Entry(handle);
+            }
+        });
+    }
+}
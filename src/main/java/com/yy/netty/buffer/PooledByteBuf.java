@@ -0,0 +1,212 @@
+package com.yy.netty.buffer;
+
+import com.yy.netty.util.internal.ObjectPool.Handle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+
+/**
+ * 池化ByteBuf的抽象类
+ * <p>
+ * 池化的ByteBuf只是chunk中一段内存的“视图”：memory是chunk的整块内存，[offset, offset + length)才是属于该ByteBuf的区域，
+ * 所以读写时的下标都要加上offset，见idx方法。
+ * 引用计数减为0时，内存归还给arena，ByteBuf外壳对象本身也会归还给对象池，这样稳定运行时分配ByteBuf不会产生新的对象
+ * </p>
+ */
+abstract class PooledByteBuf<T> extends AbstractReferenceCountedByteBuf {
+
+    // 对象池的回收句柄
+    private final Handle<PooledByteBuf<T>> recyclerHandle;
+
+    protected PoolChunk<T> chunk;
+
+    protected long handle;
+
+    protected T memory;
+
+    protected int offset;
+
+    // 当前容量
+    protected int length;
+
+    // 分配到的内存的真实大小（规整后的大小），在这个范围内扩容不需要重新分配内存
+    int maxLength;
+
+    PoolThreadCache cache;
+
+    ByteBuffer tmpNioBuf;
+
+    private ByteBufAllocator allocator;
+
+    @SuppressWarnings("unchecked")
+    protected PooledByteBuf(Handle<? extends PooledByteBuf<T>> recyclerHandle, int maxCapacity) {
+        super(maxCapacity);
+        this.recyclerHandle = (Handle<PooledByteBuf<T>>) recyclerHandle;
+    }
+
+    void init(PoolChunk<T> chunk, long handle, int offset, int length, int maxLength, PoolThreadCache cache) {
+        init0(chunk, handle, offset, length, maxLength, cache);
+    }
+
+    void initUnpooled(PoolChunk<T> chunk, int length) {
+        init0(chunk, 0, chunk.offset, length, length, null);
+    }
+
+    private void init0(PoolChunk<T> chunk, long handle, int offset, int length, int maxLength, PoolThreadCache cache) {
+        this.chunk = chunk;
+        memory = chunk.memory;
+        tmpNioBuf = null;
+        allocator = chunk.arena.parent;
+        this.cache = cache;
+        this.handle = handle;
+        this.offset = offset;
+        this.length = length;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * 从对象池中取出来复用之前，把状态重置一下
+     */
+    final void reuse(int maxCapacity) {
+        maxCapacity(maxCapacity);
+        setRefCnt(1);
+        setIndex0(0, 0);
+        discardMarks();
+    }
+
+    @Override
+    public final int capacity() {
+        return length;
+    }
+
+    @Override
+    public final ByteBuf capacity(int newCapacity) {
+        if (newCapacity == length) {
+            ensureAccessible();
+            return this;
+        }
+        checkNewCapacity(newCapacity);
+        if (!chunk.unpooled) {
+            if (newCapacity > length) {
+                // 扩容时如果没有超过实际分配的内存大小，直接修改length就行了
+                if (newCapacity <= maxLength) {
+                    length = newCapacity;
+                    return this;
+                }
+            } else if (newCapacity > maxLength >>> 1 &&
+                    (maxLength > 512 || newCapacity > maxLength - 16)) {
+                // 缩容时如果缩得不多，也不重新分配内存
+                length = newCapacity;
+                trimIndicesToCapacity(newCapacity);
+                return this;
+            }
+        }
+
+        // 重新分配内存
+        chunk.arena.reallocate(this, newCapacity, true);
+        return this;
+    }
+
+    @Override
+    public final ByteBufAllocator alloc() {
+        return allocator;
+    }
+
+    protected final ByteBuffer internalNioBuffer() {
+        ByteBuffer tmpNioBuf = this.tmpNioBuf;
+        if (tmpNioBuf == null) {
+            this.tmpNioBuf = tmpNioBuf = newInternalNioBuffer(memory);
+        } else {
+            tmpNioBuf.clear();
+        }
+        return tmpNioBuf;
+    }
+
+    protected abstract ByteBuffer newInternalNioBuffer(T memory);
+
+    @Override
+    protected final void deallocate() {
+        if (handle >= 0) {
+            final long handle = this.handle;
+            this.handle = -1;
+            memory = null;
+            chunk.arena.free(chunk, handle, maxLength, cache);
+            tmpNioBuf = null;
+            chunk = null;
+            cache = null;
+            recycle();
+        }
+    }
+
+    private void recycle() {
+        recyclerHandle.recycle(this);
+    }
+
+    // 把ByteBuf的下标转换成memory中的下标
+    protected final int idx(int index) {
+        return offset + index;
+    }
+
+    final ByteBuffer _internalNioBuffer(int index, int length, boolean duplicate) {
+        index = idx(index);
+        ByteBuffer buffer = duplicate ? newInternalNioBuffer(memory) : internalNioBuffer();
+        buffer.limit(index + length).position(index);
+        return buffer;
+    }
+
+    @Override
+    public final ByteBuffer internalNioBuffer(int index, int length) {
+        checkIndex(index, length);
+        return _internalNioBuffer(index, length, false);
+    }
+
+    @Override
+    public final ByteBuffer nioBuffer(int index, int length) {
+        checkIndex(index, length);
+        return _internalNioBuffer(index, length, true).slice();
+    }
+
+    @Override
+    public final int nioBufferCount() {
+        return 1;
+    }
+
+    @Override
+    public final ByteBuf getBytes(int index, ByteBuffer dst) {
+        int length = dst.remaining();
+        checkIndex(index, length);
+        dst.put(_internalNioBuffer(index, length, true));
+        return this;
+    }
+
+    @Override
+    public final int getBytes(int index, GatheringByteChannel out, int length) throws IOException {
+        checkIndex(index, length);
+        if (length == 0) {
+            return 0;
+        }
+        return out.write(_internalNioBuffer(index, length, false));
+    }
+
+    @Override
+    public final ByteBuf setBytes(int index, ByteBuffer src) {
+        int length = src.remaining();
+        checkIndex(index, length);
+        ByteBuffer tmpBuf = _internalNioBuffer(index, length, src == tmpNioBuf);
+        tmpBuf.put(src);
+        return this;
+    }
+
+    @Override
+    public final int setBytes(int index, ScatteringByteChannel in, int length) throws IOException {
+        checkIndex(index, length);
+        try {
+            return in.read(_internalNioBuffer(index, length, false));
+        } catch (ClosedChannelException ignored) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.yy.netty.buffer;
+
+import com.yy.netty.util.NettyRuntime;
+import com.yy.netty.util.concurrent.FastThreadLocal;
+import com.yy.netty.util.concurrent.ThreadExecutorMap;
+import com.yy.netty.util.internal.SystemPropertyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+
+import static com.yy.netty.util.internal.ObjectUtil.checkPositiveOrZero;
+
+/**
+ * 池化的内存分配器，netty默认使用的分配器
+ * <p>
+ * 内部持有多个heapArena和directArena，每个线程通过ThreadLocal绑定到其中一个arena上，分配和释放内存都在这个arena中进行。
+ * 池化的好处是：内存（特别是昂贵的堆外内存）申请一次可以反复使用，ByteBuf的外壳对象也会被对象池复用，
+ * 这样在稳定运行的时候，读写数据几乎不会再产生新的对象，也就不会因为频繁的young gc而影响吞吐
+ * </p>
+ */
+public class PooledByteBufAllocator extends AbstractByteBufAllocator {
+
+    private static final Logger logger = LoggerFactory.getLogger(PooledByteBufAllocator.class);
+
+    private static final int DEFAULT_NUM_HEAP_ARENA;
+
+    private static final int DEFAULT_NUM_DIRECT_ARENA;
+
+    private static final int DEFAULT_PAGE_SIZE;
+
+    // chunkSize = pageSize << maxOrder，默认是8KiB << 11 = 16MiB
+    private static final int DEFAULT_MAX_ORDER;
+
+    // 线程缓存中每种tiny规格最多缓存的个数
+    private static final int DEFAULT_TINY_CACHE_SIZE;
+
+    // 线程缓存中每种small规格最多缓存的个数
+    private static final int DEFAULT_SMALL_CACHE_SIZE;
+
+    // 线程缓存中每种normal规格最多缓存的个数
+    private static final int DEFAULT_NORMAL_CACHE_SIZE;
+
+    // 线程缓存中缓存的normal规格的最大值，更大的内存不缓存
+    private static final int DEFAULT_MAX_CACHED_BUFFER_CAPACITY;
+
+    // 线程缓存每分配多少次清理一次
+    private static final int DEFAULT_CACHE_TRIM_INTERVAL;
+
+    // 是否给所有线程都开启线程缓存，默认只有EventLoop线程才开启
+    private static final boolean DEFAULT_USE_CACHE_FOR_ALL_THREADS;
+
+    private static final int MIN_PAGE_SIZE = 4096;
+
+    private static final int MAX_CHUNK_SIZE = (int) (((long) Integer.MAX_VALUE + 1) / 2);
+
+    static {
+        int defaultPageSize = SystemPropertyUtil.getInt("io.netty.allocator.pageSize", 8192);
+        Throwable pageSizeFallbackCause = null;
+        try {
+            validateAndCalculatePageShifts(defaultPageSize);
+        } catch (Throwable t) {
+            pageSizeFallbackCause = t;
+            defaultPageSize = 8192;
+        }
+        DEFAULT_PAGE_SIZE = defaultPageSize;
+
+        int defaultMaxOrder = SystemPropertyUtil.getInt("io.netty.allocator.maxOrder", 11);
+        Throwable maxOrderFallbackCause = null;
+        try {
+            validateAndCalculateChunkSize(DEFAULT_PAGE_SIZE, defaultMaxOrder);
+        } catch (Throwable t) {
+            maxOrderFallbackCause = t;
+            defaultMaxOrder = 11;
+        }
+        DEFAULT_MAX_ORDER = defaultMaxOrder;
+
+        // arena的个数默认是cpu核数的2倍，和默认的EventLoop线程数一致，这样每个EventLoop线程都能独享一个arena；
+        // 同时保证所有arena的chunk加起来不超过最大内存的1/3，每个arena至少按3个chunk来估算
+        final Runtime runtime = Runtime.getRuntime();
+        final int defaultMinNumArena = NettyRuntime.availableProcessors() * 2;
+        final int defaultChunkSize = DEFAULT_PAGE_SIZE << DEFAULT_MAX_ORDER;
+        DEFAULT_NUM_HEAP_ARENA = Math.max(0,
+                SystemPropertyUtil.getInt(
+                        "io.netty.allocator.numHeapArenas",
+                        (int) Math.min(
+                                defaultMinNumArena,
+                                runtime.maxMemory() / defaultChunkSize / 2 / 3)));
+        DEFAULT_NUM_DIRECT_ARENA = Math.max(0,
+                SystemPropertyUtil.getInt(
+                        "io.netty.allocator.numDirectArenas",
+                        (int) Math.min(
+                                defaultMinNumArena,
+                                runtime.maxMemory() / defaultChunkSize / 2 / 3)));
+
+        DEFAULT_TINY_CACHE_SIZE = SystemPropertyUtil.getInt("io.netty.allocator.tinyCacheSize", 512);
+        DEFAULT_SMALL_CACHE_SIZE = SystemPropertyUtil.getInt("io.netty.allocator.smallCacheSize", 256);
+        DEFAULT_NORMAL_CACHE_SIZE = SystemPropertyUtil.getInt("io.netty.allocator.normalCacheSize", 64);
+        DEFAULT_MAX_CACHED_BUFFER_CAPACITY = SystemPropertyUtil.getInt(
+                "io.netty.allocator.maxCachedBufferCapacity", 32 * 1024);
+        DEFAULT_CACHE_TRIM_INTERVAL = SystemPropertyUtil.getInt("io.netty.allocator.cacheTrimInterval", 8192);
+        DEFAULT_USE_CACHE_FOR_ALL_THREADS = Boolean.parseBoolean(SystemPropertyUtil.get(
+                "io.netty.allocator.useCacheForAllThreads", "false"));
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("-Dio.netty.allocator.numHeapArenas: {}", DEFAULT_NUM_HEAP_ARENA);
+            logger.debug("-Dio.netty.allocator.numDirectArenas: {}", DEFAULT_NUM_DIRECT_ARENA);
+            if (pageSizeFallbackCause == null) {
+                logger.debug("-Dio.netty.allocator.pageSize: {}", DEFAULT_PAGE_SIZE);
+            } else {
+                logger.debug("-Dio.netty.allocator.pageSize: {}", DEFAULT_PAGE_SIZE, pageSizeFallbackCause);
+            }
+            if (maxOrderFallbackCause == null) {
+                logger.debug("-Dio.netty.allocator.maxOrder: {}", DEFAULT_MAX_ORDER);
+            } else {
+                logger.debug("-Dio.netty.allocator.maxOrder: {}", DEFAULT_MAX_ORDER, maxOrderFallbackCause);
+            }
+            logger.debug("-Dio.netty.allocator.chunkSize: {}", DEFAULT_PAGE_SIZE << DEFAULT_MAX_ORDER);
+            logger.debug("-Dio.netty.allocator.tinyCacheSize: {}", DEFAULT_TINY_CACHE_SIZE);
+            logger.debug("-Dio.netty.allocator.smallCacheSize: {}", DEFAULT_SMALL_CACHE_SIZE);
+            logger.debug("-Dio.netty.allocator.normalCacheSize: {}", DEFAULT_NORMAL_CACHE_SIZE);
+            logger.debug("-Dio.netty.allocator.maxCachedBufferCapacity: {}", DEFAULT_MAX_CACHED_BUFFER_CAPACITY);
+            logger.debug("-Dio.netty.allocator.cacheTrimInterval: {}", DEFAULT_CACHE_TRIM_INTERVAL);
+            logger.debug("-Dio.netty.allocator.useCacheForAllThreads: {}", DEFAULT_USE_CACHE_FOR_ALL_THREADS);
+        }
+    }
+
+    public static final PooledByteBufAllocator DEFAULT = new PooledByteBufAllocator(true);
+
+    private final PoolArena<byte[]>[] heapArenas;
+
+    private final PoolArena<ByteBuffer>[] directArenas;
+
+    private final int tinyCacheSize;
+
+    private final int smallCacheSize;
+
+    private final int normalCacheSize;
+
+    private final PoolThreadLocalCache threadCache;
+
+    private final int chunkSize;
+
+    public PooledByteBufAllocator() {
+        this(false);
+    }
+
+    public PooledByteBufAllocator(boolean preferDirect) {
+        this(preferDirect, DEFAULT_NUM_HEAP_ARENA, DEFAULT_NUM_DIRECT_ARENA, DEFAULT_PAGE_SIZE, DEFAULT_MAX_ORDER);
+    }
+
+    public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder) {
+        this(preferDirect, nHeapArena, nDirectArena, pageSize, maxOrder,
+                DEFAULT_TINY_CACHE_SIZE, DEFAULT_SMALL_CACHE_SIZE, DEFAULT_NORMAL_CACHE_SIZE,
+                DEFAULT_USE_CACHE_FOR_ALL_THREADS);
+    }
+
+    public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
+                                  int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+                                  boolean useCacheForAllThreads) {
+        super(preferDirect);
+        threadCache = new PoolThreadLocalCache(useCacheForAllThreads);
+        this.tinyCacheSize = tinyCacheSize;
+        this.smallCacheSize = smallCacheSize;
+        this.normalCacheSize = normalCacheSize;
+        chunkSize = validateAndCalculateChunkSize(pageSize, maxOrder);
+
+        checkPositiveOrZero(nHeapArena, "nHeapArena");
+        checkPositiveOrZero(nDirectArena, "nDirectArena");
+
+        int pageShifts = validateAndCalculatePageShifts(pageSize);
+
+        if (nHeapArena > 0) {
+            heapArenas = newArenaArray(nHeapArena);
+            for (int i = 0; i < heapArenas.length; i++) {
+                heapArenas[i] = new PoolArena.HeapArena(this, pageSize, maxOrder, pageShifts, chunkSize);
+            }
+        } else {
+            heapArenas = null;
+        }
+
+        if (nDirectArena > 0) {
+            directArenas = newArenaArray(nDirectArena);
+            for (int i = 0; i < directArenas.length; i++) {
+                directArenas[i] = new PoolArena.DirectArena(this, pageSize, maxOrder, pageShifts, chunkSize);
+            }
+        } else {
+            directArenas = null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> PoolArena<T>[] newArenaArray(int size) {
+        return (PoolArena<T>[]) new PoolArena<?>[size];
+    }
+
+    private static int validateAndCalculatePageShifts(int pageSize) {
+        if (pageSize < MIN_PAGE_SIZE) {
+            throw new IllegalArgumentException("pageSize: " + pageSize + " (expected: " + MIN_PAGE_SIZE + ")");
+        }
+
+        if ((pageSize & pageSize - 1) != 0) {
+            throw new IllegalArgumentException("pageSize: " + pageSize + " (expected: power of 2)");
+        }
+
+        // pageSize是2的幂，用31减去前导0的个数就是它的对数
+        return Integer.SIZE - 1 - Integer.numberOfLeadingZeros(pageSize);
+    }
+
+    private static int validateAndCalculateChunkSize(int pageSize, int maxOrder) {
+        if (maxOrder > 14) {
+            throw new IllegalArgumentException("maxOrder: " + maxOrder + " (expected: 0-14)");
+        }
+
+        // 保证chunkSize不会溢出
+        int chunkSize = pageSize;
+        for (int i = maxOrder; i > 0; i--) {
+            if (chunkSize > MAX_CHUNK_SIZE / 2) {
+                throw new IllegalArgumentException(String.format(
+                        "pageSize (%d) << maxOrder (%d) must not exceed %d", pageSize, maxOrder, MAX_CHUNK_SIZE));
+            }
+            chunkSize <<= 1;
+        }
+        return chunkSize;
+    }
+
+    @Override
+    protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+        PoolThreadCache cache = threadCache.get();
+        PoolArena<byte[]> heapArena = cache.heapArena;
+
+        final ByteBuf buf;
+        if (heapArena != null) {
+            buf = heapArena.allocate(cache, initialCapacity, maxCapacity);
+        } else {
+            // 没有arena，退化成非池化的分配
+            buf = new UnpooledHeapByteBuf(this, initialCapacity, maxCapacity);
+        }
+        return buf;
+    }
+
+    @Override
+    protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+        PoolThreadCache cache = threadCache.get();
+        PoolArena<ByteBuffer> directArena = cache.directArena;
+
+        final ByteBuf buf;
+        if (directArena != null) {
+            buf = directArena.allocate(cache, initialCapacity, maxCapacity);
+        } else {
+            buf = new UnpooledDirectByteBuf(this, initialCapacity, maxCapacity);
+        }
+        return buf;
+    }
+
+    @Override
+    public boolean isDirectBufferPooled() {
+        return directArenas != null;
+    }
+
+    // 当前线程的PoolThreadCache
+    final PoolThreadCache threadCache() {
+        return threadCache.get();
+    }
+
+    public int chunkSize() {
+        return chunkSize;
+    }
+
+    public int numHeapArenas() {
+        return heapArenas == null ? 0 : heapArenas.length;
+    }
+
+    public int numDirectArenas() {
+        return directArenas == null ? 0 : directArenas.length;
+    }
+
+    /**
+     * 每个线程第一次分配内存时，给它创建一个PoolThreadCache，并绑定到使用人数最少的arena上。
+     * 只有EventLoop线程（或者开启了useCacheForAllThreads）才会真正开启线程缓存，
+     * 普通的用户线程分配内存的次数很少，给它们开缓存只会让内存闲置在缓存中
+     */
+    private final class PoolThreadLocalCache extends FastThreadLocal<PoolThreadCache> {
+
+        private final boolean useCacheForAllThreads;
+
+        PoolThreadLocalCache(boolean useCacheForAllThreads) {
+            this.useCacheForAllThreads = useCacheForAllThreads;
+        }
+
+        @Override
+        protected synchronized PoolThreadCache initialValue() {
+            final PoolArena<byte[]> heapArena = leastUsedArena(heapArenas);
+            final PoolArena<ByteBuffer> directArena = leastUsedArena(directArenas);
+
+            if (useCacheForAllThreads || ThreadExecutorMap.currentExecutor() != null) {
+                return new PoolThreadCache(
+                        heapArena, directArena, tinyCacheSize, smallCacheSize, normalCacheSize,
+                        DEFAULT_MAX_CACHED_BUFFER_CAPACITY, DEFAULT_CACHE_TRIM_INTERVAL);
+            }
+            // 不开启缓存，只绑定arena
+            return new PoolThreadCache(heapArena, directArena, 0, 0, 0, 0, 0);
+        }
+
+        /**
+         * EventLoop线程结束时，FastThreadLocal会回调这里，马上把缓存的内存还给arena，不用等到缓存对象被GC回收
+         *
+         * @param threadCache
+         */
+        @Override
+        protected void onRemoval(PoolThreadCache threadCache) {
+            threadCache.free();
+        }
+
+        private <T> PoolArena<T> leastUsedArena(PoolArena<T>[] arenas) {
+            if (arenas == null || arenas.length == 0) {
+                return null;
+            }
+
+            PoolArena<T> minArena = arenas[0];
+            for (int i = 1; i < arenas.length; i++) {
+                PoolArena<T> arena = arenas[i];
+                if (arena.numThreadCaches.get() < minArena.numThreadCaches.get()) {
+                    minArena = arena;
+                }
+            }
+
+            return minArena;
+        }
+    }
+}
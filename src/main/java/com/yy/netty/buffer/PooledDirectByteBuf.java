@@ -0,0 +1,132 @@
+package com.yy.netty.buffer;
+
+import com.yy.netty.util.internal.ObjectPool;
+import com.yy.netty.util.internal.ObjectPool.Handle;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 池化的堆外内存ByteBuf，memory是chunk的整块DirectByteBuffer，这里只用ByteBuffer的绝对位置读写方法，不改变它的position和limit
+ */
+final class PooledDirectByteBuf extends PooledByteBuf<ByteBuffer> {
+
+    private static final ObjectPool<PooledDirectByteBuf> RECYCLER = ObjectPool.newPool(
+            new ObjectPool.ObjectCreator<PooledDirectByteBuf>() {
+                @Override
+                public PooledDirectByteBuf newObject(Handle<PooledDirectByteBuf> handle) {
+                    return new PooledDirectByteBuf(handle, 0);
+                }
+            });
+
+    static PooledDirectByteBuf newInstance(int maxCapacity) {
+        PooledDirectByteBuf buf = RECYCLER.get();
+        buf.reuse(maxCapacity);
+        return buf;
+    }
+
+    private PooledDirectByteBuf(Handle<PooledDirectByteBuf> recyclerHandle, int maxCapacity) {
+        super(recyclerHandle, maxCapacity);
+    }
+
+    @Override
+    protected ByteBuffer newInternalNioBuffer(ByteBuffer memory) {
+        return memory.duplicate();
+    }
+
+    @Override
+    public boolean isDirect() {
+        return true;
+    }
+
+    @Override
+    protected byte _getByte(int index) {
+        return memory.get(idx(index));
+    }
+
+    @Override
+    protected short _getShort(int index) {
+        return memory.getShort(idx(index));
+    }
+
+    @Override
+    protected int _getInt(int index) {
+        return memory.getInt(idx(index));
+    }
+
+    @Override
+    protected long _getLong(int index) {
+        return memory.getLong(idx(index));
+    }
+
+    @Override
+    protected void _setByte(int index, int value) {
+        memory.put(idx(index), (byte) value);
+    }
+
+    @Override
+    protected void _setShort(int index, int value) {
+        memory.putShort(idx(index), (short) value);
+    }
+
+    @Override
+    protected void _setInt(int index, int value) {
+        memory.putInt(idx(index), value);
+    }
+
+    @Override
+    protected void _setLong(int index, long value) {
+        memory.putLong(idx(index), value);
+    }
+
+    @Override
+    public ByteBuf getBytes(int index, byte[] dst, int dstIndex, int length) {
+        checkDstIndex(index, length, dstIndex, dst.length);
+        _internalNioBuffer(index, length, false).get(dst, dstIndex, length);
+        return this;
+    }
+
+    @Override
+    public ByteBuf getBytes(int index, ByteBuf dst, int dstIndex, int length) {
+        checkDstIndex(index, length, dstIndex, dst.capacity());
+        if (dst.hasArray()) {
+            getBytes(index, dst.array(), dst.arrayOffset() + dstIndex, length);
+        } else {
+            // dst有可能就是自己，这时不能共用内部的tmpNioBuf
+            dst.setBytes(dstIndex, _internalNioBuffer(index, length, true));
+        }
+        return this;
+    }
+
+    @Override
+    public ByteBuf setBytes(int index, byte[] src, int srcIndex, int length) {
+        checkSrcIndex(index, length, srcIndex, src.length);
+        _internalNioBuffer(index, length, false).put(src, srcIndex, length);
+        return this;
+    }
+
+    @Override
+    public ByteBuf setBytes(int index, ByteBuf src, int srcIndex, int length) {
+        checkSrcIndex(index, length, srcIndex, src.capacity());
+        if (src.hasArray()) {
+            setBytes(index, src.array(), src.arrayOffset() + srcIndex, length);
+        } else {
+            src.getBytes(srcIndex, _internalNioBuffer(index, length, true));
+        }
+        return this;
+    }
+
+    @Override
+    public boolean hasArray() {
+        return false;
+    }
+
+    @Override
+    public byte[] array() {
+        throw new UnsupportedOperationException("direct buffer");
+    }
+
+    @Override
+    public int arrayOffset() {
+        throw new UnsupportedOperationException("direct buffer");
+    }
+}
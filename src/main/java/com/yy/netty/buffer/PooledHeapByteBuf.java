@@ -0,0 +1,124 @@
+package com.yy.netty.buffer;
+
+import com.yy.netty.util.internal.ObjectPool;
+import com.yy.netty.util.internal.ObjectPool.Handle;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 池化的堆内存ByteBuf
+ */
+class PooledHeapByteBuf extends PooledByteBuf<byte[]> {
+
+    private static final ObjectPool<PooledHeapByteBuf> RECYCLER = ObjectPool.newPool(
+            new ObjectPool.ObjectCreator<PooledHeapByteBuf>() {
+                @Override
+                public PooledHeapByteBuf newObject(Handle<PooledHeapByteBuf> handle) {
+                    return new PooledHeapByteBuf(handle, 0);
+                }
+            });
+
+    static PooledHeapByteBuf newInstance(int maxCapacity) {
+        PooledHeapByteBuf buf = RECYCLER.get();
+        buf.reuse(maxCapacity);
+        return buf;
+    }
+
+    PooledHeapByteBuf(Handle<? extends PooledHeapByteBuf> recyclerHandle, int maxCapacity) {
+        super(recyclerHandle, maxCapacity);
+    }
+
+    @Override
+    public final boolean isDirect() {
+        return false;
+    }
+
+    @Override
+    protected byte _getByte(int index) {
+        return HeapByteBufUtil.getByte(memory, idx(index));
+    }
+
+    @Override
+    protected short _getShort(int index) {
+        return HeapByteBufUtil.getShort(memory, idx(index));
+    }
+
+    @Override
+    protected int _getInt(int index) {
+        return HeapByteBufUtil.getInt(memory, idx(index));
+    }
+
+    @Override
+    protected long _getLong(int index) {
+        return HeapByteBufUtil.getLong(memory, idx(index));
+    }
+
+    @Override
+    protected void _setByte(int index, int value) {
+        HeapByteBufUtil.setByte(memory, idx(index), value);
+    }
+
+    @Override
+    protected void _setShort(int index, int value) {
+        HeapByteBufUtil.setShort(memory, idx(index), value);
+    }
+
+    @Override
+    protected void _setInt(int index, int value) {
+        HeapByteBufUtil.setInt(memory, idx(index), value);
+    }
+
+    @Override
+    protected void _setLong(int index, long value) {
+        HeapByteBufUtil.setLong(memory, idx(index), value);
+    }
+
+    @Override
+    public final ByteBuf getBytes(int index, byte[] dst, int dstIndex, int length) {
+        checkDstIndex(index, length, dstIndex, dst.length);
+        System.arraycopy(memory, idx(index), dst, dstIndex, length);
+        return this;
+    }
+
+    @Override
+    public final ByteBuf getBytes(int index, ByteBuf dst, int dstIndex, int length) {
+        checkDstIndex(index, length, dstIndex, dst.capacity());
+        dst.setBytes(dstIndex, memory, idx(index), length);
+        return this;
+    }
+
+    @Override
+    public final ByteBuf setBytes(int index, byte[] src, int srcIndex, int length) {
+        checkSrcIndex(index, length, srcIndex, src.length);
+        System.arraycopy(src, srcIndex, memory, idx(index), length);
+        return this;
+    }
+
+    @Override
+    public final ByteBuf setBytes(int index, ByteBuf src, int srcIndex, int length) {
+        checkSrcIndex(index, length, srcIndex, src.capacity());
+        src.getBytes(srcIndex, memory, idx(index), length);
+        return this;
+    }
+
+    @Override
+    public final boolean hasArray() {
+        return true;
+    }
+
+    @Override
+    public final byte[] array() {
+        ensureAccessible();
+        return memory;
+    }
+
+    @Override
+    public final int arrayOffset() {
+        return offset;
+    }
+
+    @Override
+    protected final ByteBuffer newInternalNioBuffer(byte[] memory) {
+        return ByteBuffer.wrap(memory);
+    }
+}
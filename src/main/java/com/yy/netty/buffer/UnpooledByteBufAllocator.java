@@ -0,0 +1,29 @@
+package com.yy.netty.buffer;
+
+/**
+ * 非池化的内存分配器，每次分配都创建新的内存，释放时交给GC
+ * 可以通过ChannelOption.ALLOCATOR为channel设置该分配器，用来和池化分配器做对比
+ */
+public final class UnpooledByteBufAllocator extends AbstractByteBufAllocator {
+
+    public static final UnpooledByteBufAllocator DEFAULT = new UnpooledByteBufAllocator(true);
+
+    public UnpooledByteBufAllocator(boolean preferDirect) {
+        super(preferDirect);
+    }
+
+    @Override
+    protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+        return new UnpooledHeapByteBuf(this, initialCapacity, maxCapacity);
+    }
+
+    @Override
+    protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+        return new UnpooledDirectByteBuf(this, initialCapacity, maxCapacity);
+    }
+
+    @Override
+    public boolean isDirectBufferPooled() {
+        return false;
+    }
+}
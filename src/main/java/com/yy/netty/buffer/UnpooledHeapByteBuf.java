@@ -0,0 +1,220 @@
+package com.yy.netty.buffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+
+import static com.yy.netty.util.internal.ObjectUtil.checkNotNull;
+
+/**
+ * 非池化的堆内存ByteBuf，底层就是一个byte[]，释放时直接交给GC
+ */
+public class UnpooledHeapByteBuf extends AbstractReferenceCountedByteBuf {
+
+    private static final byte[] EMPTY_BYTES = {};
+
+    private final ByteBufAllocator alloc;
+
+    byte[] array;
+
+    // 内部复用的ByteBuffer，和array共享内存，IO操作时用
+    private ByteBuffer tmpNioBuf;
+
+    public UnpooledHeapByteBuf(ByteBufAllocator alloc, int initialCapacity, int maxCapacity) {
+        super(maxCapacity);
+        if (initialCapacity > maxCapacity) {
+            throw new IllegalArgumentException(String.format(
+                    "initialCapacity(%d) > maxCapacity(%d)", initialCapacity, maxCapacity));
+        }
+        this.alloc = checkNotNull(alloc, "alloc");
+        setArray(new byte[initialCapacity]);
+        setIndex(0, 0);
+    }
+
+    private void setArray(byte[] initialArray) {
+        array = initialArray;
+        tmpNioBuf = null;
+    }
+
+    @Override
+    public ByteBufAllocator alloc() {
+        return alloc;
+    }
+
+    @Override
+    public boolean isDirect() {
+        return false;
+    }
+
+    @Override
+    public int capacity() {
+        return array.length;
+    }
+
+    @Override
+    public ByteBuf capacity(int newCapacity) {
+        checkNewCapacity(newCapacity);
+        byte[] oldArray = array;
+        int oldCapacity = oldArray.length;
+        if (newCapacity == oldCapacity) {
+            return this;
+        }
+        int bytesToCopy;
+        if (newCapacity > oldCapacity) {
+            bytesToCopy = oldCapacity;
+        } else {
+            trimIndicesToCapacity(newCapacity);
+            bytesToCopy = newCapacity;
+        }
+        byte[] newArray = new byte[newCapacity];
+        System.arraycopy(oldArray, 0, newArray, 0, bytesToCopy);
+        setArray(newArray);
+        return this;
+    }
+
+    @Override
+    public boolean hasArray() {
+        return true;
+    }
+
+    @Override
+    public byte[] array() {
+        ensureAccessible();
+        return array;
+    }
+
+    @Override
+    public int arrayOffset() {
+        return 0;
+    }
+
+    @Override
+    public ByteBuf getBytes(int index, byte[] dst, int dstIndex, int length) {
+        checkDstIndex(index, length, dstIndex, dst.length);
+        System.arraycopy(array, index, dst, dstIndex, length);
+        return this;
+    }
+
+    @Override
+    public ByteBuf getBytes(int index, ByteBuf dst, int dstIndex, int length) {
+        checkDstIndex(index, length, dstIndex, dst.capacity());
+        dst.setBytes(dstIndex, array, index, length);
+        return this;
+    }
+
+    @Override
+    public ByteBuf getBytes(int index, ByteBuffer dst) {
+        int length = dst.remaining();
+        checkIndex(index, length);
+        dst.put(array, index, length);
+        return this;
+    }
+
+    @Override
+    public int getBytes(int index, GatheringByteChannel out, int length) throws IOException {
+        ensureAccessible();
+        return out.write(internalNioBuffer(index, length));
+    }
+
+    @Override
+    public ByteBuf setBytes(int index, byte[] src, int srcIndex, int length) {
+        checkSrcIndex(index, length, srcIndex, src.length);
+        System.arraycopy(src, srcIndex, array, index, length);
+        return this;
+    }
+
+    @Override
+    public ByteBuf setBytes(int index, ByteBuf src, int srcIndex, int length) {
+        checkSrcIndex(index, length, srcIndex, src.capacity());
+        src.getBytes(srcIndex, array, index, length);
+        return this;
+    }
+
+    @Override
+    public ByteBuf setBytes(int index, ByteBuffer src) {
+        int length = src.remaining();
+        checkIndex(index, length);
+        src.get(array, index, length);
+        return this;
+    }
+
+    @Override
+    public int setBytes(int index, ScatteringByteChannel in, int length) throws IOException {
+        ensureAccessible();
+        try {
+            return in.read(internalNioBuffer(index, length));
+        } catch (ClosedChannelException ignored) {
+            return -1;
+        }
+    }
+
+    @Override
+    public int nioBufferCount() {
+        return 1;
+    }
+
+    @Override
+    public ByteBuffer nioBuffer(int index, int length) {
+        ensureAccessible();
+        return ByteBuffer.wrap(array, index, length).slice();
+    }
+
+    @Override
+    public ByteBuffer internalNioBuffer(int index, int length) {
+        checkIndex(index, length);
+        ByteBuffer tmpNioBuf = this.tmpNioBuf;
+        if (tmpNioBuf == null) {
+            this.tmpNioBuf = tmpNioBuf = ByteBuffer.wrap(array);
+        }
+        tmpNioBuf.clear().position(index).limit(index + length);
+        return tmpNioBuf;
+    }
+
+    @Override
+    protected byte _getByte(int index) {
+        return HeapByteBufUtil.getByte(array, index);
+    }
+
+    @Override
+    protected short _getShort(int index) {
+        return HeapByteBufUtil.getShort(array, index);
+    }
+
+    @Override
+    protected int _getInt(int index) {
+        return HeapByteBufUtil.getInt(array, index);
+    }
+
+    @Override
+    protected long _getLong(int index) {
+        return HeapByteBufUtil.getLong(array, index);
+    }
+
+    @Override
+    protected void _setByte(int index, int value) {
+        HeapByteBufUtil.setByte(array, index, value);
+    }
+
+    @Override
+    protected void _setShort(int index, int value) {
+        HeapByteBufUtil.setShort(array, index, value);
+    }
+
+    @Override
+    protected void _setInt(int index, int value) {
+        HeapByteBufUtil.setInt(array, index, value);
+    }
+
+    @Override
+    protected void _setLong(int index, long value) {
+        HeapByteBufUtil.setLong(array, index, value);
+    }
+
+    @Override
+    protected void deallocate() {
+        array = EMPTY_BYTES;
+        tmpNioBuf = null;
+    }
+}
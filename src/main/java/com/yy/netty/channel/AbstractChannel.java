@@ -1,15 +1,23 @@
 package com.yy.netty.channel;
 
+import com.yy.netty.buffer.ByteBuf;
 import com.yy.netty.util.DefaultAttributeMap;
+import com.yy.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NotYetConnectedException;
 
 /**
  * channel的第一层抽象类，会实现一些channel这个层级下通用的方法、持有一些通用的成员变量
  */
 public abstract class AbstractChannel extends DefaultAttributeMap implements Channel {
 
+    private static final Logger logger = LoggerFactory.getLogger(AbstractChannel.class);
+
     /**
      * 父channel
      * 只有在服务端生成的客户端socketChannel才会有父channel
@@ -23,6 +31,9 @@ public abstract class AbstractChannel extends DefaultAttributeMap implements Cha
     // 本channel的id
     private final ChannelId id;
 
+    // 本channel的pipeline
+    private final DefaultChannelPipeline pipeline;
+
     // 这个future是在channel关闭的时候使用的，是一个静态内部类
     private final CloseFuture closeFuture = new CloseFuture(this);
 
@@ -46,6 +57,7 @@ public abstract class AbstractChannel extends DefaultAttributeMap implements Cha
         this.parent = parent;
         unsafe = newUnsafe();
         id = newId();
+        pipeline = newChannelPipeline();
     }
 
     // 带id的构造函数
@@ -53,12 +65,18 @@ public abstract class AbstractChannel extends DefaultAttributeMap implements Cha
         this.parent = parent;
         this.id = id;
         unsafe = newUnsafe();
+        pipeline = newChannelPipeline();
     }
 
     protected ChannelId newId() {
         return DefaultChannelId.newInstance();
     }
 
+    // pipeline的头节点要用到unsafe，所以必须在unsafe创建之后再创建pipeline
+    protected DefaultChannelPipeline newChannelPipeline() {
+        return new DefaultChannelPipeline(this);
+    }
+
     // --------------------------------------------- channel 接口实现 ---------------------------------------------
 
     @Override
@@ -85,11 +103,36 @@ public abstract class AbstractChannel extends DefaultAttributeMap implements Cha
         return null;
     }
 
+    @Override
+    public ChannelPipeline pipeline() {
+        return pipeline;
+    }
+
     @Override
     public boolean isRegistered() {
         return registered;
     }
 
+    @Override
+    public boolean isWritable() {
+        ChannelOutboundBuffer buf = unsafe.outboundBuffer();
+        return buf != null && buf.isWritable();
+    }
+
+    @Override
+    public long bytesBeforeUnwritable() {
+        ChannelOutboundBuffer buf = unsafe.outboundBuffer();
+        // 写缓冲区为null说明channel已经关闭了，返回0，用户就不会再往里面写了
+        return buf != null ? buf.bytesBeforeUnwritable() : 0;
+    }
+
+    @Override
+    public long bytesBeforeWritable() {
+        ChannelOutboundBuffer buf = unsafe.outboundBuffer();
+        // 写缓冲区为null说明channel已经关闭了，返回Long.MAX_VALUE，channel永远不会再可写了
+        return buf != null ? buf.bytesBeforeWritable() : Long.MAX_VALUE;
+    }
+
     // 得到本地地址
     @Override
     public SocketAddress localAddress() {
@@ -141,7 +184,9 @@ public abstract class AbstractChannel extends DefaultAttributeMap implements Cha
 
     @Override
     public Channel flush() {
-        return null;
+        // 写缓冲区不是线程安全的，pipeline会保证flush在channel绑定的EventLoop线程中执行
+        pipeline.flush();
+        return this;
     }
 
     protected abstract AbstractUnsafe newUnsafe();
@@ -192,51 +237,52 @@ public abstract class AbstractChannel extends DefaultAttributeMap implements Cha
         return null;
     }
 
+    // close、deregister也交给pipeline，从尾节点开始经过所有出站handler，最后由头节点调用unsafe完成
     @Override
     public ChannelFuture close() {
-        return null;
+        return pipeline.close();
     }
 
     @Override
     public ChannelFuture close(ChannelPromise promise) {
-        return null;
+        return pipeline.close(promise);
     }
 
     @Override
     public ChannelFuture deregister() {
-        return null;
+        return pipeline.deregister();
     }
 
     @Override
     public ChannelFuture deregister(ChannelPromise promise) {
-        return null;
+        return pipeline.deregister(promise);
     }
 
+    // write、writeAndFlush都交给pipeline，从尾节点开始经过所有出站handler，最后由头节点调用unsafe写到写缓冲区中。
+    // 其他线程调用时，handler上下文会把写操作封装成可复用的写任务交给EventLoop线程执行
     @Override
     public ChannelFuture write(Object msg) {
-        return null;
+        return pipeline.write(msg);
     }
 
     @Override
     public ChannelFuture write(Object msg, ChannelPromise promise) {
-        return null;
+        return pipeline.write(msg, promise);
     }
 
     @Override
     public ChannelFuture writeAndFlush(Object msg) {
-        DefaultChannelPromise promise = new DefaultChannelPromise(this);
-        unsafe.write(msg, promise);
-        return promise;
+        return pipeline.writeAndFlush(msg);
     }
 
     @Override
     public ChannelFuture writeAndFlush(Object msg, ChannelPromise promise) {
-        return null;
+        return pipeline.writeAndFlush(msg, promise);
     }
 
     @Override
     public ChannelPromise newPromise() {
-        return null;
+        return new DefaultChannelPromise(this);
     }
 
     @Override
@@ -249,6 +295,11 @@ public abstract class AbstractChannel extends DefaultAttributeMap implements Cha
         return null;
     }
 
+    @Override
+    public final ChannelPromise voidPromise() {
+        return pipeline.voidPromise();
+    }
+
 
     // ------------------------------------------ AbstractChannel 抽象类实现 ------------------------------------------
 
@@ -268,11 +319,39 @@ public abstract class AbstractChannel extends DefaultAttributeMap implements Cha
 
         // 内部类（非静态）可以访问外部类的所有成员变量和方法，自动持有对外部类实例的引用
 
+        // 读数据时用的接收缓冲区分配器的Handle，第一次读的时候才创建
+        private RecvByteBufAllocator.Handle recvHandle;
+
+        // 写缓冲区，write的消息先放在这里，flush的时候再写到socket中，channel关闭后置为null
+        private volatile ChannelOutboundBuffer outboundBuffer = new ChannelOutboundBuffer(AbstractChannel.this);
+
+        // 是否正在flush，防止flush0重入
+        private boolean inFlush0;
+
+        // channel是否从来没有注册过，第一次注册成功时才需要触发channelActive事件
+        private boolean neverRegistered = true;
+
+        // 是否已经开始关闭了，防止重复关闭
+        private boolean closeInitiated;
+
         private void assertEventLoop() {
             // 检查当前线程是否是netty eventLoop线程
             assert !registered || eventLoop().inEventLoop(Thread.currentThread());
         }
 
+        @Override
+        public RecvByteBufAllocator.Handle recvBufAllocHandle() {
+            if (recvHandle == null) {
+                recvHandle = config().getRecvByteBufAllocator().newHandle();
+            }
+            return recvHandle;
+        }
+
+        @Override
+        public final ChannelOutboundBuffer outboundBuffer() {
+            return outboundBuffer;
+        }
+
         @Override
         public final SocketAddress localAddress() {
             return localAddress0();
@@ -352,32 +431,105 @@ public abstract class AbstractChannel extends DefaultAttributeMap implements Cha
                     // 如果不能确保channel是打开的或者不能确保promise是不可取消的，那么直接结束了
                     return;
                 }
+                boolean firstRegistration = neverRegistered;
                 //真正的注册方法
                 doRegister();
+                neverRegistered = false;
                 //走到这这里，说明成功了，修改注册状态
                 registered = true;
+                //回调在channel注册之前就添加到pipeline中的handler的handlerAdded方法，ChannelInitializer就是在这里执行初始化逻辑的
+                pipeline.invokeHandlerAddedIfNeeded();
                 //把成功状态赋值给promise，这样它可以通知回调函数执行
                 //我们在之前注册时候，把bind也放在了回调函数中
                 safeSetSuccess(promise);
-                //在这里给channel注册“读”事件
-                beginRead();
-            } catch (Exception e) {
-                throw new RuntimeException(e.getMessage());
+                //在pipeline上传播channel注册成功的事件
+                pipeline.fireChannelRegistered();
+                //服务端accept得到的客户端channel在注册时就已经是激活状态了，这时要触发channelActive，
+                //头节点收到channelActive后会给channel注册“读”事件；服务端channel要等绑定端口成功后才会激活
+                if (isActive()) {
+                    if (firstRegistration) {
+                        pipeline.fireChannelActive();
+                    } else if (config().isAutoRead()) {
+                        beginRead();
+                    }
+                }
+            } catch (Throwable t) {
+                closeForcibly();
+                closeFuture.setClosed();
+                safeSetFailure(promise, t);
             }
         }
 
         @Override
         public final void deregister(final ChannelPromise promise) {
+            assertEventLoop();
+
+            deregister(promise, false);
+        }
+
+        /**
+         * 把channel从EventLoop上注销，然后在pipeline上传播channelUnregistered事件
+         *
+         * @param promise
+         * @param fireChannelInactive 是否要先传播channelInactive事件，关闭channel时使用
+         */
+        private void deregister(final ChannelPromise promise, final boolean fireChannelInactive) {
+            if (!promise.setUncancellable()) {
+                return;
+            }
+
+            if (!registered) {
+                safeSetSuccess(promise);
+                return;
+            }
+
+            // 提交成任务去执行，等当前正在处理的事件（比如正在读）处理完之后再注销，
+            // 否则后面的handler可能在channelUnregistered之后还会收到事件
+            eventLoop().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        doDeregister();
+                    } catch (Throwable t) {
+                        logger.warn("Unexpected exception occurred while deregistering a channel.", t);
+                    } finally {
+                        if (fireChannelInactive) {
+                            pipeline.fireChannelInactive();
+                        }
+                        // 可能已经被注销过了，只触发一次channelUnregistered
+                        if (registered) {
+                            registered = false;
+                            pipeline.fireChannelUnregistered();
+                        }
+                        safeSetSuccess(promise);
+                    }
+                }
+            });
         }
 
         @Override
         public final void bind(SocketAddress localAddress, ChannelPromise promise) {
+            assertEventLoop();
+
+            boolean wasActive = isActive();
             try {
                 doBind(localAddress);
-                safeSetSuccess(promise);
-            } catch (Exception e) {
-                e.printStackTrace();
+            } catch (Throwable t) {
+                safeSetFailure(promise, t);
+                return;
+            }
+
+            // 绑定端口之后服务端channel才真正激活，这时在pipeline上传播channelActive事件，
+            // 头节点收到channelActive后会给服务端channel注册OP_ACCEPT事件，开始接受客户端连接
+            if (!wasActive && isActive()) {
+                eventLoop().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        pipeline.fireChannelActive();
+                    }
+                });
             }
+            safeSetSuccess(promise);
         }
 
         @Override
@@ -385,19 +537,81 @@ public abstract class AbstractChannel extends DefaultAttributeMap implements Cha
 
         }
 
+        /**
+         * 关闭channel：关闭底层连接，写缓冲区中的消息全部失败，完成closeFuture，
+         * 之前是激活状态的话传播channelInactive事件，最后从EventLoop上注销
+         *
+         * @param promise
+         */
         @Override
-        public final void close(ChannelPromise promise) {
+        public final void close(final ChannelPromise promise) {
+            assertEventLoop();
+
+            if (!promise.setUncancellable()) {
+                return;
+            }
+
+            if (closeInitiated) {
+                // 已经关闭过了，等closeFuture完成后通知这次的promise
+                if (closeFuture.isDone()) {
+                    safeSetSuccess(promise);
+                } else if (!(promise instanceof VoidChannelPromise)) {
+                    closeFuture.addListener(new ChannelFutureListener() {
+                        @Override
+                        public void operationComplete(ChannelFuture future) throws Exception {
+                            promise.setSuccess();
+                        }
+                    });
+                }
+                return;
+            }
+            closeInitiated = true;
 
+            final boolean wasActive = isActive();
+            // 先把写缓冲区置为null，关闭的过程中（比如promise的监听器中）再写的消息都直接失败
+            final ChannelOutboundBuffer outboundBuffer = this.outboundBuffer;
+            this.outboundBuffer = null;
+            try {
+                doClose();
+                closeFuture.setClosed();
+                safeSetSuccess(promise);
+            } catch (Throwable t) {
+                closeFuture.setClosed();
+                safeSetFailure(promise, t);
+            } finally {
+                failOutboundBuffer(outboundBuffer);
+            }
+
+            // 先传播channelInactive，再传播channelUnregistered
+            deregister(voidPromise(), wasActive && !isActive());
         }
 
         @Override
         public final void closeForcibly() {
             assertEventLoop();
 
+            // 写缓冲区置为null之后，write会直接失败
+            final ChannelOutboundBuffer outboundBuffer = this.outboundBuffer;
+            this.outboundBuffer = null;
             try {
                 doClose();
             } catch (Exception e) {
                 throw new RuntimeException(e.getMessage());
+            } finally {
+                failOutboundBuffer(outboundBuffer);
+            }
+        }
+
+        /**
+         * channel关闭了，写缓冲区中还没写出去的消息都要失败掉并释放
+         *
+         * @param outboundBuffer 关闭之前的写缓冲区，已经关闭过的话为null
+         */
+        private void failOutboundBuffer(ChannelOutboundBuffer outboundBuffer) {
+            if (outboundBuffer != null) {
+                ClosedChannelException closedChannelException = newClosedChannelException(initialCloseCause);
+                outboundBuffer.failFlushed(closedChannelException, false);
+                outboundBuffer.close(closedChannelException);
             }
         }
 
@@ -420,21 +634,97 @@ public abstract class AbstractChannel extends DefaultAttributeMap implements Cha
 
         }
 
+        /**
+         * 把消息放进写缓冲区，并不会真正写到socket中，要等flush
+         *
+         * @param msg
+         * @param promise 消息真正写出去之后才会被通知
+         */
         @Override
         public final void write(Object msg, ChannelPromise promise) {
+            assertEventLoop();
+
+            ChannelOutboundBuffer outboundBuffer = this.outboundBuffer;
+            if (outboundBuffer == null) {
+                // 写缓冲区为null说明channel已经关闭了，消息要释放掉，否则会内存泄漏
+                safeSetFailure(promise, newClosedChannelException(initialCloseCause));
+                ReferenceCountUtil.release(msg);
+                return;
+            }
+
+            int size;
             try {
-                // 调用子类的写方法
-                doWrite(msg);
-                //如果有监听器，这里可以通知监听器执行回调方法
-                promise.trySuccess();
-            } catch (Exception e) {
-                e.printStackTrace();
+                // 子类可以在这里转换消息，比如NIO channel会把堆内存的ByteBuf转换成堆外内存的ByteBuf
+                msg = filterOutboundMessage(msg);
+                size = estimateSize(msg);
+            } catch (Throwable t) {
+                safeSetFailure(promise, t);
+                ReferenceCountUtil.release(msg);
+                return;
             }
+
+            outboundBuffer.addMessage(msg, size, promise);
         }
 
+        /**
+         * 把写缓冲区中的消息标记为已刷新，然后写到socket中
+         */
         @Override
         public final void flush() {
+            assertEventLoop();
+
+            ChannelOutboundBuffer outboundBuffer = this.outboundBuffer;
+            if (outboundBuffer == null) {
+                return;
+            }
 
+            outboundBuffer.addFlush();
+            flush0();
+        }
+
+        /**
+         * 把写缓冲区中已刷新的消息写到socket中，子类可以重写，比如socket发送缓冲区满了的时候就没必要再尝试写了
+         */
+        protected void flush0() {
+            if (inFlush0) {
+                // 防止重入
+                return;
+            }
+
+            final ChannelOutboundBuffer outboundBuffer = this.outboundBuffer;
+            if (outboundBuffer == null || outboundBuffer.isEmpty()) {
+                return;
+            }
+
+            inFlush0 = true;
+
+            // channel还没激活，已刷新的消息全部失败
+            if (!isActive()) {
+                try {
+                    if (isOpen()) {
+                        outboundBuffer.failFlushed(new NotYetConnectedException(), true);
+                    } else {
+                        outboundBuffer.failFlushed(newClosedChannelException(initialCloseCause), false);
+                    }
+                } finally {
+                    inFlush0 = false;
+                }
+                return;
+            }
+
+            try {
+                // 调用子类的写方法
+                doWrite(outboundBuffer);
+            } catch (Throwable t) {
+                // 写的过程中出了异常，已刷新的消息全部失败
+                outboundBuffer.failFlushed(t, true);
+                if (t instanceof IOException && config().isAutoClose()) {
+                    // IO异常说明连接多半已经不可用了，直接关闭channel
+                    close(voidPromise());
+                }
+            } finally {
+                inFlush0 = false;
+            }
         }
 
         /**
@@ -454,13 +744,15 @@ public abstract class AbstractChannel extends DefaultAttributeMap implements Cha
         }
 
         protected final void safeSetSuccess(ChannelPromise promise) {
-            if (!promise.trySuccess()) {
+            // voidPromise的trySuccess永远返回false，不用去设置，也不能当成重复设置
+            if (!(promise instanceof VoidChannelPromise) && !promise.trySuccess()) {
                 System.out.println("Failed to mark a promise as success because it is done already: " + promise);
             }
         }
 
         protected final void safeSetFailure(ChannelPromise promise, Throwable t) {
-            if (!promise.tryFailure(t)) {
+            // voidPromise的tryFailure会把异常传播到pipeline中，但永远返回false
+            if (!promise.tryFailure(t) && !(promise instanceof VoidChannelPromise)) {
                 throw new RuntimeException(t);
             }
         }
@@ -480,12 +772,36 @@ public abstract class AbstractChannel extends DefaultAttributeMap implements Cha
     protected abstract boolean isCompatible(EventLoop eventLoop);
 
     /**
-     * 由子类来具体实现，具体的写方法实现，具体实现涉及到NIO相关类使用，放到具体的业务子类去实现
+     * 由子类来具体实现，把写缓冲区中已刷新的消息写出去，具体实现涉及到NIO相关类使用，放到具体的业务子类去实现
+     *
+     * @param in 写缓冲区
+     * @throws Exception
+     */
+    protected abstract void doWrite(ChannelOutboundBuffer in) throws Exception;
+
+    /**
+     * 消息放进写缓冲区之前会先调用这个方法，子类可以在这里校验、转换消息
      *
      * @param msg
+     * @return
      * @throws Exception
      */
-    protected abstract void doWrite(Object msg) throws Exception;
+    protected Object filterOutboundMessage(Object msg) throws Exception {
+        return msg;
+    }
+
+    /**
+     * 估算消息的大小，ByteBuf就是可读的字节数
+     *
+     * @param msg
+     * @return
+     */
+    static int estimateSize(Object msg) {
+        if (msg instanceof ByteBuf) {
+            return ((ByteBuf) msg).readableBytes();
+        }
+        return 0;
+    }
 
     /**
      * 由子类来具体实现，具体的注册实现涉及到NIO相关类的使用了，我们把这部分放到NioChannel抽象类中去实现
@@ -516,6 +832,14 @@ public abstract class AbstractChannel extends DefaultAttributeMap implements Cha
      */
     protected abstract void doClose() throws Exception;
 
+    /**
+     * 从EventLoop上注销时调用，默认什么也不做，子类可以在这里把channel从selector或者epoll上移除
+     *
+     * @throws Exception
+     */
+    protected void doDeregister() throws Exception {
+    }
+
 
     private ClosedChannelException newClosedChannelException(Throwable cause) {
         ClosedChannelException exception = new ClosedChannelException();
@@ -2,10 +2,15 @@ package com.yy.netty.channel;
 
 import com.yy.netty.util.Attribute;
 import com.yy.netty.util.AttributeKey;
+import com.yy.netty.util.ReferenceCountUtil;
 import com.yy.netty.util.ResourceLeakHint;
 import com.yy.netty.util.concurrent.EventExecutor;
+import com.yy.netty.util.internal.ObjectPool;
+import com.yy.netty.util.internal.ObjectPool.Handle;
+import com.yy.netty.util.internal.ObjectPool.ObjectCreator;
 import com.yy.netty.util.internal.ObjectUtil;
 import com.yy.netty.util.internal.StringUtil;
+import com.yy.netty.util.internal.SystemPropertyUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +43,11 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
     // （双向链表）当前节点在链表上的前一个节点
     volatile AbstractChannelHandlerContext prev;
 
+    // 分发表：下标是ChannelHandlerMask中的INDEX_XXX，值是从当前节点出发，下一个处理该事件的节点（入站往后找，出站往前找）
+    // 由DefaultChannelPipeline在链表变化时整体重建并替换（写时复制），数组本身不会被修改，所以读取时不需要加锁。
+    // 节点刚创建还没有分发表时为null，这时退化为沿着链表逐个判断掩码；节点被删除后分发表保持不变，已经在途的事件仍然能传播下去
+    volatile AbstractChannelHandlerContext[] dispatchTable;
+
     // 当前AbstractChannelHandlerContext节点所归属的ChannelPipeline，ChannelPipeline通过AbstractChannelHandlerContext节点可以间接的得到每一个ChannelHandler
     private final DefaultChannelPipeline pipeline;
 
@@ -50,11 +60,14 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
     // 这是个很有意思的属性，变量名称为执行掩码
     // 我们会向ChannelPipeline中添加很多handler，每个InBoundHandler都有channelRead，如果有的handler并不对read事件感兴趣，并没有自定义实现ChannelRead方法
     // 数据在链表中传递的时候，就要自动跳过该handler。这个掩码，就是表明该handler对哪个事件感兴趣的。用的是位运算相关的技巧。
-    private final int executionMask;
+    final int executionMask;
 
     final EventExecutor executor;
     private ChannelFuture succeededFuture;
 
+    // 在其他线程中触发事件时使用的任务，懒加载，每个节点只创建一次。不需要volatile，并发时最多也就多创建几个对象
+    private Tasks invokeTasks;
+
     // 把初始状态赋值给handlerState，handlerState属性就是ChannelHandler刚添加到链表时的状态
     private volatile int handlerState = INIT;
 
@@ -117,7 +130,7 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
      */
     @Override
     public ChannelHandlerContext fireChannelRead(Object msg) {
-        invokeChannelRead(findContextInbound(MASK_CHANNEL_READ), msg);
+        invokeChannelRead(findContextInbound(INDEX_CHANNEL_READ), msg);
         return this;
     }
 
@@ -159,7 +172,7 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
 
     @Override
     public ChannelHandlerContext fireChannelReadComplete() {
-        invokeChannelReadComplete(findContextInbound(MASK_CHANNEL_READ_COMPLETE));
+        invokeChannelReadComplete(findContextInbound(INDEX_CHANNEL_READ_COMPLETE));
         return this;
     }
 
@@ -167,15 +180,13 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
         EventExecutor executor = next.executor();
         if (executor.inEventLoop(Thread.currentThread())) {
             next.invokeChannelReadComplete();
+        } else {
+            Tasks tasks = next.invokeTasks;
+            if (tasks == null) {
+                next.invokeTasks = tasks = new Tasks(next);
+            }
+            executor.execute(tasks.invokeChannelReadCompleteTask);
         }
-//        一般来说是不会走到下面这个分支的,所以先注释了,不必再引入更多的类
-//        else {
-//            Tasks tasks = next.invokeTasks;
-//            if (tasks == null) {
-//                next.invokeTasks = tasks = new Tasks(next);
-//            }
-//            executor.execute(tasks.invokeChannelReadCompleteTask);
-//        }
     }
 
     private void invokeChannelReadComplete() {
@@ -193,7 +204,7 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
 
     @Override
     public ChannelHandlerContext fireChannelWritabilityChanged() {
-        invokeChannelWritabilityChanged(findContextInbound(MASK_CHANNEL_WRITABILITY_CHANGED));
+        invokeChannelWritabilityChanged(findContextInbound(INDEX_CHANNEL_WRITABILITY_CHANGED));
         return this;
     }
 
@@ -201,14 +212,13 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
         EventExecutor executor = next.executor();
         if (executor.inEventLoop(Thread.currentThread())) {
             next.invokeChannelWritabilityChanged();
+        } else {
+            Tasks tasks = next.invokeTasks;
+            if (tasks == null) {
+                next.invokeTasks = tasks = new Tasks(next);
+            }
+            executor.execute(tasks.invokeChannelWritableStateChangedTask);
         }
-//        else {
-//            Tasks tasks = next.invokeTasks;
-//            if (tasks == null) {
-//                next.invokeTasks = tasks = new Tasks(next);
-//            }
-//            executor.execute(tasks.invokeChannelWritableStateChangedTask);
-//        }
     }
 
     private void invokeChannelWritabilityChanged() {
@@ -230,7 +240,7 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
      */
     @Override
     public ChannelHandlerContext fireChannelRegistered() {
-        invokeChannelRegistered(findContextInbound(MASK_CHANNEL_REGISTERED));
+        invokeChannelRegistered(findContextInbound(INDEX_CHANNEL_REGISTERED));
         return this;
     }
 
@@ -264,7 +274,7 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
 
     @Override
     public ChannelHandlerContext fireChannelUnregistered() {
-        invokeChannelUnregistered(findContextInbound(MASK_CHANNEL_UNREGISTERED));
+        invokeChannelUnregistered(findContextInbound(INDEX_CHANNEL_UNREGISTERED));
         return this;
     }
 
@@ -296,7 +306,7 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
 
     @Override
     public ChannelHandlerContext fireChannelActive() {
-        invokeChannelActive(findContextInbound(MASK_CHANNEL_ACTIVE));
+        invokeChannelActive(findContextInbound(INDEX_CHANNEL_ACTIVE));
         return this;
     }
 
@@ -328,7 +338,7 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
 
     @Override
     public ChannelHandlerContext fireChannelInactive() {
-        invokeChannelInactive(findContextInbound(MASK_CHANNEL_INACTIVE));
+        invokeChannelInactive(findContextInbound(INDEX_CHANNEL_INACTIVE));
         return this;
     }
 
@@ -360,7 +370,7 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
 
     @Override
     public ChannelHandlerContext fireExceptionCaught(Throwable cause) {
-        invokeExceptionCaught(findContextInbound(MASK_EXCEPTION_CAUGHT), cause);
+        invokeExceptionCaught(findContextInbound(INDEX_EXCEPTION_CAUGHT), cause);
         return this;
     }
 
@@ -407,7 +417,7 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
 
     @Override
     public ChannelHandlerContext fireUserEventTriggered(Object event) {
-        invokeUserEventTriggered(findContextInbound(MASK_USER_EVENT_TRIGGERED), event);
+        invokeUserEventTriggered(findContextInbound(INDEX_USER_EVENT_TRIGGERED), event);
         return this;
     }
 
@@ -438,8 +448,14 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
         }
     }
 
-    // 获取当前节点往后的第一个实现了入参mask感兴趣的节点
-    private AbstractChannelHandlerContext findContextInbound(int mask) {
+    // 获取当前节点往后的第一个对入参index对应的事件感兴趣的节点
+    private AbstractChannelHandlerContext findContextInbound(int index) {
+        AbstractChannelHandlerContext[] dispatchTable = this.dispatchTable;
+        if (dispatchTable != null) {
+            //分发表已经算好了，直接取
+            return dispatchTable[index];
+        }
+        int mask = dispatchMask(index);
         AbstractChannelHandlerContext ctx = this;
         do {
             //为什么获取后一个？因为是入站处理器，数据从前往后传输
@@ -489,18 +505,17 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
 
     @Override
     public ChannelHandlerContext read() {
-        final AbstractChannelHandlerContext next = findContextOutbound(MASK_READ);
+        final AbstractChannelHandlerContext next = findContextOutbound(INDEX_READ);
         EventExecutor executor = next.executor();
         if (executor.inEventLoop(Thread.currentThread())) {
             next.invokeRead();
+        } else {
+            Tasks tasks = next.invokeTasks;
+            if (tasks == null) {
+                next.invokeTasks = tasks = new Tasks(next);
+            }
+            executor.execute(tasks.invokeReadTask);
         }
-//        else {
-//            Tasks tasks = next.invokeTasks;
-//            if (tasks == null) {
-//                next.invokeTasks = tasks = new Tasks(next);
-//            }
-//            executor.execute(tasks.invokeReadTask);
-//        }
 
         return this;
     }
@@ -519,18 +534,17 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
 
     @Override
     public ChannelHandlerContext flush() {
-        final AbstractChannelHandlerContext next = findContextOutbound(MASK_FLUSH);
+        final AbstractChannelHandlerContext next = findContextOutbound(INDEX_FLUSH);
         EventExecutor executor = next.executor();
         if (executor.inEventLoop(Thread.currentThread())) {
             next.invokeFlush();
+        } else {
+            Tasks tasks = next.invokeTasks;
+            if (tasks == null) {
+                next.invokeTasks = tasks = new Tasks(next);
+            }
+            safeExecute(executor, tasks.invokeFlushTask, channel().voidPromise(), null);
         }
-//        else {
-//            Tasks tasks = next.invokeTasks;
-//            if (tasks == null) {
-//                next.invokeTasks = tasks = new Tasks(next);
-//            }
-//            safeExecute(executor, tasks.invokeFlushTask, channel().voidPromise(), null);
-//        }
         return this;
     }
 
@@ -570,7 +584,10 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
             throw new NullPointerException("localAddress");
         }
         //找到对bind事件感兴趣的handler
-        final AbstractChannelHandlerContext next = findContextOutbound(MASK_BIND);
+        if (isNotValidPromise(promise, false)) {
+            return promise;
+        }
+        final AbstractChannelHandlerContext next = findContextOutbound(INDEX_BIND);
         EventExecutor executor = next.executor();
         if (executor.inEventLoop(Thread.currentThread())) {
             //这个时候肯定是单线程执行器接管了channel，所以会走这个分支
@@ -620,7 +637,10 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
         if (remoteAddress == null) {
             throw new NullPointerException("remoteAddress");
         }
-        final AbstractChannelHandlerContext next = findContextOutbound(MASK_CONNECT);
+        if (isNotValidPromise(promise, false)) {
+            return promise;
+        }
+        final AbstractChannelHandlerContext next = findContextOutbound(INDEX_CONNECT);
         EventExecutor executor = next.executor();
         if (executor.inEventLoop(Thread.currentThread())) {
             next.invokeConnect(remoteAddress, localAddress, promise);
@@ -654,7 +674,10 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
 
     @Override
     public ChannelFuture disconnect(ChannelPromise promise) {
-        final AbstractChannelHandlerContext next = findContextOutbound(MASK_DISCONNECT);
+        if (isNotValidPromise(promise, false)) {
+            return promise;
+        }
+        final AbstractChannelHandlerContext next = findContextOutbound(INDEX_DISCONNECT);
         EventExecutor executor = next.executor();
         if (executor.inEventLoop(Thread.currentThread())) {
             next.invokeDisconnect(promise);
@@ -689,7 +712,10 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
     // 关闭连接的方法，这个方法会放在最后优雅停机和释放资源的时候进行串联
     @Override
     public ChannelFuture close(ChannelPromise promise) {
-        final AbstractChannelHandlerContext next = findContextOutbound(MASK_CLOSE);
+        if (isNotValidPromise(promise, false)) {
+            return promise;
+        }
+        final AbstractChannelHandlerContext next = findContextOutbound(INDEX_CLOSE);
         EventExecutor executor = next.executor();
         if (executor.inEventLoop(Thread.currentThread())) {
             next.invokeClose(promise);
@@ -727,7 +753,7 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
         if (isNotValidPromise(promise, false)) {
             return promise;
         }
-        final AbstractChannelHandlerContext next = findContextOutbound(MASK_DEREGISTER);
+        final AbstractChannelHandlerContext next = findContextOutbound(INDEX_DEREGISTER);
         EventExecutor executor = next.executor();
         if (executor.inEventLoop(Thread.currentThread())) {
             next.invokeDeregister(promise);
@@ -823,7 +849,17 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
         return null;
     }
 
-    private AbstractChannelHandlerContext findContextOutbound(int mask) {
+    @Override
+    public ChannelPromise voidPromise() {
+        return channel().voidPromise();
+    }
+
+    private AbstractChannelHandlerContext findContextOutbound(int index) {
+        AbstractChannelHandlerContext[] dispatchTable = this.dispatchTable;
+        if (dispatchTable != null) {
+            return dispatchTable[index];
+        }
+        int mask = dispatchMask(index);
         AbstractChannelHandlerContext ctx = this;
         do {
             //为什么获取前一个？因为是出站处理器，数据从后往前传输
@@ -834,7 +870,10 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
     }
 
     private static void notifyOutboundHandlerException(Throwable cause, ChannelPromise promise) {
-        //PromiseNotificationUtil.tryFailure(promise, cause, promise instanceof VoidChannelPromise ? null : logger);
+        // 出站handler抛出的异常交给promise，voidPromise会把异常传播到pipeline中，所以也不需要再打日志了
+        if (!promise.tryFailure(cause) && !(promise instanceof VoidChannelPromise)) {
+            logger.warn("Failed to mark a promise as failure because it's done already: {}", promise, cause);
+        }
     }
 
     private boolean isNotValidPromise(ChannelPromise promise, boolean allowVoidPromise) {
@@ -853,6 +892,11 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
         if (promise.getClass() == DefaultChannelPromise.class) {
             return false;
         }
+        // voidPromise不会通知任何人，只有write这类不需要结果的操作才能使用，bind、connect、close等操作必须知道结果
+        if (!allowVoidPromise && promise instanceof VoidChannelPromise) {
+            throw new IllegalArgumentException(
+                    StringUtil.simpleClassName(VoidChannelPromise.class) + " not allowed for this operation");
+        }
         if (promise instanceof AbstractChannel.CloseFuture) {
             throw new IllegalArgumentException(StringUtil.simpleClassName(AbstractChannel.CloseFuture.class) + " not allowed in a pipeline");
         }
@@ -861,8 +905,18 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
 
     private void write(Object msg, boolean flush, ChannelPromise promise) {
         ObjectUtil.checkNotNull(msg, "msg");
+        try {
+            if (isNotValidPromise(promise, true)) {
+                // promise已经被取消了，消息不用写了，释放掉
+                ReferenceCountUtil.release(msg);
+                return;
+            }
+        } catch (RuntimeException e) {
+            ReferenceCountUtil.release(msg);
+            throw e;
+        }
         final AbstractChannelHandlerContext next = findContextOutbound(flush ?
-                (MASK_WRITE | MASK_FLUSH) : MASK_WRITE);
+                INDEX_WRITE_AND_FLUSH : INDEX_WRITE);
         final Object m = msg;
         //该方法用来检查内存是否泄漏，因为还未引入，所以暂时注释掉
         //final Object m = pipeline.touch(msg, next);
@@ -875,25 +929,18 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
                 next.invokeWrite(m, promise);
             }
         } else {
-            //下面被注释掉的分支是源码，这个else分支是我自己写的，等后面再真正实现
-            executor.execute(new Runnable() {
-                @Override
-                public void run() {
-                    next.invokeWriteAndFlush(m, promise);
-                }
-            });
+            // 不在执行器线程中，把写操作封装成任务交给执行器，任务对象从对象池中获取，执行完之后会被回收
+            final AbstractWriteTask task;
+            if (flush) {
+                task = WriteAndFlushTask.newInstance(next, m, promise);
+            }  else {
+                task = WriteTask.newInstance(next, m, promise);
+            }
+            if (!safeExecute(executor, task, promise, m)) {
+                // 任务提交失败了，要把计入的待写字节数减回去，并回收任务对象
+                task.cancel();
+            }
         }
-//        else {
-//            final AbstractWriteTask task;
-//            if (flush) {
-//                task = WriteAndFlushTask.newInstance(next, m, promise);
-//            }  else {
-//                task = WriteTask.newInstance(next, m, promise);
-//            }
-//            if (!safeExecute(executor, task, promise, m)) {
-//                task.cancel();
-//            }
-//        }
     }
 
     // -------------------------------------- attribute map类方法--------------------------------------
@@ -923,8 +970,8 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
                 promise.setFailure(cause);
             } finally {
                 if (msg != null) {
-                    //当该引用计数减至为0时，该ByteBuf即可回收，我们还未讲到这里，所以我先注释掉这个方法
-                    //ReferenceCountUtil.release(msg);
+                    //当该引用计数减至为0时，该ByteBuf即可回收
+                    ReferenceCountUtil.release(msg);
                 }
             }
             return false;
@@ -981,4 +1028,170 @@ public abstract class AbstractChannelHandlerContext implements ChannelHandlerCon
         return StringUtil.simpleClassName(ChannelHandlerContext.class) + '(' + name + ", " + channel() + ')';
     }
 
+    /**
+     * 其他线程中调用write、writeAndFlush时提交给执行器的任务，任务对象通过对象池复用，业务线程大量写数据时不用每次都创建Runnable
+     */
+    abstract static class AbstractWriteTask implements Runnable {
+
+        // 提交任务时是否就把消息的大小计入channel的待写字节数
+        private static final boolean ESTIMATE_TASK_SIZE_ON_SUBMIT =
+                SystemPropertyUtil.getBoolean("io.netty.transport.estimateSizeOnSubmit", true);
+
+        // 任务对象本身占用的内存估算值：对象头16字节 + 4个引用字段 + 1个int字段，再加上对齐
+        private static final int WRITE_TASK_OVERHEAD =
+                SystemPropertyUtil.getInt("io.netty.transport.writeTaskSizeOverhead", 32);
+
+        private final Handle<AbstractWriteTask> handle;
+        private AbstractChannelHandlerContext ctx;
+        private Object msg;
+        private ChannelPromise promise;
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        private AbstractWriteTask(Handle<? extends AbstractWriteTask> handle) {
+            this.handle = (Handle<AbstractWriteTask>) handle;
+        }
+
+        protected static void init(AbstractWriteTask task, AbstractChannelHandlerContext ctx,
+                                   Object msg, ChannelPromise promise) {
+            task.ctx = ctx;
+            task.msg = msg;
+            task.promise = promise;
+
+            if (ESTIMATE_TASK_SIZE_ON_SUBMIT) {
+                // 消息还在任务队列中的时候就要计入写缓冲区的待写字节数，否则业务线程疯狂写的时候，
+                // 消息都堆积在任务队列中，channel却一直是可写的，水位线就失去作用了
+                task.size = AbstractChannel.estimateSize(msg) + WRITE_TASK_OVERHEAD;
+                ctx.pipeline.incrementPendingOutboundBytes(task.size);
+            } else {
+                task.size = 0;
+            }
+        }
+
+        @Override
+        public final void run() {
+            try {
+                // 消息马上就要进入写缓冲区了，写缓冲区会重新计算它的大小，这里先减掉
+                decrementPendingOutboundBytes();
+                write(ctx, msg, promise);
+            } finally {
+                recycle();
+            }
+        }
+
+        /**
+         * 任务提交失败时调用
+         */
+        void cancel() {
+            try {
+                decrementPendingOutboundBytes();
+            } finally {
+                recycle();
+            }
+        }
+
+        private void decrementPendingOutboundBytes() {
+            if (ESTIMATE_TASK_SIZE_ON_SUBMIT) {
+                ctx.pipeline.decrementPendingOutboundBytes(size);
+            }
+        }
+
+        private void recycle() {
+            // 清空引用，防止回收之后消息和channel不能被GC
+            ctx = null;
+            msg = null;
+            promise = null;
+            handle.recycle(this);
+        }
+
+        protected void write(AbstractChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            ctx.invokeWrite(msg, promise);
+        }
+    }
+
+    static final class WriteTask extends AbstractWriteTask {
+
+        private static final ObjectPool<WriteTask> RECYCLER = ObjectPool.newPool(new ObjectCreator<WriteTask>() {
+            @Override
+            public WriteTask newObject(Handle<WriteTask> handle) {
+                return new WriteTask(handle);
+            }
+        });
+
+        static WriteTask newInstance(AbstractChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            WriteTask task = RECYCLER.get();
+            init(task, ctx, msg, promise);
+            return task;
+        }
+
+        private WriteTask(Handle<WriteTask> handle) {
+            super(handle);
+        }
+    }
+
+    static final class WriteAndFlushTask extends AbstractWriteTask {
+
+        private static final ObjectPool<WriteAndFlushTask> RECYCLER = ObjectPool.newPool(new ObjectCreator<WriteAndFlushTask>() {
+            @Override
+            public WriteAndFlushTask newObject(Handle<WriteAndFlushTask> handle) {
+                return new WriteAndFlushTask(handle);
+            }
+        });
+
+        static WriteAndFlushTask newInstance(AbstractChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            WriteAndFlushTask task = RECYCLER.get();
+            init(task, ctx, msg, promise);
+            return task;
+        }
+
+        private WriteAndFlushTask(Handle<WriteAndFlushTask> handle) {
+            super(handle);
+        }
+
+        @Override
+        public void write(AbstractChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            super.write(ctx, msg, promise);
+            ctx.invokeFlush();
+        }
+    }
+
+    /**
+     * 其他线程中触发没有参数的事件时使用的任务，每个节点复用同一组对象
+     */
+    private static final class Tasks {
+
+        private final AbstractChannelHandlerContext next;
+
+        private final Runnable invokeChannelReadCompleteTask = new Runnable() {
+            @Override
+            public void run() {
+                next.invokeChannelReadComplete();
+            }
+        };
+
+        private final Runnable invokeReadTask = new Runnable() {
+            @Override
+            public void run() {
+                next.invokeRead();
+            }
+        };
+
+        private final Runnable invokeChannelWritableStateChangedTask = new Runnable() {
+            @Override
+            public void run() {
+                next.invokeChannelWritabilityChanged();
+            }
+        };
+
+        private final Runnable invokeFlushTask = new Runnable() {
+            @Override
+            public void run() {
+                next.invokeFlush();
+            }
+        };
+
+        Tasks(AbstractChannelHandlerContext next) {
+            this.next = next;
+        }
+    }
 }
@@ -0,0 +1,192 @@
+package com.yy.netty.channel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * 自适应的接收缓冲区分配器，根据实际读到的字节数自动调整下一次分配的缓冲区大小
+ * <p>
+ * 缓冲区的大小不是随便取的，而是从SIZE_TABLE中取：16到496之间每16字节一档，512之后每次翻倍。
+ * 1、如果一次读就把缓冲区读满了，说明缓冲区小了，直接往上跳INDEX_INCREMENT档；
+ * 2、如果连续两次读到的字节数都小于下一档，说明缓冲区大了，往下降INDEX_DECREMENT档。
+ * 扩容快、缩容慢，这样大流量传输时很快就能用上大缓冲区，减少读的次数，而小消息频繁的连接又不会一直占着大缓冲区
+ * </p>
+ */
+public class AdaptiveRecvByteBufAllocator extends DefaultMaxMessagesRecvByteBufAllocator {
+
+    static final int DEFAULT_MINIMUM = 64;
+
+    static final int DEFAULT_INITIAL = 1024;
+
+    static final int DEFAULT_MAXIMUM = 65536;
+
+    private static final int INDEX_INCREMENT = 4;
+
+    private static final int INDEX_DECREMENT = 1;
+
+    private static final int[] SIZE_TABLE;
+
+    static {
+        List<Integer> sizeTable = new ArrayList<Integer>();
+        for (int i = 16; i < 512; i += 16) {
+            sizeTable.add(i);
+        }
+        // 溢出变成负数时停止
+        for (int i = 512; i > 0; i <<= 1) {
+            sizeTable.add(i);
+        }
+
+        SIZE_TABLE = new int[sizeTable.size()];
+        for (int i = 0; i < SIZE_TABLE.length; i++) {
+            SIZE_TABLE[i] = sizeTable.get(i);
+        }
+    }
+
+    /**
+     * 二分查找，找到大于等于size的最小一档的下标
+     *
+     * @param size
+     * @return
+     */
+    private static int getSizeTableIndex(final int size) {
+        for (int low = 0, high = SIZE_TABLE.length - 1; ; ) {
+            if (high < low) {
+                return low;
+            }
+            if (high == low) {
+                return high;
+            }
+
+            int mid = low + high >>> 1;
+            int a = SIZE_TABLE[mid];
+            int b = SIZE_TABLE[mid + 1];
+            if (size > b) {
+                low = mid + 1;
+            } else if (size < a) {
+                high = mid - 1;
+            } else if (size == a) {
+                return mid;
+            } else {
+                return mid + 1;
+            }
+        }
+    }
+
+    private final class HandleImpl extends MaxMessageHandle {
+
+        private final int minIndex;
+
+        private final int maxIndex;
+
+        private int index;
+
+        private int nextReceiveBufferSize;
+
+        // 第一次读少了只做标记，连续两次读少了才真正缩容
+        private boolean decreaseNow;
+
+        HandleImpl(int minIndex, int maxIndex, int initial) {
+            this.minIndex = minIndex;
+            this.maxIndex = maxIndex;
+
+            index = getSizeTableIndex(initial);
+            nextReceiveBufferSize = SIZE_TABLE[index];
+        }
+
+        @Override
+        public void lastBytesRead(int bytes) {
+            // 一次就把缓冲区读满了，说明缓冲区可能小了，不用等到整个读循环结束，马上扩容，读循环中的下一次读就能用上大缓冲区
+            if (bytes == attemptedBytesRead()) {
+                record(bytes);
+            }
+            super.lastBytesRead(bytes);
+        }
+
+        @Override
+        public int guess() {
+            return nextReceiveBufferSize;
+        }
+
+        private void record(int actualReadBytes) {
+            if (actualReadBytes <= SIZE_TABLE[max(0, index - INDEX_DECREMENT)]) {
+                if (decreaseNow) {
+                    index = max(index - INDEX_DECREMENT, minIndex);
+                    nextReceiveBufferSize = SIZE_TABLE[index];
+                    decreaseNow = false;
+                } else {
+                    decreaseNow = true;
+                }
+            } else if (actualReadBytes >= nextReceiveBufferSize) {
+                index = min(index + INDEX_INCREMENT, maxIndex);
+                nextReceiveBufferSize = SIZE_TABLE[index];
+                decreaseNow = false;
+            }
+        }
+
+        @Override
+        public void readComplete() {
+            // 整个读循环结束，根据这次读事件一共读到的字节数调整下一次的缓冲区大小
+            record(totalBytesRead());
+        }
+    }
+
+    private final int minIndex;
+
+    private final int maxIndex;
+
+    private final int initial;
+
+    /**
+     * 使用默认参数创建，缓冲区初始大小1024，最小不低于64，最大不超过65536
+     */
+    public AdaptiveRecvByteBufAllocator() {
+        this(DEFAULT_MINIMUM, DEFAULT_INITIAL, DEFAULT_MAXIMUM);
+    }
+
+    /**
+     * @param minimum 缓冲区大小的下限
+     * @param initial 缓冲区的初始大小
+     * @param maximum 缓冲区大小的上限
+     */
+    public AdaptiveRecvByteBufAllocator(int minimum, int initial, int maximum) {
+        if (minimum <= 0) {
+            throw new IllegalArgumentException("minimum: " + minimum + " (expected: > 0)");
+        }
+        if (initial < minimum) {
+            throw new IllegalArgumentException("initial: " + initial);
+        }
+        if (maximum < initial) {
+            throw new IllegalArgumentException("maximum: " + maximum);
+        }
+
+        int minIndex = getSizeTableIndex(minimum);
+        if (SIZE_TABLE[minIndex] < minimum) {
+            this.minIndex = minIndex + 1;
+        } else {
+            this.minIndex = minIndex;
+        }
+
+        int maxIndex = getSizeTableIndex(maximum);
+        if (SIZE_TABLE[maxIndex] > maximum) {
+            this.maxIndex = maxIndex - 1;
+        } else {
+            this.maxIndex = maxIndex;
+        }
+
+        this.initial = initial;
+    }
+
+    @Override
+    public Handle newHandle() {
+        return new HandleImpl(minIndex, maxIndex, initial);
+    }
+
+    @Override
+    public AdaptiveRecvByteBufAllocator respectMaybeMoreData(boolean respectMaybeMoreData) {
+        super.respectMaybeMoreData(respectMaybeMoreData);
+        return this;
+    }
+}
@@ -32,6 +32,9 @@ public interface Channel extends AttributeMap, ChannelOutboundInvoker {
     // 获取channel的配置信息
     ChannelConfig config();
 
+    // 获取channel的pipeline，channel上发生的各种事件都会在pipeline上传播
+    ChannelPipeline pipeline();
+
     /**
      * 判断nio的channel是否已经打开
      *
@@ -55,6 +58,28 @@ public interface Channel extends AttributeMap, ChannelOutboundInvoker {
      */
     boolean isRegistered();
 
+    /**
+     * 判断channel当前是否可写，写缓冲区中等待写出的字节数超过高水位线时返回false，降到低水位线以下时才会再返回true。
+     * 用户写数据之前可以先判断一下，不可写的时候就先别写了，等channelWritabilityChanged事件通知再写
+     *
+     * @return
+     */
+    boolean isWritable();
+
+    /**
+     * 还能写多少字节channel就会变为不可写，已经不可写了就返回0
+     *
+     * @return
+     */
+    long bytesBeforeUnwritable();
+
+    /**
+     * 还要写出去多少字节channel才会恢复可写，已经可写了就返回0
+     *
+     * @return
+     */
+    long bytesBeforeWritable();
+
     /**
      * 本channel绑定的本地端口
      *
@@ -136,6 +161,20 @@ public interface Channel extends AttributeMap, ChannelOutboundInvoker {
 
         void flush();
 
+        /**
+         * 获取本channel读数据时使用的RecvByteBufAllocator.Handle，读循环中靠它分配缓冲区、决定是否继续读
+         *
+         * @return
+         */
+        RecvByteBufAllocator.Handle recvBufAllocHandle();
+
+        /**
+         * 获取本channel的写缓冲区，channel关闭之后返回null
+         *
+         * @return
+         */
+        ChannelOutboundBuffer outboundBuffer();
+
 
     }
 
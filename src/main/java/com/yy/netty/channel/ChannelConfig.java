@@ -1,5 +1,7 @@
 package com.yy.netty.channel;
 
+import com.yy.netty.buffer.ByteBufAllocator;
+
 import java.util.Map;
 
 /**
@@ -29,6 +31,14 @@ public interface ChannelConfig {
 
     ChannelConfig setWriteSpinCount(int writeSpinCount);
 
+    int getMaxMessagesPerRead();
+
+    ChannelConfig setMaxMessagesPerRead(int maxMessagesPerRead);
+
+    <T extends RecvByteBufAllocator> T getRecvByteBufAllocator();
+
+    ChannelConfig setRecvByteBufAllocator(RecvByteBufAllocator allocator);
+
     boolean isAutoRead();
 
     ChannelConfig setAutoRead(boolean autoRead);
@@ -37,6 +47,10 @@ public interface ChannelConfig {
 
     ChannelConfig setAutoClose(boolean autoClose);
 
+    ByteBufAllocator getAllocator();
+
+    ChannelConfig setAllocator(ByteBufAllocator allocator);
+
     int getWriteBufferHighWaterMark();
 
     ChannelConfig setWriteBufferHighWaterMark(int writeBufferHighWaterMark);
@@ -45,4 +59,8 @@ public interface ChannelConfig {
 
     ChannelConfig setWriteBufferLowWaterMark(int writeBufferLowWaterMark);
 
+    WriteBufferWaterMark getWriteBufferWaterMark();
+
+    ChannelConfig setWriteBufferWaterMark(WriteBufferWaterMark writeBufferWaterMark);
+
 }
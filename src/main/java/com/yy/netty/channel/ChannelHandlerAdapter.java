@@ -0,0 +1,57 @@
+package com.yy.netty.channel;
+
+import com.yy.netty.util.concurrent.FastThreadLocal;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * ChannelHandler的骨架实现，handlerAdded和handlerRemoved默认什么都不做，exceptionCaught默认往后传播
+ */
+public abstract class ChannelHandlerAdapter implements ChannelHandler {
+
+    // 缓存每个handler类是否添加了@Sharable注解，反射判断注解的开销不小，每个线程缓存一份，避免并发问题
+    private static final FastThreadLocal<Map<Class<?>, Boolean>> sharableCaches =
+            new FastThreadLocal<Map<Class<?>, Boolean>>() {
+                @Override
+                protected Map<Class<?>, Boolean> initialValue() {
+                    return new WeakHashMap<Class<?>, Boolean>();
+                }
+            };
+
+    // 该handler是否已经被添加到某个pipeline中了，非共享的handler只能被添加一次
+    boolean added;
+
+    /**
+     * 判断该handler是否可以被添加到多个pipeline中，也就是判断有没有添加@Sharable注解
+     *
+     * @return
+     */
+    public boolean isSharable() {
+        Class<?> clazz = getClass();
+        Map<Class<?>, Boolean> cache = sharableCaches.get();
+        Boolean sharable = cache.get(clazz);
+        if (sharable == null) {
+            sharable = clazz.isAnnotationPresent(Sharable.class);
+            cache.put(clazz, sharable);
+        }
+        return sharable;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        // NOOP
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        // NOOP
+    }
+
+    @ChannelHandlerMask.Skip
+    @Override
+    @Deprecated
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        ctx.fireExceptionCaught(cause);
+    }
+}
@@ -11,8 +11,6 @@ import java.lang.reflect.Method;
 import java.net.SocketAddress;
 import java.security.AccessController;
 import java.security.PrivilegedExceptionAction;
-import java.util.Map;
-import java.util.WeakHashMap;
 
 /**
  * ChannelHandler关注的事件类
@@ -21,27 +19,52 @@ public class ChannelHandlerMask {
 
     private static final Logger logger = LoggerFactory.getLogger(ChannelHandlerMask.class);
 
+    /**
+     * 每种事件在节点分发表中的下标，同时也是该事件在掩码中占用的位
+     */
+    static final int INDEX_EXCEPTION_CAUGHT = 0;
+    static final int INDEX_CHANNEL_REGISTERED = 1;
+    static final int INDEX_CHANNEL_UNREGISTERED = 2;
+    static final int INDEX_CHANNEL_ACTIVE = 3;
+    static final int INDEX_CHANNEL_INACTIVE = 4;
+    static final int INDEX_CHANNEL_READ = 5;
+    static final int INDEX_CHANNEL_READ_COMPLETE = 6;
+    static final int INDEX_USER_EVENT_TRIGGERED = 7;
+    static final int INDEX_CHANNEL_WRITABILITY_CHANGED = 8;
+    static final int INDEX_BIND = 9;
+    static final int INDEX_CONNECT = 10;
+    static final int INDEX_DISCONNECT = 11;
+    static final int INDEX_CLOSE = 12;
+    static final int INDEX_DEREGISTER = 13;
+    static final int INDEX_READ = 14;
+    static final int INDEX_WRITE = 15;
+    static final int INDEX_FLUSH = 16;
+    // write之后要flush时，要找的是第一个处理write或者flush的节点，所以单独占一个下标
+    static final int INDEX_WRITE_AND_FLUSH = 17;
+    // 每个节点分发表的长度
+    static final int DISPATCH_TABLE_SIZE = 18;
+
     /**
      * 表示不同事件的常量
      * 用单独的一位来表达某一种事件，这是位运算的基础，&可以用来判断是否包含，|可以用来追加事件，先取反再与可以用来减少事件
      */
-    static final int MASK_EXCEPTION_CAUGHT = 1;
-    static final int MASK_CHANNEL_REGISTERED = 1 << 1;
-    static final int MASK_CHANNEL_UNREGISTERED = 1 << 2;
-    static final int MASK_CHANNEL_ACTIVE = 1 << 3;
-    static final int MASK_CHANNEL_INACTIVE = 1 << 4;
-    static final int MASK_CHANNEL_READ = 1 << 5;
-    static final int MASK_CHANNEL_READ_COMPLETE = 1 << 6;
-    static final int MASK_USER_EVENT_TRIGGERED = 1 << 7;
-    static final int MASK_CHANNEL_WRITABILITY_CHANGED = 1 << 8;
-    static final int MASK_BIND = 1 << 9;
-    static final int MASK_CONNECT = 1 << 10;
-    static final int MASK_DISCONNECT = 1 << 11;
-    static final int MASK_CLOSE = 1 << 12;
-    static final int MASK_DEREGISTER = 1 << 13;
-    static final int MASK_READ = 1 << 14;
-    static final int MASK_WRITE = 1 << 15;
-    static final int MASK_FLUSH = 1 << 16;
+    static final int MASK_EXCEPTION_CAUGHT = 1 << INDEX_EXCEPTION_CAUGHT;
+    static final int MASK_CHANNEL_REGISTERED = 1 << INDEX_CHANNEL_REGISTERED;
+    static final int MASK_CHANNEL_UNREGISTERED = 1 << INDEX_CHANNEL_UNREGISTERED;
+    static final int MASK_CHANNEL_ACTIVE = 1 << INDEX_CHANNEL_ACTIVE;
+    static final int MASK_CHANNEL_INACTIVE = 1 << INDEX_CHANNEL_INACTIVE;
+    static final int MASK_CHANNEL_READ = 1 << INDEX_CHANNEL_READ;
+    static final int MASK_CHANNEL_READ_COMPLETE = 1 << INDEX_CHANNEL_READ_COMPLETE;
+    static final int MASK_USER_EVENT_TRIGGERED = 1 << INDEX_USER_EVENT_TRIGGERED;
+    static final int MASK_CHANNEL_WRITABILITY_CHANGED = 1 << INDEX_CHANNEL_WRITABILITY_CHANGED;
+    static final int MASK_BIND = 1 << INDEX_BIND;
+    static final int MASK_CONNECT = 1 << INDEX_CONNECT;
+    static final int MASK_DISCONNECT = 1 << INDEX_DISCONNECT;
+    static final int MASK_CLOSE = 1 << INDEX_CLOSE;
+    static final int MASK_DEREGISTER = 1 << INDEX_DEREGISTER;
+    static final int MASK_READ = 1 << INDEX_READ;
+    static final int MASK_WRITE = 1 << INDEX_WRITE;
+    static final int MASK_FLUSH = 1 << INDEX_FLUSH;
 
     /**
      * 入站处理器所拥有的所有常量事件，与运算做加法，相当于把所有事件加到一起
@@ -57,10 +80,48 @@ public class ChannelHandlerMask {
     private static final int MASK_ALL_OUTBOUND = MASK_EXCEPTION_CAUGHT | MASK_BIND | MASK_CONNECT | MASK_DISCONNECT |
             MASK_CLOSE | MASK_DEREGISTER | MASK_READ | MASK_WRITE | MASK_FLUSH;
 
-    private static final ThreadLocal<Map<Class<? extends ChannelHandler>, Integer>> MASKS = new ThreadLocal<Map<Class<? extends ChannelHandler>, Integer>>() {
+    /**
+     * 分发表每个下标对应的事件掩码，节点的executionMask与之相与不为0，说明该节点处理这个下标对应的事件
+     */
+    private static final int[] DISPATCH_MASKS = new int[DISPATCH_TABLE_SIZE];
+
+    static {
+        for (int i = 0; i < INDEX_WRITE_AND_FLUSH; i++) {
+            DISPATCH_MASKS[i] = 1 << i;
+        }
+        DISPATCH_MASKS[INDEX_WRITE_AND_FLUSH] = MASK_WRITE | MASK_FLUSH;
+    }
+
+    /**
+     * 返回分发表下标对应的事件掩码
+     *
+     * @param index
+     * @return
+     */
+    static int dispatchMask(int index) {
+        return DISPATCH_MASKS[index];
+    }
+
+    /**
+     * 分发表下标对应的事件是否是入站事件，入站事件从前往后传播，出站事件从后往前传播
+     *
+     * @param index
+     * @return
+     */
+    static boolean isInboundIndex(int index) {
+        return (DISPATCH_MASKS[index] & MASK_ALL_INBOUND) != 0;
+    }
+
+    /**
+     * 进程级别的缓存，每个ChannelHandler的Class只会反射计算一次掩码。
+     * 之前是每个线程一个WeakHashMap，有多少个EventLoop线程，同一个Class就要反射扫描多少次，大量连接同时建立时很耗时。
+     * ClassValue是jdk专门为"给Class附加一个值"设计的，读取不加锁，也不会阻止Class被卸载
+     */
+    private static final ClassValue<Integer> MASKS = new ClassValue<Integer>() {
         @Override
-        protected Map<Class<? extends ChannelHandler>, Integer> initialValue() {
-            return new WeakHashMap<Class<? extends ChannelHandler>, Integer>(32);
+        @SuppressWarnings("unchecked")
+        protected Integer computeValue(Class<?> type) {
+            return mask0((Class<? extends ChannelHandler>) type);
         }
     };
 
@@ -71,16 +132,8 @@ public class ChannelHandlerMask {
      * @return
      */
     static int mask(Class<? extends ChannelHandler> clazz) {
-        //得到当前线程对应的存储事件类型的map，key为ChannelHandler，value为其感兴趣的事件类型的总和
-        Map<Class<? extends ChannelHandler>, Integer> cache = MASKS.get();
-        Integer mask = cache.get(clazz);
-        if (mask == null) {
-            //如果为null，说明是第一次添加，那就计算出该handler感兴趣的事件类型
-            mask = mask0(clazz);
-            //还要添加到map中
-            cache.put(clazz, mask);
-        }
-        return mask;
+        //第一次访问时会调用computeValue计算该handler感兴趣的事件类型，之后所有线程直接读取缓存的结果
+        return MASKS.get(clazz);
     }
 
     // 计算ChannelHandler感兴趣的事件类型
@@ -0,0 +1,107 @@
+package com.yy.netty.channel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 一个特殊的入站处理器，用来在channel注册到EventLoop之后，向channel的pipeline中添加用户真正的handler。
+ * initChannel执行完之后，该handler会把自己从pipeline中删除，所以它只会执行一次。
+ * 因为服务端的每个客户端channel都要执行一遍初始化，所以该handler一般是共享的，必须添加@Sharable注解
+ *
+ * @param <C>
+ */
+@ChannelHandler.Sharable
+public abstract class ChannelInitializer<C extends Channel> extends ChannelInboundHandlerAdapter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChannelInitializer.class);
+
+    // 记录正在初始化的ChannelHandlerContext，防止同一个channel的initChannel被执行两次
+    private final Set<ChannelHandlerContext> initMap = Collections.newSetFromMap(
+            new ConcurrentHashMap<ChannelHandlerContext, Boolean>());
+
+    /**
+     * 用户实现该方法，在这里向channel的pipeline中添加handler
+     *
+     * @param ch
+     * @throws Exception
+     */
+    protected abstract void initChannel(C ch) throws Exception;
+
+    @Override
+    public final void channelRegistered(ChannelHandlerContext ctx) throws Exception {
+        // 一般来说handlerAdded中就已经执行过initChannel了，这里是兜底
+        if (initChannel(ctx)) {
+            // 初始化方法中可能添加了新的handler，所以要从pipeline的头节点开始重新传播注册事件，新的handler才能收到
+            ctx.pipeline().fireChannelRegistered();
+            removeState(ctx);
+        } else {
+            ctx.fireChannelRegistered();
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        if (logger.isWarnEnabled()) {
+            logger.warn("Failed to initialize a channel. Closing: " + ctx.channel(), cause);
+        }
+        ctx.channel().unsafe().closeForcibly();
+    }
+
+    /**
+     * channel注册成功之后，pipeline会回调这里，这时候才开始执行用户的初始化逻辑
+     *
+     * @param ctx
+     * @throws Exception
+     */
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isRegistered()) {
+            if (initChannel(ctx)) {
+                removeState(ctx);
+            }
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        initMap.remove(ctx);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean initChannel(ChannelHandlerContext ctx) throws Exception {
+        // 防止重复初始化
+        if (initMap.add(ctx)) {
+            try {
+                initChannel((C) ctx.channel());
+            } catch (Throwable cause) {
+                exceptionCaught(ctx, cause);
+            } finally {
+                // 初始化结束，把自己从pipeline中删除
+                ChannelPipeline pipeline = ctx.pipeline();
+                if (pipeline.context(this) != null) {
+                    pipeline.remove(this);
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void removeState(final ChannelHandlerContext ctx) {
+        if (ctx.isRemoved()) {
+            initMap.remove(ctx);
+        } else {
+            // handlerRemoved可能还没有回调，等它执行完再删除
+            ctx.executor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    initMap.remove(ctx);
+                }
+            });
+        }
+    }
+}
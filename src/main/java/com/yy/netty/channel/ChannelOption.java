@@ -1,5 +1,6 @@
 package com.yy.netty.channel;
 
+import com.yy.netty.buffer.ByteBufAllocator;
 import com.yy.netty.util.AbstractConstant;
 import com.yy.netty.util.ConstantPool;
 
@@ -53,8 +54,14 @@ public class ChannelOption<T> extends AbstractConstant<ChannelOption<T>> {
     }
 
     // ---------------------------------------------- 下面的这些参数项都是netty作者已经创建好、内置好的常量 --------------------------------------------------
+    public static final ChannelOption<ByteBufAllocator> ALLOCATOR = valueOf("ALLOCATOR");
+    public static final ChannelOption<RecvByteBufAllocator> RCVBUF_ALLOCATOR = valueOf("RCVBUF_ALLOCATOR");
+    public static final ChannelOption<Integer> MAX_MESSAGES_PER_READ = valueOf("MAX_MESSAGES_PER_READ");
     public static final ChannelOption<Integer> CONNECT_TIMEOUT_MILLIS = valueOf("CONNECT_TIMEOUT_MILLIS");
     public static final ChannelOption<Integer> WRITE_SPIN_COUNT = valueOf("WRITE_SPIN_COUNT");
+    public static final ChannelOption<Integer> WRITE_BUFFER_HIGH_WATER_MARK = valueOf("WRITE_BUFFER_HIGH_WATER_MARK");
+    public static final ChannelOption<Integer> WRITE_BUFFER_LOW_WATER_MARK = valueOf("WRITE_BUFFER_LOW_WATER_MARK");
+    public static final ChannelOption<WriteBufferWaterMark> WRITE_BUFFER_WATER_MARK = valueOf("WRITE_BUFFER_WATER_MARK");
     public static final ChannelOption<Boolean> ALLOW_HALF_CLOSURE = valueOf("ALLOW_HALF_CLOSURE");
     public static final ChannelOption<Boolean> AUTO_READ = valueOf("AUTO_READ");
     public static final ChannelOption<Boolean> AUTO_CLOSE = valueOf("AUTO_CLOSE");
@@ -64,6 +71,12 @@ public class ChannelOption<T> extends AbstractConstant<ChannelOption<T>> {
     public static final ChannelOption<Integer> SO_RCVBUF = valueOf("SO_RCVBUF");
     public static final ChannelOption<Boolean> SO_REUSEADDR = valueOf("SO_REUSEADDR");
     public static final ChannelOption<Integer> SO_LINGER = valueOf("SO_LINGER");
+    /**
+     * 允许多个socket绑定同一个端口，内核会把新连接分散到这些socket上。
+     * epoll传输层直接通过setsockopt设置；NIO传输层只有JDK 9以上才支持（StandardSocketOptions.SO_REUSEPORT），
+     * 不支持时setOption返回false
+     */
+    public static final ChannelOption<Boolean> SO_REUSEPORT = valueOf("SO_REUSEPORT");
     /**
      * 记得我们给channel配置的参数吗option(ChannelOption.SO_BACKLOG,128)，是不是很熟悉，我们拿来即用的常量，因为作者
      * 已经创建好了，找找还有你熟悉的名字吗？这里我多说一句，不要被ChannelOption<T>中的泛型给迷惑了，觉得ChannelOption中也存储着
@@ -0,0 +1,705 @@
+package com.yy.netty.channel;
+
+import com.yy.netty.buffer.ByteBuf;
+import com.yy.netty.util.ReferenceCountUtil;
+import com.yy.netty.util.concurrent.FastThreadLocal;
+import com.yy.netty.util.internal.ObjectPool;
+import com.yy.netty.util.internal.ObjectPool.Handle;
+import com.yy.netty.util.internal.ObjectPool.ObjectCreator;
+import com.yy.netty.util.internal.SystemPropertyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * channel的写缓冲区，每个channel持有一个，只能在channel绑定的EventLoop线程中使用
+ * <p>
+ * write和flush是分开的两个动作：
+ * 1、write只是把消息包装成Entry追加到链表尾部，这时候消息处于"未刷新"状态，不会真正写到socket；
+ * 2、flush把所有"未刷新"的消息标记为"已刷新"，然后才由channel的doWrite把"已刷新"的消息写到socket中。
+ * 这样用户连续write多条消息，最后flush一次，多条消息就可以合并成一次writev系统调用（gathering write）写出去。
+ * </p>
+ * <p>
+ * 链表的结构：
+ * Entry(flushedEntry) --> ... Entry(unflushedEntry) --> ... Entry(tailEntry)
+ * flushedEntry到unflushedEntry之间是已刷新、等待写出的消息，unflushedEntry到tailEntry之间是还没有刷新的消息
+ * </p>
+ * <p>
+ * 缓冲区还会统计所有待写出的字节数（包括未刷新的），超过高水位线时把channel置为不可写，降到低水位线以下时恢复可写，
+ * 可写状态变化时在pipeline上触发channelWritabilityChanged事件，这是netty写数据时做背压控制的基础
+ * </p>
+ */
+public final class ChannelOutboundBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChannelOutboundBuffer.class);
+
+    // 每个Entry对象本身占用的内存估算值，统计待写字节数的时候要把它也算进去，否则写很多个空消息时水位线就不起作用了
+    // 64位jvm下：对象头16字节 + 6个引用字段(开启压缩指针)每个4字节 + 2个int字段 + 1个boolean字段，再加上对齐，往大了算取96
+    static final int CHANNEL_OUTBOUND_BUFFER_ENTRY_OVERHEAD =
+            SystemPropertyUtil.getInt("io.netty.transport.outboundBufferEntrySizeOverhead", 96);
+
+    private static final AtomicLongFieldUpdater<ChannelOutboundBuffer> TOTAL_PENDING_SIZE_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(ChannelOutboundBuffer.class, "totalPendingSize");
+
+    private static final AtomicIntegerFieldUpdater<ChannelOutboundBuffer> UNWRITABLE_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(ChannelOutboundBuffer.class, "unwritable");
+
+    // 每个线程缓存一个ByteBuffer数组，用来做gathering write，避免每次写都创建新数组
+    private static final FastThreadLocal<ByteBuffer[]> NIO_BUFFERS = new FastThreadLocal<ByteBuffer[]>() {
+        @Override
+        protected ByteBuffer[] initialValue() {
+            return new ByteBuffer[1024];
+        }
+    };
+
+    private final Channel channel;
+
+    // 第一个已刷新的Entry
+    private Entry flushedEntry;
+
+    // 第一个未刷新的Entry
+    private Entry unflushedEntry;
+
+    // 链表的尾节点
+    private Entry tailEntry;
+
+    // 已刷新但还没有写出去的Entry的个数
+    private int flushed;
+
+    // 最近一次调用nioBuffers()得到的ByteBuffer个数和总字节数
+    private int nioBufferCount;
+
+    private long nioBufferSize;
+
+    // 正在失败掉所有已刷新的消息，防止promise的监听器中再次写数据导致重入
+    private boolean inFail;
+
+    // 所有待写出的字节数，用户线程write时也会修改，所以要用原子更新器
+    @SuppressWarnings("UnusedDeclaration")
+    private volatile long totalPendingSize;
+
+    // 0表示可写，1表示不可写
+    @SuppressWarnings("UnusedDeclaration")
+    private volatile int unwritable;
+
+    // 在EventLoop中延迟触发channelWritabilityChanged事件的任务，复用同一个对象
+    private volatile Runnable fireChannelWritabilityChangedTask;
+
+    ChannelOutboundBuffer(AbstractChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * 把消息添加到缓冲区中，此时消息处于未刷新状态，调用addFlush()之后才会被写出去
+     *
+     * @param msg     要写的消息
+     * @param size    消息的大小
+     * @param promise 消息写完之后要通知的promise
+     */
+    public void addMessage(Object msg, int size, ChannelPromise promise) {
+        Entry entry = Entry.newInstance(msg, size, promise);
+        if (tailEntry == null) {
+            flushedEntry = null;
+        } else {
+            Entry tail = tailEntry;
+            tail.next = entry;
+        }
+        tailEntry = entry;
+        if (unflushedEntry == null) {
+            unflushedEntry = entry;
+        }
+
+        // 统计待写字节数，超过高水位线channel就变为不可写
+        incrementPendingOutboundBytes(entry.pendingSize, false);
+    }
+
+    /**
+     * 把之前添加的所有未刷新的消息标记为已刷新，已刷新的消息才会被写出去
+     */
+    public void addFlush() {
+        Entry entry = unflushedEntry;
+        if (entry != null) {
+            if (flushedEntry == null) {
+                // 之前没有已刷新的消息，那么第一个未刷新的消息就是第一个已刷新的消息
+                flushedEntry = entry;
+            }
+            do {
+                flushed++;
+                if (!entry.promise.setUncancellable()) {
+                    // promise已经被取消了，释放消息，写的时候会跳过这个Entry
+                    int pending = entry.cancel();
+                    decrementPendingOutboundBytes(pending, false, true);
+                }
+                entry = entry.next;
+            } while (entry != null);
+
+            // 所有的消息都已经刷新了
+            unflushedEntry = null;
+        }
+    }
+
+    /**
+     * 返回当前要写出去的消息，也就是第一个已刷新的消息，没有的话返回null
+     *
+     * @return
+     */
+    public Object current() {
+        Entry entry = flushedEntry;
+        if (entry == null) {
+            return null;
+        }
+        return entry.msg;
+    }
+
+    /**
+     * 移除当前已经写完的消息，释放消息并通知promise成功
+     *
+     * @return 没有已刷新的消息可以移除了就返回false
+     */
+    public boolean remove() {
+        Entry e = flushedEntry;
+        if (e == null) {
+            clearNioBuffers();
+            return false;
+        }
+        Object msg = e.msg;
+        ChannelPromise promise = e.promise;
+        int size = e.pendingSize;
+
+        removeEntry(e);
+
+        if (!e.cancelled) {
+            // 消息已经写完了，释放掉
+            ReferenceCountUtil.safeRelease(msg);
+            safeSuccess(promise);
+            decrementPendingOutboundBytes(size, false, true);
+        }
+
+        // 回收Entry
+        e.recycle();
+
+        return true;
+    }
+
+    /**
+     * 移除当前的消息，释放消息并通知promise失败
+     *
+     * @param cause
+     * @return 没有已刷新的消息可以移除了就返回false
+     */
+    public boolean remove(Throwable cause) {
+        return remove0(cause, true);
+    }
+
+    private boolean remove0(Throwable cause, boolean notifyWritability) {
+        Entry e = flushedEntry;
+        if (e == null) {
+            clearNioBuffers();
+            return false;
+        }
+        Object msg = e.msg;
+        ChannelPromise promise = e.promise;
+        int size = e.pendingSize;
+
+        removeEntry(e);
+
+        if (!e.cancelled) {
+            ReferenceCountUtil.safeRelease(msg);
+            safeFail(promise, cause);
+            decrementPendingOutboundBytes(size, false, notifyWritability);
+        }
+
+        e.recycle();
+
+        return true;
+    }
+
+    private void removeEntry(Entry e) {
+        if (--flushed == 0) {
+            // 已刷新的消息都处理完了
+            flushedEntry = null;
+            if (e == tailEntry) {
+                tailEntry = null;
+                unflushedEntry = null;
+            }
+        } else {
+            flushedEntry = e.next;
+        }
+    }
+
+    /**
+     * 一次gathering write可能写出了好几个ByteBuf，也可能只写出了某个ByteBuf的一部分，
+     * 这个方法根据实际写出的字节数，把已经完整写完的消息移除掉，对于只写了一部分的ByteBuf，移动它的读指针
+     *
+     * @param writtenBytes 实际写出的字节数
+     */
+    public void removeBytes(long writtenBytes) {
+        for (; ; ) {
+            Object msg = current();
+            if (!(msg instanceof ByteBuf)) {
+                assert writtenBytes == 0;
+                break;
+            }
+
+            final ByteBuf buf = (ByteBuf) msg;
+            final int readerIndex = buf.readerIndex();
+            final int readableBytes = buf.writerIndex() - readerIndex;
+
+            if (readableBytes <= writtenBytes) {
+                // 这个ByteBuf完整地写出去了
+                if (writtenBytes != 0) {
+                    writtenBytes -= readableBytes;
+                }
+                remove();
+            } else {
+                // 这个ByteBuf只写出去了一部分，移动读指针，剩下的下次再写
+                if (writtenBytes != 0) {
+                    buf.readerIndex(readerIndex + (int) writtenBytes);
+                }
+                break;
+            }
+        }
+        clearNioBuffers();
+    }
+
+    // 清空线程缓存的ByteBuffer数组中的引用，让ByteBuffer可以被GC
+    private void clearNioBuffers() {
+        int count = nioBufferCount;
+        if (count > 0) {
+            nioBufferCount = 0;
+            Arrays.fill(NIO_BUFFERS.get(), 0, count, null);
+        }
+    }
+
+    /**
+     * 把已刷新的ByteBuf消息转换成jdk的ByteBuffer数组，给gathering write使用。
+     * 调用之后可以通过nioBufferCount()和nioBufferSize()获取ByteBuffer的个数和总字节数
+     *
+     * @param maxCount 最多转换多少个ByteBuffer
+     * @param maxBytes 最多转换多少字节，超过这个值就不再继续转换了（但至少会转换一个）
+     * @return
+     */
+    public ByteBuffer[] nioBuffers(int maxCount, long maxBytes) {
+        assert maxCount > 0;
+        assert maxBytes > 0;
+        long nioBufferSize = 0;
+        int nioBufferCount = 0;
+        ByteBuffer[] nioBuffers = NIO_BUFFERS.get();
+        Entry entry = flushedEntry;
+        while (isFlushedEntry(entry) && entry.msg instanceof ByteBuf) {
+            if (!entry.cancelled) {
+                ByteBuf buf = (ByteBuf) entry.msg;
+                final int readerIndex = buf.readerIndex();
+                final int readableBytes = buf.writerIndex() - readerIndex;
+
+                if (readableBytes > 0) {
+                    if (maxBytes - readableBytes < nioBufferSize && nioBufferCount != 0) {
+                        // 再加上这个ByteBuf就超过maxBytes了，本次就写这么多
+                        break;
+                    }
+                    nioBufferSize += readableBytes;
+                    int count = entry.count;
+                    if (count == -1) {
+                        entry.count = count = buf.nioBufferCount();
+                    }
+                    int neededSpace = Math.min(maxCount, nioBufferCount + count);
+                    if (neededSpace > nioBuffers.length) {
+                        nioBuffers = expandNioBufferArray(nioBuffers, neededSpace, nioBufferCount);
+                        NIO_BUFFERS.set(nioBuffers);
+                    }
+                    if (count == 1) {
+                        ByteBuffer nioBuf = entry.buf;
+                        if (nioBuf == null) {
+                            // 缓存到Entry中，一次没写完的话，下次就不用再创建了
+                            entry.buf = nioBuf = buf.internalNioBuffer(readerIndex, readableBytes);
+                        }
+                        nioBuffers[nioBufferCount++] = nioBuf;
+                    } else {
+                        nioBufferCount = nioBuffers(entry, buf, nioBuffers, nioBufferCount, maxCount);
+                    }
+                    if (nioBufferCount >= maxCount) {
+                        break;
+                    }
+                }
+            }
+            entry = entry.next;
+        }
+        this.nioBufferCount = nioBufferCount;
+        this.nioBufferSize = nioBufferSize;
+
+        return nioBuffers;
+    }
+
+    private static int nioBuffers(Entry entry, ByteBuf buf, ByteBuffer[] nioBuffers, int nioBufferCount, int maxCount) {
+        ByteBuffer[] nioBufs = entry.bufs;
+        if (nioBufs == null) {
+            entry.bufs = nioBufs = buf.nioBuffers(buf.readerIndex(), buf.readableBytes());
+        }
+        for (int i = 0; i < nioBufs.length && nioBufferCount < maxCount; ++i) {
+            ByteBuffer nioBuf = nioBufs[i];
+            if (nioBuf == null) {
+                break;
+            } else if (!nioBuf.hasRemaining()) {
+                continue;
+            }
+            nioBuffers[nioBufferCount++] = nioBuf;
+        }
+        return nioBufferCount;
+    }
+
+    private static ByteBuffer[] expandNioBufferArray(ByteBuffer[] array, int neededSpace, int size) {
+        int newCapacity = array.length;
+        do {
+            // 翻倍扩容，直到能放下neededSpace个元素
+            newCapacity <<= 1;
+
+            if (newCapacity < 0) {
+                throw new IllegalStateException();
+            }
+
+        } while (neededSpace > newCapacity);
+
+        ByteBuffer[] newArray = new ByteBuffer[newCapacity];
+        System.arraycopy(array, 0, newArray, 0, size);
+
+        return newArray;
+    }
+
+    /**
+     * 最近一次调用nioBuffers()得到的ByteBuffer个数
+     *
+     * @return
+     */
+    public int nioBufferCount() {
+        return nioBufferCount;
+    }
+
+    /**
+     * 最近一次调用nioBuffers()得到的ByteBuffer的总字节数
+     *
+     * @return
+     */
+    public long nioBufferSize() {
+        return nioBufferSize;
+    }
+
+    /**
+     * 已刷新、等待写出的消息个数
+     *
+     * @return
+     */
+    public int size() {
+        return flushed;
+    }
+
+    /**
+     * 是否没有已刷新、等待写出的消息了
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return flushed == 0;
+    }
+
+    /**
+     * 增加待写字节数，用户线程write的消息还在任务队列中时调用，超过高水位线时channel变为不可写
+     *
+     * @param size
+     */
+    void incrementPendingOutboundBytes(long size) {
+        incrementPendingOutboundBytes(size, true);
+    }
+
+    private void incrementPendingOutboundBytes(long size, boolean invokeLater) {
+        if (size == 0) {
+            return;
+        }
+
+        long newWriteBufferSize = TOTAL_PENDING_SIZE_UPDATER.addAndGet(this, size);
+        if (newWriteBufferSize > channel.config().getWriteBufferHighWaterMark()) {
+            setUnwritable(invokeLater);
+        }
+    }
+
+    /**
+     * 减少待写字节数，低于低水位线时channel恢复可写
+     *
+     * @param size
+     */
+    void decrementPendingOutboundBytes(long size) {
+        decrementPendingOutboundBytes(size, true, true);
+    }
+
+    private void decrementPendingOutboundBytes(long size, boolean invokeLater, boolean notifyWritability) {
+        if (size == 0) {
+            return;
+        }
+
+        long newWriteBufferSize = TOTAL_PENDING_SIZE_UPDATER.addAndGet(this, -size);
+        if (notifyWritability && newWriteBufferSize < channel.config().getWriteBufferLowWaterMark()) {
+            setWritable(invokeLater);
+        }
+    }
+
+    /**
+     * channel当前是否可写
+     *
+     * @return
+     */
+    public boolean isWritable() {
+        return unwritable == 0;
+    }
+
+    /**
+     * 还能写多少字节channel就会变为不可写
+     *
+     * @return
+     */
+    public long bytesBeforeUnwritable() {
+        long bytes = channel.config().getWriteBufferHighWaterMark() - totalPendingSize;
+        // 待写字节数和可写状态不是原子更新的，这里可能短暂地出现bytes大于0但channel已经不可写的情况
+        if (bytes > 0) {
+            return isWritable() ? bytes : 0;
+        }
+        return 0;
+    }
+
+    /**
+     * 还要写出去多少字节channel才会恢复可写
+     *
+     * @return
+     */
+    public long bytesBeforeWritable() {
+        long bytes = totalPendingSize - channel.config().getWriteBufferLowWaterMark();
+        if (bytes > 0) {
+            return isWritable() ? 0 : bytes;
+        }
+        return 0;
+    }
+
+    /**
+     * 所有待写出的字节数
+     *
+     * @return
+     */
+    public long totalPendingWriteBytes() {
+        return totalPendingSize;
+    }
+
+    private void setWritable(boolean invokeLater) {
+        for (; ; ) {
+            final int oldValue = unwritable;
+            if (oldValue == 0) {
+                return;
+            }
+            // 不可写 -> 可写，只有CAS成功的那个线程才触发事件，保证状态每变化一次只触发一次事件
+            if (UNWRITABLE_UPDATER.compareAndSet(this, oldValue, 0)) {
+                fireChannelWritabilityChanged(invokeLater);
+                break;
+            }
+        }
+    }
+
+    private void setUnwritable(boolean invokeLater) {
+        for (; ; ) {
+            final int oldValue = unwritable;
+            if (oldValue != 0) {
+                return;
+            }
+            // 可写 -> 不可写
+            if (UNWRITABLE_UPDATER.compareAndSet(this, oldValue, 1)) {
+                fireChannelWritabilityChanged(invokeLater);
+                break;
+            }
+        }
+    }
+
+    /**
+     * 在pipeline上触发channelWritabilityChanged事件，invokeLater为true时，封装成任务交给EventLoop执行，
+     * 用户线程修改待写字节数时就是这种情况，pipeline上的事件只能在EventLoop线程中传播
+     *
+     * @param invokeLater
+     */
+    private void fireChannelWritabilityChanged(boolean invokeLater) {
+        final ChannelPipeline pipeline = channel.pipeline();
+        if (invokeLater) {
+            Runnable task = fireChannelWritabilityChangedTask;
+            if (task == null) {
+                fireChannelWritabilityChangedTask = task = new Runnable() {
+                    @Override
+                    public void run() {
+                        pipeline.fireChannelWritabilityChanged();
+                    }
+                };
+            }
+            channel.eventLoop().execute(task);
+        } else {
+            pipeline.fireChannelWritabilityChanged();
+        }
+    }
+
+    /**
+     * 写的过程中出现异常，把所有已刷新的消息都失败掉
+     *
+     * @param cause
+     * @param notify 是否要触发可写状态变化的事件，channel关闭时就没必要了
+     */
+    void failFlushed(Throwable cause, boolean notify) {
+        // promise的监听器中可能又会关闭channel，进而再次调用到这里，这里要防止重入
+        if (inFail) {
+            return;
+        }
+
+        try {
+            inFail = true;
+            for (; ; ) {
+                if (!remove0(cause, notify)) {
+                    break;
+                }
+            }
+        } finally {
+            inFail = false;
+        }
+    }
+
+    /**
+     * channel关闭时调用，把所有还没刷新的消息也失败掉并释放
+     *
+     * @param cause
+     */
+    void close(Throwable cause) {
+        if (inFail) {
+            return;
+        }
+
+        if (!isEmpty()) {
+            throw new IllegalStateException("close() must be invoked after all flushed writes are handled.");
+        }
+
+        inFail = true;
+        try {
+            Entry e = unflushedEntry;
+            while (e != null) {
+                // channel已经关闭了，只需要扣减待写字节数，不需要再触发可写状态变化的事件
+                int size = e.pendingSize;
+                TOTAL_PENDING_SIZE_UPDATER.addAndGet(this, -size);
+
+                if (!e.cancelled) {
+                    ReferenceCountUtil.safeRelease(e.msg);
+                    safeFail(e.promise, cause);
+                }
+                e = e.recycleAndGetNext();
+            }
+        } finally {
+            inFail = false;
+        }
+        clearNioBuffers();
+    }
+
+    private boolean isFlushedEntry(Entry e) {
+        return e != null && e != unflushedEntry;
+    }
+
+    private static void safeSuccess(ChannelPromise promise) {
+        // voidPromise不关心结果，直接跳过
+        if (!(promise instanceof VoidChannelPromise) && !promise.trySuccess()) {
+            logger.warn("Failed to mark a promise as success because it is done already: {}", promise);
+        }
+    }
+
+    private static void safeFail(ChannelPromise promise, Throwable cause) {
+        // voidPromise的tryFailure会把异常传播到pipeline中，但永远返回false，不能当成重复设置
+        if (!promise.tryFailure(cause) && !(promise instanceof VoidChannelPromise)) {
+            logger.warn("Failed to mark a promise as failure because it's done already: {}", promise, cause);
+        }
+    }
+
+    /**
+     * 缓冲区链表的节点，一个节点对应一条消息，节点对象通过对象池复用
+     */
+    static final class Entry {
+
+        private static final ObjectPool<Entry> RECYCLER = ObjectPool.newPool(new ObjectCreator<Entry>() {
+            @Override
+            public Entry newObject(Handle<Entry> handle) {
+                return new Entry(handle);
+            }
+        });
+
+        private final Handle<Entry> handle;
+
+        Entry next;
+
+        Object msg;
+
+        // 消息只对应一个ByteBuffer时，缓存在这里
+        ByteBuffer buf;
+
+        // 消息对应多个ByteBuffer时，缓存在这里
+        ByteBuffer[] bufs;
+
+        ChannelPromise promise;
+
+        int pendingSize;
+
+        // 消息对应的ByteBuffer个数，-1表示还没计算
+        int count = -1;
+
+        boolean cancelled;
+
+        private Entry(Handle<Entry> handle) {
+            this.handle = handle;
+        }
+
+        static Entry newInstance(Object msg, int size, ChannelPromise promise) {
+            Entry entry = RECYCLER.get();
+            entry.msg = msg;
+            entry.pendingSize = size + CHANNEL_OUTBOUND_BUFFER_ENTRY_OVERHEAD;
+            entry.promise = promise;
+            return entry;
+        }
+
+        /**
+         * 取消这个Entry，释放消息，返回取消前的大小
+         *
+         * @return
+         */
+        int cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                int pSize = pendingSize;
+
+                ReferenceCountUtil.safeRelease(msg);
+                msg = null;
+
+                pendingSize = 0;
+                buf = null;
+                bufs = null;
+                return pSize;
+            }
+            return 0;
+        }
+
+        void recycle() {
+            next = null;
+            bufs = null;
+            buf = null;
+            msg = null;
+            promise = null;
+            pendingSize = 0;
+            count = -1;
+            cancelled = false;
+            handle.recycle(this);
+        }
+
+        Entry recycleAndGetNext() {
+            Entry next = this.next;
+            recycle();
+            return next;
+        }
+    }
+}
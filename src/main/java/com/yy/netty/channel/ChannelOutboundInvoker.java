@@ -75,4 +75,13 @@ public interface ChannelOutboundInvoker {
 
     ChannelFuture newFailedFuture(Throwable cause);
 
+    /**
+     * 返回一个可以被反复使用的特殊promise，不关心操作结果的时候用它代替newPromise()，可以省掉每次创建promise的开销。
+     * 它不能添加监听器，也不能阻塞等待，操作失败时异常会传播到pipeline的exceptionCaught中。
+     * 注意：write的返回值就是传入的promise，用了它之后就不能再对返回的future做任何操作了
+     *
+     * @return
+     */
+    ChannelPromise voidPromise();
+
 }
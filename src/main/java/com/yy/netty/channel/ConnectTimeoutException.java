@@ -0,0 +1,18 @@
+package com.yy.netty.channel;
+
+import java.net.ConnectException;
+
+/**
+ * 客户端channel在CONNECT_TIMEOUT_MILLIS内没有连接成功时抛出的异常
+ */
+public class ConnectTimeoutException extends ConnectException {
+
+    private static final long serialVersionUID = 2317065249988317463L;
+
+    public ConnectTimeoutException(String msg) {
+        super(msg);
+    }
+
+    public ConnectTimeoutException() {
+    }
+}
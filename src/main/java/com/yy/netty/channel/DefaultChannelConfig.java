@@ -1,10 +1,13 @@
 package com.yy.netty.channel;
 
+import com.yy.netty.buffer.ByteBufAllocator;
+
 import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import static com.yy.netty.channel.ChannelOption.*;
+import static com.yy.netty.util.internal.ObjectUtil.checkNotNull;
 import static com.yy.netty.util.internal.ObjectUtil.checkPositive;
 import static com.yy.netty.util.internal.ObjectUtil.checkPositiveOrZero;
 
@@ -19,6 +22,9 @@ public class DefaultChannelConfig implements ChannelConfig {
 
     private static final int DEFAULT_CONNECT_TIMEOUT = 30000;
 
+    // 一次读事件中默认最多读16次
+    private static final int DEFAULT_MAX_MESSAGES_PER_READ = 16;
+
     // 原子更新器，改变是否自动读的值，自动读这个属性很重要;这里用原子更新器是为了线程安全
     private static final AtomicIntegerFieldUpdater<DefaultChannelConfig> AUTOREAD_UPDATER =
             AtomicIntegerFieldUpdater.newUpdater(DefaultChannelConfig.class, "autoRead");
@@ -26,6 +32,12 @@ public class DefaultChannelConfig implements ChannelConfig {
     // 持有一个channel,和netty的channel是一对一的关系
     protected final Channel channel;
 
+    // 通用参数：ByteBuf的内存分配器，默认是池化的分配器
+    private volatile ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+
+    // 通用参数：接收缓冲区分配器，决定每次读分配多大的缓冲区，以及一次读事件中读多少次
+    private volatile RecvByteBufAllocator rcvBufAllocator;
+
     // 通用参数：连接超时时间，默认30秒
     private volatile int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT;
 
@@ -38,8 +50,19 @@ public class DefaultChannelConfig implements ChannelConfig {
     // 通用参数：是否自动关闭，默认为true，表示自动关闭
     private volatile boolean autoClose = true;
 
+    // 通用参数：写缓冲区的高低水位线，默认低水位32K，高水位64K
+    private volatile WriteBufferWaterMark writeBufferWaterMark = WriteBufferWaterMark.DEFAULT;
+
     public DefaultChannelConfig(Channel channel) {
+        this(channel, new AdaptiveRecvByteBufAllocator());
+    }
+
+    protected DefaultChannelConfig(Channel channel, RecvByteBufAllocator allocator) {
         this.channel = channel;
+        if (allocator instanceof MaxMessagesRecvByteBufAllocator) {
+            ((MaxMessagesRecvByteBufAllocator) allocator).maxMessagesPerRead(DEFAULT_MAX_MESSAGES_PER_READ);
+        }
+        setRecvByteBufAllocator(allocator);
     }
 
 
@@ -52,8 +75,9 @@ public class DefaultChannelConfig implements ChannelConfig {
     @Override
     public Map<ChannelOption<?>, Object> getOptions() {
         // 默认支持如下ChannelOption参数
-        return getOptions(null, CONNECT_TIMEOUT_MILLIS, WRITE_SPIN_COUNT,
-                AUTO_READ, AUTO_CLOSE, SINGLE_EVENTEXECUTOR_PER_GROUP);
+        return getOptions(null, CONNECT_TIMEOUT_MILLIS, MAX_MESSAGES_PER_READ, WRITE_SPIN_COUNT, ALLOCATOR,
+                RCVBUF_ALLOCATOR, AUTO_READ, AUTO_CLOSE, WRITE_BUFFER_HIGH_WATER_MARK, WRITE_BUFFER_LOW_WATER_MARK,
+                WRITE_BUFFER_WATER_MARK, SINGLE_EVENTEXECUTOR_PER_GROUP);
     }
 
     /**
@@ -77,6 +101,7 @@ public class DefaultChannelConfig implements ChannelConfig {
 
     // 批量设置参数项及其值，实现上其实还是一个一个的setOption
     @Override
+    @SuppressWarnings("unchecked")
     public boolean setOptions(Map<ChannelOption<?>, ?> options) {
         if (options == null) {
             throw new NullPointerException("options");
@@ -100,23 +125,42 @@ public class DefaultChannelConfig implements ChannelConfig {
      * @param <T>
      */
     @Override
+    @SuppressWarnings("unchecked")
     public <T> T getOption(ChannelOption<T> option) {
         if (option == null) {
             throw new NullPointerException("option");
         }
-        // 以下是四个支持的默认参数项，找到各自对应的参数值
+        // 以下是支持的默认参数项，找到各自对应的参数值
         if (option == CONNECT_TIMEOUT_MILLIS) {
             return (T) Integer.valueOf(getConnectTimeoutMillis());
         }
+        if (option == MAX_MESSAGES_PER_READ) {
+            return (T) Integer.valueOf(getMaxMessagesPerRead());
+        }
         if (option == WRITE_SPIN_COUNT) {
             return (T) Integer.valueOf(getWriteSpinCount());
         }
+        if (option == ALLOCATOR) {
+            return (T) getAllocator();
+        }
+        if (option == RCVBUF_ALLOCATOR) {
+            return (T) getRecvByteBufAllocator();
+        }
         if (option == AUTO_READ) {
             return (T) Boolean.valueOf(isAutoRead());
         }
         if (option == AUTO_CLOSE) {
             return (T) Boolean.valueOf(isAutoClose());
         }
+        if (option == WRITE_BUFFER_HIGH_WATER_MARK) {
+            return (T) Integer.valueOf(getWriteBufferHighWaterMark());
+        }
+        if (option == WRITE_BUFFER_LOW_WATER_MARK) {
+            return (T) Integer.valueOf(getWriteBufferLowWaterMark());
+        }
+        if (option == WRITE_BUFFER_WATER_MARK) {
+            return (T) getWriteBufferWaterMark();
+        }
         return null;
     }
 
@@ -132,15 +176,27 @@ public class DefaultChannelConfig implements ChannelConfig {
     @Override
     public <T> boolean setOption(ChannelOption<T> option, T value) {
         validate(option, value);
-        // 目前支持对应着四个成员变量的四个参数项
+        // 目前支持的参数项，各自对应着一个成员变量
         if (option == CONNECT_TIMEOUT_MILLIS) {
             setConnectTimeoutMillis((Integer) value);
+        } else if (option == MAX_MESSAGES_PER_READ) {
+            setMaxMessagesPerRead((Integer) value);
         } else if (option == WRITE_SPIN_COUNT) {
             setWriteSpinCount((Integer) value);
+        } else if (option == ALLOCATOR) {
+            setAllocator((ByteBufAllocator) value);
+        } else if (option == RCVBUF_ALLOCATOR) {
+            setRecvByteBufAllocator((RecvByteBufAllocator) value);
         } else if (option == AUTO_READ) {
             setAutoRead((Boolean) value);
         } else if (option == AUTO_CLOSE) {
             setAutoClose((Boolean) value);
+        } else if (option == WRITE_BUFFER_HIGH_WATER_MARK) {
+            setWriteBufferHighWaterMark((Integer) value);
+        } else if (option == WRITE_BUFFER_LOW_WATER_MARK) {
+            setWriteBufferLowWaterMark((Integer) value);
+        } else if (option == WRITE_BUFFER_WATER_MARK) {
+            setWriteBufferWaterMark((WriteBufferWaterMark) value);
         } else {
             return false;
         }
@@ -182,6 +238,57 @@ public class DefaultChannelConfig implements ChannelConfig {
         return this;
     }
 
+    /**
+     * 一次读事件中最多读多少次，这个值实际上是存在RecvByteBufAllocator中的
+     *
+     * @return
+     */
+    @Override
+    public int getMaxMessagesPerRead() {
+        try {
+            MaxMessagesRecvByteBufAllocator allocator = getRecvByteBufAllocator();
+            return allocator.maxMessagesPerRead();
+        } catch (ClassCastException e) {
+            throw new IllegalStateException("getRecvByteBufAllocator() must return an object of type " +
+                    "MaxMessagesRecvByteBufAllocator", e);
+        }
+    }
+
+    @Override
+    public ChannelConfig setMaxMessagesPerRead(int maxMessagesPerRead) {
+        try {
+            MaxMessagesRecvByteBufAllocator allocator = getRecvByteBufAllocator();
+            allocator.maxMessagesPerRead(maxMessagesPerRead);
+            return this;
+        } catch (ClassCastException e) {
+            throw new IllegalStateException("getRecvByteBufAllocator() must return an object of type " +
+                    "MaxMessagesRecvByteBufAllocator", e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends RecvByteBufAllocator> T getRecvByteBufAllocator() {
+        return (T) rcvBufAllocator;
+    }
+
+    @Override
+    public ChannelConfig setRecvByteBufAllocator(RecvByteBufAllocator allocator) {
+        rcvBufAllocator = checkNotNull(allocator, "allocator");
+        return this;
+    }
+
+    @Override
+    public ByteBufAllocator getAllocator() {
+        return allocator;
+    }
+
+    @Override
+    public ChannelConfig setAllocator(ByteBufAllocator allocator) {
+        this.allocator = checkNotNull(allocator, "allocator");
+        return this;
+    }
+
     @Override
     public boolean isAutoRead() {
         //默认为true的意思
@@ -217,27 +324,58 @@ public class DefaultChannelConfig implements ChannelConfig {
         return this;
     }
 
-    // 这个参数目前还没有，后面看情况补充
     @Override
     public int getWriteBufferHighWaterMark() {
-        return 0;
+        return writeBufferWaterMark.high();
     }
 
-    // 这个参数目前还没有，后面看情况补充
+    /**
+     * 单独设置高水位线，WriteBufferWaterMark是不可变对象，所以这里是用新的高水位线和原来的低水位线创建一个新的对象替换掉
+     *
+     * @param writeBufferHighWaterMark
+     * @return
+     */
     @Override
     public ChannelConfig setWriteBufferHighWaterMark(int writeBufferHighWaterMark) {
-        return null;
+        checkPositiveOrZero(writeBufferHighWaterMark, "writeBufferHighWaterMark");
+        WriteBufferWaterMark waterMark = writeBufferWaterMark;
+        if (writeBufferHighWaterMark < waterMark.low()) {
+            throw new IllegalArgumentException(
+                    "writeBufferHighWaterMark cannot be less than " +
+                            "writeBufferLowWaterMark (" + waterMark.low() + "): " +
+                            writeBufferHighWaterMark);
+        }
+        writeBufferWaterMark = new WriteBufferWaterMark(waterMark.low(), writeBufferHighWaterMark, false);
+        return this;
     }
 
-    // 这个参数目前还没有，后面看情况补充
     @Override
     public int getWriteBufferLowWaterMark() {
-        return 0;
+        return writeBufferWaterMark.low();
     }
 
-    // 这个参数目前还没有，后面看情况补充
     @Override
     public ChannelConfig setWriteBufferLowWaterMark(int writeBufferLowWaterMark) {
-        return null;
+        checkPositiveOrZero(writeBufferLowWaterMark, "writeBufferLowWaterMark");
+        WriteBufferWaterMark waterMark = writeBufferWaterMark;
+        if (writeBufferLowWaterMark > waterMark.high()) {
+            throw new IllegalArgumentException(
+                    "writeBufferLowWaterMark cannot be greater than " +
+                            "writeBufferHighWaterMark (" + waterMark.high() + "): " +
+                            writeBufferLowWaterMark);
+        }
+        writeBufferWaterMark = new WriteBufferWaterMark(writeBufferLowWaterMark, waterMark.high(), false);
+        return this;
+    }
+
+    @Override
+    public WriteBufferWaterMark getWriteBufferWaterMark() {
+        return writeBufferWaterMark;
+    }
+
+    @Override
+    public ChannelConfig setWriteBufferWaterMark(WriteBufferWaterMark writeBufferWaterMark) {
+        this.writeBufferWaterMark = checkNotNull(writeBufferWaterMark, "writeBufferWaterMark");
+        return this;
     }
 }
@@ -1,15 +1,86 @@
 package com.yy.netty.channel;
 
+import com.yy.netty.util.concurrent.FastThreadLocal;
+import com.yy.netty.util.internal.SystemPropertyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.net.NetworkInterface;
+import java.security.SecureRandom;
+import java.util.Enumeration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * 默认的ChannelId实现，保证ChannelId的唯一性
- * 源码里这个类中调用了很多操作系统方法，我就不引进这个了（不重要哈），引入这个类就需要引入更多不必要的类。所以我直接用最简单的方式代替吧，就搞一个时间戳作为channelId。
+ * <p>
+ * 每个channel创建时都会生成一个id，连接频繁建立和关闭时这里就是热点路径了。所以id直接用两个long存储，
+ * 生成时不使用全局共享的原子计数器，也不做任何字符串格式化，文本形式等到真正用到的时候再生成并缓存起来。
+ * </p>
+ * <p>
+ * 两个long的布局如下：
+ * hi = 机器id(26位) | 进程id(22位) | 线程编号(16位)
+ * lo = 毫秒时间戳(42位) | 线程内序号(22位)
+ * 机器id取自网卡的MAC地址，取不到就用随机数；线程编号是每个线程第一次生成id时分配的，之后同一个线程内只需要把序号加1，
+ * 序号的初始值是随机的，这就是id中的随机部分。同一个线程在一毫秒内生成的id超过400万个序号才会重复，所以id是唯一的。
+ * </p>
  */
-public class DefaultChannelId implements ChannelId {
+public final class DefaultChannelId implements ChannelId {
 
     private static final long serialVersionUID = 3884076183504074063L;
 
-    // channel Id
-    private String longValue;
+    private static final Logger logger = LoggerFactory.getLogger(DefaultChannelId.class);
+
+    private static final int MACHINE_ID_BITS = 26;
+    private static final int PROCESS_ID_BITS = 22;
+    private static final int THREAD_ID_BITS = 16;
+    private static final int SEQUENCE_BITS = 22;
+
+    private static final long MACHINE_ID_MASK = (1L << MACHINE_ID_BITS) - 1;
+    private static final long PROCESS_ID_MASK = (1L << PROCESS_ID_BITS) - 1;
+    private static final int THREAD_ID_MASK = (1 << THREAD_ID_BITS) - 1;
+    private static final int SEQUENCE_MASK = (1 << SEQUENCE_BITS) - 1;
+
+    // 机器id和进程id在进程内是不变的，提前拼好，作为hi的高48位
+    private static final long PROCESS_PREFIX;
+
+    // 给线程分配编号用，每个线程只会用到一次
+    private static final AtomicInteger nextThreadId = new AtomicInteger();
+
+    // 每个线程自己的编号和序号
+    private static final FastThreadLocal<Generator> generators = new FastThreadLocal<Generator>() {
+        @Override
+        protected Generator initialValue() {
+            return new Generator();
+        }
+    };
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    static {
+        long machineId = defaultMachineId() & MACHINE_ID_MASK;
+        long processId = defaultProcessId() & PROCESS_ID_MASK;
+        PROCESS_PREFIX = (machineId << (PROCESS_ID_BITS + THREAD_ID_BITS)) | (processId << THREAD_ID_BITS);
+        if (logger.isDebugEnabled()) {
+            logger.debug("-Dio.netty.machineId: {}, -Dio.netty.processId: {}", machineId, processId);
+        }
+    }
+
+    /**
+     * 线程私有的id生成器
+     */
+    private static final class Generator {
+        // 线程编号，已经移到了hi中对应的位置上
+        final long prefix;
+        // 线程内序号
+        int sequence;
+
+        Generator() {
+            prefix = PROCESS_PREFIX | (nextThreadId.getAndIncrement() & THREAD_ID_MASK);
+            sequence = ThreadLocalRandom.current().nextInt();
+        }
+    }
 
     /**
      * 创建一个channelId对象
@@ -17,31 +88,184 @@ public class DefaultChannelId implements ChannelId {
      * @return
      */
     public static DefaultChannelId newInstance() {
-        return new DefaultChannelId();
+        Generator generator = generators.get();
+        int sequence = generator.sequence++;
+        long lo = (System.currentTimeMillis() << SEQUENCE_BITS) | (sequence & SEQUENCE_MASK);
+        return new DefaultChannelId(generator.prefix, lo);
     }
 
-    private DefaultChannelId() {
-        // 用时间戳来简单表达channelId的唯一性，这里简单处理了，不重要
-        long currentTimeMillis = System.currentTimeMillis();
-        this.longValue = String.valueOf(currentTimeMillis);
+    private final long hi;
+    private final long lo;
+    // 提前算好，放进Map中时不需要每次计算
+    private final int hashCode;
+
+    // 文本形式都是懒加载的，大多数channel的id从来都不会被转换成字符串
+    private transient String shortValue;
+    private transient String longValue;
+
+    private DefaultChannelId(long hi, long lo) {
+        this.hi = hi;
+        this.lo = lo;
+        long h = hi * 31 + lo;
+        hashCode = (int) (h ^ (h >>> 32));
     }
 
+    /**
+     * 短文本形式，lo的低32位，包含了序号和时间戳的低位，同一个进程中一般不会重复，但不保证全局唯一
+     *
+     * @return
+     */
     @Override
     public String asShortText() {
-        return null;
+        String shortValue = this.shortValue;
+        if (shortValue == null) {
+            char[] buf = new char[8];
+            appendHex(buf, 0, lo, 8);
+            this.shortValue = shortValue = new String(buf);
+        }
+        return shortValue;
     }
 
+    /**
+     * 长文本形式，机器id-进程id-线程编号-时间戳-序号，全局唯一
+     *
+     * @return
+     */
     @Override
     public String asLongText() {
         String longValue = this.longValue;
         if (longValue == null) {
-            this.longValue = longValue =String.valueOf(System.currentTimeMillis());
+            this.longValue = longValue = newLongValue();
         }
         return longValue;
     }
 
+    private String newLongValue() {
+        // 每一段的十六进制位数：26位->7，22位->6，16位->4，42位->11，22位->6，再加上4个分隔符
+        char[] buf = new char[7 + 6 + 4 + 11 + 6 + 4];
+        int i = 0;
+        i = appendHex(buf, i, hi >>> (PROCESS_ID_BITS + THREAD_ID_BITS), 7);
+        buf[i++] = '-';
+        i = appendHex(buf, i, (hi >>> THREAD_ID_BITS) & PROCESS_ID_MASK, 6);
+        buf[i++] = '-';
+        i = appendHex(buf, i, hi & THREAD_ID_MASK, 4);
+        buf[i++] = '-';
+        i = appendHex(buf, i, lo >>> SEQUENCE_BITS, 11);
+        buf[i++] = '-';
+        appendHex(buf, i, lo & SEQUENCE_MASK, 6);
+        return new String(buf);
+    }
+
+    // 把value的低digits个十六进制位写入buf，返回写完之后的下标
+    private static int appendHex(char[] buf, int offset, long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            buf[offset + i] = HEX[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+        return offset + digits;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof DefaultChannelId)) {
+            return false;
+        }
+        DefaultChannelId other = (DefaultChannelId) obj;
+        return hashCode == other.hashCode && lo == other.lo && hi == other.hi;
+    }
+
     @Override
     public int compareTo(ChannelId o) {
-        return 0;
+        if (this == o) {
+            return 0;
+        }
+        if (o instanceof DefaultChannelId) {
+            DefaultChannelId other = (DefaultChannelId) o;
+            int res = Long.compare(hi, other.hi);
+            return res != 0 ? res : Long.compare(lo, other.lo);
+        }
+        return asLongText().compareTo(o.asLongText());
+    }
+
+    @Override
+    public String toString() {
+        return asShortText();
+    }
+
+    /**
+     * 机器id，可以用-Dio.netty.machineId指定，否则取第一个非回环网卡的MAC地址，都取不到就用随机数
+     *
+     * @return
+     */
+    private static long defaultMachineId() {
+        String custom = SystemPropertyUtil.get("io.netty.machineId");
+        if (custom != null) {
+            try {
+                return Long.parseLong(custom.trim());
+            } catch (NumberFormatException e) {
+                logger.warn("-Dio.netty.machineId: {} (malformed, using the default)", custom);
+            }
+        }
+        try {
+            Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+            while (interfaces != null && interfaces.hasMoreElements()) {
+                NetworkInterface iface = interfaces.nextElement();
+                if (iface.isLoopback()) {
+                    continue;
+                }
+                byte[] mac = iface.getHardwareAddress();
+                if (mac == null || mac.length < 6) {
+                    continue;
+                }
+                long value = 0;
+                for (byte b : mac) {
+                    value = (value << 8) | (b & 0xff);
+                }
+                if (value == 0) {
+                    continue;
+                }
+                // 把48位的MAC地址折叠成机器id需要的位数
+                return value ^ (value >>> MACHINE_ID_BITS);
+            }
+        } catch (Throwable t) {
+            logger.debug("Failed to read the hardware address, using a random machine id", t);
+        }
+        return new SecureRandom().nextLong();
+    }
+
+    /**
+     * 进程id，可以用-Dio.netty.processId指定，否则从RuntimeMXBean的名字（pid@hostname）中解析，解析不出来就用随机数
+     *
+     * @return
+     */
+    private static long defaultProcessId() {
+        String custom = SystemPropertyUtil.get("io.netty.processId");
+        if (custom == null) {
+            try {
+                String name = ManagementFactory.getRuntimeMXBean().getName();
+                int atIndex = name.indexOf('@');
+                if (atIndex > 0) {
+                    custom = name.substring(0, atIndex);
+                }
+            } catch (Throwable t) {
+                logger.debug("Could not invoke RuntimeMXBean.getName()", t);
+            }
+        }
+        if (custom != null) {
+            try {
+                return Long.parseLong(custom.trim());
+            } catch (NumberFormatException e) {
+                logger.debug("Malformed process id: {}, using a random process id", custom);
+            }
+        }
+        return new SecureRandom().nextLong();
     }
 }
@@ -1,7 +1,9 @@
 package com.yy.netty.channel;
 
+import com.yy.netty.util.ReferenceCountUtil;
 import com.yy.netty.util.concurrent.EventExecutor;
 import com.yy.netty.util.concurrent.EventExecutorGroup;
+import com.yy.netty.util.concurrent.FastThreadLocal;
 import com.yy.netty.util.internal.ObjectUtil;
 import com.yy.netty.util.internal.StringUtil;
 import org.slf4j.Logger;
@@ -11,6 +13,10 @@ import java.net.SocketAddress;
 import java.util.*;
 import java.util.concurrent.RejectedExecutionException;
 
+import static com.yy.netty.channel.ChannelHandlerMask.DISPATCH_TABLE_SIZE;
+import static com.yy.netty.channel.ChannelHandlerMask.dispatchMask;
+import static com.yy.netty.channel.ChannelHandlerMask.isInboundIndex;
+
 /**
  * 默认的ChannelPipeline实现类,定位为整个链表pipeline的顶层工具类，为用户提供各种链表上业务流程触发操作+链表查询维护操作
  */
@@ -24,9 +30,9 @@ public class DefaultChannelPipeline implements ChannelPipeline {
     private static final String TAIL_NAME = generateName0(TailContext.class);
 
     // key: ChannelHandler的name， value: ChannelHandler
-    private static final ThreadLocal<Map<Class<?>, String>> nameCaches =
+    private static final FastThreadLocal<Map<Class<?>, String>> nameCaches =
             //nameCaches中缓存着每个ChannelHandler的名字
-            new ThreadLocal<Map<Class<?>, String>>() {
+            new FastThreadLocal<Map<Class<?>, String>>() {
                 @Override
                 protected Map<Class<?>, String> initialValue() {
                     return new WeakHashMap<Class<?>, String>();
@@ -46,6 +52,9 @@ public class DefaultChannelPipeline implements ChannelPipeline {
 
     private ChannelFuture succeededFuture;
 
+    // 整个channel共享的voidPromise，操作失败时异常会传播到pipeline中
+    private final VoidChannelPromise voidPromise;
+
     // 为true则是第一次注册
     private boolean firstRegistration = true;
 
@@ -58,12 +67,14 @@ public class DefaultChannelPipeline implements ChannelPipeline {
 
     protected DefaultChannelPipeline(Channel channel) {
         this.channel = ObjectUtil.checkNotNull(channel, "channel");
+        voidPromise = new VoidChannelPromise(channel, true);
         //因为我没有引入CompleteFuture，所以这一行先注释了
         //succeededFuture = new DefaultChannelPromise(channel, null);
         tail = new TailContext(this);
         head = new HeadContext(this);
         head.next = tail;
         tail.prev = head;
+        rebuildDispatchTables();
     }
 
 
@@ -73,104 +84,305 @@ public class DefaultChannelPipeline implements ChannelPipeline {
 
     @Override
     public Channel channel() {
-        return null;
+        return channel;
     }
 
     @Override
     public List<String> names() {
-        return Collections.emptyList();
+        List<String> list = new ArrayList<String>();
+        AbstractChannelHandlerContext ctx = head.next;
+        for (;;) {
+            if (ctx == tail) {
+                return list;
+            }
+            list.add(ctx.name());
+            ctx = ctx.next;
+        }
     }
 
     @Override
     public Map<String, ChannelHandler> toMap() {
-        return Collections.emptyMap();
+        Map<String, ChannelHandler> map = new LinkedHashMap<String, ChannelHandler>();
+        AbstractChannelHandlerContext ctx = head.next;
+        for (;;) {
+            if (ctx == tail) {
+                return map;
+            }
+            map.put(ctx.name(), ctx.handler());
+            ctx = ctx.next;
+        }
+    }
+
+    // ------------------------------ 链表维护相关方法 ----------------------------------
+
+    /**
+     * 把ChannelHandler包装成链表节点
+     *
+     * @param group   用户可以指定一个执行器组来执行该handler，为null时使用channel绑定的EventLoop
+     * @param name
+     * @param handler
+     * @return
+     */
+    private AbstractChannelHandlerContext newContext(EventExecutorGroup group, String name, ChannelHandler handler) {
+        return new DefaultChannelHandlerContext(this, group == null ? null : group.next(), name, handler);
     }
 
     @Override
-    public ChannelPipeline addFirst(String name, ChannelHandler handler) {
-        return null;
+    public final ChannelPipeline addFirst(String name, ChannelHandler handler) {
+        return addFirst(null, name, handler);
     }
 
     @Override
-    public ChannelPipeline addFirst(EventExecutorGroup group, String name, ChannelHandler handler) {
-        return null;
+    public final ChannelPipeline addFirst(EventExecutorGroup group, String name, ChannelHandler handler) {
+        final AbstractChannelHandlerContext newCtx;
+        synchronized (this) {
+            checkMultiplicity(handler);
+            name = filterName(name, handler);
+            newCtx = newContext(group, name, handler);
+            addFirst0(newCtx);
+            // channel还没有注册到EventLoop上，那么handlerAdded要等注册成功之后再回调
+            if (!registered) {
+                newCtx.setAddPending();
+                callHandlerCallbackLater(newCtx, true);
+                return this;
+            }
+            EventExecutor executor = newCtx.executor();
+            if (!executor.inEventLoop(Thread.currentThread())) {
+                callHandlerAddedInEventLoop(newCtx, executor);
+                return this;
+            }
+        }
+        callHandlerAdded0(newCtx);
+        return this;
+    }
+
+    private void addFirst0(AbstractChannelHandlerContext newCtx) {
+        AbstractChannelHandlerContext nextCtx = head.next;
+        newCtx.prev = head;
+        newCtx.next = nextCtx;
+        head.next = newCtx;
+        nextCtx.prev = newCtx;
+        rebuildDispatchTables();
     }
 
     @Override
-    public ChannelPipeline addLast(String name, ChannelHandler handler) {
-        return null;
+    public final ChannelPipeline addLast(String name, ChannelHandler handler) {
+        return addLast(null, name, handler);
     }
 
     @Override
-    public ChannelPipeline addLast(EventExecutorGroup group, String name, ChannelHandler handler) {
-        return null;
+    public final ChannelPipeline addLast(EventExecutorGroup group, String name, ChannelHandler handler) {
+        final AbstractChannelHandlerContext newCtx;
+        // 添加节点的过程要加锁，因为用户线程和EventLoop线程可能同时在修改链表
+        synchronized (this) {
+            // 检查非共享的handler是否被重复添加了
+            checkMultiplicity(handler);
+            // 把handler包装成链表节点
+            newCtx = newContext(group, filterName(name, handler), handler);
+            addLast0(newCtx);
+            // channel还没有注册到EventLoop上，那么handlerAdded要等注册成功之后再回调，
+            // 先把节点状态设置为ADD_PENDING，然后创建一个回调任务放到pendingHandlerCallbackHead链表中
+            if (!registered) {
+                newCtx.setAddPending();
+                callHandlerCallbackLater(newCtx, true);
+                return this;
+            }
+            EventExecutor executor = newCtx.executor();
+            if (!executor.inEventLoop(Thread.currentThread())) {
+                callHandlerAddedInEventLoop(newCtx, executor);
+                return this;
+            }
+        }
+        callHandlerAdded0(newCtx);
+        return this;
+    }
+
+    // 把节点插入到尾节点之前
+    private void addLast0(AbstractChannelHandlerContext newCtx) {
+        AbstractChannelHandlerContext prev = tail.prev;
+        newCtx.prev = prev;
+        newCtx.next = tail;
+        prev.next = newCtx;
+        tail.prev = newCtx;
+        rebuildDispatchTables();
     }
 
     @Override
-    public ChannelPipeline addBefore(String baseName, String name, ChannelHandler handler) {
-        return null;
+    public final ChannelPipeline addBefore(String baseName, String name, ChannelHandler handler) {
+        return addBefore(null, baseName, name, handler);
     }
 
     @Override
-    public ChannelPipeline addBefore(EventExecutorGroup group, String baseName, String name, ChannelHandler handler) {
-        return null;
+    public final ChannelPipeline addBefore(EventExecutorGroup group, String baseName, String name, ChannelHandler handler) {
+        final AbstractChannelHandlerContext newCtx;
+        final AbstractChannelHandlerContext ctx;
+        synchronized (this) {
+            checkMultiplicity(handler);
+            name = filterName(name, handler);
+            ctx = getContextOrDie(baseName);
+            newCtx = newContext(group, name, handler);
+            addBefore0(ctx, newCtx);
+            if (!registered) {
+                newCtx.setAddPending();
+                callHandlerCallbackLater(newCtx, true);
+                return this;
+            }
+            EventExecutor executor = newCtx.executor();
+            if (!executor.inEventLoop(Thread.currentThread())) {
+                callHandlerAddedInEventLoop(newCtx, executor);
+                return this;
+            }
+        }
+        callHandlerAdded0(newCtx);
+        return this;
+    }
+
+    private void addBefore0(AbstractChannelHandlerContext ctx, AbstractChannelHandlerContext newCtx) {
+        newCtx.prev = ctx.prev;
+        newCtx.next = ctx;
+        ctx.prev.next = newCtx;
+        ctx.prev = newCtx;
+        rebuildDispatchTables();
     }
 
     @Override
-    public ChannelPipeline addAfter(String baseName, String name, ChannelHandler handler) {
-        return null;
+    public final ChannelPipeline addAfter(String baseName, String name, ChannelHandler handler) {
+        return addAfter(null, baseName, name, handler);
     }
 
     @Override
-    public ChannelPipeline addAfter(EventExecutorGroup group, String baseName, String name, ChannelHandler handler) {
-        return null;
+    public final ChannelPipeline addAfter(EventExecutorGroup group, String baseName, String name, ChannelHandler handler) {
+        final AbstractChannelHandlerContext newCtx;
+        final AbstractChannelHandlerContext ctx;
+        synchronized (this) {
+            checkMultiplicity(handler);
+            name = filterName(name, handler);
+            ctx = getContextOrDie(baseName);
+            newCtx = newContext(group, name, handler);
+            addAfter0(ctx, newCtx);
+            if (!registered) {
+                newCtx.setAddPending();
+                callHandlerCallbackLater(newCtx, true);
+                return this;
+            }
+            EventExecutor executor = newCtx.executor();
+            if (!executor.inEventLoop(Thread.currentThread())) {
+                callHandlerAddedInEventLoop(newCtx, executor);
+                return this;
+            }
+        }
+        callHandlerAdded0(newCtx);
+        return this;
+    }
+
+    private void addAfter0(AbstractChannelHandlerContext ctx, AbstractChannelHandlerContext newCtx) {
+        newCtx.prev = ctx;
+        newCtx.next = ctx.next;
+        ctx.next.prev = newCtx;
+        ctx.next = newCtx;
+        rebuildDispatchTables();
     }
 
     @Override
-    public ChannelPipeline addFirst(ChannelHandler... handlers) {
-        return null;
+    public final ChannelPipeline addFirst(ChannelHandler... handlers) {
+        return addFirst(null, handlers);
     }
 
     @Override
-    public ChannelPipeline addFirst(EventExecutorGroup group, ChannelHandler... handlers) {
-        return null;
+    public final ChannelPipeline addFirst(EventExecutorGroup group, ChannelHandler... handlers) {
+        ObjectUtil.checkNotNull(handlers, "handlers");
+        if (handlers.length == 0 || handlers[0] == null) {
+            return this;
+        }
+        int size;
+        for (size = 1; size < handlers.length; size++) {
+            if (handlers[size] == null) {
+                break;
+            }
+        }
+        // 倒着添加，保证添加之后的顺序和参数的顺序一致
+        for (int i = size - 1; i >= 0; i--) {
+            ChannelHandler h = handlers[i];
+            addFirst(group, null, h);
+        }
+        return this;
     }
 
     @Override
-    public ChannelPipeline addLast(ChannelHandler... handlers) {
-        return null;
+    public final ChannelPipeline addLast(ChannelHandler... handlers) {
+        return addLast(null, handlers);
     }
 
     @Override
-    public ChannelPipeline addLast(EventExecutorGroup group, ChannelHandler... handlers) {
-        return null;
+    public final ChannelPipeline addLast(EventExecutorGroup group, ChannelHandler... handlers) {
+        ObjectUtil.checkNotNull(handlers, "handlers");
+        for (ChannelHandler h : handlers) {
+            if (h == null) {
+                break;
+            }
+            addLast(group, null, h);
+        }
+        return this;
     }
 
     @Override
-    public ChannelPipeline remove(ChannelHandler handler) {
-        return null;
+    public final ChannelPipeline remove(ChannelHandler handler) {
+        remove(getContextOrDie(handler));
+        return this;
     }
 
     @Override
-    public ChannelHandler remove(String name) {
-        return null;
+    public final ChannelHandler remove(String name) {
+        return remove(getContextOrDie(name)).handler();
     }
 
+    @SuppressWarnings("unchecked")
     @Override
-    public <T extends ChannelHandler> T remove(Class<T> handlerType) {
-        return null;
+    public final <T extends ChannelHandler> T remove(Class<T> handlerType) {
+        return (T) remove(getContextOrDie(handlerType)).handler();
     }
 
     @Override
-    public ChannelHandler removeFirst() {
-        return null;
+    public final ChannelHandler removeFirst() {
+        if (head.next == tail) {
+            throw new NoSuchElementException();
+        }
+        return remove(head.next).handler();
     }
 
     @Override
-    public ChannelHandler removeLast() {
-        return null;
+    public final ChannelHandler removeLast() {
+        if (head.next == tail) {
+            throw new NoSuchElementException();
+        }
+        return remove(tail.prev).handler();
+    }
+
+    private AbstractChannelHandlerContext remove(final AbstractChannelHandlerContext ctx) {
+        assert ctx != head && ctx != tail;
+        synchronized (this) {
+            remove0(ctx);
+            // channel还没有注册，那么handlerRemoved也要等注册成功之后再回调
+            if (!registered) {
+                callHandlerCallbackLater(ctx, false);
+                return ctx;
+            }
+            EventExecutor executor = ctx.executor();
+            if (!executor.inEventLoop(Thread.currentThread())) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callHandlerRemoved0(ctx);
+                    }
+                });
+                return ctx;
+            }
+        }
+        callHandlerRemoved0(ctx);
+        return ctx;
     }
 
+    // 替换节点的功能暂时用不到，先不实现
     @Override
     public ChannelPipeline replace(ChannelHandler oldHandler, String newName, ChannelHandler newHandler) {
         return null;
@@ -187,188 +399,251 @@ public class DefaultChannelPipeline implements ChannelPipeline {
     }
 
     @Override
-    public ChannelHandler first() {
-        return null;
+    public final ChannelHandler first() {
+        ChannelHandlerContext first = firstContext();
+        if (first == null) {
+            return null;
+        }
+        return first.handler();
     }
 
     @Override
-    public ChannelHandlerContext firstContext() {
-        return null;
+    public final ChannelHandlerContext firstContext() {
+        AbstractChannelHandlerContext first = head.next;
+        if (first == tail) {
+            return null;
+        }
+        return first;
     }
 
     @Override
-    public ChannelHandler last() {
-        return null;
+    public final ChannelHandler last() {
+        AbstractChannelHandlerContext last = tail.prev;
+        if (last == head) {
+            return null;
+        }
+        return last.handler();
     }
 
     @Override
-    public ChannelHandlerContext lastContext() {
-        return null;
+    public final ChannelHandlerContext lastContext() {
+        AbstractChannelHandlerContext last = tail.prev;
+        if (last == head) {
+            return null;
+        }
+        return last;
     }
 
     @Override
-    public ChannelHandler get(String name) {
-        return null;
+    public final ChannelHandler get(String name) {
+        ChannelHandlerContext ctx = context(name);
+        if (ctx == null) {
+            return null;
+        } else {
+            return ctx.handler();
+        }
     }
 
+    @SuppressWarnings("unchecked")
     @Override
-    public <T extends ChannelHandler> T get(Class<T> handlerType) {
-        return null;
+    public final <T extends ChannelHandler> T get(Class<T> handlerType) {
+        ChannelHandlerContext ctx = context(handlerType);
+        if (ctx == null) {
+            return null;
+        } else {
+            return (T) ctx.handler();
+        }
     }
 
     @Override
-    public ChannelHandlerContext context(ChannelHandler handler) {
-        return null;
+    public final ChannelHandlerContext context(ChannelHandler handler) {
+        ObjectUtil.checkNotNull(handler, "handler");
+        AbstractChannelHandlerContext ctx = head.next;
+        for (;;) {
+            if (ctx == null) {
+                return null;
+            }
+            if (ctx.handler() == handler) {
+                return ctx;
+            }
+            ctx = ctx.next;
+        }
     }
 
     @Override
-    public ChannelHandlerContext context(String name) {
-        return null;
+    public final ChannelHandlerContext context(String name) {
+        return context0(ObjectUtil.checkNotNull(name, "name"));
     }
 
     @Override
-    public ChannelHandlerContext context(Class<? extends ChannelHandler> handlerType) {
-        return null;
+    public final ChannelHandlerContext context(Class<? extends ChannelHandler> handlerType) {
+        ObjectUtil.checkNotNull(handlerType, "handlerType");
+        AbstractChannelHandlerContext ctx = head.next;
+        for (;;) {
+            if (ctx == null) {
+                return null;
+            }
+            if (handlerType.isAssignableFrom(ctx.handler().getClass())) {
+                return ctx;
+            }
+            ctx = ctx.next;
+        }
     }
 
+    // ------------------------------ 入站相关方法，都是从头节点开始往后传播 ----------------------------------
+
     @Override
-    public ChannelPipeline fireChannelRead(Object msg) {
-        return null;
+    public final ChannelPipeline fireChannelRead(Object msg) {
+        AbstractChannelHandlerContext.invokeChannelRead(head, msg);
+        return this;
     }
 
     @Override
-    public ChannelPipeline fireChannelReadComplete() {
-        return null;
+    public final ChannelPipeline fireChannelReadComplete() {
+        AbstractChannelHandlerContext.invokeChannelReadComplete(head);
+        return this;
     }
 
     @Override
     public ChannelPipeline fireChannelWritabilityChanged() {
-        return null;
+        // 从头节点开始传播可写状态变化的事件
+        AbstractChannelHandlerContext.invokeChannelWritabilityChanged(head);
+        return this;
     }
 
     @Override
-    public ChannelPipeline fireChannelRegistered() {
-        return null;
+    public final ChannelPipeline fireChannelRegistered() {
+        AbstractChannelHandlerContext.invokeChannelRegistered(head);
+        return this;
     }
 
     @Override
-    public ChannelPipeline fireChannelUnregistered() {
-        return null;
+    public final ChannelPipeline fireChannelUnregistered() {
+        AbstractChannelHandlerContext.invokeChannelUnregistered(head);
+        return this;
     }
 
     @Override
-    public ChannelPipeline fireChannelActive() {
-        return null;
+    public final ChannelPipeline fireChannelActive() {
+        AbstractChannelHandlerContext.invokeChannelActive(head);
+        return this;
     }
 
     @Override
-    public ChannelPipeline fireChannelInactive() {
-        return null;
+    public final ChannelPipeline fireChannelInactive() {
+        AbstractChannelHandlerContext.invokeChannelInactive(head);
+        return this;
     }
 
     @Override
-    public ChannelPipeline fireExceptionCaught(Throwable cause) {
-        return null;
+    public final ChannelPipeline fireExceptionCaught(Throwable cause) {
+        AbstractChannelHandlerContext.invokeExceptionCaught(head, cause);
+        return this;
     }
 
     @Override
-    public ChannelPipeline fireUserEventTriggered(Object event) {
-        return null;
+    public final ChannelPipeline fireUserEventTriggered(Object event) {
+        AbstractChannelHandlerContext.invokeUserEventTriggered(head, event);
+        return this;
     }
 
+    // ------------------------------ 出站相关方法，都是从尾节点开始往前传播 ----------------------------------
+
     @Override
-    public ChannelFuture bind(SocketAddress localAddress) {
-        return null;
+    public final ChannelFuture bind(SocketAddress localAddress) {
+        return tail.bind(localAddress);
     }
 
     @Override
-    public ChannelFuture bind(SocketAddress localAddress, ChannelPromise promise) {
-        return null;
+    public final ChannelFuture bind(SocketAddress localAddress, ChannelPromise promise) {
+        return tail.bind(localAddress, promise);
     }
 
     @Override
-    public ChannelFuture connect(SocketAddress remoteAddress) {
-        return null;
+    public final ChannelFuture connect(SocketAddress remoteAddress) {
+        return tail.connect(remoteAddress);
     }
 
     @Override
-    public ChannelFuture connect(SocketAddress remoteAddress, SocketAddress localAddress) {
-        return null;
+    public final ChannelFuture connect(SocketAddress remoteAddress, SocketAddress localAddress) {
+        return tail.connect(remoteAddress, localAddress);
     }
 
     @Override
-    public ChannelFuture connect(SocketAddress remoteAddress, ChannelPromise promise) {
-        return null;
+    public final ChannelFuture connect(SocketAddress remoteAddress, ChannelPromise promise) {
+        return tail.connect(remoteAddress, promise);
     }
 
     @Override
-    public ChannelFuture connect(SocketAddress remoteAddress, SocketAddress localAddress, ChannelPromise promise) {
-        return null;
+    public final ChannelFuture connect(SocketAddress remoteAddress, SocketAddress localAddress, ChannelPromise promise) {
+        return tail.connect(remoteAddress, localAddress, promise);
     }
 
     @Override
-    public ChannelFuture disconnect() {
-        return null;
+    public final ChannelFuture disconnect() {
+        return tail.disconnect();
     }
 
     @Override
-    public ChannelFuture disconnect(ChannelPromise promise) {
-        return null;
+    public final ChannelFuture disconnect(ChannelPromise promise) {
+        return tail.disconnect(promise);
     }
 
     @Override
-    public ChannelFuture close() {
-        return null;
+    public final ChannelFuture close() {
+        return tail.close();
     }
 
     @Override
-    public ChannelFuture close(ChannelPromise promise) {
-        return null;
+    public final ChannelFuture close(ChannelPromise promise) {
+        return tail.close(promise);
     }
 
     @Override
-    public ChannelFuture deregister() {
-        return null;
+    public final ChannelFuture deregister() {
+        return tail.deregister();
     }
 
     @Override
-    public ChannelFuture deregister(ChannelPromise promise) {
-        return null;
+    public final ChannelFuture deregister(ChannelPromise promise) {
+        return tail.deregister(promise);
     }
 
     @Override
-    public ChannelOutboundInvoker read() {
-        return null;
+    public final ChannelOutboundInvoker read() {
+        tail.read();
+        return this;
     }
 
     @Override
-    public ChannelFuture write(Object msg) {
-        return null;
+    public final ChannelFuture write(Object msg) {
+        return tail.write(msg);
     }
 
     @Override
-    public ChannelFuture write(Object msg, ChannelPromise promise) {
-        return null;
+    public final ChannelFuture write(Object msg, ChannelPromise promise) {
+        return tail.write(msg, promise);
     }
 
     @Override
-    public ChannelPipeline flush() {
-        return null;
+    public final ChannelPipeline flush() {
+        tail.flush();
+        return this;
     }
 
     @Override
-    public ChannelFuture writeAndFlush(Object msg) {
-        return null;
+    public final ChannelFuture writeAndFlush(Object msg) {
+        return tail.writeAndFlush(msg);
     }
 
     @Override
-    public ChannelFuture writeAndFlush(Object msg, ChannelPromise promise) {
-        return null;
+    public final ChannelFuture writeAndFlush(Object msg, ChannelPromise promise) {
+        return tail.writeAndFlush(msg, promise);
     }
 
     @Override
-    public ChannelPromise newPromise() {
-        return null;
+    public final ChannelPromise newPromise() {
+        return new DefaultChannelPromise(channel);
     }
 
     @Override
@@ -382,10 +657,148 @@ public class DefaultChannelPipeline implements ChannelPipeline {
     }
 
     @Override
-    public Iterator<Map.Entry<String, ChannelHandler>> iterator() {
+    public final ChannelPromise voidPromise() {
+        return voidPromise;
+    }
+
+    /**
+     * 增加channel写缓冲区的待写字节数，其他线程提交写任务时调用
+     *
+     * @param size
+     */
+    final void incrementPendingOutboundBytes(long size) {
+        ChannelOutboundBuffer buffer = channel.unsafe().outboundBuffer();
+        if (buffer != null) {
+            buffer.incrementPendingOutboundBytes(size);
+        }
+    }
+
+    final void decrementPendingOutboundBytes(long size) {
+        ChannelOutboundBuffer buffer = channel.unsafe().outboundBuffer();
+        if (buffer != null) {
+            buffer.decrementPendingOutboundBytes(size);
+        }
+    }
+
+    @Override
+    public final Iterator<Map.Entry<String, ChannelHandler>> iterator() {
+        return toMap().entrySet().iterator();
+    }
+
+    // ------------------------------ 内部工具方法 ----------------------------------
+
+    /**
+     * 检查handler能否被添加，没有添加@Sharable注解的handler只能被添加到一个pipeline中一次
+     *
+     * @param handler
+     */
+    private static void checkMultiplicity(ChannelHandler handler) {
+        if (handler instanceof ChannelHandlerAdapter) {
+            ChannelHandlerAdapter h = (ChannelHandlerAdapter) handler;
+            if (!h.isSharable() && h.added) {
+                throw new ChannelPipelineException(h.getClass().getName() + " is not a @Sharable handler, so can't be added or removed multiple times.");
+            }
+            h.added = true;
+        }
+    }
+
+    /**
+     * 用户没有指定名字就生成一个，指定了名字就检查名字是否重复
+     *
+     * @param name
+     * @param handler
+     * @return
+     */
+    private String filterName(String name, ChannelHandler handler) {
+        if (name == null) {
+            return generateName(handler);
+        }
+        checkDuplicateName(name);
+        return name;
+    }
+
+    private void checkDuplicateName(String name) {
+        if (context0(name) != null) {
+            throw new IllegalArgumentException("Duplicate handler name: " + name);
+        }
+    }
+
+    /**
+     * 生成handler的名字，格式为"类名#序号"，同一个pipeline中有同类型的handler时序号递增
+     *
+     * @param handler
+     * @return
+     */
+    private String generateName(ChannelHandler handler) {
+        Map<Class<?>, String> cache = nameCaches.get();
+        Class<?> handlerType = handler.getClass();
+        String name = cache.get(handlerType);
+        if (name == null) {
+            name = generateName0(handlerType);
+            cache.put(handlerType, name);
+        }
+        if (context0(name) != null) {
+            String baseName = name.substring(0, name.length() - 1);
+            for (int i = 1;; i++) {
+                String newName = baseName + i;
+                if (context0(newName) == null) {
+                    name = newName;
+                    break;
+                }
+            }
+        }
+        return name;
+    }
+
+    private AbstractChannelHandlerContext context0(String name) {
+        AbstractChannelHandlerContext context = head.next;
+        while (context != tail) {
+            if (context.name().equals(name)) {
+                return context;
+            }
+            context = context.next;
+        }
         return null;
     }
 
+    private AbstractChannelHandlerContext getContextOrDie(String name) {
+        AbstractChannelHandlerContext ctx = (AbstractChannelHandlerContext) context(name);
+        if (ctx == null) {
+            throw new NoSuchElementException(name);
+        } else {
+            return ctx;
+        }
+    }
+
+    private AbstractChannelHandlerContext getContextOrDie(ChannelHandler handler) {
+        AbstractChannelHandlerContext ctx = (AbstractChannelHandlerContext) context(handler);
+        if (ctx == null) {
+            throw new NoSuchElementException(handler.getClass().getName());
+        } else {
+            return ctx;
+        }
+    }
+
+    private AbstractChannelHandlerContext getContextOrDie(Class<? extends ChannelHandler> handlerType) {
+        AbstractChannelHandlerContext ctx = (AbstractChannelHandlerContext) context(handlerType);
+        if (ctx == null) {
+            throw new NoSuchElementException(handlerType.getName());
+        } else {
+            return ctx;
+        }
+    }
+
+    // handler指定了别的执行器，handlerAdded要交给该执行器去回调
+    private void callHandlerAddedInEventLoop(final AbstractChannelHandlerContext newCtx, EventExecutor executor) {
+        newCtx.setAddPending();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callHandlerAdded0(newCtx);
+            }
+        });
+    }
+
 
     final void invokeHandlerAddedIfNeeded() {
         assert channel.eventLoop().inEventLoop(Thread.currentThread());
@@ -460,11 +873,63 @@ public class DefaultChannelPipeline implements ChannelPipeline {
      * 在当前pipeline上删除指定的节点
      * @param ctx
      */
-    private static void remove0(AbstractChannelHandlerContext ctx) {
+    private void remove0(AbstractChannelHandlerContext ctx) {
         AbstractChannelHandlerContext prev = ctx.prev;
         AbstractChannelHandlerContext next = ctx.next;
         prev.next = next;
         next.prev = prev;
+        rebuildDispatchTables();
+    }
+
+    /**
+     * 链表每次变化之后，重新计算每个节点的分发表。
+     * 先把链表拍平成数组，入站事件从后往前、出站事件从前往后扫描一遍，扫描时记录每种事件最近的处理节点，
+     * 就得到了每个节点上每种事件的下一个处理节点。事件传播时只需要一次数组下标访问，不用再沿着链表逐个判断掩码。
+     * 每个节点的分发表都是新创建的数组，创建好之后整体替换，不会修改正在被其他线程读取的旧数组。
+     * 链表的修改远比事件传播少，所以每次都整体重建。
+     * 有些地方调用remove0时没有持有锁，所以这个方法自己加锁，synchronized是可重入的
+     */
+    private synchronized void rebuildDispatchTables() {
+        int size = 0;
+        for (AbstractChannelHandlerContext ctx = head; ctx != null; ctx = ctx.next) {
+            size++;
+        }
+        AbstractChannelHandlerContext[] ctxs = new AbstractChannelHandlerContext[size];
+        int i = 0;
+        for (AbstractChannelHandlerContext ctx = head; ctx != null; ctx = ctx.next) {
+            ctxs[i++] = ctx;
+        }
+
+        AbstractChannelHandlerContext[][] tables = new AbstractChannelHandlerContext[size][DISPATCH_TABLE_SIZE];
+        // nearest[index]表示扫描到当前位置时，最近的一个处理index对应事件的节点
+        AbstractChannelHandlerContext[] nearest = new AbstractChannelHandlerContext[DISPATCH_TABLE_SIZE];
+        // 入站事件：从后往前扫描
+        for (i = size - 1; i >= 0; i--) {
+            for (int index = 0; index < DISPATCH_TABLE_SIZE; index++) {
+                if (isInboundIndex(index)) {
+                    tables[i][index] = nearest[index];
+                    if ((ctxs[i].executionMask & dispatchMask(index)) != 0) {
+                        nearest[index] = ctxs[i];
+                    }
+                }
+            }
+        }
+        Arrays.fill(nearest, null);
+        // 出站事件：从前往后扫描
+        for (i = 0; i < size; i++) {
+            for (int index = 0; index < DISPATCH_TABLE_SIZE; index++) {
+                if (!isInboundIndex(index)) {
+                    tables[i][index] = nearest[index];
+                    if ((ctxs[i].executionMask & dispatchMask(index)) != 0) {
+                        nearest[index] = ctxs[i];
+                    }
+                }
+            }
+        }
+
+        for (i = 0; i < size; i++) {
+            ctxs[i].dispatchTable = tables[i];
+        }
     }
 
     /**
@@ -598,8 +1063,8 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         try {
             logger.debug("Discarded inbound message {} that reached at the tail of the pipeline. Please check your pipeline configuration.", msg);
         } finally {
-            //当该引用计数减至为0时，该ByteBuf即可回收，待后面实现
-            //ReferenceCountUtil.release(msg);
+            //当该引用计数减至为0时，该ByteBuf即可回收
+            ReferenceCountUtil.release(msg);
         }
     }
 
@@ -609,7 +1074,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
     protected void onUnhandledInboundUserEventTriggered(Object evt) {
         // This may not be a configuration error and so don't log anything.
         // The event may be superfluous for the current pipeline configuration.
-        //ReferenceCountUtil.release(evt);
+        ReferenceCountUtil.release(evt);
     }
 
 
@@ -620,7 +1085,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         try {
             logger.warn("An exceptionCaught() event was fired, and it reached at the tail of the pipeline. It usually means the last handler in the pipeline did not handle the exception.", cause);
         } finally {
-            //ReferenceCountUtil.release(cause);
+            ReferenceCountUtil.release(cause);
         }
     }
 
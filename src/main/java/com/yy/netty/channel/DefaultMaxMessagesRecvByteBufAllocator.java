@@ -0,0 +1,138 @@
+package com.yy.netty.channel;
+
+import com.yy.netty.buffer.ByteBuf;
+import com.yy.netty.buffer.ByteBufAllocator;
+
+import static com.yy.netty.util.internal.ObjectUtil.checkPositive;
+
+/**
+ * MaxMessagesRecvByteBufAllocator的默认抽象实现，实现了读循环的控制逻辑，缓冲区大小怎么猜留给子类实现
+ * <p>
+ * 读循环继续的条件：
+ * 1、channel是自动读的；
+ * 2、上一次读把缓冲区读满了，说明socket中很可能还有数据（respectMaybeMoreData为true时才判断）；
+ * 3、读的次数还没达到maxMessagesPerRead；
+ * 4、本次读循环确实读到了数据（服务端channel读的是连接，不是字节，会忽略这个条件）
+ * </p>
+ */
+public abstract class DefaultMaxMessagesRecvByteBufAllocator implements MaxMessagesRecvByteBufAllocator {
+
+    // 服务端channel读的是连接，读到的字节数永远是0，所以要忽略字节数的判断
+    private final boolean ignoreBytesRead;
+
+    private volatile int maxMessagesPerRead;
+
+    // 上一次读没有把缓冲区读满，说明socket中的数据已经读完了，就不要再读了，省一次必然读到0的系统调用
+    private volatile boolean respectMaybeMoreData = true;
+
+    public DefaultMaxMessagesRecvByteBufAllocator() {
+        this(1);
+    }
+
+    public DefaultMaxMessagesRecvByteBufAllocator(int maxMessagesPerRead) {
+        this(maxMessagesPerRead, false);
+    }
+
+    DefaultMaxMessagesRecvByteBufAllocator(int maxMessagesPerRead, boolean ignoreBytesRead) {
+        this.ignoreBytesRead = ignoreBytesRead;
+        maxMessagesPerRead(maxMessagesPerRead);
+    }
+
+    @Override
+    public int maxMessagesPerRead() {
+        return maxMessagesPerRead;
+    }
+
+    @Override
+    public MaxMessagesRecvByteBufAllocator maxMessagesPerRead(int maxMessagesPerRead) {
+        checkPositive(maxMessagesPerRead, "maxMessagesPerRead");
+        this.maxMessagesPerRead = maxMessagesPerRead;
+        return this;
+    }
+
+    public DefaultMaxMessagesRecvByteBufAllocator respectMaybeMoreData(boolean respectMaybeMoreData) {
+        this.respectMaybeMoreData = respectMaybeMoreData;
+        return this;
+    }
+
+    public final boolean respectMaybeMoreData() {
+        return respectMaybeMoreData;
+    }
+
+    /**
+     * 实现了读循环控制逻辑的Handle，子类只需要实现guess()
+     */
+    public abstract class MaxMessageHandle implements Handle {
+
+        private ChannelConfig config;
+
+        private int maxMessagePerRead;
+
+        private int totalMessages;
+
+        private int totalBytesRead;
+
+        private int attemptedBytesRead;
+
+        private int lastBytesRead;
+
+        private final boolean respectMaybeMoreData = DefaultMaxMessagesRecvByteBufAllocator.this.respectMaybeMoreData;
+
+        @Override
+        public void reset(ChannelConfig config) {
+            this.config = config;
+            maxMessagePerRead = maxMessagesPerRead();
+            totalMessages = totalBytesRead = 0;
+        }
+
+        @Override
+        public ByteBuf allocate(ByteBufAllocator alloc) {
+            return alloc.ioBuffer(guess());
+        }
+
+        @Override
+        public final void incMessagesRead(int amt) {
+            totalMessages += amt;
+        }
+
+        @Override
+        public void lastBytesRead(int bytes) {
+            lastBytesRead = bytes;
+            if (bytes > 0) {
+                totalBytesRead += bytes;
+            }
+        }
+
+        @Override
+        public final int lastBytesRead() {
+            return lastBytesRead;
+        }
+
+        @Override
+        public boolean continueReading() {
+            return config.isAutoRead() &&
+                    (!respectMaybeMoreData || attemptedBytesRead == lastBytesRead) &&
+                    totalMessages < maxMessagePerRead &&
+                    (ignoreBytesRead || totalBytesRead > 0);
+        }
+
+        @Override
+        public void readComplete() {
+        }
+
+        @Override
+        public int attemptedBytesRead() {
+            return attemptedBytesRead;
+        }
+
+        @Override
+        public void attemptedBytesRead(int bytes) {
+            attemptedBytesRead = bytes;
+        }
+
+        // 累加溢出的话就当作读了Integer.MAX_VALUE个字节
+        protected final int totalBytesRead() {
+            return totalBytesRead < 0 ? Integer.MAX_VALUE : totalBytesRead;
+        }
+    }
+}
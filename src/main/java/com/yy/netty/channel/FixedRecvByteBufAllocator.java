@@ -0,0 +1,41 @@
+package com.yy.netty.channel;
+
+import static com.yy.netty.util.internal.ObjectUtil.checkPositive;
+
+/**
+ * 固定大小的接收缓冲区分配器，每次都分配同样大小的缓冲区
+ */
+public class FixedRecvByteBufAllocator extends DefaultMaxMessagesRecvByteBufAllocator {
+
+    private final int bufferSize;
+
+    private final class HandleImpl extends MaxMessageHandle {
+
+        private final int bufferSize;
+
+        HandleImpl(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+
+        @Override
+        public int guess() {
+            return bufferSize;
+        }
+    }
+
+    public FixedRecvByteBufAllocator(int bufferSize) {
+        checkPositive(bufferSize, "bufferSize");
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public Handle newHandle() {
+        return new HandleImpl(bufferSize);
+    }
+
+    @Override
+    public FixedRecvByteBufAllocator respectMaybeMoreData(boolean respectMaybeMoreData) {
+        super.respectMaybeMoreData(respectMaybeMoreData);
+        return this;
+    }
+}
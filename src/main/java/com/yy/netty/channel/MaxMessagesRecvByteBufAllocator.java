@@ -0,0 +1,22 @@
+package com.yy.netty.channel;
+
+/**
+ * 限制一次读事件中最多读多少次的RecvByteBufAllocator
+ */
+public interface MaxMessagesRecvByteBufAllocator extends RecvByteBufAllocator {
+
+    /**
+     * 一次读事件中最多读多少次，也就是读循环最多循环多少次
+     *
+     * @return
+     */
+    int maxMessagesPerRead();
+
+    /**
+     * 设置一次读事件中最多读多少次
+     *
+     * @param maxMessagesPerRead
+     * @return
+     */
+    MaxMessagesRecvByteBufAllocator maxMessagesPerRead(int maxMessagesPerRead);
+}
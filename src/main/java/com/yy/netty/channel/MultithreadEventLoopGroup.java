@@ -2,7 +2,9 @@ package com.yy.netty.channel;
 
 import com.yy.netty.util.NettyRuntime;
 import com.yy.netty.util.concurrent.DefaultThreadFactory;
+import com.yy.netty.util.concurrent.EventExecutor;
 import com.yy.netty.util.concurrent.EventExecutorChooserFactory;
+import com.yy.netty.util.concurrent.LoadAwareEventExecutorChooserFactory;
 import com.yy.netty.util.concurrent.MultithreadEventExecutorGroup;
 import com.yy.netty.util.internal.SystemPropertyUtil;
 
@@ -16,6 +18,27 @@ public abstract class MultithreadEventLoopGroup extends MultithreadEventExecutor
 
     private static final int DEFAULT_EVENT_LOOP_THREADS;
 
+    /**
+     * 注册在EventLoop上的channel数
+     */
+    public static final LoadAwareEventExecutorChooserFactory.LoadMetric REGISTERED_CHANNELS =
+            new LoadAwareEventExecutorChooserFactory.LoadMetric() {
+                @Override
+                public long load(EventExecutor executor) {
+                    if (executor instanceof SingleThreadEventLoop) {
+                        return ((SingleThreadEventLoop) executor).registeredChannels();
+                    }
+                    return -1;
+                }
+            };
+
+    /**
+     * 选注册的channel数最少的EventLoop，适合连接的存活时间相差很大的场景，比如网关，
+     * 轮询只保证了历史上分配的连接数一样多，而这里保证的是当前的连接数一样多
+     */
+    public static final EventExecutorChooserFactory LEAST_CONNECTIONS =
+            new LoadAwareEventExecutorChooserFactory(REGISTERED_CHANNELS, false);
+
     static {
         DEFAULT_EVENT_LOOP_THREADS = Math.max(1, SystemPropertyUtil.getInt("io.netty.eventLoopThreads", NettyRuntime.availableProcessors() * 2));
     }
@@ -31,6 +54,18 @@ public abstract class MultithreadEventLoopGroup extends MultithreadEventExecutor
         super(nThreads == 0 ? DEFAULT_EVENT_LOOP_THREADS : nThreads, threadFactory, args);
     }
 
+    /**
+     * 构造方法
+     *
+     * @param nThreads          线程数，即执行器的个数，每个执行器都是一个单线程的试执行器
+     * @param threadFactory     线程工厂
+     * @param chooserFactory    执行器选择器工厂，比如LEAST_CONNECTIONS、LoadAwareEventExecutorChooserFactory.LEAST_BUSY
+     * @param args              SelectorProvider,selectStrategyFactory,RejectedExecutionHandler
+     */
+    protected MultithreadEventLoopGroup(int nThreads, ThreadFactory threadFactory, EventExecutorChooserFactory chooserFactory, Object... args) {
+        super(nThreads == 0 ? DEFAULT_EVENT_LOOP_THREADS : nThreads, threadFactory, chooserFactory, args);
+    }
+
     /**
      * 构造方法
      *
@@ -0,0 +1,94 @@
+package com.yy.netty.channel;
+
+import com.yy.netty.buffer.ByteBuf;
+import com.yy.netty.buffer.ByteBufAllocator;
+
+/**
+ * 接收缓冲区分配器，决定channel每次从socket读数据时分配多大的ByteBuf，以及一次读事件中要连续读多少次
+ * <p>
+ * 真正分配内存的还是ByteBufAllocator，这个类只负责"猜"下一次读要用多大的缓冲区：
+ * 缓冲区分配小了，一次读不完socket中的数据，要多读几次；分配大了，又浪费内存。
+ * 所以每个channel都会持有一个自己的Handle，根据最近几次实际读到的字节数来调整下一次分配的大小
+ * </p>
+ */
+public interface RecvByteBufAllocator {
+
+    /**
+     * 创建一个新的Handle，Handle中记录了本次读循环的状态，每个channel一个，不能在channel之间共享
+     *
+     * @return
+     */
+    Handle newHandle();
+
+    interface Handle {
+
+        /**
+         * 分配一个接收缓冲区，大小由guess()决定，缓冲区要足够大，能读进所有的数据，又要足够小，不浪费内存
+         *
+         * @param alloc 真正分配内存的分配器
+         * @return
+         */
+        ByteBuf allocate(ByteBufAllocator alloc);
+
+        /**
+         * 猜测下一次读要分配的缓冲区大小
+         *
+         * @return
+         */
+        int guess();
+
+        /**
+         * 每次读事件开始时调用，重置本次读循环中累计的读取次数和字节数
+         *
+         * @param config
+         */
+        void reset(ChannelConfig config);
+
+        /**
+         * 累加本次读循环中读到的消息数
+         *
+         * @param numMessages
+         */
+        void incMessagesRead(int numMessages);
+
+        /**
+         * 设置最近一次读到的字节数
+         *
+         * @param bytes
+         */
+        void lastBytesRead(int bytes);
+
+        /**
+         * 获取最近一次读到的字节数
+         *
+         * @return
+         */
+        int lastBytesRead();
+
+        /**
+         * 设置本次读尝试要读的字节数，也就是缓冲区的可写字节数
+         *
+         * @param bytes
+         */
+        void attemptedBytesRead(int bytes);
+
+        /**
+         * 获取本次读尝试要读的字节数
+         *
+         * @return
+         */
+        int attemptedBytesRead();
+
+        /**
+         * 判断是否要继续读
+         *
+         * @return
+         */
+        boolean continueReading();
+
+        /**
+         * 本次读事件的读循环结束时调用
+         */
+        void readComplete();
+    }
+}
@@ -0,0 +1,22 @@
+package com.yy.netty.channel;
+
+/**
+ * 服务端channel使用的RecvByteBufAllocator，服务端channel读的是客户端连接，不需要分配缓冲区，
+ * 只需要用它来控制一次OP_ACCEPT事件中最多接收多少个连接
+ */
+public final class ServerChannelRecvByteBufAllocator extends DefaultMaxMessagesRecvByteBufAllocator {
+
+    public ServerChannelRecvByteBufAllocator() {
+        super(1, true);
+    }
+
+    @Override
+    public Handle newHandle() {
+        return new MaxMessageHandle() {
+            @Override
+            public int guess() {
+                return 128;
+            }
+        };
+    }
+}
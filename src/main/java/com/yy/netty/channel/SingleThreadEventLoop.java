@@ -8,6 +8,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Queue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * @Description:单线程事件循环，只要在netty中见到eventloop，就可以把该类视为线程类
@@ -19,6 +20,20 @@ public abstract class SingleThreadEventLoop extends SingleThreadEventExecutor im
     //任务队列的容量，默认是Integer的最大值
     protected static final int DEFAULT_MAX_PENDING_TASKS = Integer.MAX_VALUE;
 
+    private static final AtomicIntegerFieldUpdater<SingleThreadEventLoop> PENDING_REGISTRATIONS_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(SingleThreadEventLoop.class, "pendingRegistrations");
+
+    // 已经提交了注册、但是注册还没有完成的channel数
+    private volatile int pendingRegistrations;
+
+    // 注册完成（无论成功失败）之后，把channel从正在注册的channel数中减掉
+    private final ChannelFutureListener pendingRegistrationListener = new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) throws Exception {
+            PENDING_REGISTRATIONS_UPDATER.decrementAndGet(SingleThreadEventLoop.this);
+        }
+    };
+
 
     /**
      * 构造方法
@@ -73,10 +88,32 @@ public abstract class SingleThreadEventLoop extends SingleThreadEventExecutor im
     @Override
     public ChannelFuture register(ChannelPromise promise) {
         ObjectUtil.checkNotNull(promise, "promise");
+        // 注册是异步的，channel要等EventLoop线程执行了注册任务之后才会真正绑定到selector上，
+        // 这期间先把它计入正在注册的channel数，否则一批连接同时到来时，按连接数选择EventLoop的选择器会把它们全都分给同一个EventLoop
+        PENDING_REGISTRATIONS_UPDATER.incrementAndGet(this);
+        promise.addListener(pendingRegistrationListener);
         // 具体channel会自动将自己注册到该单线程EventLoop中（其实就是将channel自己绑定到具体单线程EventLoop的Selector上）
         promise.channel().unsafe().register(this, promise);
         return promise;
     }
 
+    /**
+     * 返回注册在该EventLoop上的channel数，包括还在注册过程中的channel，子类不支持统计时返回-1
+     *
+     * @return
+     */
+    public int registeredChannels() {
+        return -1;
+    }
+
+    /**
+     * 返回已经提交了注册、但是注册还没有完成的channel数
+     *
+     * @return
+     */
+    protected final int pendingRegistrations() {
+        return pendingRegistrations;
+    }
+
 
 }
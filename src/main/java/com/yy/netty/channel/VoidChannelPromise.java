@@ -0,0 +1,223 @@
+package com.yy.netty.channel;
+
+import com.yy.netty.util.concurrent.AbstractFuture;
+import com.yy.netty.util.concurrent.Future;
+import com.yy.netty.util.concurrent.GenericFutureListener;
+import com.yy.netty.util.internal.ObjectUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个特殊的ChannelPromise，每个channel共享一个，用在根本不关心操作结果的场景，比如绝大多数的write和writeAndFlush。
+ * 普通的write每次都要创建一个DefaultChannelPromise，写出去之后还要去设置结果、检查监听器，消息量很大的时候这些都是白做的。
+ * 该promise不保存任何结果，永远不会结束，也不能添加监听器、不能阻塞等待；操作成功时什么都不做，
+ * 操作失败时，如果fireException为true，就把异常交给pipeline的exceptionCaught去处理，这样失败不会被悄悄吞掉
+ */
+public final class VoidChannelPromise extends AbstractFuture<Void> implements ChannelPromise {
+
+    private final Channel channel;
+
+    // 为true时，操作失败的异常会传播到pipeline的exceptionCaught中
+    private final boolean fireException;
+
+    /**
+     * 构造方法
+     *
+     * @param channel
+     * @param fireException 操作失败时是否要把异常传播到pipeline中
+     */
+    public VoidChannelPromise(final Channel channel, boolean fireException) {
+        this.channel = ObjectUtil.checkNotNull(channel, "channel");
+        this.fireException = fireException;
+    }
+
+    @Override
+    public VoidChannelPromise addListener(GenericFutureListener<? extends Future<? super Void>> listener) {
+        fail();
+        return this;
+    }
+
+    @SafeVarargs
+    @Override
+    public final VoidChannelPromise addListeners(GenericFutureListener<? extends Future<? super Void>>... listeners) {
+        fail();
+        return this;
+    }
+
+    @Override
+    public VoidChannelPromise removeListener(GenericFutureListener<? extends Future<? super Void>> listener) {
+        // NOOP
+        return this;
+    }
+
+    @SafeVarargs
+    @Override
+    public final VoidChannelPromise removeListeners(GenericFutureListener<? extends Future<? super Void>>... listeners) {
+        // NOOP
+        return this;
+    }
+
+    @Override
+    public VoidChannelPromise await() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        return this;
+    }
+
+    @Override
+    public boolean await(long timeout, TimeUnit unit) {
+        fail();
+        return false;
+    }
+
+    @Override
+    public boolean await(long timeoutMillis) {
+        fail();
+        return false;
+    }
+
+    @Override
+    public VoidChannelPromise awaitUninterruptibly() {
+        fail();
+        return this;
+    }
+
+    @Override
+    public boolean awaitUninterruptibly(long timeout, TimeUnit unit) {
+        fail();
+        return false;
+    }
+
+    @Override
+    public boolean awaitUninterruptibly(long timeoutMillis) {
+        fail();
+        return false;
+    }
+
+    @Override
+    public Channel channel() {
+        return channel;
+    }
+
+    @Override
+    public boolean isDone() {
+        return false;
+    }
+
+    @Override
+    public boolean isSuccess() {
+        return false;
+    }
+
+    @Override
+    public boolean setUncancellable() {
+        return true;
+    }
+
+    @Override
+    public boolean isCancellable() {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public Throwable cause() {
+        return null;
+    }
+
+    @Override
+    public VoidChannelPromise sync() {
+        fail();
+        return this;
+    }
+
+    @Override
+    public VoidChannelPromise syncUninterruptibly() {
+        fail();
+        return this;
+    }
+
+    @Override
+    public VoidChannelPromise setFailure(Throwable cause) {
+        fireException0(cause);
+        return this;
+    }
+
+    @Override
+    public VoidChannelPromise setSuccess() {
+        return this;
+    }
+
+    @Override
+    public boolean tryFailure(Throwable cause) {
+        fireException0(cause);
+        return false;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean trySuccess() {
+        return false;
+    }
+
+    @Override
+    public VoidChannelPromise setSuccess(Void result) {
+        return this;
+    }
+
+    @Override
+    public boolean trySuccess(Void result) {
+        return false;
+    }
+
+    @Override
+    public Void getNow() {
+        return null;
+    }
+
+    @Override
+    public boolean isVoid() {
+        return true;
+    }
+
+    /**
+     * 需要关心结果的时候，换成一个普通的promise，失败时同样会把异常传播到pipeline中
+     *
+     * @return
+     */
+    @Override
+    public ChannelPromise unvoid() {
+        ChannelPromise promise = new DefaultChannelPromise(channel);
+        if (fireException) {
+            promise.addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    if (!future.isSuccess()) {
+                        fireException0(future.cause());
+                    }
+                }
+            });
+        }
+        return promise;
+    }
+
+    private static void fail() {
+        throw new IllegalStateException("void future");
+    }
+
+    private void fireException0(Throwable cause) {
+        // channel还没注册的话，pipeline中的handler还没准备好，异常也就没必要传播了
+        if (fireException && channel.isRegistered()) {
+            channel.pipeline().fireExceptionCaught(cause);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.yy.netty.channel;
+
+import static com.yy.netty.util.internal.ObjectUtil.checkPositiveOrZero;
+
+/**
+ * 写缓冲区的高低水位线
+ * <p>
+ * 写缓冲区中等待写出的字节数超过高水位线时，channel变为不可写，isWritable()返回false；
+ * 降到低水位线以下时，channel又恢复可写。每次可写状态发生变化，都会在pipeline上触发channelWritabilityChanged事件。
+ * 用户可以根据这个状态控制写数据的速度，对端消费得慢的时候就先别写了，否则数据全都堆积在写缓冲区中，最终把内存撑爆
+ * </p>
+ */
+public final class WriteBufferWaterMark {
+
+    private static final int DEFAULT_LOW_WATER_MARK = 32 * 1024;
+
+    private static final int DEFAULT_HIGH_WATER_MARK = 64 * 1024;
+
+    public static final WriteBufferWaterMark DEFAULT =
+            new WriteBufferWaterMark(DEFAULT_LOW_WATER_MARK, DEFAULT_HIGH_WATER_MARK, false);
+
+    private final int low;
+
+    private final int high;
+
+    public WriteBufferWaterMark(int low, int high) {
+        this(low, high, true);
+    }
+
+    WriteBufferWaterMark(int low, int high, boolean validate) {
+        if (validate) {
+            checkPositiveOrZero(low, "low");
+            if (high < low) {
+                throw new IllegalArgumentException(
+                        "write buffer's high water mark cannot be less than " +
+                                " low water mark (" + low + "): " +
+                                high);
+            }
+        }
+        this.low = low;
+        this.high = high;
+    }
+
+    public int low() {
+        return low;
+    }
+
+    public int high() {
+        return high;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(55)
+                .append("WriteBufferWaterMark(low: ")
+                .append(low)
+                .append(", high: ")
+                .append(high)
+                .append(")");
+        return builder.toString();
+    }
+}
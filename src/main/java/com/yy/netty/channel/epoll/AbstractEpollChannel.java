@@ -0,0 +1,427 @@
+package com.yy.netty.channel.epoll;
+
+import com.yy.netty.channel.AbstractChannel;
+import com.yy.netty.channel.Channel;
+import com.yy.netty.channel.ChannelPromise;
+import com.yy.netty.channel.ConnectTimeoutException;
+import com.yy.netty.channel.EventLoop;
+import com.yy.netty.util.concurrent.ScheduledFuture;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.channels.ConnectionPendingException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * epoll层抽象channel，地位和AbstractNioChannel一样：持有socket的文件描述符，负责把channel注册到EpollEventLoop上，
+ * 并把epoll的就绪事件翻译成unsafe的读、写和完成连接
+ * <p>
+ * 和NIO的SelectionKey.interestOps对应的是这里的flags，修改之后要调用EpollEventLoop.modify()同步到epoll上。
+ * channel都是以边缘触发（EPOLLET）的方式注册的，所以读的时候必须读到没有数据为止，否则不会再有新的EPOLLIN事件，
+ * 一次读事件中因为达到maxMessagesPerRead而提前结束时，要提交一个任务稍后接着读
+ * </p>
+ */
+public abstract class AbstractEpollChannel extends AbstractChannel {
+
+    // socket的文件描述符封装
+    final LinuxSocket socket;
+
+    // 关注的epoll事件，注册时的初始值是EPOLLET，开始读之后加上EPOLLIN，写不进去的时候加上EPOLLOUT
+    int flags = Native.EPOLLET;
+
+    // 连接是否已经建立（服务端channel是否已经开始监听）
+    protected volatile boolean active;
+
+    // 是否还有未读取的数据
+    boolean readPending;
+
+    // 在EventLoop中清除readPending并取消关注EPOLLIN的任务，复用同一个对象
+    private final Runnable clearEpollInRunnable = new Runnable() {
+        @Override
+        public void run() {
+            clearEpollIn0();
+        }
+    };
+
+    // 正在进行中的连接对应的promise，连接完成（成功、失败或者超时）之后置为null
+    private ChannelPromise connectPromise;
+
+    // 连接超时的定时任务，连接完成之后要取消掉
+    private ScheduledFuture<?> connectTimeoutFuture;
+
+    // 正在连接的远端地址，用于异常信息
+    private SocketAddress requestedRemoteAddress;
+
+    // 本地地址和远端地址，连接建立或绑定之后从内核中取一次
+    volatile SocketAddress local;
+    volatile SocketAddress remote;
+
+    /**
+     * 构造方法
+     *
+     * @param parent 服务端accept得到的客户端channel才会有父Channel
+     * @param socket socket的文件描述符封装
+     * @param active 是否已经是激活状态，accept得到的channel一创建就是激活的
+     */
+    protected AbstractEpollChannel(Channel parent, LinuxSocket socket, boolean active) {
+        super(parent);
+        this.socket = socket;
+        this.active = active;
+        if (active) {
+            local = socket.localAddress();
+            remote = socket.remoteAddress();
+        }
+    }
+
+    @Override
+    protected boolean isCompatible(EventLoop loop) {
+        return loop instanceof EpollEventLoop;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return socket.isOpen();
+    }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public EpollEventLoop eventLoop() {
+        return (EpollEventLoop) super.eventLoop();
+    }
+
+    @Override
+    protected SocketAddress localAddress0() {
+        return local;
+    }
+
+    @Override
+    protected SocketAddress remoteAddress0() {
+        return remote;
+    }
+
+    /**
+     * 返回socket的文件描述符
+     *
+     * @return
+     */
+    public final int fd() {
+        return socket.intValue();
+    }
+
+    /**
+     * 增加关注的事件
+     *
+     * @param flag
+     * @throws IOException
+     */
+    final void setFlag(int flag) throws IOException {
+        if (!isFlagSet(flag)) {
+            flags |= flag;
+            modifyEvents();
+        }
+    }
+
+    /**
+     * 取消关注的事件
+     *
+     * @param flag
+     * @throws IOException
+     */
+    final void clearFlag(int flag) throws IOException {
+        if (isFlagSet(flag)) {
+            flags &= ~flag;
+            modifyEvents();
+        }
+    }
+
+    /**
+     * 关闭自动读时由channel的配置类调用：清除readPending，并取消关注EPOLLIN，作用和AbstractNioChannel.clearReadPending()一样
+     */
+    final void clearEpollIn() {
+        if (isRegistered() && !eventLoop().inEventLoop(Thread.currentThread())) {
+            eventLoop().execute(clearEpollInRunnable);
+        } else {
+            clearEpollIn0();
+        }
+    }
+
+    private void clearEpollIn0() {
+        readPending = false;
+        try {
+            clearFlag(Native.EPOLLIN);
+        } catch (IOException e) {
+            // epoll_ctl失败了，fd多半已经不可用了
+            pipeline().fireExceptionCaught(e);
+            unsafe().closeForcibly();
+        }
+    }
+
+    final boolean isFlagSet(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    private void modifyEvents() throws IOException {
+        // 还没注册的话先记在flags中，注册的时候会一起带上
+        if (isOpen() && isRegistered()) {
+            eventLoop().modify(this);
+        }
+    }
+
+    /**
+     * 把channel注册到EpollEventLoop的epoll上，这时关注的事件只有EPOLLET，真正的EPOLLIN在doBeginRead中添加
+     *
+     * @throws Exception
+     */
+    @Override
+    protected void doRegister() throws Exception {
+        // 注册之前对flags的修改不会同步到epoll上（见modifyEvents），这里把当前的flags一起带上
+        eventLoop().add(this);
+    }
+
+    @Override
+    protected void doBeginRead() throws Exception {
+        readPending = true;
+        // 加上EPOLLIN时内核会马上检查一次是否可读，所以在这之前到达的数据也不会漏掉
+        setFlag(Native.EPOLLIN);
+    }
+
+    /**
+     * 关闭channel：先从epoll上移除，再关闭fd
+     *
+     * @throws Exception
+     */
+    @Override
+    protected void doClose() throws Exception {
+        active = false;
+        try {
+            if (isRegistered()) {
+                eventLoop().remove(this);
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * 从EpollEventLoop上注销：从epoll和事件循环器的channel表中移除，关闭时已经移除过的话什么也不做
+     *
+     * @throws Exception
+     */
+    @Override
+    protected void doDeregister() throws Exception {
+        eventLoop().remove(this);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(fd=" + socket.intValue() + ", id=" + id().asShortText() + ')';
+    }
+
+    /**
+     * epoll层unsafe的抽象内部类，EpollEventLoop根据就绪的事件调用下面几个epollXxxReady方法
+     */
+    protected abstract class AbstractEpollUnsafe extends AbstractUnsafe {
+
+        // 因为达到maxMessagesPerRead而提前结束读时，提交给EventLoop的继续读的任务
+        private final Runnable epollInReadyRunnable = new Runnable() {
+            @Override
+            public void run() {
+                epollInReady();
+            }
+        };
+
+        /**
+         * 有数据可读（服务端channel是有连接可以接受），子类实现具体的读
+         */
+        abstract void epollInReady();
+
+        /**
+         * 对端关闭了连接，或者关闭了它的输出，这时候socket中可能还有数据没读完，先把它们读出来，读到EOF时会关闭channel
+         */
+        void epollRdHupReady() {
+            if (isActive()) {
+                epollInReady();
+            }
+        }
+
+        /**
+         * 边缘触发模式下，一次读事件中没有读到EAGAIN就停下了，socket中可能还有数据，但不会再有新的EPOLLIN事件了，
+         * 所以提交一个任务，让EventLoop先去处理别的channel，轮到这个任务时再接着读
+         *
+         * @param maybeMoreDataToRead
+         */
+        final void epollInFinally(boolean maybeMoreDataToRead) {
+            if (!readPending && !config().isAutoRead()) {
+                // 关闭了自动读，并且用户没有在处理的过程中再调用read，就不再关注EPOLLIN，
+                // 否则新的数据（或者连接）到来时还会触发读事件，关闭自动读就起不到背压的作用了
+                clearEpollIn0();
+            } else if (maybeMoreDataToRead && isActive() && config().isAutoRead()) {
+                eventLoop().execute(epollInReadyRunnable);
+            }
+        }
+
+        /**
+         * socket可写了：连接还在进行中的话就是连接完成了，否则就是发送缓冲区有空间了，接着写之前没写完的数据
+         */
+        void epollOutReady() {
+            if (connectPromise != null) {
+                finishConnect();
+            } else if (!socket.isOutputShutdown()) {
+                forceFlush();
+            }
+        }
+
+        @Override
+        public final void connect(final SocketAddress remoteAddress, SocketAddress localAddress, ChannelPromise promise) {
+            if (!promise.setUncancellable() || !ensureOpen(promise)) {
+                return;
+            }
+
+            try {
+                if (connectPromise != null) {
+                    throw new ConnectionPendingException();
+                }
+
+                boolean wasActive = isActive();
+                if (doConnect(remoteAddress, localAddress)) {
+                    fulfillConnectPromise(promise, wasActive);
+                } else {
+                    // 连接还在进行中，等EPOLLOUT事件到来后在finishConnect中设置promise的结果
+                    connectPromise = promise;
+                    requestedRemoteAddress = remoteAddress;
+
+                    int connectTimeoutMillis = config().getConnectTimeoutMillis();
+                    if (connectTimeoutMillis > 0) {
+                        connectTimeoutFuture = eventLoop().schedule(new Runnable() {
+                            @Override
+                            public void run() {
+                                ChannelPromise connectPromise = AbstractEpollChannel.this.connectPromise;
+                                ConnectTimeoutException cause =
+                                        new ConnectTimeoutException("connection timed out: " + remoteAddress);
+                                if (connectPromise != null && connectPromise.tryFailure(cause)) {
+                                    closeForcibly();
+                                }
+                            }
+                        }, connectTimeoutMillis, TimeUnit.MILLISECONDS);
+                    }
+                }
+            } catch (Throwable t) {
+                promise.tryFailure(annotateConnectException(t, remoteAddress));
+                closeIfClosed();
+            }
+        }
+
+        private void fulfillConnectPromise(ChannelPromise promise, boolean wasActive) {
+            if (promise == null) {
+                return;
+            }
+            boolean active = isActive();
+            boolean promiseSet = promise.trySuccess();
+
+            if (!wasActive && active) {
+                pipeline().fireChannelActive();
+            }
+
+            if (!promiseSet) {
+                closeForcibly();
+            }
+        }
+
+        private void fulfillConnectPromise(ChannelPromise promise, Throwable cause) {
+            if (promise == null) {
+                return;
+            }
+
+            promise.tryFailure(cause);
+            closeIfClosed();
+        }
+
+        private void finishConnect() {
+            assert eventLoop().inEventLoop(Thread.currentThread());
+            try {
+                boolean wasActive = isActive();
+                if (!doFinishConnect()) {
+                    // 还没连接完成，继续等EPOLLOUT
+                    return;
+                }
+                fulfillConnectPromise(connectPromise, wasActive);
+            } catch (Throwable t) {
+                fulfillConnectPromise(connectPromise, annotateConnectException(t, requestedRemoteAddress));
+            }
+            if (connectTimeoutFuture != null) {
+                connectTimeoutFuture.cancel(false);
+            }
+            connectPromise = null;
+        }
+
+        private void closeIfClosed() {
+            if (!isOpen()) {
+                closeForcibly();
+            }
+        }
+
+        /**
+         * 已经关注了EPOLLOUT，说明socket的发送缓冲区满了，等EPOLLOUT事件到来时会调用forceFlush来写，这里就不要白白尝试了
+         */
+        @Override
+        protected final void flush0() {
+            if (!isFlagSet(Native.EPOLLOUT)) {
+                super.flush0();
+            }
+        }
+
+        /**
+         * EPOLLOUT事件到来，socket又可以写了，直接开始写
+         */
+        final void forceFlush() {
+            super.flush0();
+        }
+    }
+
+    /**
+     * 在连接异常中加上远端地址，方便排查问题
+     *
+     * @param cause
+     * @param remoteAddress
+     * @return
+     */
+    private static Throwable annotateConnectException(Throwable cause, SocketAddress remoteAddress) {
+        if (cause instanceof ConnectException) {
+            ConnectException newT = new ConnectException(cause.getMessage() + ": " + remoteAddress);
+            newT.initCause(cause);
+            newT.setStackTrace(cause.getStackTrace());
+            return newT;
+        }
+        if (cause instanceof SocketException) {
+            SocketException newT = new SocketException(cause.getMessage() + ": " + remoteAddress);
+            newT.initCause(cause);
+            newT.setStackTrace(cause.getStackTrace());
+            return newT;
+        }
+        return cause;
+    }
+
+    /**
+     * 子类实现，发起连接
+     *
+     * @param remoteAddress
+     * @param localAddress
+     * @return 已经连接成功返回true，连接还在进行中返回false
+     * @throws Exception
+     */
+    protected abstract boolean doConnect(SocketAddress remoteAddress, SocketAddress localAddress) throws Exception;
+
+    /**
+     * 子类实现，完成连接
+     *
+     * @return 连接是否已经完成
+     * @throws Exception
+     */
+    protected abstract boolean doFinishConnect() throws Exception;
+}
@@ -0,0 +1,125 @@
+package com.yy.netty.channel.epoll;
+
+import com.yy.netty.channel.Channel;
+import com.yy.netty.channel.EventLoopGroup;
+import com.yy.netty.channel.nio.NioEventLoopGroup;
+import com.yy.netty.channel.socket.nio.NioServerSocketChannel;
+import com.yy.netty.channel.socket.nio.NioSocketChannel;
+import com.yy.netty.util.internal.SystemPropertyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 判断epoll传输层是否可用
+ * <p>
+ * epoll传输层依赖JNI动态库，只能在Linux上使用，动态库加载失败时整个传输层都不可用。
+ * 用户代码可以用下面几个工具方法在epoll和NIO之间自动选择，这样同一份启动代码在不支持epoll的环境下会退回到NIO：
+ * <pre>
+ * EventLoopGroup bossGroup = Epoll.newEventLoopGroup(1);
+ * EventLoopGroup workerGroup = Epoll.newEventLoopGroup(0);
+ * serverBootstrap.group(bossGroup, workerGroup).channel(Epoll.serverSocketChannelClass());
+ * </pre>
+ * 也可以用-Dio.netty.transport.noNative=true强制不使用epoll
+ * </p>
+ */
+public final class Epoll {
+
+    private static final Logger logger = LoggerFactory.getLogger(Epoll.class);
+
+    // epoll不可用的原因，为null说明可用
+    private static final Throwable UNAVAILABILITY_CAUSE;
+
+    static {
+        Throwable cause = null;
+        if (SystemPropertyUtil.getBoolean("io.netty.transport.noNative", false)) {
+            cause = new UnsupportedOperationException(
+                    "Native transport was explicit disabled with -Dio.netty.transport.noNative=true");
+        } else {
+            int epollFd = -1;
+            int eventFd = -1;
+            try {
+                // 真正创建一次epoll和eventfd，动态库加载成功了但内核不支持的情况也能检查出来
+                epollFd = Native.epollCreate();
+                eventFd = Native.eventFd();
+            } catch (Throwable t) {
+                cause = t;
+            } finally {
+                closeQuietly(epollFd);
+                closeQuietly(eventFd);
+            }
+        }
+        UNAVAILABILITY_CAUSE = cause;
+        if (cause != null) {
+            logger.debug("epoll transport is unavailable, falling back to NIO", cause);
+        }
+    }
+
+    private Epoll() {
+    }
+
+    private static void closeQuietly(int fd) {
+        if (fd >= 0) {
+            try {
+                Native.close(fd);
+            } catch (Throwable ignore) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * epoll传输层是否可用
+     *
+     * @return
+     */
+    public static boolean isAvailable() {
+        return UNAVAILABILITY_CAUSE == null;
+    }
+
+    /**
+     * epoll不可用的原因，可用时返回null
+     *
+     * @return
+     */
+    public static Throwable unavailabilityCause() {
+        return UNAVAILABILITY_CAUSE;
+    }
+
+    /**
+     * 确保epoll可用，不可用时抛出异常
+     */
+    public static void ensureAvailability() {
+        if (UNAVAILABILITY_CAUSE != null) {
+            throw (Error) new UnsatisfiedLinkError(
+                    "failed to load the required native library").initCause(UNAVAILABILITY_CAUSE);
+        }
+    }
+
+    /**
+     * epoll可用时创建EpollEventLoopGroup，否则创建NioEventLoopGroup
+     *
+     * @param nThreads 组内的线程数，0表示使用默认值
+     * @return
+     */
+    public static EventLoopGroup newEventLoopGroup(int nThreads) {
+        return isAvailable() ? new EpollEventLoopGroup(nThreads) : new NioEventLoopGroup(nThreads);
+    }
+
+    /**
+     * 和newEventLoopGroup配套使用的服务端channel类型
+     *
+     * @return
+     */
+    public static Class<? extends Channel> serverSocketChannelClass() {
+        return isAvailable() ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    /**
+     * 和newEventLoopGroup配套使用的客户端channel类型
+     *
+     * @return
+     */
+    public static Class<? extends Channel> socketChannelClass() {
+        return isAvailable() ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+}
@@ -0,0 +1,27 @@
+package com.yy.netty.channel.epoll;
+
+import com.yy.netty.channel.ChannelOption;
+
+/**
+ * epoll传输层特有的channel参数项，这些socket选项JDK的NIO不支持，只有通过JNI直接调用setsockopt才能设置。
+ * SO_REUSEPORT两种传输层都可能支持，定义在ChannelOption中
+ *
+ * @param <T>
+ */
+public final class EpollChannelOption<T> extends ChannelOption<T> {
+
+    /**
+     * 开启后内核会攒够一个完整的报文段才发送，关闭时把攒着的数据立刻发出去，适合先写头再写体的场景
+     */
+    public static final ChannelOption<Boolean> TCP_CORK = valueOf(EpollChannelOption.class, "TCP_CORK");
+
+    /**
+     * 立刻回复ACK，不等待延迟确认，这个选项内核会自动重置，一般在每次读之后重新设置
+     */
+    public static final ChannelOption<Boolean> TCP_QUICKACK = valueOf(EpollChannelOption.class, "TCP_QUICKACK");
+
+    @SuppressWarnings("unused")
+    private EpollChannelOption() {
+        super(null);
+    }
+}
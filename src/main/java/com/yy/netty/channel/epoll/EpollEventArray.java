@@ -0,0 +1,77 @@
+package com.yy.netty.channel.epoll;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 存放epoll_wait返回的就绪事件的数组，底层是一块堆外内存，布局和C中的struct epoll_event[]完全一样，
+ * epoll_wait直接把事件写到这块内存中，java这边按偏移量读取，中间不创建任何对象
+ * <p>
+ * struct epoll_event {
+ * uint32_t     events;
+ * epoll_data_t data;   // 注册的时候data中放的是fd
+ * };
+ * 这个结构体在x86_64上是紧凑排列的（12字节），在其他架构上可能有填充，所以大小和偏移量都是从C代码中取的
+ * </p>
+ */
+final class EpollEventArray {
+
+    // struct epoll_event的大小
+    private static final int EPOLL_EVENT_SIZE = Native.sizeofEpollEvent();
+
+    // data字段在struct epoll_event中的偏移量
+    private static final int EPOLL_DATA_OFFSET = Native.offsetofEpollData();
+
+    private ByteBuffer memory;
+
+    // 能存放的事件数
+    private int length;
+
+    EpollEventArray(int length) {
+        if (length < 1) {
+            throw new IllegalArgumentException("length must be >= 1 but was " + length);
+        }
+        this.length = length;
+        memory = allocate(length);
+    }
+
+    private static ByteBuffer allocate(int length) {
+        return ByteBuffer.allocateDirect(length * EPOLL_EVENT_SIZE).order(ByteOrder.nativeOrder());
+    }
+
+    ByteBuffer memory() {
+        return memory;
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * 一次epoll_wait就把数组填满了，说明就绪的事件可能比数组还多，把数组扩大一倍，下一次就能一次取完
+     */
+    void increase() {
+        length <<= 1;
+        memory = allocate(length);
+    }
+
+    /**
+     * 第index个事件的就绪事件位，比如EPOLLIN、EPOLLOUT
+     *
+     * @param index
+     * @return
+     */
+    int events(int index) {
+        return memory.getInt(index * EPOLL_EVENT_SIZE);
+    }
+
+    /**
+     * 第index个事件对应的文件描述符
+     *
+     * @param index
+     * @return
+     */
+    int fd(int index) {
+        return memory.getInt(index * EPOLL_EVENT_SIZE + EPOLL_DATA_OFFSET);
+    }
+}
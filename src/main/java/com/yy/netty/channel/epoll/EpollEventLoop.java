@@ -0,0 +1,366 @@
+package com.yy.netty.channel.epoll;
+
+import com.yy.netty.channel.EventLoopTaskQueueFactory;
+import com.yy.netty.channel.SelectStrategy;
+import com.yy.netty.channel.SingleThreadEventLoop;
+import com.yy.netty.util.IntSupplier;
+import com.yy.netty.util.concurrent.RejectedExecutionHandler;
+import com.yy.netty.util.internal.PlatformDependent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * epoll类型的事件循环器，作用和NioEventLoop一样，只是把JDK的Selector换成了直接调用epoll
+ * <p>
+ * 和NioEventLoop相比：
+ * 1、channel以边缘触发（EPOLLET）的方式注册到epoll上，一次就绪只通知一次，读的时候要一直读到没有数据为止；
+ * 2、就绪的事件直接写到一块堆外内存中（EpollEventArray），不需要SelectionKey，也没有JDK Selector里的HashSet和锁；
+ * 3、唤醒用的是eventfd，写一个8字节的计数就能让epoll_wait返回，比JDK Selector.wakeup()中的管道轻量；
+ * 4、fd到channel的映射用一个按fd下标的数组，fd是内核分配的最小可用整数，所以数组是紧凑的
+ * </p>
+ */
+public class EpollEventLoop extends SingleThreadEventLoop {
+
+    private static final Logger logger = LoggerFactory.getLogger(EpollEventLoop.class);
+
+    // epoll的文件描述符
+    private final int epollFd;
+
+    // 用于唤醒epoll_wait的eventfd
+    private final int eventFd;
+
+    // 就绪事件数组，maxEvents为0时会根据就绪的事件数自动扩容
+    private final EpollEventArray events;
+
+    // 是否允许就绪事件数组自动扩容
+    private final boolean allowGrowing;
+
+    // 按fd下标存放注册在这个事件循环器上的channel，只在事件循环线程中读写
+    private AbstractEpollChannel[] channels = new AbstractEpollChannel[64];
+
+    // 注册在这个事件循环器上的channel数，只在事件循环线程中修改，其他线程读取时用来衡量负载
+    private volatile int channelCount;
+
+    // 选择策略
+    private final SelectStrategy selectStrategy;
+
+    // 非阻塞地epoll_wait一次，任务队列中有任务时选择策略会调用它
+    private final IntSupplier selectNowSupplier = new IntSupplier() {
+        @Override
+        public int get() throws Exception {
+            return epollWaitNow();
+        }
+    };
+
+    /**
+     * 是否已经（或即将）唤醒阻塞在epoll_wait上的线程，作用和NioEventLoop中的wakenUp一样，
+     * 只有把它从false改成true的线程才会去写eventfd
+     */
+    private final AtomicBoolean wakenUp = new AtomicBoolean();
+
+    // 处理IO事件的时间占一轮循环的百分比，默认50
+    private volatile int ioRatio = 50;
+
+    /**
+     * 构造方法
+     *
+     * @param parent                   当前单线程事件循环器所属的事件循环器组
+     * @param executor                 创建线程的执行器
+     * @param maxEvents                一次epoll_wait最多返回多少个事件，0表示从4096开始按需扩容
+     * @param strategy                 选择策略
+     * @param rejectedExecutionHandler 拒绝策略
+     * @param queueFactory             任务队列工厂
+     */
+    EpollEventLoop(EpollEventLoopGroup parent, Executor executor, int maxEvents, SelectStrategy strategy,
+                   RejectedExecutionHandler rejectedExecutionHandler, EventLoopTaskQueueFactory queueFactory) {
+        super(parent, executor, false, newTaskQueue(queueFactory), rejectedExecutionHandler);
+        if (strategy == null) {
+            throw new NullPointerException("selectStrategy");
+        }
+        this.selectStrategy = strategy;
+        if (maxEvents == 0) {
+            allowGrowing = true;
+            events = new EpollEventArray(4096);
+        } else {
+            allowGrowing = false;
+            events = new EpollEventArray(maxEvents);
+        }
+        boolean success = false;
+        int epollFd = -1;
+        int eventFd = -1;
+        try {
+            this.epollFd = epollFd = Native.epollCreate();
+            this.eventFd = eventFd = Native.eventFd();
+            // eventfd用水平触发，每次唤醒之后都要把计数读掉
+            Native.epollCtlAdd(epollFd, eventFd, Native.EPOLLIN);
+            success = true;
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create the epoll instance", e);
+        } finally {
+            if (!success) {
+                closeQuietly(epollFd);
+                closeQuietly(eventFd);
+            }
+        }
+    }
+
+    private static Queue<Runnable> newTaskQueue(EventLoopTaskQueueFactory queueFactory) {
+        if (queueFactory == null) {
+            return PlatformDependent.newMpscQueue();
+        }
+        return queueFactory.newTaskQueue(DEFAULT_MAX_PENDING_TASKS);
+    }
+
+    private static void closeQuietly(int fd) {
+        if (fd >= 0) {
+            try {
+                Native.close(fd);
+            } catch (IOException e) {
+                logger.warn("Failed to close a file descriptor.", e);
+            }
+        }
+    }
+
+    /**
+     * 把channel注册到epoll上，只能在事件循环线程中调用
+     *
+     * @param ch
+     * @throws IOException
+     */
+    void add(AbstractEpollChannel ch) throws IOException {
+        assert inEventLoop(Thread.currentThread());
+        int fd = ch.socket.intValue();
+        Native.epollCtlAdd(epollFd, fd, ch.flags);
+        if (fd >= channels.length) {
+            channels = Arrays.copyOf(channels, Math.max(fd + 1, channels.length << 1));
+        }
+        channels[fd] = ch;
+        channelCount++;
+    }
+
+    /**
+     * channel关注的事件变了，修改epoll上的注册
+     *
+     * @param ch
+     * @throws IOException
+     */
+    void modify(AbstractEpollChannel ch) throws IOException {
+        assert inEventLoop(Thread.currentThread());
+        Native.epollCtlMod(epollFd, ch.socket.intValue(), ch.flags);
+    }
+
+    /**
+     * 把channel从epoll上移除，要在关闭fd之前调用，否则fd被复用之后会把别的channel移除掉
+     *
+     * @param ch
+     * @throws IOException
+     */
+    void remove(AbstractEpollChannel ch) throws IOException {
+        assert inEventLoop(Thread.currentThread());
+        int fd = ch.socket.intValue();
+        if (fd < channels.length && channels[fd] == ch) {
+            channels[fd] = null;
+            channelCount--;
+            if (ch.isOpen()) {
+                Native.epollCtlDel(epollFd, fd);
+            }
+        }
+    }
+
+    /**
+     * <核心方法>
+     * epoll事件循环器的循环逻辑，结构和NioEventLoop.run()一样
+     * </核心方法>
+     */
+    @Override
+    @SuppressWarnings("InfiniteLoopStatement")
+    protected void run() {
+        for (; ; ) {
+            try {
+                final long loopStartTime = System.nanoTime();
+                int strategy = selectStrategy.calculateStrategy(selectNowSupplier, hasTasks());
+                switch (strategy) {
+                    case SelectStrategy.CONTINUE:
+                        continue;
+                    case SelectStrategy.BUSY_WAIT:
+                        // 忙等：一直非阻塞地epoll_wait，直到有事件或者有任务，用CPU换延迟
+                        strategy = epollBusyWait();
+                        break;
+                    case SelectStrategy.SELECT:
+                        strategy = epollWait(wakenUp.getAndSet(false));
+                        // 原因见NioEventLoop.run()
+                        if (wakenUp.get()) {
+                            Native.eventFdWrite(eventFd, 1L);
+                        }
+                        break;
+                    default:
+                }
+
+                final int ioRatio = this.ioRatio;
+                final long ioStartTime = System.nanoTime();
+                if (ioRatio == 100) {
+                    try {
+                        if (strategy > 0) {
+                            processReady(strategy);
+                        }
+                    } finally {
+                        runAllTasks();
+                    }
+                } else {
+                    try {
+                        if (strategy > 0) {
+                            processReady(strategy);
+                        }
+                    } finally {
+                        final long ioTime = System.nanoTime() - ioStartTime;
+                        runAllTasks(ioTime * (100 - ioRatio) / ioRatio);
+                    }
+                }
+                if (allowGrowing && strategy == events.length()) {
+                    // 数组被填满了，扩容
+                    events.increase();
+                }
+                final long loopEndTime = System.nanoTime();
+                recordBusyTime(loopEndTime - ioStartTime, loopEndTime - loopStartTime);
+            } catch (Throwable t) {
+                logger.warn("Unexpected exception in the epoll event loop.", t);
+                try {
+                    // 防止异常一直出现时空转占满CPU
+                    Thread.sleep(1000);
+                } catch (InterruptedException ignore) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private int epollWaitNow() throws IOException {
+        return Native.epollWait(epollFd, events.memory(), events.length(), 0);
+    }
+
+    private int epollBusyWait() throws IOException {
+        int ready;
+        do {
+            ready = epollWaitNow();
+        } while (ready == 0 && !hasTasks() && !hasScheduledTasks());
+        return ready;
+    }
+
+    /**
+     * 阻塞地epoll_wait，直到有IO事件、被唤醒或者下一个定时任务到期
+     *
+     * @param oldWakenUp 进入epoll_wait之前唤醒标记的值
+     * @return 就绪的事件数
+     * @throws IOException
+     */
+    private int epollWait(boolean oldWakenUp) throws IOException {
+        // 在把wakenUp重置为false之后、调用epoll_wait之前，其他线程提交了任务，但因为那时wakenUp还是true，它没有写eventfd，
+        // 这里如果直接阻塞，这个任务就要等到超时才能执行
+        if (oldWakenUp && hasTasks()) {
+            return epollWaitNow();
+        }
+        long delayNanos = delayNanos(System.nanoTime());
+        // 向上取整到毫秒，避免定时任务还差不到1毫秒到期时用0超时空转
+        int timeoutMillis = (int) Math.min((delayNanos + 999999L) / 1000000L, Integer.MAX_VALUE);
+        if (timeoutMillis <= 0) {
+            return epollWaitNow();
+        }
+        return Native.epollWait(epollFd, events.memory(), events.length(), timeoutMillis);
+    }
+
+    /**
+     * <比较关键的方法>
+     * 处理就绪的事件，和NioEventLoop.processSelectedKey一样，具体的读写都委托给channel的unsafe
+     * </比较关键的方法>
+     *
+     * @param ready 就绪的事件数
+     */
+    private void processReady(int ready) {
+        final AbstractEpollChannel[] channels = this.channels;
+        for (int i = 0; i < ready; i++) {
+            final int fd = events.fd(i);
+            if (fd == eventFd) {
+                // 被其他线程唤醒了，把eventfd的计数读掉，否则水平触发会一直返回
+                try {
+                    Native.eventFdRead(eventFd);
+                } catch (Throwable t) {
+                    logger.warn("Failed to read the eventfd.", t);
+                }
+                continue;
+            }
+
+            final int ev = events.events(i);
+            final AbstractEpollChannel ch = fd < channels.length ? channels[fd] : null;
+            if (ch == null) {
+                // channel已经移除了，但事件还在数组中，把fd从epoll上移除，防止一直通知
+                try {
+                    Native.epollCtlDel(epollFd, fd);
+                } catch (IOException ignore) {
+                    // fd可能已经关闭了
+                }
+                continue;
+            }
+
+            AbstractEpollChannel.AbstractEpollUnsafe unsafe = (AbstractEpollChannel.AbstractEpollUnsafe) ch.unsafe();
+            try {
+                // 先处理写（包括连接完成），再处理读。出错时EPOLLERR会和读写事件一起返回，交给读写去处理，读写时会得到具体的错误
+                if ((ev & (Native.EPOLLERR | Native.EPOLLOUT)) != 0) {
+                    unsafe.epollOutReady();
+                }
+                if ((ev & (Native.EPOLLERR | Native.EPOLLIN)) != 0) {
+                    unsafe.epollInReady();
+                }
+                // 对端关闭了连接或者关闭了输出，读到EOF就会关闭channel
+                if ((ev & Native.EPOLLRDHUP) != 0) {
+                    unsafe.epollRdHupReady();
+                }
+            } catch (Throwable t) {
+                logger.warn("Unexpected exception while processing epoll events for {}.", ch, t);
+            }
+        }
+    }
+
+    /**
+     * 其他线程提交任务时唤醒阻塞在epoll_wait上的事件循环线程，只有把wakenUp从false改成true的那个线程才会写eventfd
+     *
+     * @param inEventLoop 是否是在事件循环线程中提交的任务
+     */
+    @Override
+    protected void wakeup(boolean inEventLoop) {
+        if (!inEventLoop && wakenUp.compareAndSet(false, true)) {
+            Native.eventFdWrite(eventFd, 1L);
+        }
+    }
+
+    /**
+     * 返回注册在该EventLoop上的channel数，包括还在注册过程中的channel
+     *
+     * @return
+     */
+    @Override
+    public int registeredChannels() {
+        return channelCount + pendingRegistrations();
+    }
+
+    public int getIoRatio() {
+        return ioRatio;
+    }
+
+    /**
+     * 设置处理IO事件的时间占比，默认50
+     *
+     * @param ioRatio 取值范围(0, 100]
+     */
+    public void setIoRatio(int ioRatio) {
+        if (ioRatio <= 0 || ioRatio > 100) {
+            throw new IllegalArgumentException("ioRatio: " + ioRatio + " (expected: 0 < ioRatio <= 100)");
+        }
+        this.ioRatio = ioRatio;
+    }
+}
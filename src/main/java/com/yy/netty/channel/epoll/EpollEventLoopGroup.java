@@ -0,0 +1,131 @@
+package com.yy.netty.channel.epoll;
+
+import com.yy.netty.channel.DefaultSelectStrategyFactory;
+import com.yy.netty.channel.EventLoop;
+import com.yy.netty.channel.EventLoopTaskQueueFactory;
+import com.yy.netty.channel.MultithreadEventLoopGroup;
+import com.yy.netty.channel.SelectStrategyFactory;
+import com.yy.netty.util.concurrent.EventExecutor;
+import com.yy.netty.util.concurrent.EventExecutorChooserFactory;
+import com.yy.netty.util.concurrent.RejectedExecutionHandler;
+import com.yy.netty.util.concurrent.RejectedExecutionHandlers;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * epoll类型的事件循环线程组，只能在Linux上使用，组内的每一个事件循环器都是一个EpollEventLoop，
+ * 要和EpollServerSocketChannel、EpollSocketChannel一起使用
+ * 创建之前可以用Epoll.isAvailable()判断epoll是否可用，或者直接用Epoll.newEventLoopGroup()在epoll和NIO之间自动选择
+ */
+public class EpollEventLoopGroup extends MultithreadEventLoopGroup {
+
+    static {
+        // 动态库加载失败的话，在创建的时候就报错，而不是等到第一个事件循环器创建的时候
+        Epoll.ensureAvailability();
+    }
+
+    public EpollEventLoopGroup() {
+        this(0);
+    }
+
+    /**
+     * 创建一个事件循环线程组
+     *
+     * @param nThreads 组内的线程数
+     */
+    public EpollEventLoopGroup(int nThreads) {
+        this(nThreads, (ThreadFactory) null);
+    }
+
+    /**
+     * 创建一个事件循环线程组
+     *
+     * @param nThreads      组内的线程数
+     * @param threadFactory 线程工厂
+     */
+    public EpollEventLoopGroup(int nThreads, ThreadFactory threadFactory) {
+        this(nThreads, threadFactory, 0);
+    }
+
+    /**
+     * 创建一个事件循环线程组
+     *
+     * @param nThreads  组内的线程数
+     * @param executor  线程创建执行器
+     */
+    public EpollEventLoopGroup(int nThreads, Executor executor) {
+        super(nThreads, executor, 0, DefaultSelectStrategyFactory.INSTANCE, RejectedExecutionHandlers.reject());
+    }
+
+    /**
+     * 创建一个事件循环线程组
+     *
+     * @param nThreads      组内的线程数
+     * @param threadFactory 线程工厂
+     * @param maxEventsAtOnce 一次epoll_wait最多处理多少个事件，0表示按需自动扩容
+     */
+    public EpollEventLoopGroup(int nThreads, ThreadFactory threadFactory, int maxEventsAtOnce) {
+        super(nThreads, threadFactory, maxEventsAtOnce, DefaultSelectStrategyFactory.INSTANCE,
+                RejectedExecutionHandlers.reject());
+    }
+
+    /**
+     * 创建一个事件循环线程组，并指定channel注册时选择事件循环器的策略
+     *
+     * @param nThreads       组内的线程数
+     * @param threadFactory  线程工厂
+     * @param chooserFactory 执行器选择器工厂，比如MultithreadEventLoopGroup.LEAST_CONNECTIONS
+     */
+    public EpollEventLoopGroup(int nThreads, ThreadFactory threadFactory, EventExecutorChooserFactory chooserFactory) {
+        super(nThreads, threadFactory, chooserFactory, 0, DefaultSelectStrategyFactory.INSTANCE,
+                RejectedExecutionHandlers.reject());
+    }
+
+    /**
+     * 创建一个事件循环线程组
+     *
+     * @param nThreads                 组内的线程数
+     * @param executor                 线程创建执行器
+     * @param chooserFactory           执行器选择器工厂
+     * @param selectStrategyFactory    选择策略工厂
+     * @param rejectedExecutionHandler 拒绝执行策略handler
+     * @param taskQueueFactory         任务队列工厂
+     */
+    public EpollEventLoopGroup(int nThreads, Executor executor, EventExecutorChooserFactory chooserFactory,
+                               SelectStrategyFactory selectStrategyFactory,
+                               RejectedExecutionHandler rejectedExecutionHandler,
+                               EventLoopTaskQueueFactory taskQueueFactory) {
+        super(nThreads, executor, chooserFactory, 0, selectStrategyFactory, rejectedExecutionHandler,
+                taskQueueFactory);
+    }
+
+    /**
+     * 设置组内所有事件循环器处理IO事件的时间占比，默认50
+     *
+     * @param ioRatio
+     */
+    public void setIoRatio(int ioRatio) {
+        for (EventExecutor e : this) {
+            ((EpollEventLoop) e).setIoRatio(ioRatio);
+        }
+    }
+
+    /**
+     * 创建一个epoll事件循环器
+     *
+     * @param executor 线程创建执行器
+     * @param args     maxEventsAtOnce,selectStrategyFactory,RejectedExecutionHandler,EventLoopTaskQueueFactory
+     * @return
+     * @throws Exception
+     */
+    @Override
+    protected EventLoop newChild(Executor executor, Object[] args) throws Exception {
+        EventLoopTaskQueueFactory queueFactory = args.length == 4 ? (EventLoopTaskQueueFactory) args[3] : null;
+        return new EpollEventLoop(this, executor,
+                (Integer) args[0],
+                ((SelectStrategyFactory) args[1]).newSelectStrategy(),
+                (RejectedExecutionHandler) args[2],
+                queueFactory);
+    }
+}
@@ -0,0 +1,130 @@
+package com.yy.netty.channel.epoll;
+
+import com.yy.netty.channel.ChannelOutboundBuffer;
+import com.yy.netty.channel.ChannelPipeline;
+import com.yy.netty.channel.RecvByteBufAllocator;
+import com.yy.netty.channel.socket.ServerSocketChannelConfig;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+/**
+ * epoll类型的服务端channel，作用和NioServerSocketChannel一样，要注册到EpollEventLoop上
+ * 开启ChannelOption.SO_REUSEPORT之后，多个EpollServerSocketChannel可以绑定同一个端口，由内核在它们之间分配新连接
+ */
+public class EpollServerSocketChannel extends AbstractEpollChannel {
+
+    // 服务端channel的配置类
+    private final EpollServerSocketChannelConfig config;
+
+    public EpollServerSocketChannel() {
+        super(null, LinuxSocket.newSocketStream(), false);
+        config = new EpollServerSocketChannelConfig(this);
+    }
+
+    @Override
+    public ServerSocketChannelConfig config() {
+        return config;
+    }
+
+    @Override
+    public InetSocketAddress localAddress() {
+        return (InetSocketAddress) super.localAddress();
+    }
+
+    @Override
+    public InetSocketAddress remoteAddress() {
+        return null;
+    }
+
+    @Override
+    protected SocketAddress remoteAddress0() {
+        return null;
+    }
+
+    @Override
+    protected void doBind(SocketAddress localAddress) throws Exception {
+        socket.bind(localAddress);
+        socket.listen(config.getBacklog());
+        // 绑定的可能是0端口，从内核中取实际绑定的地址
+        local = socket.localAddress();
+        active = true;
+    }
+
+    @Override
+    protected boolean doConnect(SocketAddress remoteAddress, SocketAddress localAddress) throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected boolean doFinishConnect() throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected Object filterOutboundMessage(Object msg) throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected AbstractEpollUnsafe newUnsafe() {
+        return new EpollServerSocketUnsafe();
+    }
+
+    private final class EpollServerSocketUnsafe extends AbstractEpollUnsafe {
+
+        /**
+         * 服务端channel的读就是接受连接，和NioMessageUnsafe.read()一样，每一个连接都当作一条消息在pipeline上传播，
+         * 由ServerBootstrapAcceptor注册到childGroup上。
+         * 边缘触发模式下要一直accept到没有连接为止，因为达到maxMessagesPerRead提前结束时要提交任务接着accept
+         */
+        @Override
+        void epollInReady() {
+            assert eventLoop().inEventLoop(Thread.currentThread());
+            final ChannelPipeline pipeline = pipeline();
+            final RecvByteBufAllocator.Handle allocHandle = recvBufAllocHandle();
+            allocHandle.reset(config);
+
+            // 是否已经accept到没有连接为止了
+            boolean drained = false;
+            Throwable exception = null;
+            try {
+                do {
+                    int fd = socket.accept();
+                    if (fd == -1) {
+                        drained = true;
+                        break;
+                    }
+                    allocHandle.incMessagesRead(1);
+                    readPending = false;
+                    EpollSocketChannel child;
+                    try {
+                        child = new EpollSocketChannel(EpollServerSocketChannel.this, new LinuxSocket(fd));
+                    } catch (Throwable t) {
+                        // 创建客户端channel失败，关闭fd，防止泄漏
+                        Native.close(fd);
+                        throw t;
+                    }
+                    // 把客户端channel在服务端的pipeline上传播，最终由ServerBootstrapAcceptor注册到工作线程上
+                    pipeline.fireChannelRead(child);
+                } while (allocHandle.continueReading());
+            } catch (Throwable t) {
+                exception = t;
+            }
+            allocHandle.readComplete();
+            pipeline.fireChannelReadComplete();
+
+            if (exception != null) {
+                // accept出错了，比如文件描述符用完了，交给pipeline处理
+                pipeline.fireExceptionCaught(exception);
+            }
+            // 因为达到maxMessagesPerRead才停下的，可能还有连接没有accept
+            epollInFinally(exception == null && !drained);
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.yy.netty.channel.epoll;
+
+import com.yy.netty.buffer.ByteBuf;
+import com.yy.netty.buffer.ByteBufAllocator;
+import com.yy.netty.channel.Channel;
+import com.yy.netty.channel.ChannelConfig;
+import com.yy.netty.channel.ChannelOutboundBuffer;
+import com.yy.netty.channel.ChannelPipeline;
+import com.yy.netty.channel.RecvByteBufAllocator;
+import com.yy.netty.channel.socket.SocketChannelConfig;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * epoll类型的客户端channel，作用和NioSocketChannel一样，要注册到EpollEventLoop上。
+ * 读写都是通过JNI直接对fd调用read/write/writev，ByteBuf必须是堆外内存，这样内核可以直接访问它的内存地址
+ */
+public class EpollSocketChannel extends AbstractEpollChannel {
+
+    // 尝试写的字节数低于这个值时，就算没写完也不缩小maxBytesPerGatheringWrite
+    private static final int MAX_BYTES_PER_GATHERING_WRITE_ATTEMPTED_LOW_THRESHOLD = 4096;
+
+    // 和NioSocketChannel一样，一次writev最多写1024个ByteBuffer，和Linux的IOV_MAX一致
+    private static final int MAX_IOV = 1024;
+
+    /**
+     * 写自旋次数用完了还没写完时，提交到EventLoop中继续写的任务，作用和AbstractNioByteChannel中的flushTask一样
+     */
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            ((AbstractEpollUnsafe) unsafe()).flush0();
+        }
+    };
+
+    private final EpollSocketChannelConfig config;
+
+    public EpollSocketChannel() {
+        super(null, LinuxSocket.newSocketStream(), false);
+        config = new EpollSocketChannelConfig(this);
+        // 对端关闭连接或者关闭输出时会收到EPOLLRDHUP，用来尽早把剩下的数据读完并关闭channel
+        flags |= Native.EPOLLRDHUP;
+    }
+
+    /**
+     * 服务端accept得到的客户端channel
+     *
+     * @param parent
+     * @param socket
+     */
+    EpollSocketChannel(Channel parent, LinuxSocket socket) {
+        super(parent, socket, true);
+        config = new EpollSocketChannelConfig(this);
+        flags |= Native.EPOLLRDHUP;
+    }
+
+    @Override
+    public SocketChannelConfig config() {
+        return config;
+    }
+
+    @Override
+    public InetSocketAddress localAddress() {
+        return (InetSocketAddress) super.localAddress();
+    }
+
+    @Override
+    public InetSocketAddress remoteAddress() {
+        return (InetSocketAddress) super.remoteAddress();
+    }
+
+    @Override
+    protected void doBind(SocketAddress localAddress) throws Exception {
+        socket.bind(localAddress);
+        local = socket.localAddress();
+    }
+
+    @Override
+    protected boolean doConnect(SocketAddress remoteAddress, SocketAddress localAddress) throws Exception {
+        if (localAddress != null) {
+            doBind(localAddress);
+        }
+
+        boolean success = false;
+        try {
+            boolean connected = socket.connect(remoteAddress);
+            if (connected) {
+                connected();
+            } else {
+                // 连接还在进行中，关注EPOLLOUT，连接完成时socket会变为可写
+                setFlag(Native.EPOLLOUT);
+            }
+            success = true;
+            return connected;
+        } finally {
+            if (!success) {
+                doClose();
+            }
+        }
+    }
+
+    @Override
+    protected boolean doFinishConnect() throws Exception {
+        if (!socket.finishConnect()) {
+            return false;
+        }
+        clearFlag(Native.EPOLLOUT);
+        connected();
+        return true;
+    }
+
+    /**
+     * 连接建立之后，从内核中取一次本地地址和远端地址，并把channel设置为激活状态
+     */
+    private void connected() {
+        active = true;
+        local = socket.localAddress();
+        remote = socket.remoteAddress();
+    }
+
+    /**
+     * 把写缓冲区中已刷新的消息写到socket中，和NioSocketChannel.doWrite()的逻辑一样：
+     * 多个ByteBuf通过一次writev写出去，写不进去时关注EPOLLOUT，写自旋次数用完时提交任务稍后继续写
+     *
+     * @param in
+     * @throws Exception
+     */
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) throws Exception {
+        int writeSpinCount = config().getWriteSpinCount();
+        do {
+            if (in.isEmpty()) {
+                // 所有数据都写完了，取消EPOLLOUT
+                clearFlag(Native.EPOLLOUT);
+                return;
+            }
+
+            long maxBytesPerGatheringWrite = config.getMaxBytesPerGatheringWrite();
+            ByteBuffer[] nioBuffers = in.nioBuffers(MAX_IOV, maxBytesPerGatheringWrite);
+            int nioBufferCnt = in.nioBufferCount();
+
+            switch (nioBufferCnt) {
+                case 0:
+                    // 没有可写的字节，说明当前的ByteBuf是空的，直接移除
+                    in.remove();
+                    break;
+                case 1: {
+                    ByteBuffer buffer = nioBuffers[0];
+                    int attemptedBytes = buffer.remaining();
+                    final int localWrittenBytes = socket.write(buffer, buffer.position(), buffer.limit());
+                    if (localWrittenBytes <= 0) {
+                        // socket发送缓冲区满了，关注EPOLLOUT，等可写了再写
+                        setFlag(Native.EPOLLOUT);
+                        return;
+                    }
+                    buffer.position(buffer.position() + localWrittenBytes);
+                    adjustMaxBytesPerGatheringWrite(attemptedBytes, localWrittenBytes, maxBytesPerGatheringWrite);
+                    in.removeBytes(localWrittenBytes);
+                    --writeSpinCount;
+                    break;
+                }
+                default: {
+                    long attemptedBytes = in.nioBufferSize();
+                    final long localWrittenBytes = socket.writev(nioBuffers, 0, nioBufferCnt, maxBytesPerGatheringWrite);
+                    if (localWrittenBytes <= 0) {
+                        setFlag(Native.EPOLLOUT);
+                        return;
+                    }
+                    advancePositions(nioBuffers, nioBufferCnt, localWrittenBytes);
+                    adjustMaxBytesPerGatheringWrite(attemptedBytes, localWrittenBytes, maxBytesPerGatheringWrite);
+                    in.removeBytes(localWrittenBytes);
+                    --writeSpinCount;
+                    break;
+                }
+            }
+        } while (writeSpinCount > 0);
+
+        // 写自旋次数用完了还没写完，socket还是可写的，不用关注EPOLLOUT，提交一个任务稍后继续写
+        clearFlag(Native.EPOLLOUT);
+        eventLoop().execute(flushTask);
+    }
+
+    /**
+     * JNI的write/writev不会像jdk的SocketChannel.write那样移动ByteBuffer的position，
+     * 而ChannelOutboundBuffer会把ByteBuffer缓存在Entry中，一次没写完时下次接着用，所以这里要手动把position往后移，
+     * 否则下次会把已经写出去的数据再写一遍
+     *
+     * @param nioBuffers
+     * @param nioBufferCnt
+     * @param written
+     */
+    private static void advancePositions(ByteBuffer[] nioBuffers, int nioBufferCnt, long written) {
+        for (int i = 0; i < nioBufferCnt && written > 0; i++) {
+            ByteBuffer buffer = nioBuffers[i];
+            int n = (int) Math.min(buffer.remaining(), written);
+            buffer.position(buffer.position() + n);
+            written -= n;
+        }
+    }
+
+    /**
+     * 和NioSocketChannel一样，根据本次实际写出的字节数，调整下一次writev最多写多少字节
+     *
+     * @param attempted
+     * @param written
+     * @param oldMaxBytesPerGatheringWrite
+     */
+    private void adjustMaxBytesPerGatheringWrite(long attempted, long written, long oldMaxBytesPerGatheringWrite) {
+        if (attempted == written) {
+            if (attempted << 1 > oldMaxBytesPerGatheringWrite) {
+                config.setMaxBytesPerGatheringWrite(attempted << 1);
+            }
+        } else if (attempted > MAX_BYTES_PER_GATHERING_WRITE_ATTEMPTED_LOW_THRESHOLD && written < attempted >>> 1) {
+            config.setMaxBytesPerGatheringWrite(attempted >>> 1);
+        }
+    }
+
+    /**
+     * 和AbstractNioByteChannel一样，堆内存的ByteBuf要先拷贝到堆外内存中，JNI才能直接拿到它的内存地址
+     *
+     * @param msg
+     * @return
+     */
+    @Override
+    protected Object filterOutboundMessage(Object msg) {
+        if (msg instanceof ByteBuf) {
+            ByteBuf buf = (ByteBuf) msg;
+            if (buf.isDirect()) {
+                return msg;
+            }
+            final int readableBytes = buf.readableBytes();
+            if (readableBytes == 0) {
+                return buf;
+            }
+            ByteBuf directBuf = config().getAllocator().directBuffer(readableBytes);
+            directBuf.writeBytes(buf, buf.readerIndex(), readableBytes);
+            buf.release();
+            return directBuf;
+        }
+
+        throw new UnsupportedOperationException(
+                "unsupported message type: " + msg.getClass().getName() + " (expected: ByteBuf)");
+    }
+
+    /**
+     * 从socket中读数据到ByteBuf的可写区域中
+     *
+     * @param byteBuf
+     * @return 读到的字节数，0表示socket中已经没有数据了（EAGAIN），-1表示对端关闭了连接
+     * @throws Exception
+     */
+    private int doReadBytes(ByteBuf byteBuf) throws Exception {
+        final RecvByteBufAllocator.Handle allocHandle = unsafe().recvBufAllocHandle();
+        final int writerIndex = byteBuf.writerIndex();
+        final int writableBytes = byteBuf.writableBytes();
+        allocHandle.attemptedBytesRead(writableBytes);
+
+        if (byteBuf.isDirect()) {
+            // 直接读到堆外内存中，中间没有任何拷贝
+            ByteBuffer buf = byteBuf.internalNioBuffer(writerIndex, writableBytes);
+            int localReadAmount = socket.read(buf, buf.position(), buf.limit());
+            if (localReadAmount > 0) {
+                byteBuf.writerIndex(writerIndex + localReadAmount);
+            }
+            return localReadAmount;
+        }
+
+        // 用户配置了堆内存的分配器，先读到一块临时的堆外内存中，再拷贝过去
+        ByteBuf directBuf = config().getAllocator().directBuffer(writableBytes);
+        try {
+            ByteBuffer buf = directBuf.internalNioBuffer(0, writableBytes);
+            int localReadAmount = socket.read(buf, buf.position(), buf.limit());
+            if (localReadAmount > 0) {
+                byteBuf.writeBytes(directBuf, 0, localReadAmount);
+            }
+            return localReadAmount;
+        } finally {
+            directBuf.release();
+        }
+    }
+
+    @Override
+    protected AbstractEpollUnsafe newUnsafe() {
+        return new EpollSocketUnsafe();
+    }
+
+    private final class EpollSocketUnsafe extends AbstractEpollUnsafe {
+
+        /**
+         * 和NioByteUnsafe.read()的逻辑一样，区别在于边缘触发模式下必须读到EAGAIN为止：
+         * 最后一次读没有把ByteBuf读满，说明socket中的数据已经读完了；
+         * 如果是因为达到maxMessagesPerRead才停下的，socket中可能还有数据，要提交任务接着读
+         */
+        @Override
+        void epollInReady() {
+            assert eventLoop().inEventLoop(Thread.currentThread());
+            final ChannelConfig config = config();
+            final ByteBufAllocator allocator = config.getAllocator();
+            final ChannelPipeline pipeline = pipeline();
+            final RecvByteBufAllocator.Handle allocHandle = recvBufAllocHandle();
+            allocHandle.reset(config);
+
+            ByteBuf byteBuf = null;
+            boolean close = false;
+            // socket中的数据是否已经读完了
+            boolean drained = false;
+            try {
+                do {
+                    byteBuf = allocHandle.allocate(allocator);
+                    allocHandle.lastBytesRead(doReadBytes(byteBuf));
+                    if (allocHandle.lastBytesRead() <= 0) {
+                        // 什么都没读到，释放ByteBuf
+                        byteBuf.release();
+                        byteBuf = null;
+                        // 返回-1说明对端已经关闭了连接
+                        close = allocHandle.lastBytesRead() < 0;
+                        drained = true;
+                        break;
+                    }
+                    allocHandle.incMessagesRead(1);
+                    readPending = false;
+                    pipeline.fireChannelRead(byteBuf);
+                    byteBuf = null;
+                    // 没有读满ByteBuf，说明socket的接收缓冲区已经空了
+                    drained = allocHandle.lastBytesRead() < allocHandle.attemptedBytesRead();
+                } while (!drained && allocHandle.continueReading());
+
+                allocHandle.readComplete();
+                pipeline.fireChannelReadComplete();
+
+                if (close) {
+                    // 对端已经关闭了连接，本端也关闭channel
+                    close(voidPromise());
+                    return;
+                }
+            } catch (Throwable t) {
+                if (byteBuf != null) {
+                    byteBuf.release();
+                }
+                allocHandle.readComplete();
+                pipeline.fireChannelReadComplete();
+                pipeline.fireExceptionCaught(t);
+                if (t instanceof IOException) {
+                    // 连接被重置之类的错误，边缘触发模式下不会再有读事件了，直接关闭channel
+                    close(voidPromise());
+                } else {
+                    epollInFinally(false);
+                }
+                return;
+            }
+            epollInFinally(!drained);
+        }
+    }
+}
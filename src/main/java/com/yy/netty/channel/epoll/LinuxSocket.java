@@ -0,0 +1,245 @@
+package com.yy.netty.channel.epoll;
+
+import com.yy.netty.util.internal.ObjectUtil;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+
+/**
+ * 对一个非阻塞socket文件描述符的封装，作用相当于NIO中的SocketChannel/ServerSocketChannel，
+ * 只是所有操作都直接通过JNI调用系统调用，不经过JDK的Selector和SocketChannelImpl里的锁
+ */
+final class LinuxSocket {
+
+    // 文件描述符
+    private final int fd;
+
+    // 是否是IPv6的socket，IPv6的socket同时也能处理IPv4的地址
+    private final boolean ipv6;
+
+    // 是否还没关闭，fd关闭之后可能马上被别的socket复用，所以关闭之后绝不能再用这个fd做任何操作
+    private volatile boolean open = true;
+
+    // 是否已经调用过shutdown关闭了输入或输出
+    private volatile boolean inputShutdown;
+    private volatile boolean outputShutdown;
+
+    LinuxSocket(int fd) {
+        this(fd, Native.IPV6_SUPPORTED);
+    }
+
+    private LinuxSocket(int fd, boolean ipv6) {
+        this.fd = fd;
+        this.ipv6 = ipv6;
+    }
+
+    /**
+     * 创建一个非阻塞的TCP socket
+     *
+     * @return
+     */
+    static LinuxSocket newSocketStream() {
+        try {
+            return new LinuxSocket(Native.socketStream(Native.IPV6_SUPPORTED), Native.IPV6_SUPPORTED);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open a socket.", e);
+        }
+    }
+
+    int intValue() {
+        return fd;
+    }
+
+    boolean isOpen() {
+        return open;
+    }
+
+    boolean isInputShutdown() {
+        return inputShutdown;
+    }
+
+    boolean isOutputShutdown() {
+        return outputShutdown;
+    }
+
+    void bind(SocketAddress localAddress) throws IOException {
+        InetSocketAddress address = checkInetSocketAddress(localAddress);
+        InetAddress inetAddress = address.getAddress();
+        Native.bind(fd, ipv6, inetAddress.getAddress(), Native.scopeId(inetAddress), address.getPort());
+    }
+
+    void listen(int backlog) throws IOException {
+        Native.listen(fd, backlog);
+    }
+
+    /**
+     * 接受一个连接
+     *
+     * @return 新连接的文件描述符，没有连接了返回-1
+     * @throws IOException
+     */
+    int accept() throws IOException {
+        return Native.accept(fd);
+    }
+
+    boolean connect(SocketAddress remoteAddress) throws IOException {
+        InetSocketAddress address = checkInetSocketAddress(remoteAddress);
+        if (address.isUnresolved()) {
+            throw new UnknownHostException(address.getHostString());
+        }
+        InetAddress inetAddress = address.getAddress();
+        return Native.connect(fd, ipv6, inetAddress.getAddress(), Native.scopeId(inetAddress), address.getPort());
+    }
+
+    boolean finishConnect() throws IOException {
+        return Native.finishConnect(fd);
+    }
+
+    InetSocketAddress localAddress() {
+        return Native.toInetSocketAddress(Native.localAddress(fd));
+    }
+
+    InetSocketAddress remoteAddress() {
+        return Native.toInetSocketAddress(Native.remoteAddress(fd));
+    }
+
+    int read(ByteBuffer buf, int pos, int limit) throws IOException {
+        return Native.read(fd, buf, pos, limit);
+    }
+
+    int write(ByteBuffer buf, int pos, int limit) throws IOException {
+        return Native.write(fd, buf, pos, limit);
+    }
+
+    long writev(ByteBuffer[] buffers, int offset, int length, long maxBytesPerWrite) throws IOException {
+        return Native.writev(fd, buffers, offset, length, maxBytesPerWrite);
+    }
+
+    void shutdown(boolean read, boolean write) throws IOException {
+        inputShutdown |= read;
+        outputShutdown |= write;
+        Native.shutdown(fd, read, write);
+    }
+
+    void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        Native.close(fd);
+    }
+
+    private static InetSocketAddress checkInetSocketAddress(SocketAddress address) throws IOException {
+        ObjectUtil.checkNotNull(address, "address");
+        if (!(address instanceof InetSocketAddress)) {
+            throw new IOException("unsupported address type: " + address.getClass().getName());
+        }
+        return (InetSocketAddress) address;
+    }
+
+    // ------------------------------------------ socket 选项 ------------------------------------------
+
+    private void setIntOption(int level, int optname, int value) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        Native.setIntOption(fd, level, optname, value);
+    }
+
+    private int getIntOption(int level, int optname) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        return Native.getIntOption(fd, level, optname);
+    }
+
+    void setReuseAddress(boolean reuseAddress) throws IOException {
+        setIntOption(Native.SOL_SOCKET, Native.SO_REUSEADDR, reuseAddress ? 1 : 0);
+    }
+
+    boolean isReuseAddress() throws IOException {
+        return getIntOption(Native.SOL_SOCKET, Native.SO_REUSEADDR) != 0;
+    }
+
+    void setReusePort(boolean reusePort) throws IOException {
+        setIntOption(Native.SOL_SOCKET, Native.SO_REUSEPORT, reusePort ? 1 : 0);
+    }
+
+    boolean isReusePort() throws IOException {
+        return getIntOption(Native.SOL_SOCKET, Native.SO_REUSEPORT) != 0;
+    }
+
+    void setKeepAlive(boolean keepAlive) throws IOException {
+        setIntOption(Native.SOL_SOCKET, Native.SO_KEEPALIVE, keepAlive ? 1 : 0);
+    }
+
+    boolean isKeepAlive() throws IOException {
+        return getIntOption(Native.SOL_SOCKET, Native.SO_KEEPALIVE) != 0;
+    }
+
+    void setSendBufferSize(int sendBufferSize) throws IOException {
+        setIntOption(Native.SOL_SOCKET, Native.SO_SNDBUF, sendBufferSize);
+    }
+
+    int getSendBufferSize() throws IOException {
+        return getIntOption(Native.SOL_SOCKET, Native.SO_SNDBUF);
+    }
+
+    void setReceiveBufferSize(int receiveBufferSize) throws IOException {
+        setIntOption(Native.SOL_SOCKET, Native.SO_RCVBUF, receiveBufferSize);
+    }
+
+    int getReceiveBufferSize() throws IOException {
+        return getIntOption(Native.SOL_SOCKET, Native.SO_RCVBUF);
+    }
+
+    void setTrafficClass(int trafficClass) throws IOException {
+        setIntOption(Native.IPPROTO_IP, Native.IP_TOS, trafficClass);
+    }
+
+    int getTrafficClass() throws IOException {
+        return getIntOption(Native.IPPROTO_IP, Native.IP_TOS);
+    }
+
+    void setSoLinger(int soLinger) throws IOException {
+        Native.setSoLinger(fd, soLinger);
+    }
+
+    int getSoLinger() throws IOException {
+        return Native.getSoLinger(fd);
+    }
+
+    void setTcpNoDelay(boolean tcpNoDelay) throws IOException {
+        setIntOption(Native.IPPROTO_TCP, Native.TCP_NODELAY, tcpNoDelay ? 1 : 0);
+    }
+
+    boolean isTcpNoDelay() throws IOException {
+        return getIntOption(Native.IPPROTO_TCP, Native.TCP_NODELAY) != 0;
+    }
+
+    void setTcpCork(boolean tcpCork) throws IOException {
+        setIntOption(Native.IPPROTO_TCP, Native.TCP_CORK, tcpCork ? 1 : 0);
+    }
+
+    boolean isTcpCork() throws IOException {
+        return getIntOption(Native.IPPROTO_TCP, Native.TCP_CORK) != 0;
+    }
+
+    void setTcpQuickAck(boolean quickAck) throws IOException {
+        setIntOption(Native.IPPROTO_TCP, Native.TCP_QUICKACK, quickAck ? 1 : 0);
+    }
+
+    boolean isTcpQuickAck() throws IOException {
+        return getIntOption(Native.IPPROTO_TCP, Native.TCP_QUICKACK) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "LinuxSocket{fd=" + fd + '}';
+    }
+}
@@ -0,0 +1,300 @@
+package com.yy.netty.channel.epoll;
+
+import com.yy.netty.util.internal.SystemPropertyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+
+/**
+ * epoll传输层用到的JNI方法，C代码在src/main/c/netty_epoll_native.c中
+ * <p>
+ * 这里只是对系统调用的一层薄封装，文件描述符都是int，由LinuxSocket和EpollEventLoop管理。
+ * 类加载时就会加载动态库，加载失败会抛出异常，所以其他类不要直接用这个类来判断epoll是否可用，要用Epoll.isAvailable()
+ * </p>
+ * <p>
+ * 动态库的查找顺序：
+ * 1、-Dio.netty.epoll.libraryPath指定的绝对路径；
+ * 2、java.library.path中的libyy_netty_transport_native_epoll.so；
+ * 3、classpath下的META-INF/native/libyy_netty_transport_native_epoll.so，先解压到临时目录再加载
+ * </p>
+ */
+public final class Native {
+
+    private static final Logger logger = LoggerFactory.getLogger(Native.class);
+
+    private static final String LIBRARY_NAME = "yy_netty_transport_native_epoll";
+
+    static {
+        loadNativeLibrary();
+    }
+
+    // 下面这些常量的值都是从C代码中取的，不同的内核和CPU架构上不一定一样，不能在java中写死
+    public static final int EPOLLIN = epollin();
+    public static final int EPOLLOUT = epollout();
+    public static final int EPOLLRDHUP = epollrdhup();
+    public static final int EPOLLERR = epollerr();
+    public static final int EPOLLET = epollet();
+
+    static final int SOL_SOCKET = solSocket();
+    static final int SO_REUSEADDR = soReuseaddr();
+    static final int SO_REUSEPORT = soReuseport();
+    static final int SO_KEEPALIVE = soKeepalive();
+    static final int SO_SNDBUF = soSndbuf();
+    static final int SO_RCVBUF = soRcvbuf();
+    static final int IPPROTO_IP = ipprotoIp();
+    static final int IP_TOS = ipTos();
+    static final int IPPROTO_TCP = ipprotoTcp();
+    static final int TCP_NODELAY = tcpNodelay();
+    static final int TCP_CORK = tcpCork();
+    static final int TCP_QUICKACK = tcpQuickack();
+
+    // 系统是否支持IPv6，支持的话所有socket都创建成IPv6的，同时也能处理IPv4的地址
+    static final boolean IPV6_SUPPORTED = isIPv6Supported();
+
+    private Native() {
+    }
+
+    private static void loadNativeLibrary() {
+        if (!SystemPropertyUtil.get("os.name", "").toLowerCase().startsWith("linux")) {
+            throw new IllegalStateException("Only supported on Linux");
+        }
+        String path = SystemPropertyUtil.get("io.netty.epoll.libraryPath");
+        if (path != null) {
+            System.load(path);
+            return;
+        }
+        try {
+            System.loadLibrary(LIBRARY_NAME);
+        } catch (UnsatisfiedLinkError e) {
+            // java.library.path中找不到，再从classpath中找
+            loadFromClasspath(e);
+        }
+    }
+
+    private static void loadFromClasspath(UnsatisfiedLinkError cause) {
+        String fileName = System.mapLibraryName(LIBRARY_NAME);
+        InputStream in = Native.class.getClassLoader() == null ? null
+                : Native.class.getClassLoader().getResourceAsStream("META-INF/native/" + fileName);
+        if (in == null) {
+            throw cause;
+        }
+        File tmpFile = null;
+        OutputStream out = null;
+        try {
+            tmpFile = File.createTempFile(LIBRARY_NAME, ".so");
+            tmpFile.deleteOnExit();
+            out = new FileOutputStream(tmpFile);
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = in.read(buffer)) > 0) {
+                out.write(buffer, 0, length);
+            }
+            out.close();
+            out = null;
+            System.load(tmpFile.getAbsolutePath());
+            logger.debug("Loaded {} from the classpath", fileName);
+        } catch (IOException e) {
+            UnsatisfiedLinkError error = new UnsatisfiedLinkError("could not extract " + fileName);
+            error.initCause(e);
+            throw error;
+        } finally {
+            closeQuietly(in);
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException ignore) {
+                // ignore
+            }
+        }
+    }
+
+    // ------------------------------------------ 地址转换 ------------------------------------------
+
+    /**
+     * 把C代码返回的地址还原成InetSocketAddress，格式是：地址（4或16字节）+ 端口（4字节）+ scopeId（4字节）
+     *
+     * @param bytes
+     * @return
+     */
+    static InetSocketAddress toInetSocketAddress(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        int addrLen = bytes.length - 8;
+        int port = readInt(bytes, addrLen);
+        byte[] addr = new byte[addrLen];
+        System.arraycopy(bytes, 0, addr, 0, addrLen);
+        try {
+            if (addrLen == 16) {
+                int scopeId = readInt(bytes, addrLen + 4);
+                return new InetSocketAddress(Inet6Address.getByAddress(null, addr, scopeId), port);
+            }
+            return new InetSocketAddress(InetAddress.getByAddress(addr), port);
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("should never happen", e);
+        }
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16
+                | (bytes[offset + 2] & 0xff) << 8 | bytes[offset + 3] & 0xff;
+    }
+
+    static int scopeId(InetAddress address) {
+        return address instanceof Inet6Address ? ((Inet6Address) address).getScopeId() : 0;
+    }
+
+    // ------------------------------------------ epoll 和 eventfd ------------------------------------------
+
+    public static native int epollCreate();
+
+    public static native int eventFd();
+
+    public static native void eventFdWrite(int fd, long value);
+
+    public static native void eventFdRead(int fd);
+
+    /**
+     * 等待IO事件，被信号打断时返回0
+     *
+     * @param efd       epoll的文件描述符
+     * @param events    存放就绪事件的堆外内存，按struct epoll_event的布局
+     * @param maxEvents events最多能放多少个事件
+     * @param timeout   超时时间，毫秒，-1表示一直等待，0表示不等待
+     * @return 就绪的事件数
+     * @throws IOException
+     */
+    public static native int epollWait(int efd, ByteBuffer events, int maxEvents, int timeout) throws IOException;
+
+    public static native void epollCtlAdd(int efd, int fd, int flags) throws IOException;
+
+    public static native void epollCtlMod(int efd, int fd, int flags) throws IOException;
+
+    public static native void epollCtlDel(int efd, int fd) throws IOException;
+
+    static native int sizeofEpollEvent();
+
+    static native int offsetofEpollData();
+
+    private static native int epollin();
+
+    private static native int epollout();
+
+    private static native int epollrdhup();
+
+    private static native int epollerr();
+
+    private static native int epollet();
+
+    // ------------------------------------------ socket ------------------------------------------
+
+    static native boolean isIPv6Supported();
+
+    static native int socketStream(boolean ipv6) throws IOException;
+
+    static native void bind(int fd, boolean ipv6, byte[] address, int scopeId, int port) throws IOException;
+
+    static native void listen(int fd, int backlog) throws IOException;
+
+    /**
+     * 接受一个连接，得到的socket已经是非阻塞的了
+     *
+     * @param fd
+     * @return 新连接的文件描述符，没有连接了返回-1
+     * @throws IOException
+     */
+    static native int accept(int fd) throws IOException;
+
+    /**
+     * 非阻塞地连接
+     *
+     * @return 已经连接成功返回true，连接还在进行中返回false，要等EPOLLOUT事件之后调用finishConnect
+     * @throws IOException
+     */
+    static native boolean connect(int fd, boolean ipv6, byte[] address, int scopeId, int port) throws IOException;
+
+    static native boolean finishConnect(int fd) throws IOException;
+
+    static native byte[] localAddress(int fd);
+
+    static native byte[] remoteAddress(int fd);
+
+    /**
+     * 从socket读到堆外内存的[pos, limit)中
+     *
+     * @return 读到的字节数，没有数据可读返回0，对端关闭了连接返回-1
+     * @throws IOException
+     */
+    static native int read(int fd, ByteBuffer buf, int pos, int limit) throws IOException;
+
+    /**
+     * 把堆外内存的[pos, limit)写到socket中
+     *
+     * @return 写出的字节数，发送缓冲区满了返回0
+     * @throws IOException
+     */
+    static native int write(int fd, ByteBuffer buf, int pos, int limit) throws IOException;
+
+    /**
+     * 把多个堆外内存的ByteBuffer一次写出去，每个ByteBuffer写的是它的[position, limit)
+     *
+     * @return 写出的字节数，发送缓冲区满了返回0
+     * @throws IOException
+     */
+    static native long writev(int fd, ByteBuffer[] buffers, int offset, int length, long maxBytesPerWrite)
+            throws IOException;
+
+    static native void shutdown(int fd, boolean read, boolean write) throws IOException;
+
+    static native void close(int fd) throws IOException;
+
+    // ------------------------------------------ socket 选项 ------------------------------------------
+
+    static native void setIntOption(int fd, int level, int optname, int value) throws IOException;
+
+    static native int getIntOption(int fd, int level, int optname) throws IOException;
+
+    static native void setSoLinger(int fd, int value) throws IOException;
+
+    static native int getSoLinger(int fd) throws IOException;
+
+    private static native int solSocket();
+
+    private static native int soReuseaddr();
+
+    private static native int soReuseport();
+
+    private static native int soKeepalive();
+
+    private static native int soSndbuf();
+
+    private static native int soRcvbuf();
+
+    private static native int ipprotoIp();
+
+    private static native int ipTos();
+
+    private static native int ipprotoTcp();
+
+    private static native int tcpNodelay();
+
+    private static native int tcpCork();
+
+    private static native int tcpQuickack();
+}
@@ -0,0 +1,69 @@
+package com.yy.netty.channel.local;
+
+import com.yy.netty.channel.Channel;
+import com.yy.netty.util.internal.ObjectUtil;
+
+import java.net.SocketAddress;
+
+/**
+ * 本地传输层的地址，只是一个字符串id，作用相当于ip：port，LocalServerChannel绑定到它上面，LocalChannel连接到它上面
+ */
+public final class LocalAddress extends SocketAddress implements Comparable<LocalAddress> {
+
+    private static final long serialVersionUID = 4644331421130916435L;
+
+    /**
+     * 绑定到这个地址时会分配一个随机的临时地址
+     */
+    public static final LocalAddress ANY = new LocalAddress("ANY");
+
+    private final String id;
+    private final String strVal;
+
+    /**
+     * 给没有指定本地地址的channel生成一个临时地址，用channel的id保证唯一
+     *
+     * @param channel
+     */
+    LocalAddress(Channel channel) {
+        this.id = "E" + channel.id().asShortText();
+        this.strVal = "local:" + id;
+    }
+
+    public LocalAddress(String id) {
+        ObjectUtil.checkNotNull(id, "id");
+        id = id.trim().toLowerCase();
+        if (id.isEmpty()) {
+            throw new IllegalArgumentException("empty id");
+        }
+        this.id = id;
+        this.strVal = "local:" + id;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof LocalAddress)) {
+            return false;
+        }
+        return id.equals(((LocalAddress) o).id);
+    }
+
+    @Override
+    public int compareTo(LocalAddress o) {
+        return id.compareTo(o.id);
+    }
+
+    @Override
+    public String toString() {
+        return strVal;
+    }
+}
@@ -0,0 +1,413 @@
+package com.yy.netty.channel.local;
+
+import com.yy.netty.channel.AbstractChannel;
+import com.yy.netty.channel.Channel;
+import com.yy.netty.channel.ChannelConfig;
+import com.yy.netty.channel.ChannelOutboundBuffer;
+import com.yy.netty.channel.ChannelPipeline;
+import com.yy.netty.channel.ChannelPromise;
+import com.yy.netty.channel.DefaultChannelConfig;
+import com.yy.netty.channel.EventLoop;
+import com.yy.netty.channel.RecvByteBufAllocator;
+import com.yy.netty.channel.ServerChannelRecvByteBufAllocator;
+import com.yy.netty.channel.SingleThreadEventLoop;
+import com.yy.netty.util.ReferenceCountUtil;
+import com.yy.netty.util.internal.PlatformDependent;
+
+import java.net.ConnectException;
+import java.net.SocketAddress;
+import java.nio.channels.AlreadyConnectedException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ConnectionPendingException;
+import java.nio.channels.NotYetConnectedException;
+import java.util.Queue;
+
+/**
+ * 本地传输层的客户端channel，两个LocalChannel互为对端，一个在客户端，一个由LocalServerChannel创建。
+ * 写就是把消息的引用直接放进对端的inboundBuffer中，再让对端的EventLoop去读，
+ * 中间没有系统调用，也没有序列化和内存拷贝，ByteBuf的引用计数随消息一起交给对端
+ * <p>
+ * inboundBuffer是多生产者单消费者队列：只有本channel的EventLoop线程会取消息，对端可能在别的EventLoop线程中放消息
+ * </p>
+ */
+public class LocalChannel extends AbstractChannel {
+
+    private enum State { OPEN, BOUND, CONNECTED, CLOSED }
+
+    // doBeginRead中直接读的最大嵌套层数，超过之后提交任务去读，防止两个channel来回读写把栈撑爆
+    private static final int MAX_READER_STACK_DEPTH = 8;
+
+    // 本地传输层读到的都是对象，不需要分配缓冲区，只按消息个数限制一次读多少，所以和服务端channel一样忽略读到的字节数
+    private final ChannelConfig config = new DefaultChannelConfig(this, new ServerChannelRecvByteBufAllocator()) { };
+
+    // 对端写过来的消息
+    final Queue<Object> inboundBuffer = PlatformDependent.newMpscQueue();
+
+    private final Runnable readTask = new Runnable() {
+        @Override
+        public void run() {
+            if (!inboundBuffer.isEmpty()) {
+                readInbound();
+            }
+        }
+    };
+
+    // 对端写完消息之后提交到本channel的EventLoop中的任务
+    private final Runnable finishPeerReadTask = new Runnable() {
+        @Override
+        public void run() {
+            finishPeerRead0();
+        }
+    };
+
+    private volatile State state;
+    private volatile LocalChannel peer;
+    private volatile LocalAddress localAddress;
+    private volatile LocalAddress remoteAddress;
+    private volatile ChannelPromise connectPromise;
+
+    // 已经开始读了但是没有消息可读，对端写过来消息时直接读，只在本channel的EventLoop线程中访问
+    private boolean readInProgress;
+
+    // 是否正在往对端写，这时对端在同一个EventLoop上的话，不能直接让它读，否则会重入
+    private volatile boolean writeInProgress;
+
+    // doBeginRead的嵌套层数
+    private int readerStackDepth;
+
+    public LocalChannel() {
+        super(null);
+        state = State.OPEN;
+    }
+
+    /**
+     * LocalServerChannel接受连接时创建的对端channel
+     *
+     * @param parent
+     * @param peer
+     */
+    LocalChannel(LocalServerChannel parent, LocalChannel peer) {
+        super(parent);
+        this.peer = peer;
+        this.state = State.OPEN;
+        this.localAddress = parent.localAddress();
+        this.remoteAddress = peer.localAddress();
+    }
+
+    @Override
+    public ChannelConfig config() {
+        return config;
+    }
+
+    @Override
+    public LocalServerChannel parent() {
+        return (LocalServerChannel) super.parent();
+    }
+
+    @Override
+    public LocalAddress localAddress() {
+        return (LocalAddress) super.localAddress();
+    }
+
+    @Override
+    public LocalAddress remoteAddress() {
+        return (LocalAddress) super.remoteAddress();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return state != State.CLOSED;
+    }
+
+    @Override
+    public boolean isActive() {
+        return state == State.CONNECTED;
+    }
+
+    /**
+     * 不依赖selector或者epoll，任何SingleThreadEventLoop都可以
+     *
+     * @param loop
+     * @return
+     */
+    @Override
+    protected boolean isCompatible(EventLoop loop) {
+        return loop instanceof SingleThreadEventLoop;
+    }
+
+    @Override
+    protected SocketAddress localAddress0() {
+        return localAddress;
+    }
+
+    @Override
+    protected SocketAddress remoteAddress0() {
+        return remoteAddress;
+    }
+
+    /**
+     * 服务端创建的channel注册到childGroup上时，连接才算真正建立：
+     * 把两端都设置为已连接，再到客户端channel的EventLoop中完成它的connectPromise并触发channelActive
+     *
+     * @throws Exception
+     */
+    @Override
+    protected void doRegister() throws Exception {
+        final LocalChannel peer = this.peer;
+        if (peer == null || parent() == null) {
+            return;
+        }
+        if (!peer.isOpen()) {
+            // 客户端在连接建立之前就已经关闭了
+            throw new ClosedChannelException();
+        }
+        state = State.CONNECTED;
+        peer.remoteAddress = parent().localAddress();
+        peer.state = State.CONNECTED;
+        peer.eventLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                ChannelPromise promise = peer.connectPromise;
+                peer.connectPromise = null;
+                if (promise != null && promise.trySuccess()) {
+                    peer.pipeline().fireChannelActive();
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void doBind(SocketAddress localAddress) throws Exception {
+        this.localAddress = LocalChannelRegistry.register(this, this.localAddress, localAddress);
+        state = State.BOUND;
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        final LocalChannel peer = this.peer;
+        if (state != State.CLOSED) {
+            if (localAddress != null) {
+                // 服务端创建的channel和LocalServerChannel共用一个地址，不能注销
+                if (parent() == null) {
+                    LocalChannelRegistry.unregister(localAddress);
+                }
+                localAddress = null;
+            }
+            state = State.CLOSED;
+
+            ChannelPromise promise = connectPromise;
+            if (promise != null) {
+                connectPromise = null;
+                promise.tryFailure(new ClosedChannelException());
+            }
+        }
+
+        if (peer != null) {
+            this.peer = null;
+            if (peer.isOpen()) {
+                if (peer.isRegistered()) {
+                    // 在对端的EventLoop中关闭对端，排在之前写过去的消息后面，对端会先读完这些消息，相当于TCP先读完数据再读到EOF
+                    peer.eventLoop().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            peer.closeByPeer();
+                        }
+                    });
+                } else {
+                    peer.unsafe().close(peer.voidPromise());
+                }
+            }
+        }
+        releaseInboundBuffers();
+    }
+
+    /**
+     * 对端关闭了，先把已经收到的消息读完，再关闭自己，和用户调用close一样会触发channelInactive并完成closeFuture
+     */
+    private void closeByPeer() {
+        while (isOpen() && config().isAutoRead() && !inboundBuffer.isEmpty()) {
+            readInProgress = false;
+            readInbound();
+        }
+        if (isOpen()) {
+            unsafe().close(voidPromise());
+        }
+    }
+
+    private void releaseInboundBuffers() {
+        readInProgress = false;
+        Object msg;
+        while ((msg = inboundBuffer.poll()) != null) {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    @Override
+    protected void doBeginRead() throws Exception {
+        if (readInProgress) {
+            return;
+        }
+        if (inboundBuffer.isEmpty()) {
+            readInProgress = true;
+            return;
+        }
+
+        // 读完之后头节点的channelReadComplete会再调用read，又会回到这里，嵌套太深时改为提交任务
+        if (readerStackDepth < MAX_READER_STACK_DEPTH) {
+            readerStackDepth++;
+            try {
+                readInbound();
+            } finally {
+                readerStackDepth--;
+            }
+        } else {
+            eventLoop().execute(readTask);
+        }
+    }
+
+    /**
+     * 从inboundBuffer中取出消息在pipeline上传播，一次最多读maxMessagesPerRead个
+     */
+    private void readInbound() {
+        final RecvByteBufAllocator.Handle handle = unsafe().recvBufAllocHandle();
+        handle.reset(config());
+        final ChannelPipeline pipeline = pipeline();
+        do {
+            Object received = inboundBuffer.poll();
+            if (received == null) {
+                break;
+            }
+            handle.incMessagesRead(1);
+            pipeline.fireChannelRead(received);
+        } while (handle.continueReading());
+        handle.readComplete();
+        pipeline.fireChannelReadComplete();
+    }
+
+    /**
+     * 把写缓冲区中的消息直接放进对端的inboundBuffer中，再通知对端去读
+     *
+     * @param in
+     * @throws Exception
+     */
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) throws Exception {
+        switch (state) {
+            case OPEN:
+            case BOUND:
+                throw new NotYetConnectedException();
+            case CLOSED:
+                throw new ClosedChannelException();
+            default:
+                break;
+        }
+
+        final LocalChannel peer = this.peer;
+        writeInProgress = true;
+        try {
+            ClosedChannelException exception = null;
+            for (;;) {
+                Object msg = in.current();
+                if (msg == null) {
+                    break;
+                }
+                if (peer.state == State.CONNECTED) {
+                    // 先retain再remove，remove会release一次，消息的引用计数不变，所有权就交给了对端
+                    peer.inboundBuffer.add(ReferenceCountUtil.retain(msg));
+                    in.remove();
+                } else {
+                    if (exception == null) {
+                        exception = new ClosedChannelException();
+                    }
+                    in.remove(exception);
+                }
+            }
+        } finally {
+            writeInProgress = false;
+        }
+        finishPeerRead(peer);
+    }
+
+    private void finishPeerRead(LocalChannel peer) {
+        if (peer.eventLoop() == eventLoop() && !peer.writeInProgress) {
+            // 在同一个EventLoop上，直接让对端读，不用再提交任务
+            peer.finishPeerRead0();
+        } else {
+            peer.eventLoop().execute(peer.finishPeerReadTask);
+        }
+    }
+
+    /**
+     * 对端写完了，本channel之前已经开始读了（readInProgress）就接着读，否则等下一次read
+     */
+    private void finishPeerRead0() {
+        if (readInProgress && !inboundBuffer.isEmpty()) {
+            readInProgress = false;
+            readInbound();
+        }
+    }
+
+    @Override
+    protected AbstractUnsafe newUnsafe() {
+        return new LocalUnsafe();
+    }
+
+    private final class LocalUnsafe extends AbstractUnsafe {
+
+        /**
+         * 在注册表中找到目标地址上的LocalServerChannel，由它创建对端channel。
+         * 连接要等对端channel注册到childGroup上才算建立，connectPromise在对端的doRegister中完成
+         *
+         * @param remoteAddress
+         * @param localAddress
+         * @param promise
+         */
+        @Override
+        public void connect(SocketAddress remoteAddress, SocketAddress localAddress, ChannelPromise promise) {
+            if (!promise.setUncancellable() || !ensureOpen(promise)) {
+                return;
+            }
+
+            if (state == State.CONNECTED) {
+                safeSetFailure(promise, new AlreadyConnectedException());
+                return;
+            }
+
+            if (connectPromise != null) {
+                safeSetFailure(promise, new ConnectionPendingException());
+                return;
+            }
+
+            connectPromise = promise;
+
+            if (state != State.BOUND) {
+                // 没有指定本地地址的话，分配一个临时地址
+                if (localAddress == null) {
+                    localAddress = new LocalAddress(LocalChannel.this);
+                }
+            }
+
+            if (localAddress != null) {
+                try {
+                    doBind(localAddress);
+                } catch (Throwable t) {
+                    connectPromise = null;
+                    safeSetFailure(promise, t);
+                    close(voidPromise());
+                    return;
+                }
+            }
+
+            Channel boundChannel = LocalChannelRegistry.get(remoteAddress);
+            if (!(boundChannel instanceof LocalServerChannel)) {
+                connectPromise = null;
+                safeSetFailure(promise, new ConnectException("connection refused: " + remoteAddress));
+                close(voidPromise());
+                return;
+            }
+
+            LocalServerChannel serverChannel = (LocalServerChannel) boundChannel;
+            peer = serverChannel.serve(LocalChannel.this);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.yy.netty.channel.local;
+
+import com.yy.netty.channel.Channel;
+
+import java.net.BindException;
+import java.net.SocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 本地地址的注册表，相当于本地传输层的“端口表”：绑定时把地址和channel放进来，连接时按地址找到LocalServerChannel
+ */
+final class LocalChannelRegistry {
+
+    private static final ConcurrentMap<LocalAddress, Channel> boundChannels = new ConcurrentHashMap<LocalAddress, Channel>();
+
+    private LocalChannelRegistry() {
+    }
+
+    /**
+     * 把channel绑定到本地地址上
+     *
+     * @param channel
+     * @param oldLocalAddress channel当前绑定的地址，不为null说明已经绑定过了
+     * @param localAddress    要绑定的地址，LocalAddress.ANY会被替换成一个临时地址
+     * @return 实际绑定的地址
+     * @throws BindException 地址已经被别的channel占用了
+     */
+    static LocalAddress register(Channel channel, LocalAddress oldLocalAddress, SocketAddress localAddress)
+            throws BindException {
+        if (oldLocalAddress != null) {
+            throw new IllegalStateException("already bound");
+        }
+        if (!(localAddress instanceof LocalAddress)) {
+            throw new IllegalArgumentException("unsupported address type: " + localAddress.getClass().getName());
+        }
+
+        LocalAddress addr = (LocalAddress) localAddress;
+        if (LocalAddress.ANY.equals(addr)) {
+            addr = new LocalAddress(channel);
+        }
+
+        Channel boundChannel = boundChannels.putIfAbsent(addr, channel);
+        if (boundChannel != null) {
+            throw new BindException("address already in use by: " + boundChannel);
+        }
+        return addr;
+    }
+
+    static Channel get(SocketAddress localAddress) {
+        return boundChannels.get(localAddress);
+    }
+
+    static void unregister(LocalAddress localAddress) {
+        boundChannels.remove(localAddress);
+    }
+}
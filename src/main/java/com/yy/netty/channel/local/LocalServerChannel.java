@@ -0,0 +1,197 @@
+package com.yy.netty.channel.local;
+
+import com.yy.netty.channel.AbstractChannel;
+import com.yy.netty.channel.Channel;
+import com.yy.netty.channel.ChannelConfig;
+import com.yy.netty.channel.ChannelOutboundBuffer;
+import com.yy.netty.channel.ChannelPipeline;
+import com.yy.netty.channel.ChannelPromise;
+import com.yy.netty.channel.DefaultChannelConfig;
+import com.yy.netty.channel.EventLoop;
+import com.yy.netty.channel.RecvByteBufAllocator;
+import com.yy.netty.channel.ServerChannelRecvByteBufAllocator;
+import com.yy.netty.channel.SingleThreadEventLoop;
+
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * 本地传输层的服务端channel，作用和NioServerSocketChannel一样，只是没有socket：
+ * 绑定就是把自己登记到LocalChannelRegistry中，“接受连接”就是为每个连接过来的LocalChannel创建一个对端的LocalChannel，
+ * 当作消息在pipeline上传播，由ServerBootstrapAcceptor注册到childGroup上
+ */
+public class LocalServerChannel extends AbstractChannel {
+
+    private final ChannelConfig config = new DefaultChannelConfig(this, new ServerChannelRecvByteBufAllocator()) { };
+
+    // 等待被读取的客户端channel，只在本channel的EventLoop线程中访问
+    private final Queue<Object> inboundBuffer = new ArrayDeque<Object>();
+
+    // 0：未绑定，1：已绑定，2：已关闭
+    private volatile int state;
+
+    private volatile LocalAddress localAddress;
+
+    // 已经开始读了但是没有客户端channel可读，有新连接到来时直接读
+    private boolean acceptInProgress;
+
+    public LocalServerChannel() {
+        super(null);
+    }
+
+    @Override
+    public ChannelConfig config() {
+        return config;
+    }
+
+    @Override
+    public LocalAddress localAddress() {
+        return (LocalAddress) super.localAddress();
+    }
+
+    @Override
+    public LocalAddress remoteAddress() {
+        return null;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return state < 2;
+    }
+
+    @Override
+    public boolean isActive() {
+        return state == 1;
+    }
+
+    @Override
+    protected boolean isCompatible(EventLoop loop) {
+        return loop instanceof SingleThreadEventLoop;
+    }
+
+    @Override
+    protected SocketAddress localAddress0() {
+        return localAddress;
+    }
+
+    @Override
+    protected SocketAddress remoteAddress0() {
+        return null;
+    }
+
+    @Override
+    protected void doRegister() throws Exception {
+        // 没有selector或者epoll，不需要做什么
+    }
+
+    @Override
+    protected void doBind(SocketAddress localAddress) throws Exception {
+        this.localAddress = LocalChannelRegistry.register(this, this.localAddress, localAddress);
+        state = 1;
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        if (state <= 1) {
+            if (localAddress != null) {
+                LocalChannelRegistry.unregister(localAddress);
+                localAddress = null;
+            }
+            state = 2;
+        }
+        // 还没来得及被读取的客户端channel也要关掉，它们的对端才会知道连接失败了
+        Object child;
+        while ((child = inboundBuffer.poll()) != null) {
+            Channel ch = (Channel) child;
+            ch.unsafe().close(ch.voidPromise());
+        }
+    }
+
+    @Override
+    protected void doBeginRead() throws Exception {
+        if (acceptInProgress) {
+            return;
+        }
+        if (inboundBuffer.isEmpty()) {
+            acceptInProgress = true;
+            return;
+        }
+        readInbound();
+    }
+
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected Object filterOutboundMessage(Object msg) throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * LocalChannel连接过来时调用，创建对端的LocalChannel，交给本channel的EventLoop去“接受”
+     *
+     * @param peer 发起连接的LocalChannel
+     * @return 对端的LocalChannel
+     */
+    LocalChannel serve(final LocalChannel peer) {
+        final LocalChannel child = new LocalChannel(this, peer);
+        if (eventLoop().inEventLoop(Thread.currentThread())) {
+            serve0(child);
+        } else {
+            eventLoop().execute(new Runnable() {
+                @Override
+                public void run() {
+                    serve0(child);
+                }
+            });
+        }
+        return child;
+    }
+
+    private void serve0(final LocalChannel child) {
+        if (!isOpen()) {
+            child.unsafe().close(child.voidPromise());
+            return;
+        }
+        inboundBuffer.add(child);
+        if (acceptInProgress) {
+            acceptInProgress = false;
+            readInbound();
+        }
+    }
+
+    /**
+     * 和NioMessageUnsafe.read()一样，一次最多读maxMessagesPerRead个客户端channel，每个都在pipeline上传播
+     */
+    private void readInbound() {
+        final RecvByteBufAllocator.Handle handle = unsafe().recvBufAllocHandle();
+        handle.reset(config());
+        final ChannelPipeline pipeline = pipeline();
+        do {
+            Object m = inboundBuffer.poll();
+            if (m == null) {
+                break;
+            }
+            handle.incMessagesRead(1);
+            pipeline.fireChannelRead(m);
+        } while (handle.continueReading());
+        handle.readComplete();
+        pipeline.fireChannelReadComplete();
+    }
+
+    @Override
+    protected AbstractUnsafe newUnsafe() {
+        return new LocalServerUnsafe();
+    }
+
+    private final class LocalServerUnsafe extends AbstractUnsafe {
+
+        @Override
+        public void connect(SocketAddress remoteAddress, SocketAddress localAddress, ChannelPromise promise) {
+            safeSetFailure(promise, new UnsupportedOperationException());
+        }
+    }
+}
@@ -1,8 +1,13 @@
 package com.yy.netty.channel.nio;
 
+import com.yy.netty.buffer.ByteBuf;
+import com.yy.netty.buffer.ByteBufAllocator;
 import com.yy.netty.channel.Channel;
+import com.yy.netty.channel.ChannelConfig;
+import com.yy.netty.channel.ChannelPipeline;
+import com.yy.netty.channel.RecvByteBufAllocator;
 
-import java.nio.ByteBuffer;
+import java.io.IOException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 
@@ -10,6 +15,17 @@ import java.nio.channels.SelectionKey;
  * 客户端NIO消息Channel抽象类，完成一些客户端消息处理的通用方法，持有一些客户端消息处理需要的成员变量
  */
 public abstract class AbstractNioByteChannel extends AbstractNioChannel {
+
+    /**
+     * 一次flush用完了写自旋次数还没写完时，提交到EventLoop中继续flush的任务。
+     * 直接调用flush0，而不是flush，这样只会写之前已经刷新过的消息，不会把这期间新write的消息也带上
+     */
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            ((AbstractNioUnsafe) unsafe()).flush0();
+        }
+    };
     /**
      * 构造方法
      *
@@ -29,16 +45,67 @@ public abstract class AbstractNioByteChannel extends AbstractNioChannel {
 
         /**
          * 客户端channel“读”事件处理逻辑:
-         * 其实就是从SocketChannel上进行IO读取
+         * 其实就是从SocketChannel上进行IO读取。
+         * 读取用的ByteBuf由channel配置的内存分配器分配，默认是池化的堆外内存，用完之后release，内存会回到内存池中，
+         * 所以稳定运行时每次读取都不会再创建新的缓冲区了。
+         * 每次分配多大的ByteBuf、一次读事件中连续读多少次，都交给RecvByteBufAllocator.Handle来决定：
+         * 缓冲区读满了就接着读，直到把socket中的数据读完或者达到maxMessagesPerRead，减少selector的轮询次数
          */
         @Override
         public void read() {
-            //暂时用最原始简陋的方法处理
-            ByteBuffer byteBuf = ByteBuffer.allocate(1024);
+            final ChannelConfig config = config();
+            final ByteBufAllocator allocator = config.getAllocator();
+            final ChannelPipeline pipeline = pipeline();
+            final RecvByteBufAllocator.Handle allocHandle = recvBufAllocHandle();
+            allocHandle.reset(config);
+
+            ByteBuf byteBuf = null;
+            boolean close = false;
             try {
-                doReadBytes(byteBuf);
-            } catch (Exception e) {
-                e.printStackTrace();
+                do {
+                    byteBuf = allocHandle.allocate(allocator);
+                    allocHandle.lastBytesRead(doReadBytes(byteBuf));
+                    if (allocHandle.lastBytesRead() <= 0) {
+                        // 什么都没读到，释放ByteBuf
+                        byteBuf.release();
+                        byteBuf = null;
+                        // 返回-1说明对端已经关闭了连接
+                        close = allocHandle.lastBytesRead() < 0;
+                        break;
+                    }
+                    allocHandle.incMessagesRead(1);
+                    readPending = false;
+                    // 把读到的数据交给pipeline，由用户的handler处理，ByteBuf也由handler负责释放，没人处理的话尾节点会释放它
+                    pipeline.fireChannelRead(byteBuf);
+                    byteBuf = null;
+                } while (allocHandle.continueReading());
+
+                // 根据本次一共读到的字节数调整下一次分配的缓冲区大小
+                allocHandle.readComplete();
+                // 本次读事件处理完了
+                pipeline.fireChannelReadComplete();
+
+                if (close) {
+                    // 对端已经关闭了连接，本端也关闭channel，否则会一直触发读事件
+                    close(voidPromise());
+                }
+            } catch (Throwable t) {
+                if (byteBuf != null) {
+                    byteBuf.release();
+                }
+                allocHandle.readComplete();
+                pipeline.fireChannelReadComplete();
+                pipeline.fireExceptionCaught(t);
+                if (t instanceof IOException) {
+                    // 连接被重置之类的错误，channel已经不可用了，不关闭的话selector会一直返回读事件
+                    close(voidPromise());
+                }
+            } finally {
+                // 关闭了自动读，并且用户没有在处理的过程中再调用read，就不再关注OP_READ，
+                // 数据留在socket的接收缓冲区中，对端的发送窗口会被填满，这样才能起到背压的作用
+                if (!readPending && !config.isAutoRead()) {
+                    removeReadOp();
+                }
             }
         }
     }
@@ -47,20 +114,96 @@ public abstract class AbstractNioByteChannel extends AbstractNioChannel {
     /**
      * 抽象方法，子类具体实现对SocketChannel的IO读取
      *
-     * @param byteBuf
+     * @param byteBuf 读到的数据写入该ByteBuf
+     * @return 读取到的字节数，-1表示对端关闭了连接
      * @throws Exception
      */
-    protected abstract int doReadBytes(ByteBuffer byteBuf) throws Exception;
+    protected abstract int doReadBytes(ByteBuf byteBuf) throws Exception;
 
     /**
-     * 抽象方法，子类具体实现对SocketChannel的IO写入
+     * NIO的写只支持ByteBuf，堆内存的ByteBuf在写到socket的时候，jdk内部还要先拷贝到一块临时的堆外内存中，
+     * 所以这里直接把它转换成堆外内存的ByteBuf
      *
      * @param msg
-     * @throws Exception
+     * @return
      */
     @Override
-    protected void doWrite(Object msg) throws Exception {
+    protected final Object filterOutboundMessage(Object msg) {
+        if (msg instanceof ByteBuf) {
+            ByteBuf buf = (ByteBuf) msg;
+            if (buf.isDirect()) {
+                return msg;
+            }
+            return newDirectBuffer(buf);
+        }
+
+        throw new UnsupportedOperationException(
+                "unsupported message type: " + msg.getClass().getName() + " (expected: ByteBuf)");
+    }
 
+    /**
+     * 把堆内存的ByteBuf拷贝到新分配的堆外内存的ByteBuf中，并释放原来的ByteBuf
+     *
+     * @param buf
+     * @return
+     */
+    protected final ByteBuf newDirectBuffer(ByteBuf buf) {
+        final int readableBytes = buf.readableBytes();
+        if (readableBytes == 0) {
+            return buf;
+        }
+
+        ByteBuf directBuf = config().getAllocator().directBuffer(readableBytes);
+        directBuf.writeBytes(buf, buf.readerIndex(), readableBytes);
+        buf.release();
+        return directBuf;
+    }
+
+    /**
+     * 一次flush没有把数据写完时调用
+     * 1、setOpWrite为true：socket的发送缓冲区满了，注册OP_WRITE，等socket可写的时候再接着写；
+     * 2、setOpWrite为false：socket还能写，只是写自旋次数用完了，为了不让一个channel一直占着EventLoop，
+     * 把剩下的写封装成任务放到任务队列中，让EventLoop先去处理其他channel的IO事件和任务，轮到这个任务时再接着写
+     *
+     * @param setOpWrite
+     */
+    protected final void incompleteWrite(boolean setOpWrite) {
+        if (setOpWrite) {
+            setOpWrite();
+        } else {
+            // 之前可能注册过OP_WRITE，这里要取消掉，否则socket一直可写，selector会一直返回OP_WRITE事件
+            clearOpWrite();
+
+            eventLoop().execute(flushTask);
+        }
+    }
+
+    /**
+     * socket的发送缓冲区满了，数据没有写完，注册OP_WRITE，等socket可写的时候再接着写
+     */
+    protected final void setOpWrite() {
+        final SelectionKey key = selectionKey();
+        if (!key.isValid()) {
+            return;
+        }
+        final int interestOps = key.interestOps();
+        if ((interestOps & SelectionKey.OP_WRITE) == 0) {
+            key.interestOps(interestOps | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * 数据写完了，取消OP_WRITE，否则socket一直可写，selector会一直返回OP_WRITE事件
+     */
+    protected final void clearOpWrite() {
+        final SelectionKey key = selectionKey();
+        if (!key.isValid()) {
+            return;
+        }
+        final int interestOps = key.interestOps();
+        if ((interestOps & SelectionKey.OP_WRITE) != 0) {
+            key.interestOps(interestOps & ~SelectionKey.OP_WRITE);
+        }
     }
 
 }
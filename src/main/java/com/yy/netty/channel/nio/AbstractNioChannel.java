@@ -3,12 +3,18 @@ package com.yy.netty.channel.nio;
 import com.yy.netty.channel.AbstractChannel;
 import com.yy.netty.channel.Channel;
 import com.yy.netty.channel.ChannelPromise;
+import com.yy.netty.channel.ConnectTimeoutException;
 import com.yy.netty.channel.EventLoop;
+import com.yy.netty.util.concurrent.ScheduledFuture;
 
 import java.io.IOException;
+import java.net.ConnectException;
 import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.channels.ConnectionPendingException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
+import java.util.concurrent.TimeUnit;
 
 /**
  * nio层抽象channel, 在NIO Channel层次中，进行一些技术方法实现，持有一些该层次下的成员变量
@@ -26,9 +32,27 @@ public abstract class AbstractNioChannel extends AbstractChannel {
     //channel注册到selector后返回的key，该key上未来就会出现感兴趣的事件，事件最终会在EventLoop被响应处理
     volatile SelectionKey selectionKey;
 
-    //是否还有未读取的数据
+    //是否还有未读取的数据：doBeginRead时置为true，真正读到数据（或者连接）后置为false。
+    //关闭自动读之后，读循环结束时如果它为false，说明用户没有再调用read，要把读事件从selector上移除
     boolean readPending;
 
+    // 在EventLoop中清除readPending并移除读事件的任务，复用同一个对象
+    private final Runnable clearReadPendingRunnable = new Runnable() {
+        @Override
+        public void run() {
+            clearReadPending0();
+        }
+    };
+
+    // 正在进行中的连接对应的promise，连接完成（成功、失败或者超时）之后置为null
+    private ChannelPromise connectPromise;
+
+    // 连接超时的定时任务，连接完成之后要取消掉
+    private ScheduledFuture<?> connectTimeoutFuture;
+
+    // 正在连接的远端地址，用于异常信息
+    private SocketAddress requestedRemoteAddress;
+
     /**
      * 构造方法
      *
@@ -86,8 +110,31 @@ public abstract class AbstractNioChannel extends AbstractChannel {
         return (NioUnsafe) super.unsafe();
     }
 
+    /**
+     * 关闭自动读时由channel的配置类调用：清除readPending，并把读事件从selector上移除，
+     * 否则selector还会不停地报告读事件（服务端channel就是OP_ACCEPT），关闭自动读就起不到背压的作用了
+     */
+    protected final void clearReadPending() {
+        if (isRegistered()) {
+            EventLoop eventLoop = eventLoop();
+            if (eventLoop.inEventLoop(Thread.currentThread())) {
+                clearReadPending0();
+            } else {
+                eventLoop.execute(clearReadPendingRunnable);
+            }
+        } else {
+            // 还没注册，selectionKey都没有，只清除标记就行了
+            readPending = false;
+        }
+    }
+
+    private void clearReadPending0() {
+        readPending = false;
+        ((AbstractNioUnsafe) unsafe()).removeReadOp();
+    }
+
 
-    interface NioUnsafe extends Unsafe {
+    public interface NioUnsafe extends Unsafe {
         // 获取该channel的java原生Channel
         SelectableChannel ch();
 
@@ -114,37 +161,175 @@ public abstract class AbstractNioChannel extends AbstractChannel {
             return javaChannel();
         }
 
+        /**
+         * 把读事件（服务端channel是OP_ACCEPT）从selector上移除，doBeginRead时会再加回来
+         */
+        protected final void removeReadOp() {
+            SelectionKey key = selectionKey();
+            // channel已经关闭了，key也就失效了，不能再修改它关注的事件
+            if (!key.isValid()) {
+                return;
+            }
+            int interestOps = key.interestOps();
+            if ((interestOps & readInterestOp) != 0) {
+                key.interestOps(interestOps & ~readInterestOp);
+            }
+        }
+
         @Override
-        public final void connect(SocketAddress remoteAddress, SocketAddress localAddress, ChannelPromise promise) {
+        public final void connect(final SocketAddress remoteAddress, SocketAddress localAddress, ChannelPromise promise) {
+            if (!promise.setUncancellable() || !ensureOpen(promise)) {
+                return;
+            }
+
             try {
-                boolean doConnect = doConnect(remoteAddress, localAddress);
-                if (!doConnect) {
-                    //这里的代码会搞出一个bug，我会在第六个版本的代码中修正，同时也会给大家讲一下bug是怎么产生的。这个bug只会在收发数据时
-                    //体现出来，所以并不会影响我们本节课的测试。我们现在还没有开始收发数据
-                    promise.trySuccess();
+                if (connectPromise != null) {
+                    throw new ConnectionPendingException();
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
+
+                boolean wasActive = isActive();
+                if (doConnect(remoteAddress, localAddress)) {
+                    // 直接连接成功了
+                    fulfillConnectPromise(promise, wasActive);
+                } else {
+                    // 连接还在进行中，等OP_CONNECT事件到来后在finishConnect中设置promise的结果
+                    connectPromise = promise;
+                    requestedRemoteAddress = remoteAddress;
+
+                    // 提交一个连接超时的定时任务，超时之后连接还没完成，就让promise失败并关闭channel
+                    int connectTimeoutMillis = config().getConnectTimeoutMillis();
+                    if (connectTimeoutMillis > 0) {
+                        connectTimeoutFuture = eventLoop().schedule(new Runnable() {
+                            @Override
+                            public void run() {
+                                ChannelPromise connectPromise = AbstractNioChannel.this.connectPromise;
+                                ConnectTimeoutException cause =
+                                        new ConnectTimeoutException("connection timed out: " + remoteAddress);
+                                if (connectPromise != null && connectPromise.tryFailure(cause)) {
+                                    closeForcibly();
+                                }
+                            }
+                        }, connectTimeoutMillis, TimeUnit.MILLISECONDS);
+                    }
+                }
+            } catch (Throwable t) {
+                promise.tryFailure(annotateConnectException(t, remoteAddress));
+                closeIfClosed();
+            }
+        }
+
+        /**
+         * 连接成功，设置promise的结果，并开始关注读事件
+         *
+         * @param promise
+         * @param wasActive 连接之前channel是否已经是激活状态
+         */
+        private void fulfillConnectPromise(ChannelPromise promise, boolean wasActive) {
+            if (promise == null) {
+                // 连接超时了，promise已经失败了
+                return;
+            }
+
+            boolean active = isActive();
+
+            // 如果设置失败，说明promise已经超时失败了
+            boolean promiseSet = promise.trySuccess();
+
+            // 连接成功了，在pipeline上传播channelActive事件，头节点收到后会为该channel注册读事件，开始进入循环处理IO读事件了
+            if (!wasActive && active) {
+                pipeline().fireChannelActive();
+            }
+
+            if (!promiseSet) {
+                closeForcibly();
             }
         }
 
+        private void fulfillConnectPromise(ChannelPromise promise, Throwable cause) {
+            if (promise == null) {
+                return;
+            }
+
+            promise.tryFailure(cause);
+            closeIfClosed();
+        }
+
         @Override
         public final void finishConnect() {
             assert eventLoop().inEventLoop(Thread.currentThread());
             try {
+                boolean wasActive = isActive();
                 //真正处理连接完成的方法
                 doFinishConnect();
-            } catch (Exception e) {
-                e.printStackTrace();
+                fulfillConnectPromise(connectPromise, wasActive);
+            } catch (Throwable t) {
+                fulfillConnectPromise(connectPromise, annotateConnectException(t, requestedRemoteAddress));
+            } finally {
+                // 连接已经完成了，取消超时任务
+                if (connectTimeoutFuture != null) {
+                    connectTimeoutFuture.cancel(false);
+                }
+                connectPromise = null;
+            }
+        }
+
+        /**
+         * 连接失败后，channel如果已经不是打开状态了，确保资源被释放
+         */
+        private void closeIfClosed() {
+            if (!isOpen()) {
+                closeForcibly();
+            }
+        }
+
+        /**
+         * 如果已经注册了OP_WRITE，说明socket的发送缓冲区满了，等OP_WRITE事件到来时会调用forceFlush来写，这里就不要白白尝试了
+         */
+        @Override
+        protected final void flush0() {
+            if (!isFlushPending()) {
+                super.flush0();
             }
         }
 
+        /**
+         * OP_WRITE事件到来，socket又可以写了，直接开始写
+         */
         @Override
         public final void forceFlush() {
+            super.flush0();
+        }
+
+        private boolean isFlushPending() {
+            SelectionKey selectionKey = selectionKey();
+            return selectionKey.isValid() && (selectionKey.interestOps() & SelectionKey.OP_WRITE) != 0;
         }
 
     }
 
+    /**
+     * 在连接异常中加上远端地址，方便排查问题
+     *
+     * @param cause
+     * @param remoteAddress
+     * @return
+     */
+    private static Throwable annotateConnectException(Throwable cause, SocketAddress remoteAddress) {
+        if (cause instanceof ConnectException) {
+            ConnectException newT = new ConnectException(cause.getMessage() + ": " + remoteAddress);
+            newT.initCause(cause);
+            newT.setStackTrace(cause.getStackTrace());
+            return newT;
+        }
+        if (cause instanceof SocketException) {
+            SocketException newT = new SocketException(cause.getMessage() + ": " + remoteAddress);
+            newT.initCause(cause);
+            newT.setStackTrace(cause.getStackTrace());
+            return newT;
+        }
+        return cause;
+    }
+
     /**
      * 注册的行为很简单，也很通用，其实就是注册channel到selector上，所以就在这一层统一实现掉
      *
@@ -165,6 +350,9 @@ public abstract class AbstractNioChannel extends AbstractChannel {
         if (!selectionKey.isValid()) {
             return;
         }
+
+        readPending = true;
+
         //还没有设置感兴趣的事件，所以得到的值为0；如果设置了感兴趣的事件，那么得到的值就是设置的值
         final int interestOps = selectionKey.interestOps();
         //如果interestOps中并不包含readInterestOp，说明尚未设置该事件，那么设置该事件
@@ -179,6 +367,16 @@ public abstract class AbstractNioChannel extends AbstractChannel {
 
     }
 
+    /**
+     * 取消selectionKey，selector不会再为本channel返回就绪事件
+     *
+     * @throws Exception
+     */
+    @Override
+    protected void doDeregister() throws Exception {
+        selectionKey().cancel();
+    }
+
     /**
      * 抽象方法，子类实现，完成connect
      *
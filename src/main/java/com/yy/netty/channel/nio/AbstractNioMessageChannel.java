@@ -1,6 +1,10 @@
 package com.yy.netty.channel.nio;
 
 import com.yy.netty.channel.Channel;
+import com.yy.netty.channel.ChannelConfig;
+import com.yy.netty.channel.ChannelOutboundBuffer;
+import com.yy.netty.channel.ChannelPipeline;
+import com.yy.netty.channel.RecvByteBufAllocator;
 
 import java.nio.channels.SelectableChannel;
 import java.util.ArrayList;
@@ -45,43 +49,58 @@ public abstract class AbstractNioMessageChannel extends AbstractNioChannel {
 
         /**
          * 服务端channel“读”事件的处理逻辑：
-         * 其实就是从ServerSocketChannel上接受客户端连接，生成客户端channel，把将其注册到工作线程上
+         * 其实就是从ServerSocketChannel上接受客户端连接，生成客户端channel，然后把每一个客户端channel都当作一条消息在pipeline上传播，
+         * 服务端pipeline中的ServerBootstrapAcceptor收到后会完成客户端channel的初始化，并把它注册到childGroup的EventLoop上
          */
         @Override
         public void read() {
 
             //该方法要在netty的线程执行器中执行
             assert eventLoop().inEventLoop(Thread.currentThread());
-            boolean closed = false;
+            final ChannelConfig config = config();
+            final ChannelPipeline pipeline = pipeline();
+            // 一次OP_ACCEPT事件中最多接收maxMessagesPerRead个连接，剩下的等下一轮select，避免一直占着线程
+            final RecvByteBufAllocator.Handle allocHandle = recvBufAllocHandle();
+            allocHandle.reset(config);
+
             Throwable exception = null;
             try {
-                do {
-                    //创建客户端的连接，存放在集合中
-                    int localRead = doReadMessages(readBuf);
-                    //返回值为0表示没有连接，直接退出即可
-                    if (localRead == 0) {
-                        break;
-                    }
-                } while (true);
-            } catch (Throwable t) {
-                exception = t;
-            }
-            // 处理前面创建的客户端连接
-            int size = readBuf.size();
-            for (int i = 0; i < size; i++) {
-                readPending = false;
-                //把每一个客户端的channel注册到工作线程上,这里得不到workgroup，所以我们不在这里实现了，打印一下即可
-                Channel child = (Channel) readBuf.get(i);
-                System.out.println(child + "收到客户端的channel了");
-                // TODO：客户端的channel注册到工作线程上
-
+                try {
+                    do {
+                        //创建客户端的连接，存放在集合中
+                        int localRead = doReadMessages(readBuf);
+                        //返回值为0表示没有连接，直接退出即可
+                        if (localRead == 0) {
+                            break;
+                        }
+                        allocHandle.incMessagesRead(localRead);
+                    } while (allocHandle.continueReading());
+                } catch (Throwable t) {
+                    exception = t;
+                }
+                // 处理前面创建的客户端连接
+                int size = readBuf.size();
+                for (int i = 0; i < size; i++) {
+                    readPending = false;
+                    //把每一个客户端的channel在服务端的pipeline上传播，最终由ServerBootstrapAcceptor注册到工作线程上
+                    pipeline.fireChannelRead(readBuf.get(i));
+                }
+                //清除集合
+                readBuf.clear();
+                allocHandle.readComplete();
+                pipeline.fireChannelReadComplete();
+
+                if (exception != null) {
+                    // accept出错了，比如文件描述符用完了，交给pipeline处理，ServerBootstrapAcceptor会暂停一段时间再接受连接
+                    pipeline.fireExceptionCaught(exception);
+                }
+            } finally {
+                // 关闭了自动读，并且用户没有在处理的过程中再调用read，就不再关注OP_ACCEPT，
+                // 否则selector会一直报告有连接可接受，关闭自动读就没有意义了
+                if (!readPending && !config.isAutoRead()) {
+                    removeReadOp();
+                }
             }
-            //清除集合
-            readBuf.clear();
-            if (exception != null) {
-                throw new RuntimeException(exception);
-            }
-
         }
     }
 
@@ -97,11 +116,11 @@ public abstract class AbstractNioMessageChannel extends AbstractNioChannel {
     /**
      * 服务端channel“write”事件处理逻辑,现在什么都不做，后面再做实现
      *
-     * @param msg
+     * @param in
      * @throws Exception
      */
     @Override
-    protected void doWrite(Object msg) throws Exception {
+    protected void doWrite(ChannelOutboundBuffer in) throws Exception {
 
     }
 
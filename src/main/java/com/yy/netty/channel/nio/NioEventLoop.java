@@ -1,20 +1,26 @@
 package com.yy.netty.channel.nio;
 
 import com.yy.netty.channel.*;
+import com.yy.netty.util.IntSupplier;
 import com.yy.netty.util.concurrent.RejectedExecutionHandler;
+import com.yy.netty.util.internal.PlatformDependent;
+import com.yy.netty.util.internal.SystemPropertyUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.spi.SelectorProvider;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
 import java.util.Iterator;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Executor;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @Description:NIO类型事件循环器（执行器），nio中selector各种事件，包括netty的处理事件，都由该类处理
@@ -23,20 +29,55 @@ public class NioEventLoop extends SingleThreadEventLoop {
 
     private static final Logger logger = LoggerFactory.getLogger(NioEventLoop.class);
 
+    // 是否关闭SelectionKey集合的优化，默认开启优化：用数组实现的SelectedSelectionKeySet替换jdk Selector中的HashSet
+    private static final boolean DISABLE_KEY_SET_OPTIMIZATION =
+            Boolean.parseBoolean(SystemPropertyUtil.get("io.netty.noKeySetOptimization", "false"));
+
+    static {
+        if (logger.isDebugEnabled()) {
+            logger.debug("-Dio.netty.noKeySetOptimization: {}", DISABLE_KEY_SET_OPTIMIZATION);
+        }
+    }
+
     private static int index = 0;
 
     // id
     private final int id;
 
-    // 多路复用选择器，一个NIO事件循环器对应一个多路复用选择器
+    // 多路复用选择器，一个NIO事件循环器对应一个多路复用选择器，开启了优化的话是包装过的Selector
     private final Selector selector;
 
+    // 未包装过的jdk原生Selector，channel要注册到这个Selector上
+    private final Selector unwrappedSelector;
+
+    // 用数组实现的就绪key集合，没有开启优化或者替换失败的话为null
+    private SelectedSelectionKeySet selectedKeys;
+
     // 多路复用选择器的提供者
     private final SelectorProvider selectorProvider;
 
     // 选择策略
     private SelectStrategy selectStrategy;
 
+    // 非阻塞地select一次，任务队列中有任务时选择策略会调用它，这样既能处理已经就绪的IO事件，又不会耽误任务的执行
+    private final IntSupplier selectNowSupplier = new IntSupplier() {
+        @Override
+        public int get() throws Exception {
+            return selectNow();
+        }
+    };
+
+    /**
+     * 是否已经（或即将）唤醒阻塞在select上的线程
+     * 其他线程提交任务时，通过cas把它从false改成true的那个线程才去调用selector.wakeup()，
+     * 避免大量线程同时提交任务时重复调用wakeup（wakeup本身是一个比较重的系统调用）
+     * 每次进入阻塞的select之前会把它重置为false
+     */
+    private final AtomicBoolean wakenUp = new AtomicBoolean();
+
+    // 处理IO事件的时间占一轮循环的百分比，默认50，即执行任务的时间和处理IO事件的时间大致相等
+    private volatile int ioRatio = 50;
+
 
     /**
      * 构造方法
@@ -59,7 +100,9 @@ public class NioEventLoop extends SingleThreadEventLoop {
             throw new NullPointerException("selectStrategy");
         }
         this.selectorProvider = selectorProvider;
-        this.selector = openSelector();
+        final SelectorTuple selectorTuple = openSelector();
+        this.selector = selectorTuple.selector;
+        this.unwrappedSelector = selectorTuple.unwrappedSelector;
         this.selectStrategy = strategy;
         id = ++index;
         logger.info("我是第{}个nioEventLoop, id:{}", index, id);
@@ -67,21 +110,120 @@ public class NioEventLoop extends SingleThreadEventLoop {
 
     private static Queue<Runnable> newTaskQueue(EventLoopTaskQueueFactory queueFactory) {
         if (queueFactory == null) {
-            return new LinkedBlockingQueue<>(DEFAULT_MAX_PENDING_TASKS);
+            return newTaskQueue0(DEFAULT_MAX_PENDING_TASKS);
         }
         return queueFactory.newTaskQueue(DEFAULT_MAX_PENDING_TASKS);
     }
 
-    // 得到该EventLoop的用于轮询的选择器
-    private Selector openSelector() {
+    /**
+     * 默认的任务队列：任务只会被事件循环线程消费，但可能由任意线程提交，所以用无锁的MPSC队列，
+     * 避免LinkedBlockingQueue在业务线程频繁调用execute时的锁竞争和每个任务一个链表节点的开销
+     *
+     * @param maxPendingTasks
+     * @return
+     */
+    private static Queue<Runnable> newTaskQueue0(int maxPendingTasks) {
+        return maxPendingTasks == Integer.MAX_VALUE ? PlatformDependent.<Runnable>newMpscQueue()
+                : PlatformDependent.<Runnable>newMpscQueue(maxPendingTasks);
+    }
+
+    /**
+     * 未包装过的Selector和EventLoop实际使用的Selector
+     */
+    private static final class SelectorTuple {
+        final Selector unwrappedSelector;
+        final Selector selector;
+
+        SelectorTuple(Selector unwrappedSelector) {
+            this.unwrappedSelector = unwrappedSelector;
+            this.selector = unwrappedSelector;
+        }
+
+        SelectorTuple(Selector unwrappedSelector, Selector selector) {
+            this.unwrappedSelector = unwrappedSelector;
+            this.selector = selector;
+        }
+    }
+
+    /**
+     * 得到该EventLoop的用于轮询的选择器
+     * 开启了优化的话，会通过反射把sun.nio.ch.SelectorImpl中的selectedKeys和publicSelectedKeys两个HashSet替换成
+     * 用数组实现的SelectedSelectionKeySet，替换失败（比如没有权限）就退回使用原生的Selector
+     *
+     * @return
+     */
+    private SelectorTuple openSelector() {
         //未包装过的选择器
         final Selector unwrappedSelector;
         try {
             unwrappedSelector = selectorProvider.openSelector();
-            return unwrappedSelector;
-        } catch (Exception e) {
+        } catch (IOException e) {
             throw new RuntimeException("failed to open a new selector", e);
         }
+
+        if (DISABLE_KEY_SET_OPTIMIZATION) {
+            return new SelectorTuple(unwrappedSelector);
+        }
+
+        Object maybeSelectorImplClass = AccessController.doPrivileged(new PrivilegedAction<Object>() {
+            @Override
+            public Object run() {
+                try {
+                    return Class.forName("sun.nio.ch.SelectorImpl", false, ClassLoader.getSystemClassLoader());
+                } catch (Throwable cause) {
+                    return cause;
+                }
+            }
+        });
+
+        if (!(maybeSelectorImplClass instanceof Class) ||
+                // 可能是用户自定义的SelectorProvider创建的Selector，不是SelectorImpl的子类，就没法替换了
+                !((Class<?>) maybeSelectorImplClass).isAssignableFrom(unwrappedSelector.getClass())) {
+            if (maybeSelectorImplClass instanceof Throwable) {
+                Throwable t = (Throwable) maybeSelectorImplClass;
+                logger.trace("failed to instrument a special java.util.Set into: {}", unwrappedSelector, t);
+            }
+            return new SelectorTuple(unwrappedSelector);
+        }
+
+        final Class<?> selectorImplClass = (Class<?>) maybeSelectorImplClass;
+        final SelectedSelectionKeySet selectedKeySet = new SelectedSelectionKeySet();
+
+        Object maybeException = AccessController.doPrivileged(new PrivilegedAction<Object>() {
+            @Override
+            public Object run() {
+                try {
+                    Field selectedKeysField = selectorImplClass.getDeclaredField("selectedKeys");
+                    Field publicSelectedKeysField = selectorImplClass.getDeclaredField("publicSelectedKeys");
+
+                    // jdk9之后，没有--add-opens参数的话这里会抛出异常，那就不替换了
+                    selectedKeysField.setAccessible(true);
+                    publicSelectedKeysField.setAccessible(true);
+
+                    selectedKeysField.set(unwrappedSelector, selectedKeySet);
+                    publicSelectedKeysField.set(unwrappedSelector, selectedKeySet);
+                    return null;
+                } catch (NoSuchFieldException e) {
+                    return e;
+                } catch (IllegalAccessException e) {
+                    return e;
+                } catch (RuntimeException e) {
+                    // jdk9+的InaccessibleObjectException是RuntimeException的子类
+                    return e;
+                }
+            }
+        });
+
+        if (maybeException instanceof Exception) {
+            selectedKeys = null;
+            Exception e = (Exception) maybeException;
+            logger.trace("failed to instrument a special java.util.Set into: {}", unwrappedSelector, e);
+            return new SelectorTuple(unwrappedSelector);
+        }
+        selectedKeys = selectedKeySet;
+        logger.trace("instrumented a special java.util.Set into: {}", unwrappedSelector);
+        return new SelectorTuple(unwrappedSelector,
+                new SelectedSelectionKeySetSelector(unwrappedSelector, selectedKeySet));
     }
 
     /**
@@ -90,7 +232,7 @@ public class NioEventLoop extends SingleThreadEventLoop {
      * @return
      */
     public Selector unwrappedSelector() {
-        return selector;
+        return unwrappedSelector;
     }
 
     /**
@@ -103,35 +245,194 @@ public class NioEventLoop extends SingleThreadEventLoop {
     protected void run() {
         for (; ; ) {
             try {
-                //没有事件就阻塞在这里,跳出select阻塞的条件是：有IO事件到来 或者 任务队列中有任务
-                select();
-                // 如果有事件,就处理就绪事件
-                processSelectedKeys();
+                // 任务队列中有任务时，选择策略会调用selectNow，非阻塞地拿到就绪的IO事件，然后马上去执行任务；
+                // 没有任务时返回SELECT，阻塞在select上等待IO事件或者被提交任务的线程唤醒
+                // 这一轮循环的开始时间，用来统计执行线程的忙碌占比
+                final long loopStartTime = System.nanoTime();
+                switch (selectStrategy.calculateStrategy(selectNowSupplier, hasTasks())) {
+                    case SelectStrategy.CONTINUE:
+                        continue;
+                    case SelectStrategy.BUSY_WAIT:
+                        // nio不支持忙等，当作SELECT处理
+                    case SelectStrategy.SELECT:
+                        // 进入阻塞的select之前把唤醒标记重置为false
+                        select(wakenUp.getAndSet(false));
+
+                        // 如果在select返回之后、处理IO事件之前，wakenUp又被其他线程设置为了true，
+                        // 那么那次selector.wakeup()的调用就被"浪费"了，下一次select会被立刻唤醒，
+                        // 这里再主动调用一次wakeup，保证下一轮中提交的任务也不会被阻塞
+                        if (wakenUp.get()) {
+                            selector.wakeup();
+                        }
+                        break;
+                    default:
+                }
+                final int ioRatio = this.ioRatio;
+                final long ioStartTime = System.nanoTime();
+                if (ioRatio == 100) {
+                    try {
+                        // 如果有事件,就处理就绪事件
+                        processSelectedKeys();
+                    } finally {
+                        //执行单线程执行器中的所有任务
+                        runAllTasks();
+                    }
+                } else {
+                    try {
+                        processSelectedKeys();
+                    } finally {
+                        // 根据处理IO事件花费的时间和ioRatio，算出这一轮执行任务最多能用多少时间
+                        final long ioTime = System.nanoTime() - ioStartTime;
+                        runAllTasks(ioTime * (100 - ioRatio) / ioRatio);
+                    }
+                }
+                // select之后处理IO事件和任务的时间都算作忙碌时间，阻塞在select上的时间算作空闲时间
+                final long loopEndTime = System.nanoTime();
+                recordBusyTime(loopEndTime - ioStartTime, loopEndTime - loopStartTime);
             } catch (Exception e) {
                 e.printStackTrace();
-            } finally {
-                //执行单线程执行器中的所有任务
-                runAllTasks();
             }
         }
     }
 
-    private void select() throws IOException {
+    /**
+     * 返回注册在该EventLoop上的channel数：selector上的SelectionKey数加上还在注册过程中的channel数。
+     * 已经关闭的channel，它的key要等下一次select之后才会从selector中移除，所以这里可能会稍微多算一点，用来衡量负载已经足够了
+     *
+     * @return
+     */
+    @Override
+    public int registeredChannels() {
+        return unwrappedSelector.keys().size() + pendingRegistrations();
+    }
+
+    /**
+     * 获取处理IO事件的时间占比
+     *
+     * @return
+     */
+    public int getIoRatio() {
+        return ioRatio;
+    }
+
+    /**
+     * 设置处理IO事件的时间占比，默认50，设置为100时不限制执行任务的时间，每轮都会执行完所有任务
+     *
+     * @param ioRatio 取值范围(0, 100]
+     */
+    public void setIoRatio(int ioRatio) {
+        if (ioRatio <= 0 || ioRatio > 100) {
+            throw new IllegalArgumentException("ioRatio: " + ioRatio + " (expected: 0 < ioRatio <= 100)");
+        }
+        this.ioRatio = ioRatio;
+    }
+
+    /**
+     * 非阻塞地select一次
+     *
+     * @return 就绪的key的数量
+     * @throws IOException
+     */
+    int selectNow() throws IOException {
+        try {
+            return selector.selectNow();
+        } finally {
+            // 在selectNow期间有线程提交了任务并设置了唤醒标记，为了不让下一次select阻塞，再唤醒一次
+            if (wakenUp.get()) {
+                selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * 阻塞地select，直到有IO事件到来、有线程提交了任务并唤醒了selector、或者下一个定时任务到期
+     *
+     * @param oldWakenUp 进入select之前唤醒标记的值
+     * @throws IOException
+     */
+    private void select(boolean oldWakenUp) throws IOException {
         Selector selector = this.selector;
-        //这里是一个死循环, 直到有IO事件到来或者任务队列中有任务, 不然就需要用循环来实现阻塞的效果
+        int selectCnt = 0;
+        long currentTimeNanos = System.nanoTime();
+        // 最晚在下一个定时任务到期时返回，没有定时任务的话最多阻塞1秒
+        long selectDeadLineNanos = currentTimeNanos + delayNanos(currentTimeNanos);
         for (; ; ) {
-            //如果没有就绪事件，就在这里阻塞3秒
-            int selectedKeyNum = selector.select(3000);
-            //如果有事件或者单线程执行器中有任务待执行，就退出循环；否则就继续循环
-            if (selectedKeyNum != 0 || hasTasks()) {
+            // 加0.5毫秒是为了四舍五入
+            long timeoutMillis = (selectDeadLineNanos - currentTimeNanos + 500000L) / 1000000L;
+            if (timeoutMillis <= 0) {
+                // 定时任务已经到期了，如果一次都还没select过，就selectNow一次，顺便处理已经就绪的IO事件
+                if (selectCnt == 0) {
+                    selector.selectNow();
+                    selectCnt = 1;
+                }
+                break;
+            }
+
+            // 在把wakenUp重置为false之后、调用select之前，其他线程提交了任务，但因为那时wakenUp还是true，它没有调用wakeup，
+            // 这里如果直接阻塞，这个任务就要等到超时才能执行，所以先检查一下任务队列，有任务就selectNow之后直接返回
+            if (hasTasks() && wakenUp.compareAndSet(false, true)) {
+                selector.selectNow();
+                selectCnt = 1;
                 break;
             }
+
+            int selectedKeyNum = selector.select(timeoutMillis);
+            selectCnt++;
+
+            //如果有事件、被唤醒了、单线程执行器中有任务待执行或者有定时任务到期了，就退出循环；否则就继续循环
+            if (selectedKeyNum != 0 || oldWakenUp || wakenUp.get() || hasTasks() || hasScheduledTasks()) {
+                break;
+            }
+            if (Thread.interrupted()) {
+                // 线程被中断了，select会立刻返回，继续循环的话会变成空转
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Selector.select() returned prematurely because " +
+                            "Thread.currentThread().interrupt() was called.");
+                }
+                break;
+            }
+            currentTimeNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * 其他线程提交任务时唤醒阻塞在select上的事件循环线程，只有把wakenUp从false改成true的那个线程才会真正调用wakeup
+     *
+     * @param inEventLoop 是否是在事件循环线程中提交的任务
+     */
+    @Override
+    protected void wakeup(boolean inEventLoop) {
+        if (!inEventLoop && wakenUp.compareAndSet(false, true)) {
+            selector.wakeup();
         }
     }
 
 
     private void processSelectedKeys() throws Exception {
-        processSelectedKeysPlain(selector.selectedKeys());
+        if (selectedKeys != null) {
+            processSelectedKeysOptimized();
+        } else {
+            processSelectedKeysPlain(selector.selectedKeys());
+        }
+    }
+
+    /**
+     * 开启了优化时，就绪的key都在数组中，按下标遍历即可，不需要创建迭代器
+     *
+     * @throws Exception
+     */
+    private void processSelectedKeysOptimized() throws Exception {
+        for (int i = 0; i < selectedKeys.size; ++i) {
+            final SelectionKey k = selectedKeys.keys[i];
+            // 处理完之后把数组中的引用置空，channel关闭之后SelectionKey就可以被GC了
+            selectedKeys.keys[i] = null;
+
+            final Object a = k.attachment();
+
+            if (a instanceof AbstractNioChannel) {
+                processSelectedKey(k, (AbstractNioChannel) a);
+            }
+        }
     }
 
     /**
@@ -171,27 +472,28 @@ public class NioEventLoop extends SingleThreadEventLoop {
         try {
             //获取Unsafe类
             final AbstractNioChannel.NioUnsafe unsafe = ch.unsafe();
-            //得到key感兴趣的事件
-            int ops = key.interestOps();
+            //得到key已经就绪的事件，一个channel可能同时关注了读和写，所以要用位运算逐个判断
+            int readyOps = key.readyOps();
             //如果是连接事件,该事件只会出现在客户端channel中
-            if (ops == SelectionKey.OP_CONNECT) {
+            if ((readyOps & SelectionKey.OP_CONNECT) != 0) {
                 //位运算，实现移除连接事件，否则会一直通知，这里实际上是做了个减法
+                int ops = key.interestOps();
                 ops &= ~SelectionKey.OP_CONNECT;
                 //刷新感兴趣的事件，其实还是在做清理
                 key.interestOps(ops);
-                //走到这里说明客户端channel连接成功了，那么就可以真正为该channel注册读事件，开始进入循环处理客户端IO读事件了
-                ch.doBeginRead();
-                // 这里要做客户端真正的连接处理
+                // 这里要做客户端真正的连接处理，连接成功之后会为该channel注册读事件，开始进入循环处理客户端IO读事件了
                 unsafe.finishConnect();
             }
 
-            // 下面两个逻辑，其实就是把具体的read实现委托给了具体的channel，这个具体的channel其实就是key上作为附件绑定的那个具体的netty channel了
-            if (ops == SelectionKey.OP_READ) {
-                // 其实只有客户端channel才会触发OP_READ事件，很自然的，这里ch的实例肯定就是NioSocketChannel
-                unsafe.read();
+            // 写事件，说明之前socket发送缓冲区满了没写完，现在又可以写了，把写缓冲区中剩下的数据写出去
+            // 先处理写再处理读，尽快把数据写出去，释放内存
+            if ((readyOps & SelectionKey.OP_WRITE) != 0) {
+                unsafe.forceFlush();
             }
-            if (ops == SelectionKey.OP_ACCEPT) {
-                // 服务端channel才会触发OP_ACCEPT事件，很自然的，这里ch的实例肯定就是NioServerSocketChannel
+
+            // 下面的逻辑，其实就是把具体的read实现委托给了具体的channel，这个具体的channel其实就是key上作为附件绑定的那个具体的netty channel了
+            // 客户端channel触发的是OP_READ事件，服务端channel触发的是OP_ACCEPT事件，对应的都是unsafe的read
+            if ((readyOps & (SelectionKey.OP_READ | SelectionKey.OP_ACCEPT)) != 0 || readyOps == 0) {
                 unsafe.read();
             }
         } catch (CancelledKeyException ignored) {
@@ -1,6 +1,7 @@
 package com.yy.netty.channel.nio;
 
 import com.yy.netty.channel.*;
+import com.yy.netty.util.concurrent.EventExecutor;
 import com.yy.netty.util.concurrent.EventExecutorChooserFactory;
 import com.yy.netty.util.concurrent.RejectedExecutionHandler;
 import com.yy.netty.util.concurrent.RejectedExecutionHandlers;
@@ -47,6 +48,28 @@ public class NioEventLoopGroup extends MultithreadEventLoopGroup {
         this(nThreads, threadFactory, SelectorProvider.provider());
     }
 
+    /**
+     * 创建一个事件循环线程组，并指定channel注册时选择事件循环器的策略
+     *
+     * @param nThreads       组内的线程数
+     * @param chooserFactory 执行器选择器工厂，比如MultithreadEventLoopGroup.LEAST_CONNECTIONS
+     */
+    public NioEventLoopGroup(int nThreads, EventExecutorChooserFactory chooserFactory) {
+        this(nThreads, (ThreadFactory) null, chooserFactory);
+    }
+
+    /**
+     * 创建一个事件循环线程组，并指定channel注册时选择事件循环器的策略
+     *
+     * @param nThreads       组内的线程数
+     * @param threadFactory  线程工厂
+     * @param chooserFactory 执行器选择器工厂
+     */
+    public NioEventLoopGroup(int nThreads, ThreadFactory threadFactory, EventExecutorChooserFactory chooserFactory) {
+        super(nThreads, threadFactory, chooserFactory, SelectorProvider.provider(), DefaultSelectStrategyFactory.INSTANCE,
+                RejectedExecutionHandlers.reject());
+    }
+
     /**
      * 创建一个事件循环线程组
      *
@@ -148,6 +171,17 @@ public class NioEventLoopGroup extends MultithreadEventLoopGroup {
     }
 
 
+    /**
+     * 设置组内所有事件循环器处理IO事件的时间占比，默认50
+     *
+     * @param ioRatio
+     */
+    public void setIoRatio(int ioRatio) {
+        for (EventExecutor e : this) {
+            ((NioEventLoop) e).setIoRatio(ioRatio);
+        }
+    }
+
     /**
      * 创建一个事件循环线程组
      *
@@ -0,0 +1,101 @@
+package com.yy.netty.channel.nio;
+
+import java.nio.channels.SelectionKey;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 用数组实现的SelectionKey集合，通过反射替换掉jdk Selector中原本的HashSet
+ * <p>
+ * jdk的Selector把就绪的key放在一个HashSet中，每次添加都要计算hash，遍历时要创建迭代器，处理完还要一个一个remove，
+ * 连接数很多的时候，这些开销都不小，还会产生很多垃圾对象。
+ * 换成数组之后，添加就是往数组末尾放一个元素，遍历就是按下标循环，处理完直接把数组位置置空，不会产生任何垃圾对象。
+ * Selector只会调用add方法往集合里添加key，所以remove、contains这些方法都不需要真正实现
+ * </p>
+ */
+final class SelectedSelectionKeySet extends AbstractSet<SelectionKey> {
+
+    SelectionKey[] keys;
+
+    int size;
+
+    SelectedSelectionKeySet() {
+        keys = new SelectionKey[1024];
+    }
+
+    @Override
+    public boolean add(SelectionKey o) {
+        if (o == null) {
+            return false;
+        }
+
+        keys[size++] = o;
+        if (size == keys.length) {
+            increaseCapacity();
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return false;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<SelectionKey> iterator() {
+        return new Iterator<SelectionKey>() {
+            private int idx;
+
+            @Override
+            public boolean hasNext() {
+                return idx < size;
+            }
+
+            @Override
+            public SelectionKey next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return keys[idx++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    void reset() {
+        reset(0);
+    }
+
+    /**
+     * 把start之后的元素全部置空，让SelectionKey可以被GC，然后把集合清空
+     *
+     * @param start
+     */
+    void reset(int start) {
+        Arrays.fill(keys, start, size, null);
+        size = 0;
+    }
+
+    private void increaseCapacity() {
+        SelectionKey[] newKeys = new SelectionKey[keys.length << 1];
+        System.arraycopy(keys, 0, newKeys, 0, size);
+        keys = newKeys;
+    }
+}
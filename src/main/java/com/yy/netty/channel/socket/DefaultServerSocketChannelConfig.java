@@ -1,7 +1,11 @@
 package com.yy.netty.channel.socket;
 
+import com.yy.netty.buffer.ByteBufAllocator;
 import com.yy.netty.channel.ChannelOption;
 import com.yy.netty.channel.DefaultChannelConfig;
+import com.yy.netty.channel.RecvByteBufAllocator;
+import com.yy.netty.channel.WriteBufferWaterMark;
+import com.yy.netty.channel.ServerChannelRecvByteBufAllocator;
 import com.yy.netty.channel.socket.nio.NioServerSocketChannel;
 
 import java.net.ServerSocket;
@@ -23,7 +27,8 @@ public class DefaultServerSocketChannelConfig extends DefaultChannelConfig imple
     private volatile int backlog = 128;
 
     public DefaultServerSocketChannelConfig(NioServerSocketChannel channel, ServerSocket javaSocket) {
-        super(channel);
+        // 服务端channel读的是连接，用ServerChannelRecvByteBufAllocator控制一次OP_ACCEPT事件中接收的连接数
+        super(channel, new ServerChannelRecvByteBufAllocator());
         if (javaSocket == null) {
             throw new NullPointerException("javaSocket");
         }
@@ -147,12 +152,30 @@ public class DefaultServerSocketChannelConfig extends DefaultChannelConfig imple
         return this;
     }
 
+    @Override
+    public ServerSocketChannelConfig setMaxMessagesPerRead(int maxMessagesPerRead) {
+        super.setMaxMessagesPerRead(maxMessagesPerRead);
+        return this;
+    }
+
+    @Override
+    public ServerSocketChannelConfig setRecvByteBufAllocator(RecvByteBufAllocator allocator) {
+        super.setRecvByteBufAllocator(allocator);
+        return this;
+    }
+
     @Override
     public ServerSocketChannelConfig setAutoRead(boolean autoRead) {
         super.setAutoRead(autoRead);
         return this;
     }
 
+    @Override
+    public ServerSocketChannelConfig setAllocator(ByteBufAllocator allocator) {
+        super.setAllocator(allocator);
+        return this;
+    }
+
     @Override
     public ServerSocketChannelConfig setWriteBufferHighWaterMark(int writeBufferHighWaterMark) {
         super.setWriteBufferHighWaterMark(writeBufferHighWaterMark);
@@ -164,4 +187,10 @@ public class DefaultServerSocketChannelConfig extends DefaultChannelConfig imple
         super.setWriteBufferLowWaterMark(writeBufferLowWaterMark);
         return this;
     }
+
+    @Override
+    public ServerSocketChannelConfig setWriteBufferWaterMark(WriteBufferWaterMark writeBufferWaterMark) {
+        super.setWriteBufferWaterMark(writeBufferWaterMark);
+        return this;
+    }
 }
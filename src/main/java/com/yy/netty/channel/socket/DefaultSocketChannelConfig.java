@@ -1,7 +1,10 @@
 package com.yy.netty.channel.socket;
 
+import com.yy.netty.buffer.ByteBufAllocator;
 import com.yy.netty.channel.ChannelOption;
 import com.yy.netty.channel.DefaultChannelConfig;
+import com.yy.netty.channel.RecvByteBufAllocator;
+import com.yy.netty.channel.WriteBufferWaterMark;
 import com.yy.netty.channel.socket.nio.NioSocketChannel;
 
 import java.net.Socket;
@@ -276,12 +279,30 @@ public class DefaultSocketChannelConfig extends DefaultChannelConfig implements
         return this;
     }
 
+    @Override
+    public SocketChannelConfig setMaxMessagesPerRead(int maxMessagesPerRead) {
+        super.setMaxMessagesPerRead(maxMessagesPerRead);
+        return this;
+    }
+
+    @Override
+    public SocketChannelConfig setRecvByteBufAllocator(RecvByteBufAllocator allocator) {
+        super.setRecvByteBufAllocator(allocator);
+        return this;
+    }
+
     @Override
     public SocketChannelConfig setAutoRead(boolean autoRead) {
         super.setAutoRead(autoRead);
         return this;
     }
 
+    @Override
+    public SocketChannelConfig setAllocator(ByteBufAllocator allocator) {
+        super.setAllocator(allocator);
+        return this;
+    }
+
     @Override
     public SocketChannelConfig setAutoClose(boolean autoClose) {
         super.setAutoClose(autoClose);
@@ -299,4 +320,10 @@ public class DefaultSocketChannelConfig extends DefaultChannelConfig implements
         super.setWriteBufferLowWaterMark(writeBufferLowWaterMark);
         return this;
     }
+
+    @Override
+    public SocketChannelConfig setWriteBufferWaterMark(WriteBufferWaterMark writeBufferWaterMark) {
+        super.setWriteBufferWaterMark(writeBufferWaterMark);
+        return this;
+    }
 }
@@ -1,6 +1,9 @@
 package com.yy.netty.channel.socket;
 
+import com.yy.netty.buffer.ByteBufAllocator;
 import com.yy.netty.channel.ChannelConfig;
+import com.yy.netty.channel.RecvByteBufAllocator;
+import com.yy.netty.channel.WriteBufferWaterMark;
 
 /**
  * 服务端SocketChannel的配置类,在ChannelConfig的基础上增加了若干服务端SocketChannel的配置项
@@ -28,13 +31,25 @@ public interface ServerSocketChannelConfig extends ChannelConfig {
     @Override
     ServerSocketChannelConfig setWriteSpinCount(int writeSpinCount);
 
+    @Override
+    ServerSocketChannelConfig setMaxMessagesPerRead(int maxMessagesPerRead);
+
+    @Override
+    ServerSocketChannelConfig setRecvByteBufAllocator(RecvByteBufAllocator allocator);
+
     @Override
     ServerSocketChannelConfig setAutoRead(boolean autoRead);
 
+    @Override
+    ServerSocketChannelConfig setAllocator(ByteBufAllocator allocator);
+
     @Override
     ServerSocketChannelConfig setWriteBufferHighWaterMark(int writeBufferHighWaterMark);
 
     @Override
     ServerSocketChannelConfig setWriteBufferLowWaterMark(int writeBufferLowWaterMark);
 
+    @Override
+    ServerSocketChannelConfig setWriteBufferWaterMark(WriteBufferWaterMark writeBufferWaterMark);
+
 }
@@ -1,6 +1,9 @@
 package com.yy.netty.channel.socket;
 
+import com.yy.netty.buffer.ByteBufAllocator;
 import com.yy.netty.channel.ChannelConfig;
+import com.yy.netty.channel.RecvByteBufAllocator;
+import com.yy.netty.channel.WriteBufferWaterMark;
 
 /**
  * 客户端SocketChannel的配置类，在ChannelConfig的基础上增加了若干服务端SocketChannel的配置项
@@ -48,10 +51,28 @@ public interface SocketChannelConfig extends ChannelConfig {
     @Override
     SocketChannelConfig setWriteSpinCount(int writeSpinCount);
 
+    @Override
+    SocketChannelConfig setMaxMessagesPerRead(int maxMessagesPerRead);
+
+    @Override
+    SocketChannelConfig setRecvByteBufAllocator(RecvByteBufAllocator allocator);
+
     @Override
     SocketChannelConfig setAutoRead(boolean autoRead);
 
+    @Override
+    SocketChannelConfig setAllocator(ByteBufAllocator allocator);
+
     @Override
     SocketChannelConfig setAutoClose(boolean autoClose);
 
+    @Override
+    SocketChannelConfig setWriteBufferHighWaterMark(int writeBufferHighWaterMark);
+
+    @Override
+    SocketChannelConfig setWriteBufferLowWaterMark(int writeBufferLowWaterMark);
+
+    @Override
+    SocketChannelConfig setWriteBufferWaterMark(WriteBufferWaterMark writeBufferWaterMark);
+
 }
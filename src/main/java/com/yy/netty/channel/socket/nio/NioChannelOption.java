@@ -3,6 +3,7 @@ package com.yy.netty.channel.socket.nio;
 import com.yy.netty.channel.ChannelOption;
 
 import java.net.SocketOption;
+import java.net.StandardSocketOptions;
 import java.nio.channels.Channel;
 import java.nio.channels.ServerSocketChannel;
 import java.util.ArrayList;
@@ -27,6 +28,12 @@ public final class NioChannelOption<T> extends ChannelOption<T> {
      */
     private final SocketOption<T> option;
 
+    /**
+     * JDK 9才在StandardSocketOptions中加入了SO_REUSEPORT，为了在JDK 8上也能编译运行，这里通过反射获取，
+     * 获取不到时为null，表示NIO传输层不支持ChannelOption.SO_REUSEPORT
+     */
+    static final NioChannelOption<Boolean> SO_REUSEPORT = reusePortOption();
+
     private NioChannelOption(SocketOption<T> option) {
         // 调用父类构造方法，完成ChannelOption的构建
         super(option.name());
@@ -34,6 +41,17 @@ public final class NioChannelOption<T> extends ChannelOption<T> {
         this.option = option;
     }
 
+    @SuppressWarnings("unchecked")
+    private static NioChannelOption<Boolean> reusePortOption() {
+        try {
+            SocketOption<Boolean> option =
+                    (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+            return new NioChannelOption<Boolean>(option);
+        } catch (Throwable ignore) {
+            return null;
+        }
+    }
+
     /**
      * 创建一个NioChannelOption
      *
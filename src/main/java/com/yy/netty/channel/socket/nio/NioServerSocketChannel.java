@@ -115,11 +115,6 @@ public class NioServerSocketChannel extends AbstractNioMessageChannel {
         // 临时测试代码
         System.out.println("服务端channel绑定端口，并设置backlog参数为：" + config.getBacklog());
         System.out.println("服务端channel绑定端口，并设置共享参数为：" + this.attr(ServerTest.INDEX_KEY).key().name() + "：" + this.attr(ServerTest.INDEX_KEY).get());
-        if (isActive()) {
-            System.out.println("服务端绑定端口成功");
-            // 注册“读”事件，开始接受客户端的连接
-            doBeginRead();
-        }
     }
 
     protected void doClose() throws Exception {
@@ -170,6 +165,14 @@ public class NioServerSocketChannel extends AbstractNioMessageChannel {
             super(channel, javaSocket);
         }
 
+        /**
+         * 关闭自动读时不再关注OP_ACCEPT，ServerBootstrapAcceptor暂停接受连接就是靠这个实现的
+         */
+        @Override
+        protected void autoReadCleared() {
+            clearReadPending();
+        }
+
         /**
          * 重写setOption方法，支持服务端NIO原生channel配置项的设置
          *
@@ -184,6 +187,11 @@ public class NioServerSocketChannel extends AbstractNioMessageChannel {
                 //把用户设置的参数传入原生的jdk的channel中
                 return NioChannelOption.setOption(jdkChannel(), (NioChannelOption<T>) option, value);
             }
+            if (option == ChannelOption.SO_REUSEPORT) {
+                // JDK 8不支持SO_REUSEPORT，返回false，由调用方决定怎么处理
+                return NioChannelOption.SO_REUSEPORT != null &&
+                        NioChannelOption.setOption(jdkChannel(), NioChannelOption.SO_REUSEPORT, (Boolean) value);
+            }
             //正常调用的话，该方法的逻辑会走到这个分支处
             return super.setOption(option, value);
         }
@@ -196,11 +204,18 @@ public class NioServerSocketChannel extends AbstractNioMessageChannel {
          * @return
          */
         @Override
+        @SuppressWarnings("unchecked")
         public <T> T getOption(ChannelOption<T> option) {
             //这里有一行代码，判断jdk版本是否大于7，我就直接删掉了，默认大家用的都是7以上，否则要引入更多工具类
             if (option instanceof NioChannelOption) {
                 return NioChannelOption.getOption(jdkChannel(), (NioChannelOption<T>) option);
             }
+            if (option == ChannelOption.SO_REUSEPORT) {
+                if (NioChannelOption.SO_REUSEPORT == null) {
+                    return null;
+                }
+                return (T) NioChannelOption.getOption(jdkChannel(), NioChannelOption.SO_REUSEPORT);
+            }
             return super.getOption(option);
         }
 
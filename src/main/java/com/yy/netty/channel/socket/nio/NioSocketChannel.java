@@ -1,7 +1,10 @@
 package com.yy.netty.channel.socket.nio;
 
+import com.yy.netty.buffer.ByteBuf;
 import com.yy.netty.channel.Channel;
 import com.yy.netty.channel.ChannelOption;
+import com.yy.netty.channel.ChannelOutboundBuffer;
+import com.yy.netty.channel.RecvByteBufAllocator;
 import com.yy.netty.channel.nio.AbstractNioByteChannel;
 import com.yy.netty.channel.socket.DefaultSocketChannelConfig;
 import com.yy.netty.channel.socket.SocketChannelConfig;
@@ -25,6 +28,9 @@ public class NioSocketChannel extends AbstractNioByteChannel {
 
     private static final SelectorProvider DEFAULT_SELECTOR_PROVIDER = SelectorProvider.provider();
 
+    // 尝试写的字节数低于这个值时，就算没写完也不缩小maxBytesPerGatheringWrite
+    private static final int MAX_BYTES_PER_GATHERING_WRITE_ATTEMPTED_LOW_THRESHOLD = 4096;
+
     private static SocketChannel newSocket(SelectorProvider provider) {
         try {
             return provider.openSocketChannel();
@@ -136,32 +142,103 @@ public class NioSocketChannel extends AbstractNioByteChannel {
     }
 
     @Override
-    protected int doReadBytes(ByteBuffer byteBuf) throws Exception {
-        int len = javaChannel().read(byteBuf);
-        byte[] buffer = new byte[len];
-        byteBuf.flip();
-        byteBuf.get(buffer);
-        System.out.println("客户端收到消息:{}" + new String(buffer));
+    protected int doReadBytes(ByteBuf byteBuf) throws Exception {
+        //直接从jdk的SocketChannel读到ByteBuf的可写区域中，写指针会随之后移，中间没有任何拷贝
+        //先把本次尝试读取的字节数记录下来，读循环靠它判断缓冲区有没有被读满，socket中是否可能还有数据
+        final RecvByteBufAllocator.Handle allocHandle = unsafe().recvBufAllocHandle();
+        allocHandle.attemptedBytesRead(byteBuf.writableBytes());
         //返回读取到的字节长度
-        return len;
+        return byteBuf.writeBytes(javaChannel(), allocHandle.attemptedBytesRead());
     }
 
     protected void doClose() throws Exception {
         javaChannel().close();
     }
 
+    /**
+     * 把写缓冲区中已刷新的消息写到socket中。
+     * 多个ByteBuf会转换成ByteBuffer数组，通过一次gathering write（writev）写出去，减少系统调用的次数；
+     * socket发送缓冲区满了写不进去的时候，注册OP_WRITE，等socket可写了再接着写，而不是在这里空转；
+     * 一次flush最多写writeSpinCount次，用完了还没写完就把剩下的写封装成任务交给EventLoop稍后执行，
+     * 避免一个数据量很大的channel一直占着EventLoop，其他channel得不到处理
+     *
+     * @param in 写缓冲区
+     * @throws Exception
+     */
     @Override
-    protected void doWrite(Object msg) throws Exception {
+    protected void doWrite(ChannelOutboundBuffer in) throws Exception {
         //真正发送数据的时候到了，这时候就不能用NioSocketChannel了，要用java原生的socketchannel
-        SocketChannel socketChannel = javaChannel();
-        //转换数据类型
-        ByteBuffer buffer = (ByteBuffer) msg;
-        //发送数据
-        socketChannel.write(buffer);
-        //因为在我们自己的netty中，客户端的channel连接到服务端后，并没有绑定单线程执行器呢，所以即便发送了数据也收不到
-        //但我们可以看看客户端是否可以发送成功，证明我们的发送逻辑是没问题的，
-        // 接收数据的验证，放到引入channelhandler之后再验证
-        System.out.println("[MOCK]客户端发送数据成功了！");
+        SocketChannel ch = javaChannel();
+        int writeSpinCount = config().getWriteSpinCount();
+        do {
+            if (in.isEmpty()) {
+                // 所有数据都写完了，取消OP_WRITE
+                clearOpWrite();
+                return;
+            }
+
+            // 一次gathering write最多写多少字节，这个值会根据每次实际写出的字节数动态调整
+            int maxBytesPerGatheringWrite = ((NioSocketChannelConfig) config).getMaxBytesPerGatheringWrite();
+            ByteBuffer[] nioBuffers = in.nioBuffers(1024, maxBytesPerGatheringWrite);
+            int nioBufferCnt = in.nioBufferCount();
+
+            switch (nioBufferCnt) {
+                case 0:
+                    // 没有可写的字节，说明当前的ByteBuf是空的，直接移除
+                    in.remove();
+                    break;
+                case 1: {
+                    // 只有一个ByteBuffer，用普通的write就行了
+                    ByteBuffer buffer = nioBuffers[0];
+                    int attemptedBytes = buffer.remaining();
+                    final int localWrittenBytes = ch.write(buffer);
+                    if (localWrittenBytes <= 0) {
+                        // socket发送缓冲区满了，注册OP_WRITE，等可写了再写
+                        incompleteWrite(true);
+                        return;
+                    }
+                    adjustMaxBytesPerGatheringWrite(attemptedBytes, localWrittenBytes, maxBytesPerGatheringWrite);
+                    in.removeBytes(localWrittenBytes);
+                    --writeSpinCount;
+                    break;
+                }
+                default: {
+                    // 多个ByteBuffer，用gathering write一次写出去
+                    long attemptedBytes = in.nioBufferSize();
+                    final long localWrittenBytes = ch.write(nioBuffers, 0, nioBufferCnt);
+                    if (localWrittenBytes <= 0) {
+                        incompleteWrite(true);
+                        return;
+                    }
+                    adjustMaxBytesPerGatheringWrite((int) attemptedBytes, (int) localWrittenBytes,
+                            maxBytesPerGatheringWrite);
+                    in.removeBytes(localWrittenBytes);
+                    --writeSpinCount;
+                    break;
+                }
+            }
+        } while (writeSpinCount > 0);
+
+        // 写自旋次数用完了还没写完，socket还是可写的，不用注册OP_WRITE，提交一个任务稍后继续写
+        incompleteWrite(false);
+    }
+
+    /**
+     * 根据本次实际写出的字节数，调整下一次gathering write最多写多少字节：
+     * 全部写完了，说明socket还能写更多，下次翻倍；只写出了不到一半，说明写多了，下次减半
+     *
+     * @param attempted                 本次尝试写的字节数
+     * @param written                   本次实际写出的字节数
+     * @param oldMaxBytesPerGatheringWrite
+     */
+    private void adjustMaxBytesPerGatheringWrite(int attempted, int written, int oldMaxBytesPerGatheringWrite) {
+        if (attempted == written) {
+            if (attempted << 1 > oldMaxBytesPerGatheringWrite) {
+                ((NioSocketChannelConfig) config).setMaxBytesPerGatheringWrite(attempted << 1);
+            }
+        } else if (attempted > MAX_BYTES_PER_GATHERING_WRITE_ATTEMPTED_LOW_THRESHOLD && written < attempted >>> 1) {
+            ((NioSocketChannelConfig) config).setMaxBytesPerGatheringWrite(attempted >>> 1);
+        }
     }
 
     @Override
@@ -176,7 +253,7 @@ public class NioSocketChannel extends AbstractNioByteChannel {
      */
     private final class NioSocketChannelConfig extends DefaultSocketChannelConfig {
 
-        // 现在还不知道这个参数是干嘛的，暂且先不考虑这个参数
+        // 一次gathering write最多写多少字节，默认是socket发送缓冲区大小的两倍，写的过程中会动态调整
         private volatile int maxBytesPerGatheringWrite = Integer.MAX_VALUE;
 
         public NioSocketChannelConfig(NioSocketChannel channel, Socket javaSocket) {
@@ -184,6 +261,14 @@ public class NioSocketChannel extends AbstractNioByteChannel {
             calculateMaxBytesPerGatheringWrite();
         }
 
+        /**
+         * 关闭自动读时不再关注OP_READ
+         */
+        @Override
+        protected void autoReadCleared() {
+            clearReadPending();
+        }
+
         /**
          * 重写setOption方法，支持客户端NIO原生channel配置项的设置
          *
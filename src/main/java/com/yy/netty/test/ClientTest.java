@@ -1,6 +1,7 @@
 package com.yy.netty.test;
 
 import com.yy.netty.bootstrap.Bootstrap;
+import com.yy.netty.buffer.ByteBufAllocator;
 import com.yy.netty.channel.Channel;
 import com.yy.netty.channel.ChannelFuture;
 import com.yy.netty.channel.nio.NioEventLoopGroup;
@@ -8,7 +9,6 @@ import com.yy.netty.channel.socket.nio.NioSocketChannel;
 import com.yy.netty.util.AttributeKey;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 
 public class ClientTest {
 
@@ -32,8 +32,8 @@ public class ClientTest {
         // 模拟发送
         Thread.sleep(3000);
         Channel channel = future.channel();
-//        channel.writeAndFlush(ByteBuffer.wrap("我是真正的netty-Client！".getBytes()));
-        channel.writeAndFlush(ByteBuffer.wrap("我是真正的netty！".getBytes()));
+//        channel.writeAndFlush(ByteBufAllocator.DEFAULT.buffer().writeBytes("我是真正的netty-Client！".getBytes()));
+        channel.writeAndFlush(ByteBufAllocator.DEFAULT.buffer().writeBytes("我是真正的netty！".getBytes()));
         System.out.println("客户端发送数据demo完结");
 
     }
@@ -0,0 +1,123 @@
+package com.yy.netty.test;
+
+import com.yy.netty.util.Recycler;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recycler的分配压测，用HotSpot的线程分配统计（com.sun.management.ThreadMXBean）看每次操作分配了多少字节：
+ * 1、同一个线程get之后马上recycle，预热之后应该是0字节/次；
+ * 2、对照组，每次都new一个对象；
+ * 3、A线程get，B线程recycle，对象通过WeakOrderQueue回到A线程，预热之后A线程不应该再创建新对象
+ */
+public class RecyclerBenchmark {
+
+    private static final int WARMUP = 2_000_000;
+    private static final int ROUNDS = 20_000_000;
+
+    private static final AtomicLong CREATED = new AtomicLong();
+
+    private static final Recycler<PooledObject> RECYCLER = new Recycler<PooledObject>() {
+        @Override
+        protected PooledObject newObject(Handle<PooledObject> handle) {
+            CREATED.incrementAndGet();
+            return new PooledObject(handle);
+        }
+    };
+
+    static final class PooledObject {
+        private final Recycler.Handle<PooledObject> handle;
+        long value;
+
+        PooledObject(Recycler.Handle<PooledObject> handle) {
+            this.handle = handle;
+        }
+
+        void recycle() {
+            value = 0;
+            handle.recycle(this);
+        }
+    }
+
+    // 防止JIT把对照组的分配优化掉
+    static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        final com.sun.management.ThreadMXBean mxBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long tid = Thread.currentThread().getId();
+
+        // 1、同线程回收
+        roundTrip(WARMUP);
+        long created = CREATED.get();
+        long bytes = mxBean.getThreadAllocatedBytes(tid);
+        long start = System.nanoTime();
+        roundTrip(ROUNDS);
+        long cost = System.nanoTime() - start;
+        bytes = mxBean.getThreadAllocatedBytes(tid) - bytes;
+        System.out.printf("recycler round-trip: %.2f bytes/op, %.1f ns/op, new objects=%d%n",
+                (double) bytes / ROUNDS, (double) cost / ROUNDS, CREATED.get() - created);
+
+        // 2、对照组
+        allocate(WARMUP);
+        bytes = mxBean.getThreadAllocatedBytes(tid);
+        start = System.nanoTime();
+        allocate(ROUNDS);
+        cost = System.nanoTime() - start;
+        bytes = mxBean.getThreadAllocatedBytes(tid) - bytes;
+        System.out.printf("plain new:           %.2f bytes/op, %.1f ns/op%n",
+                (double) bytes / ROUNDS, (double) cost / ROUNDS);
+
+        // 3、跨线程回收，前一半操作用来预热，只统计后一半操作中新创建的对象
+        final BlockingQueue<PooledObject> queue = new ArrayBlockingQueue<PooledObject>(1024);
+        final int crossRounds = ROUNDS / 4;
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < crossRounds * 2; i++) {
+                        queue.take().recycle();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "recycler-consumer");
+        consumer.start();
+        long warmupCreated = CREATED.get();
+        for (int i = 0; i < crossRounds; i++) {
+            queue.put(RECYCLER.get());
+        }
+        created = CREATED.get();
+        warmupCreated = created - warmupCreated;
+        start = System.nanoTime();
+        for (int i = 0; i < crossRounds; i++) {
+            PooledObject o = RECYCLER.get();
+            o.value = i;
+            queue.put(o);
+        }
+        consumer.join();
+        cost = System.nanoTime() - start;
+        System.out.printf("cross-thread:        %d ops, new objects=%d (warmup created %d), %.1f ns/op%n",
+                crossRounds, CREATED.get() - created, warmupCreated, (double) cost / crossRounds);
+    }
+
+    private static void roundTrip(int rounds) {
+        for (int i = 0; i < rounds; i++) {
+            PooledObject o = RECYCLER.get();
+            o.value = i;
+            o.recycle();
+        }
+    }
+
+    private static void allocate(int rounds) {
+        for (int i = 0; i < rounds; i++) {
+            PooledObject o = new PooledObject(null);
+            o.value = i;
+            sink = o;
+        }
+    }
+}
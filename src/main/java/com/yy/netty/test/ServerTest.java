@@ -1,8 +1,12 @@
 package com.yy.netty.test;
 
 import com.yy.netty.bootstrap.ServerBootstrap;
+import com.yy.netty.buffer.ByteBuf;
 import com.yy.netty.channel.Channel;
 import com.yy.netty.channel.ChannelFuture;
+import com.yy.netty.channel.ChannelHandlerContext;
+import com.yy.netty.channel.ChannelInboundHandlerAdapter;
+import com.yy.netty.channel.ChannelInitializer;
 import com.yy.netty.channel.ChannelOption;
 import com.yy.netty.channel.nio.NioEventLoopGroup;
 import com.yy.netty.channel.socket.nio.NioServerSocketChannel;
@@ -11,6 +15,7 @@ import com.yy.netty.util.concurrent.Future;
 import com.yy.netty.util.concurrent.GenericFutureListener;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 public class ServerTest {
 
@@ -37,6 +42,21 @@ public class ServerTest {
                 //测试attribute功能
                 .attr(INDEX_KEY, 10)
                 .childAttr(INDEX_KEY, 20)
+                //每个客户端channel注册到worker执行器之后，都会执行一遍这里的初始化逻辑
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) throws Exception {
+                        ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+                                ByteBuf buf = (ByteBuf) msg;
+                                System.out.println(ctx.channel() + " 收到客户端消息: " + buf.toString(StandardCharsets.UTF_8)
+                                        + "，共享参数：" + ctx.channel().attr(INDEX_KEY).get());
+                                buf.release();
+                            }
+                        });
+                    }
+                })
                 .bind(8080)
                 .addListener(new GenericFutureListener<Future<? super Object>>() {
                     @Override
@@ -1,30 +1,100 @@
 package com.yy.netty.util;
 
+import com.yy.netty.util.internal.ObjectUtil;
+
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * AttributeMap的实现类，AbstractChannel后续会继承该实现类，进而赋予channel map容器的角色，那么channel其实就可以当做容器来存储数据了
  * <p>
- * 整套实现，其实参考的是JDK的HashMap，也是用数组+链表来构造桶这种结构来存储数据的，存储的数据对象其实就是Attribute对象
- * 解释一下：为什么netty要自己实现一个AttributeMap呢？直接继承JDK的Map实现类不就好了吗？
- * 答案是netty作者觉得JDK的HashMap解决不了并发问题，ConcurrentHashMap的性能又觉得不行，所以就直接自己实现一个了。
- *
+ * 为什么netty要自己实现一个AttributeMap呢？直接继承JDK的Map实现类不就好了吗？
+ * 答案是netty作者觉得JDK的HashMap解决不了并发问题，ConcurrentHashMap又太重了，每个channel都要创建一个，所以就直接自己实现一个了。
+ * </p>
+ * <p>
+ * 之前的实现参考的是JDK的HashMap，用固定4个桶的数组+链表存储数据，添加和删除都要对链表头节点加锁，
+ * key一多就退化成在锁里遍历链表。现在改成一个按AttributeKey的id排序的数组：
+ * 每个AttributeKey创建时都会从ConstantPool得到一个递增的id，查找就是在数组上做二分查找，不需要加锁；
+ * 添加和删除时复制一个新数组，用cas整体替换（写时复制）。一个channel上的属性一般只有几个，并且基本都是读多写少，
+ * 复制数组的开销很小，换来的是读取时完全无锁。
+ * </p>
  */
 public class DefaultAttributeMap implements AttributeMap {
 
-    //数组的初始大小为4
-    private static final int BUCKET_SIZE = 4;
-    //掩码为3，要做位运算求数组下标，这意味着该数组不必扩容
-    private static final int MASK = BUCKET_SIZE - 1;
-    // 原子更新器，这个更新器更新的是哈希桶数组attributes对象，解决的是attributes初始化设置的并发问题
-    private static final AtomicReferenceFieldUpdater<DefaultAttributeMap, AtomicReferenceArray> updater =
-            AtomicReferenceFieldUpdater.newUpdater(DefaultAttributeMap.class, AtomicReferenceArray.class, "attributes");
+    // 原子更新器，用cas替换整个attributes数组
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<DefaultAttributeMap, DefaultAttribute[]> ATTRIBUTES_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(DefaultAttributeMap.class, DefaultAttribute[].class, "attributes");
+
+    @SuppressWarnings("rawtypes")
+    private static final DefaultAttribute[] EMPTY_ATTRIBUTES = new DefaultAttribute[0];
+
+    /**
+     * 在按key的id排好序的数组中二分查找key
+     *
+     * @param sortedAttributes
+     * @param key
+     * @return 找到了返回下标，找不到返回-(插入位置 + 1)，和Arrays.binarySearch的约定一样
+     */
+    @SuppressWarnings("rawtypes")
+    private static int searchAttributeByKey(DefaultAttribute[] sortedAttributes, AttributeKey<?> key) {
+        int low = 0;
+        int high = sortedAttributes.length - 1;
 
-    //哈希桶数组，并不在这里初始化。这里使用AtomicReferenceArray，是为了解决同一个索引下标元素设置的并发问题
-    private volatile AtomicReferenceArray<DefaultAttribute<?>> attributes;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            DefaultAttribute midVal = sortedAttributes[mid];
+            AttributeKey midValKey = midVal.key;
+            // AttributeKey是单例的，直接比较引用
+            if (midValKey == key) {
+                return mid;
+            }
+            int midValKeyId = midValKey.id();
+            int keyId = key.id();
+            assert midValKeyId != keyId;
+            if (midValKeyId < keyId) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
 
+        return -(low + 1);
+    }
+
+    /**
+     * 把sortedSrc复制到copy中，同时把toInsert插入到按id排序的正确位置上，copy的长度比srcLength大1
+     *
+     * @param sortedSrc
+     * @param srcLength
+     * @param copy
+     * @param toInsert
+     */
+    @SuppressWarnings("rawtypes")
+    private static void orderedCopyOnInsert(DefaultAttribute[] sortedSrc, int srcLength, DefaultAttribute[] copy,
+                                            DefaultAttribute toInsert) {
+        // 新的key一般都是最后创建的，id最大，所以从后往前找插入位置
+        final int id = toInsert.key.id();
+        int i;
+        for (i = srcLength - 1; i >= 0; i--) {
+            DefaultAttribute attribute = sortedSrc[i];
+            assert attribute.key.id() != id;
+            if (attribute.key.id() < id) {
+                break;
+            }
+            copy[i + 1] = sortedSrc[i];
+        }
+        copy[i + 1] = toInsert;
+        final int toCopy = i + 1;
+        if (toCopy > 0) {
+            System.arraycopy(sortedSrc, 0, copy, 0, toCopy);
+        }
+    }
+
+    // 按AttributeKey的id排好序的数组，数组本身不会被修改，每次修改都替换成一个新数组
+    @SuppressWarnings("rawtypes")
+    private volatile DefaultAttribute[] attributes = EMPTY_ATTRIBUTES;
 
     /**
      * 该方法的作用是获取AttributeKey对应的Attribute对象，如果存在，那么直接返回，否则创建一个Attribute对象，并返回
@@ -33,153 +103,122 @@ public class DefaultAttributeMap implements AttributeMap {
      * @param <T>
      * @return
      */
+    @SuppressWarnings({"unchecked", "rawtypes"})
     @Override
     public <T> Attribute<T> attr(AttributeKey<T> key) {
-        if (key == null) {
-            throw new NullPointerException("key");
-        }
-
-        AtomicReferenceArray<DefaultAttribute<?>> attributes = this.attributes;
-        //如果数组不等于null，说明已经初始化过，不是第一次向map中存数据了,那么跳过下面的if逻辑
-        if (attributes == null) {
-            //为null则初始化，数组的长度是固定的
-            attributes = new AtomicReferenceArray<DefaultAttribute<?>>(BUCKET_SIZE);
-            //用原子更新器把attributes更新成初始化好的数组，这里要注意一下，虽然上面数组已经初始化好了，但初始化好的数组赋值给了局部变量
-            //到这里，才真正把初始化好的数组给到了对象中的attributes属性
-            if (!updater.compareAndSet(this, null, attributes)) {
-                // 被其他线程设置成功，那么将设置成功的数组赋值给局部变量attributes
-                attributes = this.attributes;
-            }
-        }
-        //计算数据在数组中存储的下标
-        int i = index(key);
-        //这里就可以类比向hashmap中添加数据的过程了，计算出下标后，先判断该下标上是否有数据
-        DefaultAttribute<?> head = attributes.get(i);
-        //为null则说明暂时没有数据，可以直接添加，否则就要以链表的形式添加。这里当然也不能忘记并发的情况，如果多个线程都洗向这个位置添加数据呢
-        if (head == null) {
-            //初始化一个头节点，但里面不存储任何数据
-            head = new DefaultAttribute();
-            //创建一个DefaultAttribute对象，把头节点和key作为参数传进去。实际上，这里创建的DefaultAttribute对象就是该map中存储的value对象
-            //当然，这么说也不准确，确切地说，应该是要存储的value就存放在DefaultAttribute对象中，而DefaultAttribute对象存储在数组中
-            DefaultAttribute<T> attr = new DefaultAttribute<T>(head, key);
-            // 进行链表节点的添加，把节点之间的关系连起来
-            // 头节点是空节点，也是存放在数组的节点，头节点的下一个节点就是刚刚创建的attr对象
-            head.next = attr;
-            //att的前一个节点就是头节点
-            attr.prev = head;
-            // 这里有并发问题，所以用cas给数组下标位置赋值，只有一个线程原子添加会成功
-            if (attributes.compareAndSet(i, null, head)) {
-                //返回创建的DefaultAttribute对象
-                return attr;
-            } else {
-                //走着这里说明该线程设置头节点失败，这时候就要把头节点重新赋值，因为其他线程已经把头节点添加进去了，就要用添加进去的头节点赋值
-                head = attributes.get(i);
-            }
-        }
-        //走到这里说明头节点已经初始化过了，说明要添加的位置已经有头节点了，需要以链表的方法继续添加数据或者查找数据
-        synchronized (head) {
-            //把当前节点赋值为头节点
-            DefaultAttribute<?> curr = head;
-            for (; ; ) {
-                //得到当前节点的下一个节点
-                DefaultAttribute<?> next = curr.next;
-                //如果为null，说明当前节点就是最后一个节点
-                if (next == null) {
-                    //创建DefaultAttribute对象，封装数据
-                    DefaultAttribute<T> attr = new DefaultAttribute<T>(head, key);
-                    // 往链表的尾部添加数据
-                    //当前节点下一个节点为attr
-                    curr.next = attr;
-                    //attr的上一个节点为当前节点，从这里可以看出netty定义的map中链表采用的是尾插法
-                    attr.prev = curr;
-                    return attr;
+        ObjectUtil.checkNotNull(key, "key");
+        DefaultAttribute<T> newAttribute = null;
+        for (;;) {
+            final DefaultAttribute[] attributes = this.attributes;
+            final int index = searchAttributeByKey(attributes, key);
+            final DefaultAttribute[] newAttributes;
+            if (index >= 0) {
+                final DefaultAttribute<T> attribute = attributes[index];
+                assert attribute.key() == key;
+                // 绝大多数情况走的都是这个分支，一次二分查找就返回了，没有加锁也没有创建对象
+                if (!attribute.isRemoved()) {
+                    return attribute;
+                }
+                // 该属性已经被删除了，但还没来得及从数组中移除，那就用一个新的属性替换它
+                if (newAttribute == null) {
+                    newAttribute = new DefaultAttribute<T>(this, key);
                 }
-                //如果下一个节点和传入的key相等，并且该节点并没有被删除，说明map中已经存在该数据了，直接返回该数据即可
-                if (next.key == key && !next.removed) {
-                    return (Attribute<T>) next;
+                newAttributes = Arrays.copyOf(attributes, attributes.length);
+                newAttributes[index] = newAttribute;
+            } else {
+                if (newAttribute == null) {
+                    newAttribute = new DefaultAttribute<T>(this, key);
                 }
-                //把下一个节点赋值为当前节点，进入下一个循环
-                curr = next;
+                final int count = attributes.length;
+                newAttributes = new DefaultAttribute[count + 1];
+                orderedCopyOnInsert(attributes, count, newAttributes, newAttribute);
+            }
+            // cas失败说明有其他线程同时修改了数组，那就基于最新的数组重试
+            if (ATTRIBUTES_UPDATER.compareAndSet(this, attributes, newAttributes)) {
+                return newAttribute;
             }
         }
     }
 
     @Override
     public <T> boolean hasAttr(AttributeKey<T> key) {
-        if (key == null) {
-            throw new NullPointerException("key");
-        }
-        AtomicReferenceArray<DefaultAttribute<?>> attributes = this.attributes;
-        // 如果数组为null，说明还没有初始化过，返回false
-        if (attributes == null) {
-            return false;
-        }
-        int i = index(key);
-        DefaultAttribute<?> head = attributes.get(i);
-        // 如果头节点为null，说明还没有数据，返回false
-        if (head == null) {
-            return false;
-        }
-        // 这里有上锁的必要吗？安全起见，这里加锁，相当于在读取期间，链表数据不会被其他线程修改，读出来的数据是安全的，但性能会下降
-        synchronized (head) {
-            DefaultAttribute<?> curr = head.next;
-            while (curr != null) {
-                if (curr.key == key && !curr.removed) {
-                    return true;
-                }
-                curr = curr.next;
-            }
-            return false;
-        }
+        ObjectUtil.checkNotNull(key, "key");
+        return searchAttributeByKey(attributes, key) >= 0;
     }
 
-    private static int index(AttributeKey<?> key) {
-        // 与掩码&运算，数值肯定<=mask 正好是数组下标
-        return key.id() & MASK;
+    /**
+     * 如果数组中key对应的还是value这个属性，就把它从数组中移除
+     *
+     * @param key
+     * @param value
+     * @param <T>
+     */
+    @SuppressWarnings("rawtypes")
+    private <T> void removeAttributeIfMatch(AttributeKey<T> key, DefaultAttribute<T> value) {
+        for (;;) {
+            final DefaultAttribute[] attributes = this.attributes;
+            final int index = searchAttributeByKey(attributes, key);
+            if (index < 0) {
+                return;
+            }
+            final DefaultAttribute attribute = attributes[index];
+            assert attribute.key() == key;
+            // 已经被替换成新的属性了，就不能再删除了
+            if (attribute != value) {
+                return;
+            }
+            final int count = attributes.length;
+            final int newCount = count - 1;
+            final DefaultAttribute[] newAttributes =
+                    newCount == 0 ? EMPTY_ATTRIBUTES : new DefaultAttribute[newCount];
+            // 把index前后两段分别复制到新数组中，新数组仍然是有序的
+            System.arraycopy(attributes, 0, newAttributes, 0, index);
+            final int remaining = count - index - 1;
+            if (remaining > 0) {
+                System.arraycopy(attributes, index + 1, newAttributes, index, remaining);
+            }
+            if (ATTRIBUTES_UPDATER.compareAndSet(this, attributes, newAttributes)) {
+                return;
+            }
+        }
     }
 
     /**
      * 静态内部类，该类继承了AtomicReference，AtomicReference类中存储的才是map数据中真正的value
      * 很快我们就会在别的地方看到这样一行代码channel.attr(key).set(e.getValue());
      * 其中set方法，就是调用了AtomicReference类中的set方法，把要存储的value以cas的方式存储到AtomicReference类中
-     * <p>
-     * 本身DefaultAttribute还是一个链表的节点，所以内部实现你会看到一些前序节点，后序节点等等这些和链表这种数据结构强相关的东西。
      *
      * @param <T>
      */
+    @SuppressWarnings("serial")
     private static final class DefaultAttribute<T> extends AtomicReference<T> implements Attribute<T> {
 
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<DefaultAttribute, DefaultAttributeMap> MAP_UPDATER =
+                AtomicReferenceFieldUpdater.newUpdater(DefaultAttribute.class,
+                        DefaultAttributeMap.class, "attributeMap");
+
         private static final long serialVersionUID = -2661411462200283011L;
 
-        // 链表的头结点
-        private final DefaultAttribute<?> head;
+        // 该属性所属的map，被删除之后置为null，所以它同时也是删除标志位
+        private volatile DefaultAttributeMap attributeMap;
         // map存储对象Attribute的 key
         private final AttributeKey<T> key;
-        // 前节点
-        private DefaultAttribute<?> prev;
-        // 后节点
-        private DefaultAttribute<?> next;
 
-        // 删除标志位
-        private volatile boolean removed;
-
-        DefaultAttribute(DefaultAttribute<?> head, AttributeKey<T> key) {
-            this.head = head;
+        DefaultAttribute(DefaultAttributeMap attributeMap, AttributeKey<T> key) {
+            this.attributeMap = attributeMap;
             this.key = key;
         }
 
-        // 一般用来创建没有业务含义的链表的head节点
-        DefaultAttribute() {
-            head = this;
-            key = null;
-        }
-
-
         @Override
         public AttributeKey<T> key() {
             return key;
         }
 
+        private boolean isRemoved() {
+            return attributeMap == null;
+        }
+
         /**
          * 如果不存在value，那么就设置value，并返回null
          * 如果存在value，那么就返回已存在的旧值
@@ -203,38 +242,24 @@ public class DefaultAttributeMap implements AttributeMap {
 
         @Override
         public T getAndRemove() {
-            removed = true;
+            final DefaultAttributeMap attributeMap = this.attributeMap;
+            // 只有一个线程能把attributeMap置为null，也只有这个线程负责把自己从数组中移除
+            final boolean removed = attributeMap != null && MAP_UPDATER.compareAndSet(this, attributeMap, null);
             T oldValue = getAndSet(null);
-            remove0();
+            if (removed) {
+                attributeMap.removeAttributeIfMatch(key, this);
+            }
             return oldValue;
         }
 
         @Override
         public void remove() {
-            //表示节点已删除
-            removed = true;
+            final DefaultAttributeMap attributeMap = this.attributeMap;
+            final boolean removed = attributeMap != null && MAP_UPDATER.compareAndSet(this, attributeMap, null);
             //既然DefaultAttribute都删除了，那么DefaultAttribute中存储的value也该置为null了
             set(null);
-            //删除一个节点，重排链表指针
-            remove0();
-        }
-
-        /**
-         * 在链表中删除自身节点
-         */
-        private void remove0() {
-            // 链表结构的调整是会出现并发问题的，所以这里加了锁，后续任何涉及链表结构变化的操作，都会用到这个head锁，用来排他并发
-            synchronized (head) {
-                if (prev == null) {
-                    return;
-                }
-                // 删除自身节点,将前节点和后节点连接起来
-                prev.next = next;
-                if (next != null) {
-                    next.prev = prev;
-                }
-                prev = null;
-                next = null;
+            if (removed) {
+                attributeMap.removeAttributeIfMatch(key, this);
             }
         }
     }
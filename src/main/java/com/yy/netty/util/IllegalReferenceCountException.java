@@ -0,0 +1,31 @@
+package com.yy.netty.util;
+
+/**
+ * 访问一个引用计数已经为0的对象，或者引用计数操作越界时抛出的异常
+ */
+public class IllegalReferenceCountException extends IllegalStateException {
+
+    private static final long serialVersionUID = -2507492394288153468L;
+
+    public IllegalReferenceCountException() { }
+
+    public IllegalReferenceCountException(int refCnt) {
+        this("refCnt: " + refCnt);
+    }
+
+    public IllegalReferenceCountException(int refCnt, int increment) {
+        this("refCnt: " + refCnt + ", " + (increment > 0 ? "increment: " + increment : "decrement: " + -increment));
+    }
+
+    public IllegalReferenceCountException(String message) {
+        super(message);
+    }
+
+    public IllegalReferenceCountException(Throwable cause) {
+        super(cause);
+    }
+
+    public IllegalReferenceCountException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -2,6 +2,6 @@ package com.yy.netty.util;
 
 public interface IntSupplier {
 
-    int get();
+    int get() throws Exception;
 
 }
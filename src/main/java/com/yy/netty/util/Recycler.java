@@ -0,0 +1,711 @@
+package com.yy.netty.util;
+
+import com.yy.netty.util.concurrent.FastThreadLocal;
+import com.yy.netty.util.internal.MathUtil;
+import com.yy.netty.util.internal.ObjectPool;
+import com.yy.netty.util.internal.SystemPropertyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于线程本地栈的轻量级对象池
+ * <p>
+ * 每个线程都有一个自己的Stack，get时从当前线程的Stack中弹出对象，在同一个线程中回收时直接压回这个Stack，整个过程不需要任何同步。
+ * 对象在别的线程中被回收时（比如业务线程创建的写任务在EventLoop线程中执行完），不能直接压回原来线程的Stack，
+ * 而是放进回收线程为原来的Stack创建的WeakOrderQueue中，原来的线程在自己的Stack空了的时候，再把WeakOrderQueue中的对象转移回来。
+ * WeakOrderQueue只有回收线程写、原来的线程读，用lazySet发布写入的位置就够了，所以叫"弱有序"队列。
+ * </p>
+ * <p>
+ * 为了防止对象池无限膨胀：
+ * 1、每个Stack最多缓存maxCapacityPerThread个对象，其他线程帮它暂存的对象总数不超过maxCapacityPerThread / maxSharedCapacityFactor；
+ * 2、每个线程最多帮maxDelayedQueuesPerThread个其他线程暂存对象；
+ * 3、新创建的对象每ratio个只回收1个，突发的大量分配不会全部留在池中（已经进过池的对象每次都会被回收）。
+ * 链表、WeakOrderQueue都用弱引用关联线程，线程结束之后，它的Stack和暂存的对象都可以被GC回收。
+ * </p>
+ *
+ * @param <T>
+ */
+public abstract class Recycler<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(Recycler.class);
+
+    @SuppressWarnings("rawtypes")
+    private static final Handle NOOP_HANDLE = new Handle() {
+        @Override
+        public void recycle(Object object) {
+            // NOOP
+        }
+    };
+
+    // 每个Recycler实例的ID，也是同线程回收时使用的recycleId
+    private static final AtomicInteger ID_GENERATOR = new AtomicInteger(Integer.MIN_VALUE);
+    private static final int OWN_THREAD_ID = ID_GENERATOR.getAndIncrement();
+
+    private static final int DEFAULT_INITIAL_MAX_CAPACITY_PER_THREAD = 4 * 1024;
+    private static final int DEFAULT_MAX_CAPACITY_PER_THREAD;
+    private static final int INITIAL_CAPACITY;
+    private static final int MAX_SHARED_CAPACITY_FACTOR;
+    private static final int MAX_DELAYED_QUEUES_PER_THREAD;
+    private static final int LINK_CAPACITY;
+    private static final int RATIO;
+    private static final int DELAYED_QUEUE_RATIO;
+
+    static {
+        // 为0时表示关闭对象池
+        int maxCapacityPerThread = SystemPropertyUtil.getInt("io.netty.recycler.maxCapacityPerThread",
+                SystemPropertyUtil.getInt("io.netty.recycler.maxCapacity", DEFAULT_INITIAL_MAX_CAPACITY_PER_THREAD));
+        if (maxCapacityPerThread < 0) {
+            maxCapacityPerThread = DEFAULT_INITIAL_MAX_CAPACITY_PER_THREAD;
+        }
+
+        DEFAULT_MAX_CAPACITY_PER_THREAD = maxCapacityPerThread;
+
+        MAX_SHARED_CAPACITY_FACTOR = Math.max(2,
+                SystemPropertyUtil.getInt("io.netty.recycler.maxSharedCapacityFactor", 2));
+
+        MAX_DELAYED_QUEUES_PER_THREAD = Math.max(0,
+                SystemPropertyUtil.getInt("io.netty.recycler.maxDelayedQueuesPerThread",
+                        // 默认和EventLoop线程数的默认值一样
+                        NettyRuntime.availableProcessors() * 2));
+
+        LINK_CAPACITY = MathUtil.safeFindNextPositivePowerOfTwo(
+                Math.max(SystemPropertyUtil.getInt("io.netty.recycler.linkCapacity", 16), 16));
+
+        // 默认每8个新对象只回收1个
+        RATIO = Math.max(0, SystemPropertyUtil.getInt("io.netty.recycler.ratio", 8));
+        DELAYED_QUEUE_RATIO = Math.max(0, SystemPropertyUtil.getInt("io.netty.recycler.delayedQueue.ratio", RATIO));
+
+        INITIAL_CAPACITY = Math.min(DEFAULT_MAX_CAPACITY_PER_THREAD, 256);
+
+        if (logger.isDebugEnabled()) {
+            if (DEFAULT_MAX_CAPACITY_PER_THREAD == 0) {
+                logger.debug("-Dio.netty.recycler.maxCapacityPerThread: disabled");
+            } else {
+                logger.debug("-Dio.netty.recycler.maxCapacityPerThread: {}", DEFAULT_MAX_CAPACITY_PER_THREAD);
+                logger.debug("-Dio.netty.recycler.maxSharedCapacityFactor: {}", MAX_SHARED_CAPACITY_FACTOR);
+                logger.debug("-Dio.netty.recycler.linkCapacity: {}", LINK_CAPACITY);
+                logger.debug("-Dio.netty.recycler.ratio: {}", RATIO);
+                logger.debug("-Dio.netty.recycler.delayedQueue.ratio: {}", DELAYED_QUEUE_RATIO);
+            }
+        }
+    }
+
+    private final int maxCapacityPerThread;
+    private final int maxSharedCapacityFactor;
+    private final int interval;
+    private final int maxDelayedQueuesPerThread;
+    private final int delayedQueueInterval;
+
+    // 每个线程一个Stack
+    private final FastThreadLocal<Stack<T>> threadLocal = new FastThreadLocal<Stack<T>>() {
+        @Override
+        protected Stack<T> initialValue() {
+            return new Stack<T>(Recycler.this, Thread.currentThread(), maxCapacityPerThread, maxSharedCapacityFactor,
+                    interval, maxDelayedQueuesPerThread, delayedQueueInterval);
+        }
+
+        @Override
+        protected void onRemoval(Stack<T> value) {
+            // 线程结束了，当前线程为这个Stack暂存对象的WeakOrderQueue也不需要了
+            if (value.threadRef.get() == Thread.currentThread()) {
+                if (DELAYED_RECYCLED.isSet()) {
+                    DELAYED_RECYCLED.get().remove(value);
+                }
+            }
+        }
+    };
+
+    // 当前线程帮其他线程的Stack暂存对象的WeakOrderQueue，key是其他线程的Stack。
+    // 用WeakHashMap是为了不阻止其他线程的Stack被GC回收
+    private static final FastThreadLocal<Map<Stack<?>, WeakOrderQueue>> DELAYED_RECYCLED =
+            new FastThreadLocal<Map<Stack<?>, WeakOrderQueue>>() {
+                @Override
+                protected Map<Stack<?>, WeakOrderQueue> initialValue() {
+                    return new WeakHashMap<Stack<?>, WeakOrderQueue>();
+                }
+            };
+
+    protected Recycler() {
+        this(DEFAULT_MAX_CAPACITY_PER_THREAD);
+    }
+
+    protected Recycler(int maxCapacityPerThread) {
+        this(maxCapacityPerThread, MAX_SHARED_CAPACITY_FACTOR);
+    }
+
+    protected Recycler(int maxCapacityPerThread, int maxSharedCapacityFactor) {
+        this(maxCapacityPerThread, maxSharedCapacityFactor, RATIO, MAX_DELAYED_QUEUES_PER_THREAD);
+    }
+
+    protected Recycler(int maxCapacityPerThread, int maxSharedCapacityFactor,
+                       int ratio, int maxDelayedQueuesPerThread) {
+        this(maxCapacityPerThread, maxSharedCapacityFactor, ratio, maxDelayedQueuesPerThread, DELAYED_QUEUE_RATIO);
+    }
+
+    /**
+     * 构造方法
+     *
+     * @param maxCapacityPerThread      每个线程最多缓存的对象个数，为0时关闭对象池
+     * @param maxSharedCapacityFactor   其他线程最多帮一个线程暂存maxCapacityPerThread / maxSharedCapacityFactor个对象
+     * @param ratio                     新创建的对象每ratio个回收1个
+     * @param maxDelayedQueuesPerThread 每个线程最多帮多少个其他线程暂存对象
+     * @param delayedQueueRatio         其他线程回收的新对象每delayedQueueRatio个暂存1个
+     */
+    protected Recycler(int maxCapacityPerThread, int maxSharedCapacityFactor,
+                       int ratio, int maxDelayedQueuesPerThread, int delayedQueueRatio) {
+        interval = Math.max(0, ratio);
+        delayedQueueInterval = Math.max(0, delayedQueueRatio);
+        if (maxCapacityPerThread <= 0) {
+            this.maxCapacityPerThread = 0;
+            this.maxSharedCapacityFactor = 1;
+            this.maxDelayedQueuesPerThread = 0;
+        } else {
+            this.maxCapacityPerThread = maxCapacityPerThread;
+            this.maxSharedCapacityFactor = Math.max(1, maxSharedCapacityFactor);
+            this.maxDelayedQueuesPerThread = Math.max(0, maxDelayedQueuesPerThread);
+        }
+    }
+
+    /**
+     * 从当前线程的Stack中获取一个对象，没有可复用的对象时创建一个新的
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public final T get() {
+        if (maxCapacityPerThread == 0) {
+            return newObject((Handle<T>) NOOP_HANDLE);
+        }
+        Stack<T> stack = threadLocal.get();
+        DefaultHandle<T> handle = stack.pop();
+        if (handle == null) {
+            handle = stack.newHandle();
+            handle.value = newObject(handle);
+        }
+        return (T) handle.value;
+    }
+
+    /**
+     * 创建一个新对象，需要把handle保存到对象中，用完之后调用handle.recycle(this)回收
+     *
+     * @param handle
+     * @return
+     */
+    protected abstract T newObject(Handle<T> handle);
+
+    public interface Handle<T> extends ObjectPool.Handle<T> {
+    }
+
+    private static final class DefaultHandle<T> implements Handle<T> {
+
+        // 最近一次被回收时的ID，在其他线程回收时是WeakOrderQueue的ID
+        int lastRecycledId;
+
+        // 被压回Stack时的ID，和lastRecycledId一起用来检测重复回收
+        int recycleId;
+
+        // 是否已经被回收过，回收过的对象不受ratio的限制
+        boolean hasBeenRecycled;
+
+        // 对象所属的Stack，放进WeakOrderQueue之后置为null，转移回Stack时再设置
+        Stack<?> stack;
+        Object value;
+
+        DefaultHandle(Stack<?> stack) {
+            this.stack = stack;
+        }
+
+        @Override
+        public void recycle(Object object) {
+            if (object != value) {
+                throw new IllegalArgumentException("object does not belong to handle");
+            }
+
+            Stack<?> stack = this.stack;
+            if (lastRecycledId != recycleId || stack == null) {
+                throw new IllegalStateException("recycled already");
+            }
+
+            stack.push(this);
+        }
+    }
+
+    /**
+     * 其他线程回收的对象暂存在这里，由一个个容量为LINK_CAPACITY的Link组成的链表。
+     * 只有回收线程往tail写，只有Stack所属的线程从head读
+     */
+    private static final class WeakOrderQueue extends WeakReference<Thread> {
+
+        // 一个线程帮其他线程暂存的WeakOrderQueue数量到上限之后，用它占位，之后该线程在这个Stack上回收的对象都直接丢弃
+        static final WeakOrderQueue DUMMY = new WeakOrderQueue();
+
+        @SuppressWarnings("serial")
+        static final class Link extends AtomicInteger {
+            // AtomicInteger的值就是写入的位置
+            final DefaultHandle<?>[] elements = new DefaultHandle<?>[LINK_CAPACITY];
+
+            int readIndex;
+            Link next;
+        }
+
+        /**
+         * 链表的头，负责从Stack的共享容量中申请和归还空间
+         */
+        private static final class Head {
+            private final AtomicInteger availableSharedCapacity;
+
+            Link link;
+
+            Head(AtomicInteger availableSharedCapacity) {
+                this.availableSharedCapacity = availableSharedCapacity;
+            }
+
+            /**
+             * 回收线程已经结束了，归还所有Link占用的空间
+             */
+            void reclaimAllSpaceAndUnlink() {
+                Link head = link;
+                link = null;
+                int reclaimSpace = 0;
+                while (head != null) {
+                    reclaimSpace += LINK_CAPACITY;
+                    Link next = head.next;
+                    // 断开引用，帮助GC
+                    head.next = null;
+                    head = next;
+                }
+                if (reclaimSpace > 0) {
+                    reclaimSpace(reclaimSpace);
+                }
+            }
+
+            private void reclaimSpace(int space) {
+                availableSharedCapacity.addAndGet(space);
+            }
+
+            /**
+             * 头部的Link读完了，换成下一个Link，并归还空间
+             *
+             * @param link
+             */
+            void relink(Link link) {
+                reclaimSpace(LINK_CAPACITY);
+                this.link = link;
+            }
+
+            /**
+             * 共享容量还够的话创建一个新的Link，不够就返回null，对象会被丢弃
+             *
+             * @return
+             */
+            Link newLink() {
+                return reserveSpaceForLink(availableSharedCapacity) ? new Link() : null;
+            }
+
+            static boolean reserveSpaceForLink(AtomicInteger availableSharedCapacity) {
+                for (;;) {
+                    int available = availableSharedCapacity.get();
+                    if (available < LINK_CAPACITY) {
+                        return false;
+                    }
+                    if (availableSharedCapacity.compareAndSet(available, available - LINK_CAPACITY)) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        private final Head head;
+        private Link tail;
+
+        // Stack中的WeakOrderQueue也组成了一个链表，会被Stack所属的线程修改，所以要volatile
+        private volatile WeakOrderQueue next;
+        private final int id = ID_GENERATOR.getAndIncrement();
+        private final int interval;
+        private int handleRecycleCount;
+
+        private WeakOrderQueue() {
+            super(null);
+            head = new Head(null);
+            interval = 0;
+        }
+
+        private WeakOrderQueue(Stack<?> stack, Thread thread) {
+            super(thread);
+            tail = new Link();
+
+            // 注意：这里不能引用Stack本身，否则Stack所属的线程结束之后，Stack会因为这里的强引用而不能被GC回收
+            head = new Head(stack.availableSharedCapacity);
+            head.link = tail;
+            interval = stack.delayedQueueInterval;
+            // 从interval开始计数，保证第一个对象会被回收
+            handleRecycleCount = interval;
+        }
+
+        static WeakOrderQueue newQueue(Stack<?> stack, Thread thread) {
+            // 先申请第一个Link的空间，申请不到就不创建了
+            if (!Head.reserveSpaceForLink(stack.availableSharedCapacity)) {
+                return null;
+            }
+            final WeakOrderQueue queue = new WeakOrderQueue(stack, thread);
+            // 放到Stack的WeakOrderQueue链表的头部，需要和Stack所属的线程同步
+            stack.setHead(queue);
+
+            return queue;
+        }
+
+        WeakOrderQueue getNext() {
+            return next;
+        }
+
+        void setNext(WeakOrderQueue next) {
+            assert next != this;
+            this.next = next;
+        }
+
+        void reclaimAllSpaceAndUnlink() {
+            head.reclaimAllSpaceAndUnlink();
+            next = null;
+        }
+
+        /**
+         * 回收线程调用，把对象追加到尾部
+         *
+         * @param handle
+         */
+        void add(DefaultHandle<?> handle) {
+            handle.lastRecycledId = id;
+
+            // 和Stack一样，新对象按比例丢弃，否则突发的跨线程回收会让WeakOrderQueue迅速膨胀。已经进过池的对象不受限制
+            if (!handle.hasBeenRecycled) {
+                if (handleRecycleCount < interval) {
+                    handleRecycleCount++;
+                    return;
+                }
+                handleRecycleCount = 0;
+            }
+
+            Link tail = this.tail;
+            int writeIndex;
+            if ((writeIndex = tail.get()) == LINK_CAPACITY) {
+                Link link = head.newLink();
+                if (link == null) {
+                    // 共享容量用完了，丢弃
+                    return;
+                }
+                this.tail = tail = tail.next = link;
+
+                writeIndex = tail.get();
+            }
+            tail.elements[writeIndex] = handle;
+            handle.stack = null;
+            // lazySet保证上面两个写入在写入位置之前对Stack所属的线程可见
+            tail.lazySet(writeIndex + 1);
+        }
+
+        boolean hasFinalData() {
+            return tail.readIndex != tail.get();
+        }
+
+        /**
+         * Stack所属的线程调用，把头部Link中的对象转移到Stack中
+         *
+         * @param dst
+         * @return 有对象被转移了返回true
+         */
+        @SuppressWarnings("rawtypes")
+        boolean transfer(Stack<?> dst) {
+            Link head = this.head.link;
+            if (head == null) {
+                return false;
+            }
+
+            if (head.readIndex == LINK_CAPACITY) {
+                if (head.next == null) {
+                    return false;
+                }
+                head = head.next;
+                this.head.relink(head);
+            }
+
+            final int srcStart = head.readIndex;
+            int srcEnd = head.get();
+            final int srcSize = srcEnd - srcStart;
+            if (srcSize == 0) {
+                return false;
+            }
+
+            final int dstSize = dst.size;
+            final int expectedCapacity = dstSize + srcSize;
+
+            if (expectedCapacity > dst.elements.length) {
+                final int actualCapacity = dst.increaseCapacity(expectedCapacity);
+                srcEnd = Math.min(srcStart + actualCapacity - dstSize, srcEnd);
+            }
+
+            if (srcStart != srcEnd) {
+                final DefaultHandle[] srcElems = head.elements;
+                final DefaultHandle[] dstElems = dst.elements;
+                int newDstSize = dstSize;
+                for (int i = srcStart; i < srcEnd; i++) {
+                    DefaultHandle<?> element = srcElems[i];
+                    if (element.recycleId == 0) {
+                        element.recycleId = element.lastRecycledId;
+                    } else if (element.recycleId != element.lastRecycledId) {
+                        throw new IllegalStateException("recycled already");
+                    }
+                    srcElems[i] = null;
+
+                    if (dst.dropHandle(element)) {
+                        continue;
+                    }
+                    element.stack = dst;
+                    dstElems[newDstSize++] = element;
+                }
+
+                if (srcEnd == LINK_CAPACITY && head.next != null) {
+                    // 当前Link读完了，换下一个
+                    this.head.relink(head.next);
+                }
+
+                head.readIndex = srcEnd;
+                if (dst.size == newDstSize) {
+                    return false;
+                }
+                dst.size = newDstSize;
+                return true;
+            } else {
+                // Stack已经满了
+                return false;
+            }
+        }
+    }
+
+    private static final class Stack<T> {
+
+        final Recycler<T> parent;
+
+        // 弱引用，线程结束之后Stack可以被GC回收
+        final WeakReference<Thread> threadRef;
+        final AtomicInteger availableSharedCapacity;
+        private final int maxDelayedQueues;
+
+        private final int maxCapacity;
+        private final int interval;
+        private final int delayedQueueInterval;
+        DefaultHandle<?>[] elements;
+        int size;
+        private int handleRecycleCount;
+        private WeakOrderQueue cursor, prev;
+        private volatile WeakOrderQueue head;
+
+        Stack(Recycler<T> parent, Thread thread, int maxCapacity, int maxSharedCapacityFactor,
+              int interval, int maxDelayedQueues, int delayedQueueInterval) {
+            this.parent = parent;
+            threadRef = new WeakReference<Thread>(thread);
+            this.maxCapacity = maxCapacity;
+            availableSharedCapacity = new AtomicInteger(Math.max(maxCapacity / maxSharedCapacityFactor, LINK_CAPACITY));
+            elements = new DefaultHandle<?>[Math.min(INITIAL_CAPACITY, maxCapacity)];
+            this.interval = interval;
+            this.delayedQueueInterval = delayedQueueInterval;
+            // 从interval开始计数，保证第一个对象会被回收
+            handleRecycleCount = interval;
+            this.maxDelayedQueues = maxDelayedQueues;
+        }
+
+        // 多个回收线程可能同时创建WeakOrderQueue，所以要同步
+        synchronized void setHead(WeakOrderQueue queue) {
+            queue.setNext(head);
+            head = queue;
+        }
+
+        int increaseCapacity(int expectedCapacity) {
+            int newCapacity = elements.length;
+            int maxCapacity = this.maxCapacity;
+            do {
+                newCapacity <<= 1;
+            } while (newCapacity < expectedCapacity && newCapacity < maxCapacity);
+
+            newCapacity = Math.min(newCapacity, maxCapacity);
+            if (newCapacity != elements.length) {
+                elements = Arrays.copyOf(elements, newCapacity);
+            }
+
+            return newCapacity;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        DefaultHandle<T> pop() {
+            int size = this.size;
+            if (size == 0) {
+                // 自己的栈空了，去其他线程暂存的对象中找
+                if (!scavenge()) {
+                    return null;
+                }
+                size = this.size;
+                if (size <= 0) {
+                    return null;
+                }
+            }
+            size--;
+            DefaultHandle ret = elements[size];
+            elements[size] = null;
+            if (ret.lastRecycledId != ret.recycleId) {
+                throw new IllegalStateException("recycled multiple times");
+            }
+            ret.recycleId = 0;
+            ret.lastRecycledId = 0;
+            this.size = size;
+            return ret;
+        }
+
+        private boolean scavenge() {
+            if (scavengeSome()) {
+                return true;
+            }
+
+            // 一个都没找到，下次从头开始
+            prev = null;
+            cursor = head;
+            return false;
+        }
+
+        /**
+         * 从上次的位置开始遍历WeakOrderQueue链表，转移一批对象回来，同时清理那些回收线程已经结束的WeakOrderQueue
+         *
+         * @return
+         */
+        private boolean scavengeSome() {
+            WeakOrderQueue prev;
+            WeakOrderQueue cursor = this.cursor;
+            if (cursor == null) {
+                prev = null;
+                cursor = head;
+                if (cursor == null) {
+                    return false;
+                }
+            } else {
+                prev = this.prev;
+            }
+
+            boolean success = false;
+            do {
+                if (cursor.transfer(this)) {
+                    success = true;
+                    break;
+                }
+                WeakOrderQueue next = cursor.getNext();
+                if (cursor.get() == null) {
+                    // 回收线程已经结束了，把剩下的对象都转移回来，然后把这个WeakOrderQueue从链表中删除
+                    if (cursor.hasFinalData()) {
+                        for (;;) {
+                            if (cursor.transfer(this)) {
+                                success = true;
+                            } else {
+                                break;
+                            }
+                        }
+                    }
+
+                    // 链表的头节点不删除，因为修改head需要和回收线程同步
+                    if (prev != null) {
+                        cursor.reclaimAllSpaceAndUnlink();
+                        prev.setNext(next);
+                    }
+                } else {
+                    prev = cursor;
+                }
+
+                cursor = next;
+
+            } while (cursor != null && !success);
+
+            this.prev = prev;
+            this.cursor = cursor;
+            return success;
+        }
+
+        void push(DefaultHandle<?> item) {
+            Thread currentThread = Thread.currentThread();
+            if (threadRef.get() == currentThread) {
+                // 在Stack所属的线程中回收，直接压栈
+                pushNow(item);
+            } else {
+                // 在其他线程中回收，放进WeakOrderQueue，等Stack所属的线程来取
+                pushLater(item, currentThread);
+            }
+        }
+
+        private void pushNow(DefaultHandle<?> item) {
+            if ((item.recycleId | item.lastRecycledId) != 0) {
+                throw new IllegalStateException("recycled already");
+            }
+            item.recycleId = item.lastRecycledId = OWN_THREAD_ID;
+
+            int size = this.size;
+            if (size >= maxCapacity || dropHandle(item)) {
+                return;
+            }
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, Math.min(size << 1, maxCapacity));
+            }
+
+            elements[size] = item;
+            this.size = size + 1;
+        }
+
+        private void pushLater(DefaultHandle<?> item, Thread thread) {
+            if (maxDelayedQueues == 0) {
+                // 不支持跨线程回收
+                return;
+            }
+
+            Map<Stack<?>, WeakOrderQueue> delayedRecycled = DELAYED_RECYCLED.get();
+            WeakOrderQueue queue = delayedRecycled.get(this);
+            if (queue == null) {
+                if (delayedRecycled.size() >= maxDelayedQueues) {
+                    // 当前线程帮其他线程暂存的WeakOrderQueue太多了，放一个DUMMY，以后这个Stack的对象都直接丢弃
+                    delayedRecycled.put(this, WeakOrderQueue.DUMMY);
+                    return;
+                }
+                if ((queue = WeakOrderQueue.newQueue(this, thread)) == null) {
+                    // 共享容量用完了，丢弃
+                    return;
+                }
+                delayedRecycled.put(this, queue);
+            } else if (queue == WeakOrderQueue.DUMMY) {
+                return;
+            }
+
+            queue.add(item);
+        }
+
+        /**
+         * 新对象每interval + 1个只回收1个
+         *
+         * @param handle
+         * @return true表示丢弃
+         */
+        boolean dropHandle(DefaultHandle<?> handle) {
+            if (!handle.hasBeenRecycled) {
+                if (handleRecycleCount < interval) {
+                    handleRecycleCount++;
+                    return true;
+                }
+                handleRecycleCount = 0;
+                handle.hasBeenRecycled = true;
+            }
+            return false;
+        }
+
+        DefaultHandle<T> newHandle() {
+            return new DefaultHandle<T>(this);
+        }
+    }
+}
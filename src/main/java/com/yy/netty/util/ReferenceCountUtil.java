@@ -0,0 +1,63 @@
+package com.yy.netty.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 引用计数的工具类，对于不确定是否实现了ReferenceCounted接口的消息对象，统一用这里的方法来retain和release
+ */
+public final class ReferenceCountUtil {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReferenceCountUtil.class);
+
+    private ReferenceCountUtil() {
+    }
+
+    /**
+     * 如果msg实现了ReferenceCounted接口，就对其引用计数加1，否则什么都不做
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T retain(T msg) {
+        if (msg instanceof ReferenceCounted) {
+            return (T) ((ReferenceCounted) msg).retain();
+        }
+        return msg;
+    }
+
+    /**
+     * 如果msg实现了ReferenceCounted接口，就对其引用计数减1，否则什么都不做
+     *
+     * @return 引用计数减为0、对象被真正释放时返回true
+     */
+    public static boolean release(Object msg) {
+        if (msg instanceof ReferenceCounted) {
+            return ((ReferenceCounted) msg).release();
+        }
+        return false;
+    }
+
+    public static boolean release(Object msg, int decrement) {
+        if (msg instanceof ReferenceCounted) {
+            return ((ReferenceCounted) msg).release(decrement);
+        }
+        return false;
+    }
+
+    /**
+     * 和release方法一样，但是释放时出现的异常只会打日志，不会向外抛出
+     */
+    public static void safeRelease(Object msg) {
+        try {
+            release(msg);
+        } catch (Throwable t) {
+            logger.warn("Failed to release a message: {}", msg, t);
+        }
+    }
+
+    /**
+     * 返回对象的引用计数，如果对象没有实现ReferenceCounted接口，返回-1
+     */
+    public static int refCnt(Object msg) {
+        return msg instanceof ReferenceCounted ? ((ReferenceCounted) msg).refCnt() : -1;
+    }
+}
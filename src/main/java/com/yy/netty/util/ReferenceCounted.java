@@ -0,0 +1,28 @@
+package com.yy.netty.util;
+
+/**
+ * 引用计数接口，实现了该接口的对象需要显式地释放
+ * <p>
+ * 对象刚创建出来时引用计数为1，每调用一次retain()引用计数加1，每调用一次release()引用计数减1，
+ * 当引用计数减为0时，对象就会被真正地回收（池化的ByteBuf会把内存归还给内存池，非池化的则交给GC）。
+ * 一旦引用计数为0，再去访问该对象就会抛出IllegalReferenceCountException
+ * </p>
+ */
+public interface ReferenceCounted {
+
+    // 返回当前对象的引用计数
+    int refCnt();
+
+    // 引用计数加1
+    ReferenceCounted retain();
+
+    // 引用计数加increment
+    ReferenceCounted retain(int increment);
+
+    // 引用计数减1，如果减为0了就释放该对象，返回true表示该对象已经被释放了
+    boolean release();
+
+    // 引用计数减decrement，如果减为0了就释放该对象，返回true表示该对象已经被释放了
+    boolean release(int decrement);
+
+}
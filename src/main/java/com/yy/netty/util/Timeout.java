@@ -0,0 +1,26 @@
+package com.yy.netty.util;
+
+/**
+ * Timer.newTimeout返回的句柄，可以用来取消任务或者查询任务的状态
+ */
+public interface Timeout {
+
+    // 创建该Timeout的Timer
+    Timer timer();
+
+    // 该Timeout对应的任务
+    TimerTask task();
+
+    // 任务是否已经到期（已经执行或者正在执行）
+    boolean isExpired();
+
+    // 任务是否已经被取消
+    boolean isCancelled();
+
+    /**
+     * 取消任务，已经到期或者已经取消的任务无法再取消
+     *
+     * @return 取消成功返回true
+     */
+    boolean cancel();
+}
@@ -0,0 +1,29 @@
+package com.yy.netty.util;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在后台线程中执行延时任务的定时器
+ */
+public interface Timer {
+
+    /**
+     * 提交一个延时任务，延迟delay后执行一次
+     *
+     * @param task
+     * @param delay
+     * @param unit
+     * @return 可以用来取消任务的句柄
+     * @throws IllegalStateException 定时器已经停止了
+     * @throws java.util.concurrent.RejectedExecutionException 等待中的任务太多了
+     */
+    Timeout newTimeout(TimerTask task, long delay, TimeUnit unit);
+
+    /**
+     * 停止定时器，释放资源，还没执行的任务都会被取消
+     *
+     * @return 没来得及执行的任务
+     */
+    Set<Timeout> stop();
+}
@@ -0,0 +1,14 @@
+package com.yy.netty.util;
+
+/**
+ * 提交给Timer的延时任务
+ */
+public interface TimerTask {
+
+    /**
+     * 到期之后由Timer的工作线程调用
+     *
+     * @param timeout 提交该任务时返回的Timeout
+     */
+    void run(Timeout timeout) throws Exception;
+}
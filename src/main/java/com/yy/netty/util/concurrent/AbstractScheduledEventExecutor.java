@@ -0,0 +1,230 @@
+package com.yy.netty.util.concurrent;
+
+import com.yy.netty.util.internal.DefaultPriorityQueue;
+import com.yy.netty.util.internal.ObjectUtil;
+
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description:支持定时任务的执行器，定时任务按截止时间放在一个优先级队列中，这个队列只会在执行器线程中访问，所以不需要加锁
+ * 其他线程提交的定时任务会先包装成普通任务提交到执行器，由执行器线程放入定时任务队列
+ */
+public abstract class AbstractScheduledEventExecutor implements EventExecutor {
+
+    // 按截止时间排序，截止时间相同的按提交顺序排序
+    private static final Comparator<ScheduledFutureTask<?>> SCHEDULED_FUTURE_TASK_COMPARATOR =
+            new Comparator<ScheduledFutureTask<?>>() {
+                @Override
+                public int compare(ScheduledFutureTask<?> o1, ScheduledFutureTask<?> o2) {
+                    return o1.compareTo(o2);
+                }
+            };
+
+    // 定时任务队列，第一次提交定时任务时才创建
+    private DefaultPriorityQueue<ScheduledFutureTask<?>> scheduledTaskQueue;
+
+    protected AbstractScheduledEventExecutor() {
+    }
+
+    /**
+     * 当前时间，定时任务的截止时间都是以它为基准的
+     *
+     * @return
+     */
+    protected static long nanoTime() {
+        return ScheduledFutureTask.nanoTime();
+    }
+
+    DefaultPriorityQueue<ScheduledFutureTask<?>> scheduledTaskQueue() {
+        if (scheduledTaskQueue == null) {
+            scheduledTaskQueue = new DefaultPriorityQueue<ScheduledFutureTask<?>>(
+                    SCHEDULED_FUTURE_TASK_COMPARATOR,
+                    // 不用太大，大部分执行器上的定时任务都不多
+                    11);
+        }
+        return scheduledTaskQueue;
+    }
+
+    private static boolean isNullOrEmpty(DefaultPriorityQueue<ScheduledFutureTask<?>> queue) {
+        return queue == null || queue.isEmpty();
+    }
+
+    /**
+     * 取消所有的定时任务，只能在执行器线程中调用
+     */
+    protected void cancelScheduledTasks() {
+        assert inEventLoop(Thread.currentThread());
+        DefaultPriorityQueue<ScheduledFutureTask<?>> scheduledTaskQueue = this.scheduledTaskQueue;
+        if (isNullOrEmpty(scheduledTaskQueue)) {
+            return;
+        }
+
+        final ScheduledFutureTask<?>[] scheduledTasks =
+                scheduledTaskQueue.toArray(new ScheduledFutureTask<?>[0]);
+
+        for (ScheduledFutureTask<?> task : scheduledTasks) {
+            task.cancelWithoutRemove(false);
+        }
+
+        scheduledTaskQueue.clearIgnoringIndexes();
+    }
+
+    /**
+     * 取出一个已经到期的定时任务，没有到期的任务就返回null，只能在执行器线程中调用
+     *
+     * @param nanoTime 当前时间
+     * @return
+     */
+    protected final Runnable pollScheduledTask(long nanoTime) {
+        assert inEventLoop(Thread.currentThread());
+
+        ScheduledFutureTask<?> scheduledTask = peekScheduledTask();
+        if (scheduledTask == null || scheduledTask.deadlineNanos() - nanoTime > 0) {
+            return null;
+        }
+        scheduledTaskQueue.remove();
+        return scheduledTask;
+    }
+
+    /**
+     * 距离下一个定时任务到期还有多少纳秒，没有定时任务时返回-1
+     *
+     * @return
+     */
+    protected final long nextScheduledTaskNano() {
+        ScheduledFutureTask<?> scheduledTask = peekScheduledTask();
+        return scheduledTask != null ? scheduledTask.delayNanos() : -1;
+    }
+
+    final ScheduledFutureTask<?> peekScheduledTask() {
+        DefaultPriorityQueue<ScheduledFutureTask<?>> scheduledTaskQueue = this.scheduledTaskQueue;
+        return scheduledTaskQueue != null ? scheduledTaskQueue.peek() : null;
+    }
+
+    /**
+     * 是否有已经到期的定时任务
+     *
+     * @return
+     */
+    protected final boolean hasScheduledTasks() {
+        ScheduledFutureTask<?> scheduledTask = peekScheduledTask();
+        return scheduledTask != null && scheduledTask.deadlineNanos() <= nanoTime();
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        ObjectUtil.checkNotNull(command, "command");
+        ObjectUtil.checkNotNull(unit, "unit");
+        if (delay < 0) {
+            delay = 0;
+        }
+        return schedule(new ScheduledFutureTask<Void>(
+                this, command, null, ScheduledFutureTask.deadlineNanos(unit.toNanos(delay))));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        ObjectUtil.checkNotNull(callable, "callable");
+        ObjectUtil.checkNotNull(unit, "unit");
+        if (delay < 0) {
+            delay = 0;
+        }
+        return schedule(new ScheduledFutureTask<V>(
+                this, callable, ScheduledFutureTask.deadlineNanos(unit.toNanos(delay))));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        ObjectUtil.checkNotNull(command, "command");
+        ObjectUtil.checkNotNull(unit, "unit");
+        if (initialDelay < 0) {
+            throw new IllegalArgumentException(
+                    String.format("initialDelay: %d (expected: >= 0)", initialDelay));
+        }
+        if (period <= 0) {
+            throw new IllegalArgumentException(
+                    String.format("period: %d (expected: > 0)", period));
+        }
+
+        return schedule(new ScheduledFutureTask<Void>(
+                this, toCallable(command), ScheduledFutureTask.deadlineNanos(unit.toNanos(initialDelay)),
+                unit.toNanos(period)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        ObjectUtil.checkNotNull(command, "command");
+        ObjectUtil.checkNotNull(unit, "unit");
+        if (initialDelay < 0) {
+            throw new IllegalArgumentException(
+                    String.format("initialDelay: %d (expected: >= 0)", initialDelay));
+        }
+        if (delay <= 0) {
+            throw new IllegalArgumentException(
+                    String.format("delay: %d (expected: > 0)", delay));
+        }
+
+        // 固定延迟用负数的period表示
+        return schedule(new ScheduledFutureTask<Void>(
+                this, toCallable(command), ScheduledFutureTask.deadlineNanos(unit.toNanos(initialDelay)),
+                -unit.toNanos(delay)));
+    }
+
+    /**
+     * 在执行器线程中直接放入定时任务队列，否则提交一个普通任务，让执行器线程去放
+     * 提交普通任务的同时会唤醒执行器线程，执行器线程会根据新的截止时间重新计算阻塞的时间
+     *
+     * @param task
+     * @param <V>
+     * @return
+     */
+    private <V> ScheduledFuture<V> schedule(final ScheduledFutureTask<V> task) {
+        if (inEventLoop(Thread.currentThread())) {
+            scheduledTaskQueue().add(task);
+        } else {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    scheduledTaskQueue().add(task);
+                }
+            });
+        }
+
+        return task;
+    }
+
+    /**
+     * 从定时任务队列中删除被取消的任务
+     *
+     * @param task
+     */
+    final void removeScheduled(final ScheduledFutureTask<?> task) {
+        if (inEventLoop(Thread.currentThread())) {
+            scheduledTaskQueue().removeTyped(task);
+        } else {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    removeScheduled(task);
+                }
+            });
+        }
+    }
+
+    private static Callable<Void> toCallable(final Runnable command) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+                command.run();
+                return null;
+            }
+
+            @Override
+            public String toString() {
+                return "Callable(task: " + command + ')';
+            }
+        };
+    }
+}
@@ -7,6 +7,7 @@ import org.slf4j.LoggerFactory;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 import static com.yy.netty.util.internal.ObjectUtil.checkNotNull;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -27,6 +28,16 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
  * 4、result为CauseHolder，说明任务执行中出现了异常，异常有两种可能性：（1）主动提前取消，对应CancellableException；（2）其他过程异常
  * 以上result一旦被设置为SUCCESS，V，CauseHolder，代表任务结束了；result为其他值时，代表的是一种状态，任务还在继续；
  * </p>
+ * <p>
+ * 并发控制全部是无锁的：
+ * 1、result只用CAS设置，只有第一个设置成功的线程才会去唤醒等待线程和通知监听器；
+ * 2、监听器保存在listeners中，只有一个监听器时直接保存监听器本身（最常见的情况，添加时不用额外创建对象），
+ * 多个时保存为不可变的单向链表，添加和删除都是用CAS替换整个listeners；监听器总是在执行器线程中回调，回调时用getAndSet一次性取走；
+ * 3、阻塞等待的线程组成一个无锁栈，只有真的有线程要阻塞时才会创建栈节点，然后用LockSupport.park阻塞，
+ * 任务结束时把栈替换为TOMBSTONE，并逐个unpark。
+ * 设置结果的线程是先写result再读waiters和listeners，添加等待线程和监听器的线程是先写waiters和listeners再读result，
+ * 这几个字段都是volatile的，所以两边至少有一方能看到另一方的写入，不会出现等待线程永远不被唤醒、监听器永远不被回调的情况
+ * </p>
  */
 public class DefaultPromise<V> extends AbstractFuture<V> implements Promise<V> {
 
@@ -38,19 +49,28 @@ public class DefaultPromise<V> extends AbstractFuture<V> implements Promise<V> {
     private static final Object UNCANCELLABLE = new Object();
 
     //原子更新器，用来并发时更新result的值
+    @SuppressWarnings("rawtypes")
     private static final AtomicReferenceFieldUpdater<DefaultPromise, Object> RESULT_UPDATER =
             AtomicReferenceFieldUpdater.newUpdater(DefaultPromise.class, Object.class, "result");
 
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<DefaultPromise, Object> LISTENERS_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(DefaultPromise.class, Object.class, "listeners");
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<DefaultPromise, Waiter> WAITERS_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(DefaultPromise.class, Waiter.class, "waiters");
+
     // 该结果对应着任务执行的结果，result一旦被设置结果意味着任务结束了（除了被设置为UNCANCELLABLE）
     private volatile Object result;
 
-    // 需要通知的监听器,通常对应着一个默认实现DefaultFutureListeners
-    private Object listeners;
+    // 需要通知的监听器：null表示没有监听器，GenericFutureListener表示只有一个监听器，ListenerNode表示有多个监听器
+    private volatile Object listeners;
 
-    // 一定会出现这样的情况，当外部线程调用该类的get方法时，如果任务还未执行完毕，则外部线程将视情况阻塞。每当一个外部线程阻塞时，该属性便加一，线程继续执行后，该属性减一
-    private short waiters;
+    // 阻塞在当前promise上的线程组成的无锁栈，任务结束后被替换为Waiter.TOMBSTONE
+    private volatile Waiter waiters;
 
-    // 标志位，防止并发通知的情况出现，如果为ture，则说明有线程通知监听器了，为false则说明没有。
+    // 标志位，防止监听器回调的过程中又添加了监听器导致重入，只会在执行器线程中读写，所以不需要volatile
     private boolean notifyingListeners;
 
     // 每一个promise都要有执行器来执行异步任务，比如监听器的回调
@@ -148,63 +168,60 @@ public class DefaultPromise<V> extends AbstractFuture<V> implements Promise<V> {
     }
 
     /**
-     * 完成对注册在当前DefaultPromise对象上的监听器的回调
+     * 完成对注册在当前DefaultPromise对象上的监听器的回调，该方法只会在执行器线程中被调用
      */
     private void notifyListenersNow() {
-        Object listeners;
-        // 并发控制，防止多次回调
-        synchronized (this) {
-            //notifyingListeners这个属性如果为ture，说明已经有线程通知监听器了。或者当监听器属性为null，这时候直接返回即可。
-            if (notifyingListeners || this.listeners == null) {
-                return;
-            }
-            //如果没有通知，把notifyingListeners设置为ture
-            notifyingListeners = true;
-            listeners = this.listeners;
-            //将listeners属性设置为null，代表通知过了已经，这时候锁就要被释放了，当有其他线程进入该代码块时，就会进入if判断直接退出了
-            this.listeners = null;
-        }
-        // 走到这里，说明当前线程拿到了待通知的监听器，那么就需要去遍历监听器，并执行监听器的回调，
-        // 这里面有一个特别极端的情况，就是在监听器回调的过程中，有新的监听器注册，那么就会导致listeners属性被赋值，这时候就要求再来一次循环，再次完成对监听器的回调
-        for (; ; ) {
-            //如果listerers是DefaultFutureListeners该类型，则说明有多个监听器，是个监听器数组，要执行 通知多个数组的方法
-            if (listeners instanceof DefaultFutureListeners) {
-                notifyListeners0((DefaultFutureListeners) listeners);
-            } else {
-                //说明只有一个监听器。
-                notifyListeners0(this, (GenericFutureListener<?>)listeners);
-            }
-            //通知完成后继续上锁
-            synchronized (this) {
-                //这里再次加锁是因为方法结束之后notifyingListeners的值要重置。
-                if (this.listeners == null) {
-                    notifyingListeners = false;
-                    //重置之后退出即可
+        //notifyingListeners这个属性如果为ture，说明正在回调监听器，是监听器在回调的时候又添加了监听器，
+        //新的监听器会在下面的循环中被回调，这里直接返回即可
+        if (notifyingListeners || this.listeners == null) {
+            return;
+        }
+        notifyingListeners = true;
+        try {
+            // 监听器回调的过程中可能有新的监听器注册，所以要循环取，直到取不到为止
+            for (; ; ) {
+                //把监听器一次性取走，代表通知过了
+                Object listeners = LISTENERS_UPDATER.getAndSet(this, null);
+                if (listeners == null) {
                     return;
                 }
-                // 走到这里，说明listeners属性被赋值了，这时候需要再次对监听器进行回调
-                listeners = this.listeners;
-                this.listeners = null;
+                if (listeners instanceof ListenerNode) {
+                    //说明有多个监听器
+                    notifyListeners0((ListenerNode) listeners);
+                } else {
+                    //说明只有一个监听器。
+                    notifyListeners0(this, (GenericFutureListener<?>) listeners);
+                }
             }
+        } finally {
+            notifyingListeners = false;
         }
     }
 
-    private void notifyListeners0(DefaultFutureListeners listeners) {
-        //得到监听器数组
-        GenericFutureListener<? extends Future<?>>[] a = listeners.listeners();
-        //遍历数组，一次通知监听器执行方法
-        int size = listeners.size();
-        for (int i = 0; i < size; i++) {
-            notifyListeners0(this, a[i]);
+    private void notifyListeners0(ListenerNode head) {
+        // 链表是后添加的在前面，要按添加的顺序回调，所以先倒过来放到数组中
+        int size = 0;
+        for (ListenerNode node = head; node != null; node = node.next) {
+            size++;
+        }
+        GenericFutureListener<?>[] a = new GenericFutureListener<?>[size];
+        for (ListenerNode node = head; node != null; node = node.next) {
+            a[--size] = node.listener;
+        }
+        for (GenericFutureListener<?> l : a) {
+            notifyListeners0(this, l);
         }
     }
 
     @SuppressWarnings({"unchecked", "rawtypes"})
-    private void notifyListeners0(Future future, GenericFutureListener listener) {
+    private static void notifyListeners0(Future future, GenericFutureListener listener) {
         try {
             listener.operationComplete(future);
         } catch (Throwable t) {
-            throw new RuntimeException(t);
+            // 一个监听器出了异常，不能影响其他监听器的回调
+            if (logger.isWarnEnabled()) {
+                logger.warn("An exception was thrown by " + listener.getClass().getName() + ".operationComplete()", t);
+            }
         }
     }
 
@@ -213,14 +230,28 @@ public class DefaultPromise<V> extends AbstractFuture<V> implements Promise<V> {
      *
      * @return
      */
-    private synchronized boolean checkNotifyWaiters() {
-        if (waiters > 0) {
+    private boolean checkNotifyWaiters() {
+        if (waiters != null) {
             // 唤醒所有阻塞在当前DefaultPromise对象上的线程
-            notifyAll();
+            releaseWaiters();
         }
         return listeners != null;
     }
 
+    /**
+     * 把等待栈替换为TOMBSTONE，之后再来的线程看到TOMBSTONE就知道任务已经结束了，不会再入栈，然后唤醒栈中的所有线程
+     */
+    private void releaseWaiters() {
+        Waiter head = WAITERS_UPDATER.getAndSet(this, Waiter.TOMBSTONE);
+        for (Waiter w = head; w != null; w = w.next) {
+            Thread thread = w.thread;
+            if (thread != null) {
+                w.thread = null;
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
     /**
      * 尝试设置任务成功结束的结果
      *
@@ -322,37 +353,10 @@ public class DefaultPromise<V> extends AbstractFuture<V> implements Promise<V> {
         //执行每个任务的执行器是和channel绑定的。如果某个执行器正在执行任务，但是还未获得结果，这时候该执行器
         //又来获取结果，一个线程怎么能同时执行任务又要唤醒自己呢，所以必然会产生死锁
         checkDeadLock();
-        //wait要和synchronized一起使用，在futurtask的源码中，这里使用了LockSupport.park方法。
-        synchronized (this) {
-            // 再一次判断任务是否执行完成，如果完成直接返回，不成功进入循环，这里循环是为了解决线程虚假唤醒问题
-            while (!isDone()) {
-                //waiters字段加一，记录在此阻塞的线程数量
-                incWaiters();
-                try {
-                    //释放锁并等待，直到任务结束，由其他线程来唤醒这里
-                    wait();
-                    // 这里没有捕获线程中断异常，为的就是支持中断异常的抛出
-                } finally {
-                    //等待结束waiters字段减一
-                    decWaiters();
-                }
-            }
-        }
-
+        awaitDone(false, 0L, true);
         return this;
     }
 
-    private void decWaiters() {
-        --waiters;
-    }
-
-    private void incWaiters() {
-        if (waiters == Short.MAX_VALUE) {
-            throw new IllegalStateException("too many waiters: " + this);
-        }
-        ++waiters;
-    }
-
     protected void checkDeadLock() {
         //得到执行器
         EventExecutor executor = executor();
@@ -376,27 +380,12 @@ public class DefaultPromise<V> extends AbstractFuture<V> implements Promise<V> {
 
         checkDeadLock();
 
-        // 当前线程是否已经抛出中断异常，如果抛出了，那么标记一下，
-        // 因为这个方法是不支持抛出中断异常，会在内部吞掉异常的，这个标志最后用于恢复线程的中断标志，交给调用方处理
-        boolean interrupted = false;
-        synchronized (this) {
-            while (!isDone()) {
-                incWaiters();
-                try {
-                    wait();
-                } catch (InterruptedException e) {
-                    // 在这里进行主动捕获中断异常，不让其抛出
-                    interrupted = true;
-                } finally {
-                    decWaiters();
-                }
-            }
-        }
-        //如果发生异常，则给调用该方法的线程设置中断标志
-        if (interrupted) {
-            Thread.currentThread().interrupt();
+        try {
+            awaitDone(false, 0L, false);
+        } catch (InterruptedException e) {
+            // 不可中断的等待不会抛出中断异常
+            throw new InternalError();
         }
-
         return this;
     }
 
@@ -438,7 +427,7 @@ public class DefaultPromise<V> extends AbstractFuture<V> implements Promise<V> {
     }
 
     /**
-     * 真正让线程阻塞等待的方法
+     * 带超时时间的阻塞等待
      * 返回结果，true:任务结束；false:任务未结束
      *
      * @param timeoutNanos
@@ -465,50 +454,60 @@ public class DefaultPromise<V> extends AbstractFuture<V> implements Promise<V> {
         //检查死锁
         checkDeadLock();
 
-        //获取当前纳秒时间
-        long startTime = System.nanoTime();
-        //用户设置的等待时间
-        long waitTime = timeoutNanos;
-        //是否出现中断异常的标记
-        boolean interrupted = false;
+        return awaitDone(true, timeoutNanos, interruptable);
+    }
 
+    /**
+     * 真正让线程阻塞等待的方法：先把当前线程压入等待栈，再用LockSupport.park阻塞，直到任务结束、超时或者被中断
+     *
+     * @param timed         是否有超时时间
+     * @param timeoutNanos  超时时间
+     * @param interruptable 是否响应中断，不响应时会在返回前恢复线程的中断标志
+     * @return true:任务结束；false:任务未结束
+     * @throws InterruptedException
+     */
+    private boolean awaitDone(boolean timed, long timeoutNanos, boolean interruptable) throws InterruptedException {
+        final long deadline = timed ? System.nanoTime() + timeoutNanos : 0L;
+        boolean interrupted = false;
         try {
-            // 避免虚假唤醒
+            // 入栈，栈已经是TOMBSTONE的话说明任务已经结束了
+            Waiter node = new Waiter(Thread.currentThread());
             for (;;) {
-                synchronized (this) {
-                    //再次判断是否执行完成，如果结束，可直接返回
-                    if (isDone()) {
-                        return true;
-                    }
-                    //如果没有执行完成，则开始阻塞等待，阻塞线程数加一
-                    incWaiters();
-                    // 进行阻塞
-                    try {
-                        wait(waitTime / 1_000_000, (int) (waitTime % 1_000_000));
-                    } catch (InterruptedException e) {
-                        if (interruptable) {
-                            // 如果是可中断的，那么直接抛出
-                            throw e;
-                        } else {
-                            // 如果不可中断的，那么记录下中断状态，等待结束的时候恢复中断状态
-                            interrupted = true;
-                        }
-                    } finally {
-                        //阻塞线程数减一
-                        decWaiters();
-                    }
+                Waiter head = waiters;
+                if (head == Waiter.TOMBSTONE) {
+                    return true;
                 }
-                //走到这里说明线程被唤醒了
+                node.next = head;
+                if (WAITERS_UPDATER.compareAndSet(this, head, node)) {
+                    break;
+                }
+            }
+
+            // 避免虚假唤醒
+            for (;;) {
+                // 入栈之后一定要再检查一次，否则任务可能在入栈之前就结束了，没有人会来唤醒这里
                 if (isDone()) {
                     return true;
-                } else {
-                    //可能是虚假唤醒。
-                    //得到新的等待时间，如果等待时间小于0，表示已经阻塞了用户设定的等待时间。如果waitTime大于0，则继续循环
-                    waitTime = timeoutNanos - (System.nanoTime() - startTime);
+                }
+                if (timed) {
+                    long waitTime = deadline - System.nanoTime();
                     if (waitTime <= 0) {
                         // 超过等待时间了，任务还没结束，返回false
-                        return false;
+                        removeWaiter(node);
+                        return isDone();
+                    }
+                    LockSupport.parkNanos(this, waitTime);
+                } else {
+                    LockSupport.park(this);
+                }
+                if (Thread.interrupted()) {
+                    if (interruptable) {
+                        // 如果是可中断的，那么直接抛出
+                        removeWaiter(node);
+                        throw new InterruptedException();
                     }
+                    // 如果不可中断的，那么记录下中断状态，等待结束的时候恢复中断状态
+                    interrupted = true;
                 }
             }
         } finally {
@@ -519,6 +518,41 @@ public class DefaultPromise<V> extends AbstractFuture<V> implements Promise<V> {
         }
     }
 
+    /**
+     * 超时或者被中断的线程不再等待了，把它的节点从等待栈中删除，否则反复超时等待同一个promise时栈会越来越长。
+     * 先把节点的thread置为null作为删除标记，然后遍历整个栈，把所有被标记的节点都摘掉，遍历过程中如果发现和其他线程冲突了，就从头再来
+     *
+     * @param node
+     */
+    private void removeWaiter(Waiter node) {
+        node.thread = null;
+        restart:
+        for (;;) {
+            Waiter pred = null;
+            Waiter curr = waiters;
+            if (curr == Waiter.TOMBSTONE) {
+                // 任务已经结束了，栈已经被清空了
+                return;
+            }
+            while (curr != null) {
+                Waiter succ = curr.next;
+                if (curr.thread != null) {
+                    pred = curr;
+                } else if (pred != null) {
+                    pred.next = succ;
+                    if (pred.thread == null) {
+                        // 前驱节点也被别的线程删除了，重新遍历
+                        continue restart;
+                    }
+                } else if (!WAITERS_UPDATER.compareAndSet(this, curr, succ)) {
+                    continue restart;
+                }
+                curr = succ;
+            }
+            return;
+        }
+    }
+
     /**
      * 获取当前任务结果,如果result不是成功状态的具体结果，那么都返回null，表示任务当前就是没有结果的
      *
@@ -648,11 +682,8 @@ public class DefaultPromise<V> extends AbstractFuture<V> implements Promise<V> {
     public Promise<V> addListener(GenericFutureListener<? extends Future<? super V>> listener) {
         //检查监听器不为null
         checkNotNull(listener, "listener");
-        //加锁
-        synchronized (this) {
-            //添加监听器
-            addListener0(listener);
-        }
+        //添加监听器
+        addListener0(listener);
         //判断任务是否完成，实际上就是检查result是否被赋值了
         if (isDone()) {
             // 如果任务已经完成，那么就需要立刻回调监听器，不然监听器里的逻辑就没机会被调用了；如果任务还没完成，那么监听器的回调方法会在任务结束时被调用
@@ -663,15 +694,22 @@ public class DefaultPromise<V> extends AbstractFuture<V> implements Promise<V> {
     }
 
     private void addListener0(GenericFutureListener<? extends Future<? super V>> listener) {
-        if (listeners == null) {
-            //listeners为null，则说明在这之前没有添加监听器，直接把该监听器赋值给属性即可
-            listeners = listener;
-        } else if (listeners instanceof DefaultFutureListeners) {
-            //走到这里说明已经添加了多个监听器，监听器数组被包装在DefaultFutureListeners类中，所以要把监听器添加到数组中
-            ((DefaultFutureListeners) listeners).add(listener);
-        } else {
-            //这种情况适用于第二次添加的时候，把第一次添加的监听器和本次添加的监听器传入DefaultFutureListeners的构造器函数中封装为一个监听器数组
-            listeners = new DefaultFutureListeners((GenericFutureListener<? extends Future<? super V>>) listeners, listener);
+        for (;;) {
+            Object old = this.listeners;
+            Object update;
+            if (old == null) {
+                //listeners为null，则说明在这之前没有添加监听器，直接把该监听器赋值给属性即可，不需要创建任何对象
+                update = listener;
+            } else if (old instanceof ListenerNode) {
+                //走到这里说明已经添加了多个监听器，把新的监听器放到链表头部
+                update = new ListenerNode(listener, (ListenerNode) old);
+            } else {
+                //这种情况适用于第二次添加的时候，把第一次添加的监听器和本次添加的监听器组成一个链表
+                update = new ListenerNode(listener, new ListenerNode((GenericFutureListener<?>) old, null));
+            }
+            if (LISTENERS_UPDATER.compareAndSet(this, old, update)) {
+                return;
+            }
         }
     }
 
@@ -679,19 +717,16 @@ public class DefaultPromise<V> extends AbstractFuture<V> implements Promise<V> {
     public Promise<V> addListeners(GenericFutureListener<? extends Future<? super V>>... listeners) {
         //检查监听器不为null
         checkNotNull(listeners, "listeners");
-        //加锁
-        synchronized (this) {
-            //遍历传入的监听器，如果有其中任何一个为null，则停止循环
-            for (GenericFutureListener<? extends Future<? super V>> listener : listeners) {
-                if (listener == null) {
-                    break;
-                }
-                //添加监听器
-                addListener0(listener);
+        //遍历传入的监听器，如果有其中任何一个为null，则停止循环
+        for (GenericFutureListener<? extends Future<? super V>> listener : listeners) {
+            if (listener == null) {
+                break;
             }
+            //添加监听器
+            addListener0(listener);
         }
         if (isDone()) {
-            // 如果任务已经完成，那么就需要立刻回调监听器，不然监听器里的逻辑就没 chance 被调了；如果任务还没完成，那么监听器的回调方法会在任务结束时被调用
+            // 如果任务已经完成，那么就需要立刻回调监听器，不然监听器里的逻辑就没机会被调用了；如果任务还没完成，那么监听器的回调方法会在任务结束时被调用
             notifyListeners();
         }
 
@@ -701,39 +736,96 @@ public class DefaultPromise<V> extends AbstractFuture<V> implements Promise<V> {
     @Override
     public Promise<V> removeListener(GenericFutureListener<? extends Future<? super V>> listener) {
         checkNotNull(listener, "listener");
-
-        synchronized (this) {
-            removeListener0(listener);
-        }
-
+        removeListener0(listener);
         return this;
     }
 
     private void removeListener0(GenericFutureListener<? extends Future<? super V>> listener) {
-        if (listeners instanceof DefaultFutureListeners) {
-            //如果监听器是数组类型的，就从数组中删除
-            ((DefaultFutureListeners) listeners).remove(listener);
-        } else if (listeners == listener) {
-            //如果监听器是单个监听器，就直接赋值为null
-            listeners = null;
+        for (;;) {
+            Object old = this.listeners;
+            Object update;
+            if (old instanceof ListenerNode) {
+                //如果是多个监听器，就生成一个删除了该监听器的新链表
+                update = ListenerNode.remove((ListenerNode) old, listener);
+            } else if (old == listener) {
+                //如果监听器是单个监听器，就直接赋值为null
+                update = null;
+            } else {
+                return;
+            }
+            if (update == old || LISTENERS_UPDATER.compareAndSet(this, old, update)) {
+                return;
+            }
         }
     }
 
     @Override
     public Promise<V> removeListeners(GenericFutureListener<? extends Future<? super V>>... listeners) {
         checkNotNull(listeners, "listeners");
-        synchronized (this) {
-            for (GenericFutureListener<? extends Future<? super V>> listener : listeners) {
-                if (listener == null) {
-                    break;
-                }
-                removeListener0(listener);
+        for (GenericFutureListener<? extends Future<? super V>> listener : listeners) {
+            if (listener == null) {
+                break;
             }
+            removeListener0(listener);
         }
 
         return this;
     }
 
+    /**
+     * 保存多个监听器的不可变单向链表，后添加的监听器在链表头部。
+     * 因为是不可变的，所以可以放心地用CAS整体替换，回调的线程拿到的链表也不会再被其他线程修改
+     */
+    private static final class ListenerNode {
+
+        final GenericFutureListener<?> listener;
+        final ListenerNode next;
+
+        ListenerNode(GenericFutureListener<?> listener, ListenerNode next) {
+            this.listener = listener;
+            this.next = next;
+        }
+
+        /**
+         * 返回删除了指定监听器之后的链表，如果同一个监听器被添加了多次，只删除最早添加的那个，链表中没有该监听器时返回原链表
+         *
+         * @param node
+         * @param listener
+         * @return
+         */
+        static ListenerNode remove(ListenerNode node, GenericFutureListener<?> listener) {
+            if (node == null) {
+                return null;
+            }
+            ListenerNode next = remove(node.next, listener);
+            if (next != node.next) {
+                // 在后面删除过了，复制当前节点
+                return new ListenerNode(node.listener, next);
+            }
+            if (node.listener == listener) {
+                return node.next;
+            }
+            return node;
+        }
+    }
+
+    /**
+     * 等待栈中的节点，对应一个阻塞等待的线程
+     */
+    private static final class Waiter {
+
+        // 任务结束的标记，等待栈被替换为它之后就不会再有线程入栈了
+        static final Waiter TOMBSTONE = new Waiter(null);
+
+        // 等待的线程，被唤醒或者不再等待时置为null
+        volatile Thread thread;
+        volatile Waiter next;
+
+        Waiter(Thread thread) {
+            this.thread = thread;
+        }
+    }
+
     /**
      * @Description:一个私有的静态内部类，对异常的包装
      */
@@ -97,8 +97,8 @@ public class DefaultThreadFactory implements ThreadFactory {
      */
     @Override
     public Thread newThread(Runnable r) {
-        // 新建线程
-        Thread thread = new Thread(r, prefix + nextId.incrementAndGet());
+        // 新建线程，使用FastThreadLocalThread，线程中访问FastThreadLocal时就不需要经过jdk的ThreadLocal了
+        Thread thread = newThread(FastThreadLocalRunnable.wrap(r), prefix + nextId.incrementAndGet());
         logger.info("新建线程：{}", thread.getName());
         try {
             if (thread.isDaemon() != daemon) {
@@ -113,4 +113,8 @@ public class DefaultThreadFactory implements ThreadFactory {
 
         return thread;
     }
+
+    protected Thread newThread(Runnable r, String name) {
+        return new FastThreadLocalThread(threadGroup, r, name);
+    }
 }
@@ -1,16 +1,34 @@
 package com.yy.netty.util.concurrent;
 
+import java.util.Iterator;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 /**
  * @Description:事件执行组，封装组的行为表现
  */
-public interface EventExecutorGroup extends Executor {
+public interface EventExecutorGroup extends Executor, Iterable<EventExecutor> {
 
     // 获取组内的下一个执行器
     EventExecutor next();
 
+    // 遍历组内的所有执行器
+    @Override
+    Iterator<EventExecutor> iterator();
+
+    // 延迟delay后执行一次任务
+    ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit);
+
+    // 延迟delay后执行一次任务，任务的返回值会设置到返回的future中
+    <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit);
+
+    // 延迟initialDelay后，以固定的频率周期执行任务
+    ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit);
+
+    // 延迟initialDelay后，每次执行完任务等待delay再执行下一次
+    ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit);
+
     // 优雅关闭(关闭组内的所有执行器)
     void shutdownGracefully();
 
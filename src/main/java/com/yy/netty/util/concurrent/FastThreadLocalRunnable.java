@@ -0,0 +1,28 @@
+package com.yy.netty.util.concurrent;
+
+import com.yy.netty.util.internal.ObjectUtil;
+
+/**
+ * 包装一个Runnable，运行结束之后清理当前线程中所有的FastThreadLocal，回调它们的onRemoval
+ */
+final class FastThreadLocalRunnable implements Runnable {
+
+    private final Runnable runnable;
+
+    private FastThreadLocalRunnable(Runnable runnable) {
+        this.runnable = ObjectUtil.checkNotNull(runnable, "runnable");
+    }
+
+    @Override
+    public void run() {
+        try {
+            runnable.run();
+        } finally {
+            FastThreadLocal.removeAll();
+        }
+    }
+
+    static Runnable wrap(Runnable runnable) {
+        return runnable instanceof FastThreadLocalRunnable ? runnable : new FastThreadLocalRunnable(runnable);
+    }
+}
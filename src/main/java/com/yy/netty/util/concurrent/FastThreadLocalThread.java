@@ -0,0 +1,60 @@
+package com.yy.netty.util.concurrent;
+
+import com.yy.netty.util.internal.InternalThreadLocalMap;
+
+/**
+ * 直接持有InternalThreadLocalMap的线程，在该线程中访问FastThreadLocal不需要经过jdk的ThreadLocal
+ */
+public class FastThreadLocalThread extends Thread {
+
+    // 线程结束时是否会自动清理FastThreadLocal，只有通过构造方法传入的Runnable才会被包装，才能保证清理
+    private final boolean cleanupFastThreadLocals;
+
+    private InternalThreadLocalMap threadLocalMap;
+
+    public FastThreadLocalThread() {
+        cleanupFastThreadLocals = false;
+    }
+
+    public FastThreadLocalThread(Runnable target) {
+        super(FastThreadLocalRunnable.wrap(target));
+        cleanupFastThreadLocals = true;
+    }
+
+    public FastThreadLocalThread(Runnable target, String name) {
+        super(FastThreadLocalRunnable.wrap(target), name);
+        cleanupFastThreadLocals = true;
+    }
+
+    public FastThreadLocalThread(ThreadGroup group, Runnable target, String name) {
+        super(group, FastThreadLocalRunnable.wrap(target), name);
+        cleanupFastThreadLocals = true;
+    }
+
+    /**
+     * 只能在线程自己内部调用，InternalThreadLocalMap不是线程安全的
+     *
+     * @return
+     */
+    public final InternalThreadLocalMap threadLocalMap() {
+        return threadLocalMap;
+    }
+
+    public final void setThreadLocalMap(InternalThreadLocalMap threadLocalMap) {
+        this.threadLocalMap = threadLocalMap;
+    }
+
+    /**
+     * 线程结束时是否会自动调用FastThreadLocal.removeAll()
+     *
+     * @return
+     */
+    public boolean willCleanupFastThreadLocals() {
+        return cleanupFastThreadLocals;
+    }
+
+    public static boolean willCleanupFastThreadLocals(Thread thread) {
+        return thread instanceof FastThreadLocalThread &&
+                ((FastThreadLocalThread) thread).willCleanupFastThreadLocals();
+    }
+}
@@ -0,0 +1,179 @@
+package com.yy.netty.util.concurrent;
+
+import com.yy.netty.util.internal.ObjectUtil;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Description:按负载选择执行器的选择器工厂。
+ * 默认的选择器是轮询，每个执行器分到的channel数是一样的，但是长连接的流量和存活时间相差很大的时候，
+ * 轮询会让一部分执行器非常忙，另一部分执行器却很闲。这里的选择器会根据LoadMetric算出每个执行器的负载，选负载最小的那个。
+ * 有两种选法：
+ * 1、遍历所有执行器选负载最小的，适合负载指标很准确、读起来也很便宜的场景，比如channel数、任务队列的长度；
+ * 2、随机选两个执行器，取负载小的那个（power of two choices），适合负载指标有延迟的场景，比如最近一段时间的忙碌占比，
+ * 大家看到的都是同一份有延迟的数据，如果每次都选最小的，一批连接会同时涌向同一个执行器，随机选两个可以避免这种羊群效应，
+ * 而且效果和选最小的相差不大
+ */
+public final class LoadAwareEventExecutorChooserFactory implements EventExecutorChooserFactory {
+
+    /**
+     * 执行器的负载指标，值越小表示负载越低
+     */
+    public interface LoadMetric {
+
+        /**
+         * 返回执行器当前的负载，返回负数表示该执行器不支持统计该指标
+         *
+         * @param executor
+         * @return
+         */
+        long load(EventExecutor executor);
+    }
+
+    /**
+     * 任务队列中等待执行的任务数
+     */
+    public static final LoadMetric PENDING_TASKS = new LoadMetric() {
+        @Override
+        public long load(EventExecutor executor) {
+            if (executor instanceof SingleThreadEventExecutor) {
+                return ((SingleThreadEventExecutor) executor).pendingTasks();
+            }
+            return -1;
+        }
+    };
+
+    /**
+     * 最近一段时间执行线程的忙碌占比
+     */
+    public static final LoadMetric BUSY_RATIO = new LoadMetric() {
+        @Override
+        public long load(EventExecutor executor) {
+            if (executor instanceof SingleThreadEventExecutor) {
+                return ((SingleThreadEventExecutor) executor).busyRatio();
+            }
+            return -1;
+        }
+    };
+
+    // 选任务队列最短的执行器
+    public static final EventExecutorChooserFactory LEAST_PENDING_TASKS =
+            new LoadAwareEventExecutorChooserFactory(PENDING_TASKS, false);
+
+    // 随机选两个执行器，取最近一段时间忙碌占比低的那个
+    public static final EventExecutorChooserFactory LEAST_BUSY =
+            new LoadAwareEventExecutorChooserFactory(BUSY_RATIO, true);
+
+    private final LoadMetric metric;
+    private final boolean twoChoices;
+
+    /**
+     * 构造方法
+     *
+     * @param metric     负载指标
+     * @param twoChoices 为true时随机选两个执行器比较负载，为false时遍历所有执行器选负载最小的
+     */
+    public LoadAwareEventExecutorChooserFactory(LoadMetric metric, boolean twoChoices) {
+        this.metric = ObjectUtil.checkNotNull(metric, "metric");
+        this.twoChoices = twoChoices;
+    }
+
+    @Override
+    public EventExecutorChooser newChooser(EventExecutor[] executors) {
+        if (executors.length == 1) {
+            // 只有一个执行器，没什么可选的
+            return new SingleEventExecutorChooser(executors[0]);
+        }
+        if (twoChoices) {
+            return new PowerOfTwoChoicesEventExecutorChooser(executors, metric);
+        }
+        return new LeastLoadedEventExecutorChooser(executors, metric);
+    }
+
+    private static final class SingleEventExecutorChooser implements EventExecutorChooser {
+
+        private final EventExecutor executor;
+
+        SingleEventExecutorChooser(EventExecutor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public EventExecutor next() {
+            return executor;
+        }
+    }
+
+    /**
+     * 遍历所有执行器，选负载最小的。每次从不同的位置开始遍历，负载相同的时候按轮询的方式分配，不会总是选中第一个
+     */
+    private static final class LeastLoadedEventExecutorChooser implements EventExecutorChooser {
+
+        private final AtomicInteger idx = new AtomicInteger();
+        private final EventExecutor[] executors;
+        private final LoadMetric metric;
+
+        LeastLoadedEventExecutorChooser(EventExecutor[] executors, LoadMetric metric) {
+            this.executors = executors;
+            this.metric = metric;
+        }
+
+        @Override
+        public EventExecutor next() {
+            final EventExecutor[] executors = this.executors;
+            final int length = executors.length;
+            final int start = Math.abs(idx.getAndIncrement() % length);
+            EventExecutor best = executors[start];
+            long bestLoad = metric.load(best);
+            if (bestLoad < 0) {
+                // 不支持统计负载，退化成轮询
+                return best;
+            }
+            for (int i = 1; i < length && bestLoad > 0; i++) {
+                EventExecutor executor = executors[(start + i) % length];
+                long load = metric.load(executor);
+                if (load >= 0 && load < bestLoad) {
+                    best = executor;
+                    bestLoad = load;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * 随机选两个不同的执行器，取负载小的那个
+     */
+    private static final class PowerOfTwoChoicesEventExecutorChooser implements EventExecutorChooser {
+
+        private final EventExecutor[] executors;
+        private final LoadMetric metric;
+
+        PowerOfTwoChoicesEventExecutorChooser(EventExecutor[] executors, LoadMetric metric) {
+            this.executors = executors;
+            this.metric = metric;
+        }
+
+        @Override
+        public EventExecutor next() {
+            final EventExecutor[] executors = this.executors;
+            final int length = executors.length;
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(length);
+            // 在剩下的length-1个执行器中再随机选一个，保证两次选中的不是同一个
+            int second = random.nextInt(length - 1);
+            if (second >= first) {
+                second++;
+            }
+            EventExecutor a = executors[first];
+            EventExecutor b = executors[second];
+            long loadA = metric.load(a);
+            long loadB = metric.load(b);
+            if (loadA < 0 || loadB < 0) {
+                return a;
+            }
+            return loadB < loadA ? b : a;
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package com.yy.netty.util.concurrent;
 
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
@@ -12,6 +16,9 @@ public abstract class MultithreadEventExecutorGroup extends AbstractEventExecuto
     // 内部管理着多个具体的执行器实现对象
     private final EventExecutor[] childrens;
 
+    // 只读的执行器集合，用于对外遍历
+    private final Set<EventExecutor> readonlyChildren;
+
     private final EventExecutorChooserFactory.EventExecutorChooser chooser;
 
 
@@ -26,6 +33,18 @@ public abstract class MultithreadEventExecutorGroup extends AbstractEventExecuto
         this(nThreads, threadFactory == null ? null : new ThreadPerTaskExecutor(threadFactory), args);
     }
 
+    /**
+     * 构造方法,根据入参构造出多线程事件执行对象组（多个执行器）和内部的其他辅助工具对象
+     *
+     * @param nThreads          线程数，即执行器的个数，每个执行器都是一个单线程的试执行器
+     * @param threadFactory     线程工厂
+     * @param chooserFactory    执行器选择器工厂
+     * @param args              SelectorProvider,selectStrategyFactory,RejectedExecutionHandler
+     */
+    protected MultithreadEventExecutorGroup(int nThreads, ThreadFactory threadFactory, EventExecutorChooserFactory chooserFactory, Object... args) {
+        this(nThreads, threadFactory == null ? null : new ThreadPerTaskExecutor(threadFactory), chooserFactory, args);
+    }
+
     /**
      * 构造方法,根据入参构造出多线程事件执行对象组（多个执行器）和内部的其他辅助工具对象
      *
@@ -90,6 +109,10 @@ public abstract class MultithreadEventExecutorGroup extends AbstractEventExecuto
         }
 
         this.chooser = chooserFactory.newChooser(childrens);
+
+        Set<EventExecutor> childrenSet = new LinkedHashSet<EventExecutor>(childrens.length);
+        Collections.addAll(childrenSet, childrens);
+        readonlyChildren = Collections.unmodifiableSet(childrenSet);
     }
 
     /**
@@ -111,6 +134,11 @@ public abstract class MultithreadEventExecutorGroup extends AbstractEventExecuto
      */
     protected abstract EventExecutor newChild(Executor executor, Object[] args) throws Exception;
 
+    @Override
+    public Iterator<EventExecutor> iterator() {
+        return readonlyChildren.iterator();
+    }
+
     public final int executorCount() {
         return childrens.length;
     }
@@ -0,0 +1,7 @@
+package com.yy.netty.util.concurrent;
+
+/**
+ * @Description:定时任务的执行结果，既是netty的Future（可以添加监听器），又是jdk的ScheduledFuture（可以获取剩余的延迟时间）
+ */
+public interface ScheduledFuture<V> extends Future<V>, java.util.concurrent.ScheduledFuture<V> {
+}
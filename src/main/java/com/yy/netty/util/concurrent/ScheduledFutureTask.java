@@ -0,0 +1,264 @@
+package com.yy.netty.util.concurrent;
+
+import com.yy.netty.util.internal.DefaultPriorityQueue;
+import com.yy.netty.util.internal.PriorityQueueNode;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description:定时任务，本身就是一个promise，任务执行完毕后把结果设置进去；按截止时间排序放在执行器的定时任务队列中
+ */
+final class ScheduledFutureTask<V> extends DefaultPromise<V> implements ScheduledFuture<V>, PriorityQueueNode, Runnable {
+
+    // 定时任务的序号，截止时间相同的任务按提交的先后顺序执行
+    private static final AtomicLong nextTaskId = new AtomicLong();
+
+    // 所有的时间都是相对于这个起始时间的，避免System.nanoTime()的值太大导致计算溢出
+    private static final long START_TIME = System.nanoTime();
+
+    /**
+     * 当前时间，相对于START_TIME
+     *
+     * @return
+     */
+    static long nanoTime() {
+        return System.nanoTime() - START_TIME;
+    }
+
+    /**
+     * 延迟delay纳秒后的截止时间
+     *
+     * @param delay
+     * @return
+     */
+    static long deadlineNanos(long delay) {
+        long deadlineNanos = nanoTime() + delay;
+        // 溢出了，说明延迟时间非常大，那就当作永远不会执行
+        return deadlineNanos < 0 ? Long.MAX_VALUE : deadlineNanos;
+    }
+
+    private final long id = nextTaskId.getAndIncrement();
+
+    // 任务的截止时间
+    private long deadlineNanos;
+
+    // 0表示只执行一次；大于0表示以固定的频率执行（scheduleAtFixedRate）；小于0表示以固定的延迟执行（scheduleWithFixedDelay）
+    private final long periodNanos;
+
+    // 真正要执行的任务
+    private final Callable<V> task;
+
+    // 在定时任务队列中的下标
+    private int queueIndex = INDEX_NOT_IN_QUEUE;
+
+    ScheduledFutureTask(AbstractScheduledEventExecutor executor, Runnable runnable, V result, long nanoTime) {
+        this(executor, toCallable(runnable, result), nanoTime);
+    }
+
+    ScheduledFutureTask(AbstractScheduledEventExecutor executor, Callable<V> callable, long nanoTime, long period) {
+        super(executor);
+        if (period == 0) {
+            throw new IllegalArgumentException("period: 0 (expected: != 0)");
+        }
+        this.task = callable;
+        this.deadlineNanos = nanoTime;
+        this.periodNanos = period;
+    }
+
+    ScheduledFutureTask(AbstractScheduledEventExecutor executor, Callable<V> callable, long nanoTime) {
+        super(executor);
+        this.task = callable;
+        this.deadlineNanos = nanoTime;
+        this.periodNanos = 0;
+    }
+
+    private static <V> Callable<V> toCallable(final Runnable runnable, final V result) {
+        if (runnable == null) {
+            throw new NullPointerException("task");
+        }
+        return new Callable<V>() {
+            @Override
+            public V call() {
+                runnable.run();
+                return result;
+            }
+
+            @Override
+            public String toString() {
+                return "Callable(task: " + runnable + ", result: " + result + ')';
+            }
+        };
+    }
+
+    public long deadlineNanos() {
+        return deadlineNanos;
+    }
+
+    /**
+     * 距离截止时间还有多少纳秒
+     *
+     * @return
+     */
+    public long delayNanos() {
+        return Math.max(0, deadlineNanos() - nanoTime());
+    }
+
+    /**
+     * 以currentTimeNanos（System.nanoTime()的值）为当前时间，距离截止时间还有多少纳秒
+     *
+     * @param currentTimeNanos
+     * @return
+     */
+    public long delayNanos(long currentTimeNanos) {
+        return Math.max(0, deadlineNanos() - (currentTimeNanos - START_TIME));
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(delayNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed o) {
+        if (this == o) {
+            return 0;
+        }
+
+        ScheduledFutureTask<?> that = (ScheduledFutureTask<?>) o;
+        long d = deadlineNanos() - that.deadlineNanos();
+        if (d < 0) {
+            return -1;
+        } else if (d > 0) {
+            return 1;
+        } else if (id < that.id) {
+            return -1;
+        } else if (id == that.id) {
+            throw new Error();
+        } else {
+            return 1;
+        }
+    }
+
+    /**
+     * 到期之后在执行器线程中被调用
+     */
+    @Override
+    public void run() {
+        assert executor().inEventLoop(Thread.currentThread());
+        try {
+            if (periodNanos == 0) {
+                // 只执行一次的任务，执行之前先设置为不可取消，如果已经被取消了就不执行了
+                if (setUncancellableInternal()) {
+                    V result = task.call();
+                    setSuccessInternal(result);
+                }
+            } else {
+                // 周期任务，没有被取消的话，执行完之后计算下一次的截止时间，再放回定时任务队列
+                if (!isCancelled()) {
+                    task.call();
+                    if (periodNanos > 0) {
+                        deadlineNanos += periodNanos;
+                    } else {
+                        deadlineNanos = nanoTime() - periodNanos;
+                    }
+                    if (!isCancelled()) {
+                        ((AbstractScheduledEventExecutor) executor()).scheduledTaskQueue().add(this);
+                    }
+                }
+            }
+        } catch (Throwable cause) {
+            // 周期任务执行出现异常的话，以后也不会再执行了
+            setFailureInternal(cause);
+        }
+    }
+
+    /**
+     * 取消任务，同时把它从定时任务队列中删除
+     *
+     * @param mayInterruptIfRunning
+     * @return
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean canceled = super.cancel(mayInterruptIfRunning);
+        if (canceled) {
+            ((AbstractScheduledEventExecutor) executor()).removeScheduled(this);
+        }
+        return canceled;
+    }
+
+    /**
+     * 取消任务，但不从定时任务队列中删除，用于执行器清空整个定时任务队列时
+     *
+     * @return
+     */
+    boolean cancelWithoutRemove(boolean mayInterruptIfRunning) {
+        return super.cancel(mayInterruptIfRunning);
+    }
+
+    // 定时任务的结果只能由任务自己设置，不允许外部修改
+
+    @Override
+    public Promise<V> setSuccess(V result) {
+        throw new IllegalStateException();
+    }
+
+    @Override
+    public boolean trySuccess(V result) {
+        return false;
+    }
+
+    @Override
+    public Promise<V> setFailure(Throwable cause) {
+        throw new IllegalStateException();
+    }
+
+    @Override
+    public boolean tryFailure(Throwable cause) {
+        return false;
+    }
+
+    @Override
+    public boolean setUncancellable() {
+        throw new IllegalStateException();
+    }
+
+    private boolean setUncancellableInternal() {
+        return super.setUncancellable();
+    }
+
+    private void setSuccessInternal(V result) {
+        super.setSuccess(result);
+    }
+
+    private void setFailureInternal(Throwable cause) {
+        super.setFailure(cause);
+    }
+
+    @Override
+    public int priorityQueueIndex(DefaultPriorityQueue<?> queue) {
+        return queueIndex;
+    }
+
+    @Override
+    public void priorityQueueIndex(DefaultPriorityQueue<?> queue, int i) {
+        queueIndex = i;
+    }
+
+    @Override
+    protected StringBuilder toStringBuilder() {
+        StringBuilder buf = super.toStringBuilder();
+        buf.setCharAt(buf.length() - 1, ',');
+
+        return buf.append(" id: ")
+                .append(id)
+                .append(", deadline: ")
+                .append(deadlineNanos)
+                .append(", period: ")
+                .append(periodNanos)
+                .append(')');
+    }
+}
@@ -1,19 +1,21 @@
 package com.yy.netty.util.concurrent;
 
 import com.yy.netty.util.internal.ObjectUtil;
+import com.yy.netty.util.internal.PlatformDependent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.Queue;
 import java.util.concurrent.Executor;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * @Description:单线程执行器，实际上这个类就是一个单线程的线程池，netty中所有任务都是被该执行器执行的，既然是执行器(虽然该执行器中只有一个无限循环的线程工作)，但执行器应该具备的属性也不可少，比如任务队列，拒绝策略等等
  */
-public abstract class SingleThreadEventExecutor implements EventExecutor {
+public abstract class SingleThreadEventExecutor extends AbstractScheduledEventExecutor {
 
     private static final Logger logger = LoggerFactory.getLogger(SingleThreadEventExecutor.class);
 
@@ -36,6 +38,17 @@ public abstract class SingleThreadEventExecutor implements EventExecutor {
     // 任务队列
     private final Queue<Runnable> taskQueue;
 
+    // 没有定时任务时，执行线程最多阻塞这么久
+    private static final long SCHEDULE_PURGE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    // 用来唤醒执行线程的空任务
+    private static final Runnable WAKEUP_TASK = new Runnable() {
+        @Override
+        public void run() {
+            // Do nothing.
+        }
+    };
+
     // 拒绝策略
     private final RejectedExecutionHandler rejectedExecutionHandler;
 
@@ -45,34 +58,51 @@ public abstract class SingleThreadEventExecutor implements EventExecutor {
     //创建线程的执行器,该单线程执行器中的线程就是由这个执行器创建而来
     private Executor executor;
 
+    // busyRatio的定点数表示，低BUSY_RATIO_SHIFT位是小数部分
+    private static final int BUSY_RATIO_SHIFT = 8;
+
+    // 最近一段时间执行线程忙碌时间的占比（千分比），是对每一轮循环的忙碌占比做的指数加权移动平均，
+    // 用定点数保存，否则每次右移都向下取整，样本不变时平均值会停在比样本小最多7‰的地方，永远追不上去。
+    // 只有执行线程会写，选择器读它来判断该执行器的负载
+    private volatile int busyRatioFixed;
+
     // 线程是否被中断的信号，在线程执行逻辑中会有地方使用该变量进行判断，以达到中断线程的效果
     private volatile boolean interrupted;
 
     // 该执行器所归属的执行器组
     private EventExecutorGroup parent;
 
-    private boolean addTaskWakesUp;
+    // 往任务队列中添加任务是否就能唤醒执行线程，为false时（比如NioEventLoop阻塞在select上），execute之后需要主动调用wakeup
+    private final boolean addTaskWakesUp;
 
     /**
      * 构造方法
      *
      * @param parent          该执行器所归属的执行器组
      * @param executor        线程创建执行器，该执行器的工作线程由该执行器创建
-     * @param addTaskWakesUp
+     * @param addTaskWakesUp  添加任务是否就能唤醒执行线程
      * @param taskQueue       任务队列
      * @param rejectedHandler 拒绝策略
      */
     protected SingleThreadEventExecutor(EventExecutorGroup parent, Executor executor, boolean addTaskWakesUp, Queue<Runnable> taskQueue, RejectedExecutionHandler rejectedHandler) {
         this.parent = parent;
-        this.executor = executor;
+        // 包装一下线程创建执行器，让执行器的线程在运行期间和当前执行器绑定
+        this.executor = ThreadExecutorMap.apply(executor, this);
         this.addTaskWakesUp = addTaskWakesUp;
         this.taskQueue = ObjectUtil.checkNotNull(taskQueue, "taskQueue");
         this.rejectedExecutionHandler = ObjectUtil.checkNotNull(rejectedHandler, "rejectedHandler");
     }
 
 
+    /**
+     * 创建任务队列，默认是无锁的多生产者单消费者队列
+     *
+     * @param maxPendingTasks
+     * @return
+     */
     protected Queue<Runnable> newTaskQueue(int maxPendingTasks) {
-        return new LinkedBlockingQueue<Runnable>(maxPendingTasks);
+        return maxPendingTasks == Integer.MAX_VALUE ? PlatformDependent.<Runnable>newMpscQueue()
+                : PlatformDependent.<Runnable>newMpscQueue(maxPendingTasks);
     }
 
 
@@ -95,10 +125,39 @@ public abstract class SingleThreadEventExecutor implements EventExecutor {
         if (task == null) {
             throw new NullPointerException("task is null");
         }
+        boolean inEventLoop = inEventLoop(Thread.currentThread());
         //把任务提交到任务队列中
         addTask(task);
-        //启动单线程执行器中的线程
-        startThread();
+        if (!inEventLoop) {
+            //启动单线程执行器中的线程
+            startThread();
+        }
+
+        // 添加任务本身不能唤醒执行线程（比如NioEventLoop阻塞在select上），就需要主动唤醒
+        if (!addTaskWakesUp && wakesUpForTask(task)) {
+            wakeup(inEventLoop);
+        }
+    }
+
+    /**
+     * 提交该任务后是否需要唤醒执行线程
+     *
+     * @param task
+     * @return
+     */
+    protected boolean wakesUpForTask(Runnable task) {
+        return true;
+    }
+
+    /**
+     * 唤醒执行线程，默认往任务队列里放一个空任务，子类根据阻塞的方式重写
+     *
+     * @param inEventLoop 是否是在执行线程中提交的任务
+     */
+    protected void wakeup(boolean inEventLoop) {
+        if (!inEventLoop) {
+            taskQueue.offer(WAKEUP_TASK);
+        }
     }
 
     private void startThread() {
@@ -170,19 +229,127 @@ public abstract class SingleThreadEventExecutor implements EventExecutor {
      * @Description:判断任务队列中是否有任务
      */
     protected boolean hasTasks() {
-        if (taskQueue.isEmpty()) {
-            logger.debug("我没任务了！");
-            return false;
+        return !taskQueue.isEmpty();
+    }
+
+    /**
+     * 返回任务队列中等待执行的任务数，MPSC队列的size是根据生产者和消费者的下标算出来的，不需要遍历，开销很小
+     *
+     * @return
+     */
+    public int pendingTasks() {
+        return taskQueue.size();
+    }
+
+    /**
+     * 返回最近一段时间执行线程忙碌时间的占比，取值范围是0到1000（千分比）
+     *
+     * @return
+     */
+    public int busyRatio() {
+        // 四舍五入到整数千分比
+        return (busyRatioFixed + (1 << (BUSY_RATIO_SHIFT - 1))) >> BUSY_RATIO_SHIFT;
+    }
+
+    /**
+     * 由子类在每一轮循环结束时调用，记录这一轮循环中执行线程处理IO事件和任务的时间以及这一轮的总时间，
+     * 用指数加权移动平均把这一轮的忙碌占比合并到busyRatio中，每次新样本的权重是1/8，所以它反映的是最近几十轮的负载
+     *
+     * @param busyNanos  这一轮处理IO事件和任务花费的时间
+     * @param totalNanos 这一轮的总时间，包括阻塞在select上的时间
+     */
+    protected final void recordBusyTime(long busyNanos, long totalNanos) {
+        if (totalNanos <= 0) {
+            return;
         }
-        logger.info("有任务了！");
-        return true;
+        int sample = (int) (Math.min(busyNanos, totalNanos) * 1000 / totalNanos) << BUSY_RATIO_SHIFT;
+        int old = busyRatioFixed;
+        busyRatioFixed = old + ((sample - old) >> 3);
     }
 
     /**
      * 取出当前队列中的所有任务并执行
      */
     protected void runAllTasks() {
-        runAllTasksFrom(taskQueue);
+        boolean fetchedAll;
+        do {
+            // 先把到期的定时任务转移到任务队列中，任务队列满了转移不完的话，执行完一批再接着转移
+            fetchedAll = fetchFromScheduledTaskQueue();
+            runAllTasksFrom(taskQueue);
+        } while (!fetchedAll);
+    }
+
+    /**
+     * 把所有到期的定时任务转移到任务队列中
+     *
+     * @return 任务队列放不下时返回false，没转移完的任务放回定时任务队列
+     */
+    private boolean fetchFromScheduledTaskQueue() {
+        long nanoTime = AbstractScheduledEventExecutor.nanoTime();
+        Runnable scheduledTask = pollScheduledTask(nanoTime);
+        while (scheduledTask != null) {
+            if (!taskQueue.offer(scheduledTask)) {
+                // 任务队列满了，放回定时任务队列，下次再取
+                scheduledTaskQueue().add((ScheduledFutureTask<?>) scheduledTask);
+                return false;
+            }
+            scheduledTask = pollScheduledTask(nanoTime);
+        }
+        return true;
+    }
+
+    /**
+     * 距离下一个定时任务到期还有多少纳秒，没有定时任务时返回1秒，用来计算阻塞等待的时间
+     *
+     * @param currentTimeNanos System.nanoTime()的值
+     * @return
+     */
+    protected long delayNanos(long currentTimeNanos) {
+        ScheduledFutureTask<?> scheduledTask = peekScheduledTask();
+        if (scheduledTask == null) {
+            return SCHEDULE_PURGE_INTERVAL;
+        }
+
+        return scheduledTask.delayNanos(currentTimeNanos);
+    }
+
+    /**
+     * 在给定的时间内执行任务队列中的任务，超时后即使还有任务也会返回，剩下的任务留到下一轮循环执行，
+     * 这样大量提交的任务就不会长时间占用执行线程，耽误IO事件的处理
+     * System.nanoTime()本身也有开销，所以每执行64个任务才检查一次是否超时。
+     * 截止时间用ScheduledFutureTask.nanoTime()计算，它相对于类加载时的时间，不会是负数，
+     * 所以deadline为0时第一次检查一定超时，保证没有时间预算时最多执行64个任务；System.nanoTime()的起点是任意的，可能为负，不能这样用
+     *
+     * @param timeoutNanos 执行任务的时间上限，小于等于0时最多执行64个任务
+     * @return 是否执行了至少一个任务
+     */
+    protected boolean runAllTasks(long timeoutNanos) {
+        fetchFromScheduledTaskQueue();
+        Runnable task = pollTaskFrom(taskQueue);
+        if (task == null) {
+            return false;
+        }
+
+        final long deadline = timeoutNanos > 0 ? ScheduledFutureTask.nanoTime() + timeoutNanos : 0;
+        long runTasks = 0;
+        for (; ; ) {
+            safeExecute(task);
+
+            runTasks++;
+
+            // 每执行64个任务检查一次是否超时
+            if ((runTasks & 0x3F) == 0) {
+                if (ScheduledFutureTask.nanoTime() >= deadline) {
+                    break;
+                }
+            }
+
+            task = pollTaskFrom(taskQueue);
+            if (task == null) {
+                break;
+            }
+        }
+        return true;
     }
 
     protected void runAllTasksFrom(Queue<Runnable> taskQueue) {
@@ -236,6 +403,11 @@ public abstract class SingleThreadEventExecutor implements EventExecutor {
 
     }
 
+    @Override
+    public Iterator<EventExecutor> iterator() {
+        return Collections.<EventExecutor>singleton(this).iterator();
+    }
+
     @Override
     public boolean isTerminated() {
         return false;
@@ -0,0 +1,64 @@
+package com.yy.netty.util.concurrent;
+
+import com.yy.netty.util.internal.ObjectUtil;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 记录当前线程正在为哪个EventExecutor工作
+ * <p>
+ * 单线程执行器启动线程时，会通过这里把执行器和线程绑定起来，这样在任意代码中都能通过currentExecutor()知道
+ * 自己是否运行在某个EventLoop线程中，比如内存池就是根据这一点来决定是否给当前线程开启线程缓存的
+ * </p>
+ */
+public final class ThreadExecutorMap {
+
+    private static final FastThreadLocal<EventExecutor> mappings = new FastThreadLocal<EventExecutor>();
+
+    private ThreadExecutorMap() {
+    }
+
+    /**
+     * 返回当前线程绑定的EventExecutor，如果当前线程不是执行器的线程，返回null
+     */
+    public static EventExecutor currentExecutor() {
+        return mappings.get();
+    }
+
+    private static void setCurrentEventExecutor(EventExecutor executor) {
+        mappings.set(executor);
+    }
+
+    /**
+     * 包装一个Executor，通过它执行的任务在运行期间都会和eventExecutor绑定
+     */
+    public static Executor apply(final Executor executor, final EventExecutor eventExecutor) {
+        ObjectUtil.checkNotNull(executor, "executor");
+        ObjectUtil.checkNotNull(eventExecutor, "eventExecutor");
+        return new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                executor.execute(apply(command, eventExecutor));
+            }
+        };
+    }
+
+    /**
+     * 包装一个Runnable，在它运行期间当前线程和eventExecutor绑定
+     */
+    public static Runnable apply(final Runnable command, final EventExecutor eventExecutor) {
+        ObjectUtil.checkNotNull(command, "command");
+        ObjectUtil.checkNotNull(eventExecutor, "eventExecutor");
+        return new Runnable() {
+            @Override
+            public void run() {
+                setCurrentEventExecutor(eventExecutor);
+                try {
+                    command.run();
+                } finally {
+                    setCurrentEventExecutor(null);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,403 @@
+package com.yy.netty.util.internal;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 填充字段，把生产者下标和对象头以及其他字段隔开，避免伪共享
+ */
+abstract class BaseMpscLinkedArrayQueuePad1<E> extends AbstractQueue<E> {
+    long p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+/**
+ * 生产者下标，多个生产者通过cas来推进
+ */
+abstract class BaseMpscLinkedArrayQueueProducerFields<E> extends BaseMpscLinkedArrayQueuePad1<E> {
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<BaseMpscLinkedArrayQueueProducerFields> P_INDEX_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(BaseMpscLinkedArrayQueueProducerFields.class, "producerIndex");
+
+    private volatile long producerIndex;
+
+    final long lvProducerIndex() {
+        return producerIndex;
+    }
+
+    final void soProducerIndex(long newValue) {
+        P_INDEX_UPDATER.lazySet(this, newValue);
+    }
+
+    final boolean casProducerIndex(long expect, long newValue) {
+        return P_INDEX_UPDATER.compareAndSet(this, expect, newValue);
+    }
+}
+
+abstract class BaseMpscLinkedArrayQueuePad2<E> extends BaseMpscLinkedArrayQueueProducerFields<E> {
+    long p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+/**
+ * 消费者相关的字段，只有消费者线程会修改
+ */
+abstract class BaseMpscLinkedArrayQueueConsumerFields<E> extends BaseMpscLinkedArrayQueuePad2<E> {
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<BaseMpscLinkedArrayQueueConsumerFields> C_INDEX_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(BaseMpscLinkedArrayQueueConsumerFields.class, "consumerIndex");
+
+    private volatile long consumerIndex;
+
+    protected long consumerMask;
+
+    protected AtomicReferenceArray<Object> consumerBuffer;
+
+    final long lvConsumerIndex() {
+        return consumerIndex;
+    }
+
+    final void soConsumerIndex(long newValue) {
+        C_INDEX_UPDATER.lazySet(this, newValue);
+    }
+}
+
+abstract class BaseMpscLinkedArrayQueuePad3<E> extends BaseMpscLinkedArrayQueueConsumerFields<E> {
+    long p0, p1, p2, p3, p4, p5, p6, p7;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+/**
+ * 生产者不常修改的字段：当前写入的数组块，以及生产者下标的上限
+ */
+abstract class BaseMpscLinkedArrayQueueColdProducerFields<E> extends BaseMpscLinkedArrayQueuePad3<E> {
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<BaseMpscLinkedArrayQueueColdProducerFields> P_LIMIT_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(BaseMpscLinkedArrayQueueColdProducerFields.class, "producerLimit");
+
+    private volatile long producerLimit;
+
+    protected long producerMask;
+
+    protected AtomicReferenceArray<Object> producerBuffer;
+
+    final long lvProducerLimit() {
+        return producerLimit;
+    }
+
+    final boolean casProducerLimit(long expect, long newValue) {
+        return P_LIMIT_UPDATER.compareAndSet(this, expect, newValue);
+    }
+
+    final void soProducerLimit(long newValue) {
+        P_LIMIT_UPDATER.lazySet(this, newValue);
+    }
+}
+
+/**
+ * 多生产者单消费者（MPSC）无锁队列，底层是用链表串起来的一个个数组块（参考JCTools中的实现）
+ * <p>
+ * 和MpscArrayQueue不同，当前数组块写满后不会直接返回失败，而是由抢到扩容权的生产者创建一个新的数组块，
+ * 把新块的引用放到旧块的最后一个槽位，并在旧块中原本要写入的槽位放一个JUMP标记，消费者读到JUMP后就转到下一个块继续读。
+ * 这样既不需要像LinkedBlockingQueue那样加锁，也不需要每个任务都创建一个链表节点。
+ * </p>
+ * <p>
+ * 生产者下标和消费者下标每次加2，最低位用来表示"正在扩容"，扩容期间其他生产者自旋等待；
+ * 生产者下标、消费者下标、生产者的冷字段之间都用long字段做了填充，避免多个线程频繁修改的字段落在同一个缓存行上。
+ * </p>
+ * <p>
+ * 注意：offer可以在任意线程调用，poll/peek/clear只能在唯一的消费者线程中调用，不支持迭代
+ * </p>
+ */
+public abstract class BaseMpscLinkedArrayQueue<E> extends BaseMpscLinkedArrayQueueColdProducerFields<E> {
+
+    long p0, p1, p2, p3, p4, p5, p6, p7;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+
+    // 旧块中该槽位的元素已经写到了下一个块中
+    private static final Object JUMP = new Object();
+
+    // 旧块已经被消费者读完了，放在旧块的最后一个槽位，帮助GC
+    private static final Object BUFFER_CONSUMED = new Object();
+
+    // offerSlowPath的返回值
+    private static final int CONTINUE_TO_P_INDEX_CAS = 0;
+    private static final int RETRY = 1;
+    private static final int QUEUE_FULL = 2;
+    private static final int QUEUE_RESIZE = 3;
+
+    /**
+     * @param initialCapacity 每个数组块的大小，会向上取整到2的幂，最小为2
+     */
+    public BaseMpscLinkedArrayQueue(final int initialCapacity) {
+        ObjectUtil.checkPositive(initialCapacity, "initialCapacity");
+        if (initialCapacity < 2) {
+            throw new IllegalArgumentException("initialCapacity: " + initialCapacity + " (expected: >= 2)");
+        }
+        int p2capacity = MathUtil.findNextPositivePowerOfTwo(initialCapacity);
+        // 下标每次加2，所以掩码要左移一位
+        long mask = (p2capacity - 1) << 1;
+        // 多出来的一个槽位用来存放下一个数组块的引用
+        AtomicReferenceArray<Object> buffer = new AtomicReferenceArray<Object>(p2capacity + 1);
+        producerBuffer = buffer;
+        producerMask = mask;
+        consumerBuffer = buffer;
+        consumerMask = mask;
+        soProducerLimit(mask);
+    }
+
+    @Override
+    public final Iterator<E> iterator() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public final int size() {
+        // 两次读取之间consumerIndex可能会变，读到一致的快照为止
+        long after = lvConsumerIndex();
+        long size;
+        for (;;) {
+            final long before = after;
+            final long currentProducerIndex = lvProducerIndex();
+            after = lvConsumerIndex();
+            if (before == after) {
+                size = (currentProducerIndex - after) >> 1;
+                break;
+            }
+        }
+        if (size > Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        return (int) size;
+    }
+
+    @Override
+    public final boolean isEmpty() {
+        return lvConsumerIndex() == lvProducerIndex();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getName();
+    }
+
+    @Override
+    public boolean offer(final E e) {
+        if (e == null) {
+            throw new NullPointerException("e");
+        }
+
+        long mask;
+        AtomicReferenceArray<Object> buffer;
+        long pIndex;
+
+        for (;;) {
+            long producerLimit = lvProducerLimit();
+            pIndex = lvProducerIndex();
+            // 最低位是1，说明有生产者正在扩容，等它扩容结束
+            if ((pIndex & 1) == 1) {
+                continue;
+            }
+
+            mask = producerMask;
+            buffer = producerBuffer;
+
+            // 到达上限了，看下是消费者已经消费了一些(可以提高上限)，还是队列满了，还是需要扩容
+            if (producerLimit <= pIndex) {
+                int result = offerSlowPath(mask, pIndex, producerLimit);
+                switch (result) {
+                    case CONTINUE_TO_P_INDEX_CAS:
+                        break;
+                    case RETRY:
+                        continue;
+                    case QUEUE_FULL:
+                        return false;
+                    case QUEUE_RESIZE:
+                        resize(mask, buffer, pIndex, e);
+                        return true;
+                }
+            }
+
+            if (casProducerIndex(pIndex, pIndex + 2)) {
+                break;
+            }
+        }
+        // 抢到了槽位，放入元素
+        final int offset = modifiedCalcElementOffset(pIndex, mask);
+        buffer.lazySet(offset, e);
+        return true;
+    }
+
+    /**
+     * 只能在消费者线程调用
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public E poll() {
+        final AtomicReferenceArray<Object> buffer = consumerBuffer;
+        final long index = lvConsumerIndex();
+        final long mask = consumerMask;
+
+        final int offset = modifiedCalcElementOffset(index, mask);
+        Object e = buffer.get(offset);
+        if (e == null) {
+            if (index != lvProducerIndex()) {
+                // 生产者已经抢到了槽位，但元素还没放进来，自旋等待
+                do {
+                    e = buffer.get(offset);
+                } while (e == null);
+            } else {
+                return null;
+            }
+        }
+
+        if (e == JUMP) {
+            final AtomicReferenceArray<Object> nextBuffer = nextBuffer(buffer, mask);
+            return newBufferPoll(nextBuffer, index);
+        }
+
+        buffer.lazySet(offset, null);
+        soConsumerIndex(index + 2);
+        return (E) e;
+    }
+
+    /**
+     * 只能在消费者线程调用
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public E peek() {
+        final AtomicReferenceArray<Object> buffer = consumerBuffer;
+        final long index = lvConsumerIndex();
+        final long mask = consumerMask;
+
+        final int offset = modifiedCalcElementOffset(index, mask);
+        Object e = buffer.get(offset);
+        if (e == null && index != lvProducerIndex()) {
+            do {
+                e = buffer.get(offset);
+            } while (e == null);
+        }
+        if (e == JUMP) {
+            return newBufferPeek(nextBuffer(buffer, mask), index);
+        }
+        return (E) e;
+    }
+
+    @Override
+    public void clear() {
+        while (poll() != null) {
+            // 只能在消费者线程调用
+        }
+    }
+
+    /**
+     * 队列的最大容量
+     */
+    public abstract int capacity();
+
+    /**
+     * 队列中还可以放多少元素（以下标为单位，即元素个数的2倍）
+     */
+    protected abstract long availableInQueue(long pIndex, long cIndex);
+
+    private int offerSlowPath(long mask, long pIndex, long producerLimit) {
+        final long cIndex = lvConsumerIndex();
+        // 一个数组块能容纳的下标范围
+        long bufferCapacity = mask;
+
+        if (cIndex + bufferCapacity > pIndex) {
+            // 消费者已经往前走了，当前块还有空位，提高上限后继续cas生产者下标
+            if (!casProducerLimit(producerLimit, cIndex + bufferCapacity)) {
+                return RETRY;
+            } else {
+                return CONTINUE_TO_P_INDEX_CAS;
+            }
+        } else if (availableInQueue(pIndex, cIndex) <= 0) {
+            // 整个队列都满了
+            return QUEUE_FULL;
+        } else if (casProducerIndex(pIndex, pIndex + 1)) {
+            // 把最低位置为1，抢到了扩容权
+            return QUEUE_RESIZE;
+        } else {
+            return RETRY;
+        }
+    }
+
+    private void resize(long oldMask, AtomicReferenceArray<Object> oldBuffer, long pIndex, final E e) {
+        // 新的数组块和旧的一样大
+        int newBufferLength = oldBuffer.length();
+        final AtomicReferenceArray<Object> newBuffer = new AtomicReferenceArray<Object>(newBufferLength);
+
+        producerBuffer = newBuffer;
+        final long newMask = (newBufferLength - 2) << 1;
+        producerMask = newMask;
+
+        final int offsetInOld = modifiedCalcElementOffset(pIndex, oldMask);
+        final int offsetInNew = modifiedCalcElementOffset(pIndex, newMask);
+
+        // 元素先放到新块中
+        newBuffer.lazySet(offsetInNew, e);
+        // 旧块的最后一个槽位指向新块
+        oldBuffer.lazySet(nextArrayOffset(oldMask), newBuffer);
+
+        final long cIndex = lvConsumerIndex();
+        final long availableInQueue = availableInQueue(pIndex, cIndex);
+
+        soProducerLimit(pIndex + Math.min(newMask, availableInQueue));
+
+        // 扩容结束，其他生产者可以继续了
+        soProducerIndex(pIndex + 2);
+
+        // 最后才放JUMP，消费者看到JUMP时新块一定已经挂上了
+        oldBuffer.lazySet(offsetInOld, JUMP);
+    }
+
+    @SuppressWarnings("unchecked")
+    private AtomicReferenceArray<Object> nextBuffer(final AtomicReferenceArray<Object> buffer, final long mask) {
+        final int offset = nextArrayOffset(mask);
+        final AtomicReferenceArray<Object> nextBuffer = (AtomicReferenceArray<Object>) buffer.get(offset);
+        consumerBuffer = nextBuffer;
+        consumerMask = (nextBuffer.length() - 2) << 1;
+        buffer.lazySet(offset, BUFFER_CONSUMED);
+        return nextBuffer;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E newBufferPoll(AtomicReferenceArray<Object> nextBuffer, long index) {
+        final int offset = modifiedCalcElementOffset(index, consumerMask);
+        final Object n = nextBuffer.get(offset);
+        if (n == null) {
+            throw new IllegalStateException("new buffer must have at least one element");
+        }
+        nextBuffer.lazySet(offset, null);
+        soConsumerIndex(index + 2);
+        return (E) n;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E newBufferPeek(AtomicReferenceArray<Object> nextBuffer, long index) {
+        final int offset = modifiedCalcElementOffset(index, consumerMask);
+        final Object n = nextBuffer.get(offset);
+        if (n == null) {
+            throw new IllegalStateException("new buffer must have at least one element");
+        }
+        return (E) n;
+    }
+
+    private static int nextArrayOffset(long mask) {
+        return modifiedCalcElementOffset(mask + 2, Long.MAX_VALUE);
+    }
+
+    /**
+     * 下标每次加2，所以计算槽位时要右移一位
+     */
+    private static int modifiedCalcElementOffset(long index, long mask) {
+        return (int) (index & mask) >> 1;
+    }
+}
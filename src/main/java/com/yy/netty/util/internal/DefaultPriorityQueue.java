@@ -0,0 +1,241 @@
+package com.yy.netty.util.internal;
+
+import java.util.AbstractQueue;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 基于数组实现的小顶堆，和java.util.PriorityQueue的区别是元素自己记录了在堆中的下标，
+ * 所以contains和remove任意元素都是O(log n)的，取消定时任务时会用到
+ * <p>
+ * 注意：不是线程安全的，只能在一个线程中使用
+ * </p>
+ */
+public final class DefaultPriorityQueue<T extends PriorityQueueNode> extends AbstractQueue<T> {
+
+    private static final PriorityQueueNode[] EMPTY_ARRAY = new PriorityQueueNode[0];
+
+    private final Comparator<T> comparator;
+
+    private T[] queue;
+
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public DefaultPriorityQueue(Comparator<T> comparator, int initialSize) {
+        this.comparator = ObjectUtil.checkNotNull(comparator, "comparator");
+        queue = (T[]) (initialSize != 0 ? new PriorityQueueNode[initialSize] : EMPTY_ARRAY);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof PriorityQueueNode)) {
+            return false;
+        }
+        PriorityQueueNode node = (PriorityQueueNode) o;
+        return contains(node, node.priorityQueueIndex(this));
+    }
+
+    /**
+     * 清空队列，但不重置元素中记录的下标，调用方确认这些元素不会再被使用时才能调用
+     */
+    public void clearIgnoringIndexes() {
+        size = 0;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; ++i) {
+            T node = queue[i];
+            if (node != null) {
+                node.priorityQueueIndex(this, PriorityQueueNode.INDEX_NOT_IN_QUEUE);
+                queue[i] = null;
+            }
+        }
+        size = 0;
+    }
+
+    @Override
+    public boolean offer(T e) {
+        if (e.priorityQueueIndex(this) != PriorityQueueNode.INDEX_NOT_IN_QUEUE) {
+            throw new IllegalArgumentException("e.priorityQueueIndex(): " + e.priorityQueueIndex(this) +
+                    " (expected: " + PriorityQueueNode.INDEX_NOT_IN_QUEUE + ") + e: " + e);
+        }
+
+        // 数组满了就扩容，小的时候翻倍，大了之后每次增加50%
+        if (size >= queue.length) {
+            queue = Arrays.copyOf(queue, queue.length + ((queue.length < 64) ?
+                    (queue.length + 2) :
+                    (queue.length >>> 1)));
+        }
+
+        bubbleUp(size++, e);
+        return true;
+    }
+
+    @Override
+    public T poll() {
+        if (size == 0) {
+            return null;
+        }
+        T result = queue[0];
+        result.priorityQueueIndex(this, PriorityQueueNode.INDEX_NOT_IN_QUEUE);
+
+        T last = queue[--size];
+        queue[size] = null;
+        if (size != 0) {
+            // 把最后一个元素放到堆顶，然后向下调整
+            bubbleDown(0, last);
+        }
+
+        return result;
+    }
+
+    @Override
+    public T peek() {
+        return (size == 0) ? null : queue[0];
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean remove(Object o) {
+        final T node;
+        try {
+            node = (T) o;
+        } catch (ClassCastException e) {
+            return false;
+        }
+        return removeTyped(node);
+    }
+
+    /**
+     * 删除任意一个元素
+     *
+     * @param node
+     * @return 元素在队列中并且被删除了返回true
+     */
+    public boolean removeTyped(T node) {
+        int i = node.priorityQueueIndex(this);
+        if (!contains(node, i)) {
+            return false;
+        }
+
+        node.priorityQueueIndex(this, PriorityQueueNode.INDEX_NOT_IN_QUEUE);
+        if (--size == 0 || size == i) {
+            // 删除的是最后一个元素，直接置空就行了
+            queue[i] = null;
+            return true;
+        }
+
+        // 用最后一个元素填补被删除的位置，然后根据它和父节点的大小关系决定向下还是向上调整
+        T moved = queue[i] = queue[size];
+        queue[size] = null;
+
+        if (comparator.compare(node, moved) < 0) {
+            bubbleDown(i, moved);
+        } else {
+            bubbleUp(i, moved);
+        }
+        return true;
+    }
+
+    @Override
+    public Object[] toArray() {
+        return Arrays.copyOf(queue, size);
+    }
+
+    /**
+     * 按堆数组中的顺序遍历，不是按优先级的顺序
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new PriorityQueueIterator();
+    }
+
+    private final class PriorityQueueIterator implements Iterator<T> {
+        private int index;
+
+        @Override
+        public boolean hasNext() {
+            return index < size;
+        }
+
+        @Override
+        public T next() {
+            if (index >= size) {
+                throw new NoSuchElementException();
+            }
+
+            return queue[index++];
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+
+    private boolean contains(PriorityQueueNode node, int i) {
+        return i >= 0 && i < size && node.equals(queue[i]);
+    }
+
+    private void bubbleDown(int k, T node) {
+        final int half = size >>> 1;
+        while (k < half) {
+            // 找出较小的子节点
+            int iChild = (k << 1) + 1;
+            T child = queue[iChild];
+
+            int rightChild = iChild + 1;
+            if (rightChild < size && comparator.compare(child, queue[rightChild]) > 0) {
+                child = queue[iChild = rightChild];
+            }
+            // node比两个子节点都小，就放在这里
+            if (comparator.compare(node, child) <= 0) {
+                break;
+            }
+
+            // 子节点上移
+            queue[k] = child;
+            child.priorityQueueIndex(this, k);
+
+            k = iChild;
+        }
+
+        queue[k] = node;
+        node.priorityQueueIndex(this, k);
+    }
+
+    private void bubbleUp(int k, T node) {
+        while (k > 0) {
+            int iParent = (k - 1) >>> 1;
+            T parent = queue[iParent];
+
+            // node比父节点大，就放在这里
+            if (comparator.compare(node, parent) >= 0) {
+                break;
+            }
+
+            // 父节点下移
+            queue[k] = parent;
+            parent.priorityQueueIndex(this, k);
+
+            k = iParent;
+        }
+
+        queue[k] = node;
+        node.priorityQueueIndex(this, k);
+    }
+}
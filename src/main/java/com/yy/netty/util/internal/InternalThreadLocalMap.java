@@ -0,0 +1,187 @@
+package com.yy.netty.util.internal;
+
+import com.yy.netty.util.concurrent.FastThreadLocal;
+import com.yy.netty.util.concurrent.FastThreadLocalThread;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * FastThreadLocal真正存放数据的地方，每个线程一个
+ * <p>
+ * 每个FastThreadLocal创建时都会分配到一个全局唯一的下标，它的值就存放在这个map的数组中对应的位置上，
+ * 所以get和set只是一次数组访问，不像jdk的ThreadLocal那样要在ThreadLocalMap中做哈希查找、处理哈希冲突。
+ * FastThreadLocalThread线程直接用一个字段持有该map；普通线程没有这个字段，只能退化为用jdk的ThreadLocal保存该map，
+ * 功能上没有区别，只是多了一次ThreadLocal查找
+ * </p>
+ */
+public final class InternalThreadLocalMap {
+
+    // 普通线程用这个ThreadLocal保存InternalThreadLocalMap
+    private static final ThreadLocal<InternalThreadLocalMap> slowThreadLocalMap =
+            new ThreadLocal<InternalThreadLocalMap>();
+
+    // 下标生成器
+    private static final AtomicInteger nextIndex = new AtomicInteger();
+
+    private static final int INDEXED_VARIABLE_TABLE_INITIAL_SIZE = 32;
+
+    // 数组中还没有设置值的位置都填这个对象，因为null也是一个合法的值
+    public static final Object UNSET = new Object();
+
+    private Object[] indexedVariables;
+
+    /**
+     * 如果当前线程已经创建过map了就返回，否则返回null，不会创建新的map
+     *
+     * @return
+     */
+    public static InternalThreadLocalMap getIfSet() {
+        Thread thread = Thread.currentThread();
+        if (thread instanceof FastThreadLocalThread) {
+            return ((FastThreadLocalThread) thread).threadLocalMap();
+        }
+        return slowThreadLocalMap.get();
+    }
+
+    /**
+     * 返回当前线程的map，没有就创建一个
+     *
+     * @return
+     */
+    public static InternalThreadLocalMap get() {
+        Thread thread = Thread.currentThread();
+        if (thread instanceof FastThreadLocalThread) {
+            return fastGet((FastThreadLocalThread) thread);
+        } else {
+            return slowGet();
+        }
+    }
+
+    private static InternalThreadLocalMap fastGet(FastThreadLocalThread thread) {
+        InternalThreadLocalMap threadLocalMap = thread.threadLocalMap();
+        if (threadLocalMap == null) {
+            thread.setThreadLocalMap(threadLocalMap = new InternalThreadLocalMap());
+        }
+        return threadLocalMap;
+    }
+
+    private static InternalThreadLocalMap slowGet() {
+        InternalThreadLocalMap ret = slowThreadLocalMap.get();
+        if (ret == null) {
+            ret = new InternalThreadLocalMap();
+            slowThreadLocalMap.set(ret);
+        }
+        return ret;
+    }
+
+    /**
+     * 删除当前线程的map
+     */
+    public static void remove() {
+        Thread thread = Thread.currentThread();
+        if (thread instanceof FastThreadLocalThread) {
+            ((FastThreadLocalThread) thread).setThreadLocalMap(null);
+        } else {
+            slowThreadLocalMap.remove();
+        }
+    }
+
+    /**
+     * 分配一个新的下标，每个FastThreadLocal对象创建时调用一次
+     *
+     * @return
+     */
+    public static int nextVariableIndex() {
+        int index = nextIndex.getAndIncrement();
+        if (index < 0) {
+            nextIndex.decrementAndGet();
+            throw new IllegalStateException("too many thread-local indexed variables");
+        }
+        return index;
+    }
+
+    private InternalThreadLocalMap() {
+        indexedVariables = newIndexedVariableTable();
+    }
+
+    private static Object[] newIndexedVariableTable() {
+        Object[] array = new Object[INDEXED_VARIABLE_TABLE_INITIAL_SIZE];
+        Arrays.fill(array, UNSET);
+        return array;
+    }
+
+    /**
+     * 当前线程设置过值的FastThreadLocal的个数
+     *
+     * @return
+     */
+    public int size() {
+        int count = 0;
+        for (Object o : indexedVariables) {
+            if (o != UNSET) {
+                count++;
+            }
+        }
+
+        // 下标0的位置保存的是待删除的FastThreadLocal集合，不算在内
+        return count - 1;
+    }
+
+    public Object indexedVariable(int index) {
+        Object[] lookup = indexedVariables;
+        return index < lookup.length ? lookup[index] : UNSET;
+    }
+
+    /**
+     * 设置下标对应的值
+     *
+     * @param index
+     * @param value
+     * @return 如果是第一次设置就返回true
+     */
+    public boolean setIndexedVariable(int index, Object value) {
+        Object[] lookup = indexedVariables;
+        if (index < lookup.length) {
+            Object oldValue = lookup[index];
+            lookup[index] = value;
+            return oldValue == UNSET;
+        } else {
+            expandIndexedVariableTableAndSet(index, value);
+            return true;
+        }
+    }
+
+    /**
+     * 数组不够大了，扩容到大于index的最小的2的幂
+     *
+     * @param index
+     * @param value
+     */
+    private void expandIndexedVariableTableAndSet(int index, Object value) {
+        Object[] oldArray = indexedVariables;
+        final int oldCapacity = oldArray.length;
+        int newCapacity = MathUtil.findNextPositivePowerOfTwo(index + 1);
+
+        Object[] newArray = Arrays.copyOf(oldArray, newCapacity);
+        Arrays.fill(newArray, oldCapacity, newArray.length, UNSET);
+        newArray[index] = value;
+        indexedVariables = newArray;
+    }
+
+    public Object removeIndexedVariable(int index) {
+        Object[] lookup = indexedVariables;
+        if (index < lookup.length) {
+            Object v = lookup[index];
+            lookup[index] = UNSET;
+            return v;
+        } else {
+            return UNSET;
+        }
+    }
+
+    public boolean isIndexedVariableSet(int index) {
+        Object[] lookup = indexedVariables;
+        return index < lookup.length && lookup[index] != UNSET;
+    }
+}
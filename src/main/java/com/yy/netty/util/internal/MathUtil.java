@@ -0,0 +1,25 @@
+package com.yy.netty.util.internal;
+
+/**
+ * 数学计算相关的工具类
+ */
+public final class MathUtil {
+
+    private MathUtil() {
+    }
+
+    /**
+     * 找到大于等于value的最小的2的幂，value必须在[-2^30, 2^30]之间，小于等于0时返回1
+     */
+    public static int findNextPositivePowerOfTwo(final int value) {
+        assert value > Integer.MIN_VALUE && value < 0x40000000;
+        return 1 << (32 - Integer.numberOfLeadingZeros(value - 1));
+    }
+
+    /**
+     * 和findNextPositivePowerOfTwo一样，但是对越界的value做了保护：小于等于0时返回1，大于2^30时返回2^30
+     */
+    public static int safeFindNextPositivePowerOfTwo(final int value) {
+        return value <= 0 ? 1 : value >= 0x40000000 ? 0x40000000 : findNextPositivePowerOfTwo(value);
+    }
+}
@@ -0,0 +1,151 @@
+package com.yy.netty.util.internal;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界的、多生产者单消费者（MPSC）无锁队列，底层是一个环形数组
+ * <p>
+ * 多个生产者通过cas抢占producerIndex来获得一个槽位，然后把元素放进去；只有一个消费者，所以consumerIndex不需要cas，
+ * 取出元素后把槽位清空，再用lazySet推进consumerIndex就行了。
+ * 消费者看到producerIndex已经推进、但槽位中的元素还是null时，说明生产者抢到了槽位但还没来得及放元素，自旋等一下即可。
+ * </p>
+ * <p>
+ * 注意：offer可以在任意线程调用，poll/peek/clear只能在唯一的消费者线程中调用，不支持迭代
+ * </p>
+ */
+public class MpscArrayQueue<E> extends AbstractQueue<E> {
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<MpscArrayQueue> PRODUCER_INDEX_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(MpscArrayQueue.class, "producerIndex");
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<MpscArrayQueue> CONSUMER_INDEX_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(MpscArrayQueue.class, "consumerIndex");
+
+    private final AtomicReferenceArray<E> buffer;
+
+    private final int mask;
+
+    private final int capacity;
+
+    // 生产者下标，多个生产者通过cas来推进
+    private volatile long producerIndex;
+
+    // 消费者下标，只有消费者线程会修改
+    private volatile long consumerIndex;
+
+    public MpscArrayQueue(int capacity) {
+        ObjectUtil.checkPositive(capacity, "capacity");
+        if (capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity: " + capacity + " (expected: <= 2^30)");
+        }
+        // 容量向上取整到2的幂，这样计算槽位时可以用位运算代替取模
+        int actualCapacity = MathUtil.findNextPositivePowerOfTwo(capacity);
+        this.buffer = new AtomicReferenceArray<E>(actualCapacity);
+        this.mask = actualCapacity - 1;
+        this.capacity = actualCapacity;
+    }
+
+    private int offset(long index) {
+        return (int) index & mask;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException("e");
+        }
+        long pIndex;
+        for (;;) {
+            pIndex = producerIndex;
+            if (pIndex - consumerIndex >= capacity) {
+                // 队列满了
+                return false;
+            }
+            if (PRODUCER_INDEX_UPDATER.compareAndSet(this, pIndex, pIndex + 1)) {
+                break;
+            }
+        }
+        // 抢到了槽位，放入元素
+        buffer.lazySet(offset(pIndex), e);
+        return true;
+    }
+
+    @Override
+    public E poll() {
+        final long cIndex = consumerIndex;
+        final int offset = offset(cIndex);
+        E e = buffer.get(offset);
+        if (e == null) {
+            if (cIndex != producerIndex) {
+                // 生产者已经抢到了槽位，但元素还没放进来，自旋等待
+                do {
+                    e = buffer.get(offset);
+                } while (e == null);
+            } else {
+                return null;
+            }
+        }
+        buffer.lazySet(offset, null);
+        CONSUMER_INDEX_UPDATER.lazySet(this, cIndex + 1);
+        return e;
+    }
+
+    @Override
+    public E peek() {
+        final long cIndex = consumerIndex;
+        final int offset = offset(cIndex);
+        E e = buffer.get(offset);
+        if (e == null && cIndex != producerIndex) {
+            do {
+                e = buffer.get(offset);
+            } while (e == null);
+        }
+        return e;
+    }
+
+    @Override
+    public int size() {
+        // 两次读取之间consumerIndex可能会变，读到一致的快照为止
+        long after = consumerIndex;
+        long size;
+        for (;;) {
+            final long before = after;
+            final long currentProducerIndex = producerIndex;
+            after = consumerIndex;
+            if (before == after) {
+                size = currentProducerIndex - after;
+                break;
+            }
+        }
+        if (size > Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        return (int) size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return consumerIndex == producerIndex;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public void clear() {
+        while (poll() != null) {
+            // 只能在消费者线程调用
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        throw new UnsupportedOperationException();
+    }
+}
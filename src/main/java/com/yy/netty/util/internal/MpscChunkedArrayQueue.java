@@ -0,0 +1,41 @@
+package com.yy.netty.util.internal;
+
+/**
+ * 有界的MPSC队列，按需挂新的数组块，但队列中的元素总数不会超过maxCapacity，
+ * 这样队列的上限可以很大，而不需要一开始就分配一个很大的数组
+ */
+public class MpscChunkedArrayQueue<E> extends BaseMpscLinkedArrayQueue<E> {
+
+    // 队列的最大容量，下标每次加2，所以这里也是元素个数的2倍
+    private final long maxQueueCapacity;
+
+    /**
+     * @param initialCapacity 每个数组块的大小
+     * @param maxCapacity     队列的最大容量，会向上取整到2的幂，不能小于数组块的大小
+     */
+    public MpscChunkedArrayQueue(int initialCapacity, int maxCapacity) {
+        super(initialCapacity);
+        ObjectUtil.checkPositive(maxCapacity, "maxCapacity");
+        if (maxCapacity < 4) {
+            throw new IllegalArgumentException("maxCapacity: " + maxCapacity + " (expected: >= 4)");
+        }
+        if (maxCapacity > 1 << 30) {
+            throw new IllegalArgumentException("maxCapacity: " + maxCapacity + " (expected: <= 2^30)");
+        }
+        if (MathUtil.findNextPositivePowerOfTwo(initialCapacity) >= MathUtil.findNextPositivePowerOfTwo(maxCapacity)) {
+            throw new IllegalArgumentException("initialCapacity: " + initialCapacity
+                    + " (expected: < maxCapacity: " + maxCapacity + ")");
+        }
+        this.maxQueueCapacity = ((long) MathUtil.findNextPositivePowerOfTwo(maxCapacity)) << 1;
+    }
+
+    @Override
+    public int capacity() {
+        return (int) (maxQueueCapacity / 2);
+    }
+
+    @Override
+    protected long availableInQueue(long pIndex, long cIndex) {
+        return maxQueueCapacity - (pIndex - cIndex);
+    }
+}
@@ -0,0 +1,24 @@
+package com.yy.netty.util.internal;
+
+/**
+ * 无界的MPSC队列，数组块写满后一直往后挂新的数组块，offer永远不会失败
+ */
+public class MpscUnboundedArrayQueue<E> extends BaseMpscLinkedArrayQueue<E> {
+
+    /**
+     * @param chunkSize 每个数组块的大小
+     */
+    public MpscUnboundedArrayQueue(int chunkSize) {
+        super(chunkSize);
+    }
+
+    @Override
+    public int capacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    protected long availableInQueue(long pIndex, long cIndex) {
+        return Integer.MAX_VALUE;
+    }
+}
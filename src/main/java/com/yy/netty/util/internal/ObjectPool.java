@@ -0,0 +1,61 @@
+package com.yy.netty.util.internal;
+
+import com.yy.netty.util.Recycler;
+
+/**
+ * 轻量级的对象池，用来复用那些创建频繁、生命周期很短的对象（比如池化ByteBuf的外壳对象、写任务）
+ * <p>
+ * 这里只是一层很薄的包装，真正的实现是Recycler：每个线程持有一个有界的栈，get时从当前线程的栈中弹出一个对象，
+ * 在同一个线程中回收时直接压回栈中；在其他线程中回收时，对象会先暂存到回收线程为它创建的队列中，
+ * 等原来的线程栈空了再取回去，所以"在A线程创建、在B线程回收"的对象也能被A线程复用。
+ * </p>
+ */
+public abstract class ObjectPool<T> {
+
+    ObjectPool() {
+    }
+
+    /**
+     * 从对象池中获取一个对象，池中没有可复用的对象时会通过ObjectCreator创建一个新的
+     */
+    public abstract T get();
+
+    /**
+     * 对象的回收句柄，每个被池化的对象都持有一个自己的句柄，用完之后调用句柄的recycle方法把自己放回池子里
+     */
+    public interface Handle<T> {
+
+        void recycle(T self);
+    }
+
+    /**
+     * 对象的创建器，需要把handle交给被创建的对象保存起来，以便后续回收
+     */
+    public interface ObjectCreator<T> {
+
+        T newObject(Handle<T> handle);
+    }
+
+    public static <T> ObjectPool<T> newPool(final ObjectCreator<T> creator) {
+        return new RecyclerObjectPool<T>(ObjectUtil.checkNotNull(creator, "creator"));
+    }
+
+    private static final class RecyclerObjectPool<T> extends ObjectPool<T> {
+
+        private final Recycler<T> recycler;
+
+        RecyclerObjectPool(final ObjectCreator<T> creator) {
+            recycler = new Recycler<T>() {
+                @Override
+                protected T newObject(Recycler.Handle<T> handle) {
+                    return creator.newObject(handle);
+                }
+            };
+        }
+
+        @Override
+        public T get() {
+            return recycler.get();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.yy.netty.util.internal;
+
+import java.util.Queue;
+
+/**
+ * 和平台相关的一些工具方法，目前只用来创建高性能的队列
+ */
+public final class PlatformDependent {
+
+    // MPSC队列中每个数组块的大小
+    private static final int MPSC_CHUNK_SIZE = 1024;
+
+    // 有界MPSC队列允许的最大容量
+    private static final int MAX_ALLOWED_MPSC_CAPACITY = 1 << 30;
+
+    private PlatformDependent() {
+    }
+
+    /**
+     * 创建一个无界的多生产者单消费者队列，适合作为事件循环器的任务队列：任意线程都可以提交任务，只有事件循环线程会取任务
+     */
+    public static <T> Queue<T> newMpscQueue() {
+        return new MpscUnboundedArrayQueue<T>(MPSC_CHUNK_SIZE);
+    }
+
+    /**
+     * 创建一个有界的多生产者单消费者队列，maxCapacity会被限制在[2 * MPSC_CHUNK_SIZE, 2^30]之间
+     */
+    public static <T> Queue<T> newMpscQueue(final int maxCapacity) {
+        final int capacity = Math.max(Math.min(maxCapacity, MAX_ALLOWED_MPSC_CAPACITY), MPSC_CHUNK_SIZE << 1);
+        return new MpscChunkedArrayQueue<T>(MPSC_CHUNK_SIZE, capacity);
+    }
+}
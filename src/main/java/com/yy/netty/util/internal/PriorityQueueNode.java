@@ -0,0 +1,26 @@
+package com.yy.netty.util.internal;
+
+/**
+ * 可以放入DefaultPriorityQueue中的元素，元素自己记录它在堆数组中的下标，这样删除任意元素时不需要遍历整个堆
+ */
+public interface PriorityQueueNode {
+
+    // 元素不在队列中时的下标
+    int INDEX_NOT_IN_QUEUE = -1;
+
+    /**
+     * 获取元素在queue中的下标，不在该队列中时返回INDEX_NOT_IN_QUEUE
+     *
+     * @param queue
+     * @return
+     */
+    int priorityQueueIndex(DefaultPriorityQueue<?> queue);
+
+    /**
+     * 由DefaultPriorityQueue调用，记录元素在queue中的下标
+     *
+     * @param queue
+     * @param i
+     */
+    void priorityQueueIndex(DefaultPriorityQueue<?> queue, int i);
+}
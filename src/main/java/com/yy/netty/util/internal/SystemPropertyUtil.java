@@ -29,6 +29,37 @@ public class SystemPropertyUtil {
         return def;
     }
 
+    /**
+     * Returns the value of the Java system property with the specified
+     * {@code key}, while falling back to the specified default value if
+     * the property access fails.
+     *
+     * @return the property value.
+     * {@code def} if there's no such property or if an access to the
+     * specified property is not allowed.
+     */
+    public static boolean getBoolean(String key, boolean def) {
+        String value = get(key);
+        if (value == null) {
+            return def;
+        }
+
+        value = value.trim().toLowerCase();
+        if (value.isEmpty()) {
+            return def;
+        }
+
+        if ("true".equals(value) || "yes".equals(value) || "1".equals(value)) {
+            return true;
+        }
+
+        if ("false".equals(value) || "no".equals(value) || "0".equals(value)) {
+            return false;
+        }
+
+        return def;
+    }
+
     /**
      * Returns the value of the Java system property with the specified
      * {@code key}, while falling back to {@code null} if the property access fails.
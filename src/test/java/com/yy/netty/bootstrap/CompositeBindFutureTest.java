@@ -0,0 +1,172 @@
+package com.yy.netty.bootstrap;
+
+import com.yy.netty.channel.Channel;
+import com.yy.netty.channel.ChannelFuture;
+import com.yy.netty.channel.ChannelFutureListener;
+import com.yy.netty.channel.ChannelInitializer;
+import com.yy.netty.channel.ChannelPromise;
+import com.yy.netty.channel.DefaultChannelPromise;
+import com.yy.netty.channel.EventLoop;
+import com.yy.netty.channel.local.LocalServerChannel;
+import com.yy.netty.channel.nio.NioEventLoopGroup;
+import com.yy.netty.channel.socket.nio.NioServerSocketChannel;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompositeBindFutureTest {
+
+    private static NioEventLoopGroup group;
+    private static EventLoop loop;
+
+    @BeforeClass
+    public static void setUp() {
+        group = new NioEventLoopGroup(2);
+        loop = group.next();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        group.shutdownGracefully();
+    }
+
+    @Test(timeout = 5000)
+    public void testSucceedsWhenAllChannelsBound() throws Exception {
+        Channel ch1 = new LocalServerChannel();
+        Channel ch2 = new LocalServerChannel();
+        ChannelPromise p1 = new DefaultChannelPromise(ch1, loop);
+        ChannelPromise p2 = new DefaultChannelPromise(ch2, loop);
+        CompositeBindFuture composite = new CompositeBindFuture(ch1, loop, 2);
+        composite.add(p1);
+        composite.add(p2);
+
+        p1.setSuccess();
+        assertFalse(composite.isDone());
+        p2.setSuccess();
+
+        assertTrue(composite.await(1000, TimeUnit.MILLISECONDS));
+        assertTrue(composite.isSuccess());
+        assertSame(ch1, composite.channel());
+        assertEquals(2, composite.channels().size());
+    }
+
+    @Test(timeout = 5000)
+    public void testFailsAndClosesAllWhenOneChannelFails() throws Exception {
+        Channel ch1 = new LocalServerChannel();
+        Channel ch2 = new LocalServerChannel();
+        assertTrue(loop.register(ch1).await(1000, TimeUnit.MILLISECONDS));
+        assertTrue(group.next().register(ch2).await(1000, TimeUnit.MILLISECONDS));
+        ChannelPromise p1 = new DefaultChannelPromise(ch1, loop);
+        ChannelPromise p2 = new DefaultChannelPromise(ch2, loop);
+        CompositeBindFuture composite = new CompositeBindFuture(ch1, loop, 2);
+        composite.add(p1);
+        composite.add(p2);
+
+        IOException cause = new IOException("Address already in use");
+        p1.setSuccess();
+        p2.setFailure(cause);
+
+        assertTrue(composite.await(1000, TimeUnit.MILLISECONDS));
+        assertSame(cause, composite.cause());
+        // 已经绑定上的channel也要被关掉，走完整的close流程，closeFuture会完成
+        assertTrue(ch1.closeFuture().await(1000, TimeUnit.MILLISECONDS));
+        assertTrue(ch2.closeFuture().await(1000, TimeUnit.MILLISECONDS));
+        assertFalse(ch1.isOpen());
+        assertFalse(ch2.isOpen());
+    }
+
+    @Test(timeout = 5000)
+    public void testFailBeforeAllAddedNotifiesListeners() throws Exception {
+        // 第一个channel初始化失败，被强制关闭了，也没有注册，监听器要靠构造时传入的执行器来通知
+        Channel ch1 = new LocalServerChannel();
+        ch1.unsafe().closeForcibly();
+        assertFalse(ch1.isRegistered());
+        CompositeBindFuture composite = new CompositeBindFuture(ch1, loop, 2);
+        composite.add(new DefaultChannelPromise(ch1, loop));
+
+        final CountDownLatch notified = new CountDownLatch(1);
+        composite.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                notified.countDown();
+            }
+        });
+        IllegalStateException cause = new IllegalStateException("init failed");
+        composite.fail(cause);
+
+        assertTrue(notified.await(1000, TimeUnit.MILLISECONDS));
+        assertSame(cause, composite.cause());
+        assertFalse(ch1.isOpen());
+    }
+
+    @Test(timeout = 5000)
+    public void testReusePortAcceptorsBindOnDistinctLoops() throws Exception {
+        ChannelFuture f = new ServerBootstrap().group(group, group).channel(NioServerSocketChannel.class)
+                .reusePortAcceptors(2)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                    }
+                }).bind(new InetSocketAddress("127.0.0.1", 0));
+        assertTrue(f instanceof CompositeBindFuture);
+
+        // bind之后再加的监听器，不管成功还是失败都要被通知到
+        final CountDownLatch notified = new CountDownLatch(1);
+        f.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                notified.countDown();
+            }
+        });
+        assertTrue(notified.await(3000, TimeUnit.MILLISECONDS));
+
+        CompositeBindFuture composite = (CompositeBindFuture) f;
+        if (!composite.isSuccess()) {
+            // JDK 8的NIO传输层不支持SO_REUSEPORT，第一个channel初始化就失败了
+            assertTrue(composite.cause() instanceof UnsupportedOperationException);
+            assertFalse(composite.channel().isOpen());
+            return;
+        }
+        try {
+            assertEquals(2, composite.channels().size());
+            Channel ch1 = composite.channels().get(0);
+            Channel ch2 = composite.channels().get(1);
+            assertNotSame(ch1.eventLoop(), ch2.eventLoop());
+            assertEquals(((InetSocketAddress) ch1.localAddress()).getPort(),
+                    ((InetSocketAddress) ch2.localAddress()).getPort());
+        } finally {
+            for (Channel ch : composite.channels()) {
+                assertTrue(ch.close().await(1000, TimeUnit.MILLISECONDS));
+            }
+        }
+    }
+
+    @Test
+    public void testRejectsMoreAcceptorsThanBossLoops() {
+        ServerBootstrap b = new ServerBootstrap().group(group, group).channel(NioServerSocketChannel.class)
+                .reusePortAcceptors(3)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                    }
+                });
+        try {
+            b.bind(new InetSocketAddress("127.0.0.1", 0));
+            fail();
+        } catch (IllegalStateException expected) {
+            // boss线程组只有2个线程
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.yy.netty.channel;
+
+import com.yy.netty.channel.local.LocalChannel;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveRecvByteBufAllocatorTest {
+
+    private ChannelConfig config;
+
+    @Before
+    public void setUp() {
+        config = new LocalChannel().config();
+    }
+
+    @Test
+    public void testGrowsImmediatelyWhenBufferFilled() {
+        RecvByteBufAllocator.Handle handle = new AdaptiveRecvByteBufAllocator(64, 1024, 65536).newHandle();
+        handle.reset(config);
+        assertEquals(1024, handle.guess());
+
+        // 一次读满了缓冲区，读循环中的下一次读就要用更大的缓冲区
+        read(handle, 1024, 1024);
+        assertEquals(16384, handle.guess());
+    }
+
+    @Test
+    public void testShrinksOnlyAfterTwoSmallReads() {
+        RecvByteBufAllocator.Handle handle = new AdaptiveRecvByteBufAllocator(64, 1024, 65536).newHandle();
+
+        readLoop(handle, 10);
+        assertEquals(1024, handle.guess());
+
+        readLoop(handle, 10);
+        assertEquals(512, handle.guess());
+    }
+
+    @Test
+    public void testRespectsMinimumAndMaximum() {
+        RecvByteBufAllocator.Handle handle = new AdaptiveRecvByteBufAllocator(256, 1024, 4096).newHandle();
+        for (int i = 0; i < 10; i++) {
+            handle.reset(config);
+            read(handle, handle.guess(), handle.guess());
+            handle.readComplete();
+        }
+        assertEquals(4096, handle.guess());
+
+        for (int i = 0; i < 100; i++) {
+            readLoop(handle, 1);
+        }
+        assertEquals(256, handle.guess());
+    }
+
+    @Test
+    public void testContinueReading() {
+        AdaptiveRecvByteBufAllocator allocator = new AdaptiveRecvByteBufAllocator();
+        allocator.maxMessagesPerRead(2);
+        RecvByteBufAllocator.Handle handle = allocator.newHandle();
+
+        handle.reset(config);
+        read(handle, 1024, 1024);
+        assertTrue(handle.continueReading());
+        // 达到一次读事件最多读的次数
+        read(handle, 16384, 16384);
+        assertFalse(handle.continueReading());
+
+        // 没有读满缓冲区，说明socket中暂时没有更多数据了
+        handle.reset(config);
+        read(handle, handle.guess(), 100);
+        assertFalse(handle.continueReading());
+
+        // 读到EOF
+        handle.reset(config);
+        read(handle, handle.guess(), -1);
+        assertFalse(handle.continueReading());
+    }
+
+    private static void read(RecvByteBufAllocator.Handle handle, int attempted, int bytes) {
+        handle.attemptedBytesRead(attempted);
+        handle.lastBytesRead(bytes);
+        handle.incMessagesRead(1);
+    }
+
+    private void readLoop(RecvByteBufAllocator.Handle handle, int bytes) {
+        handle.reset(config);
+        read(handle, handle.guess(), bytes);
+        handle.readComplete();
+    }
+}
@@ -0,0 +1,166 @@
+package com.yy.netty.channel;
+
+import com.yy.netty.buffer.ByteBuf;
+import com.yy.netty.buffer.ByteBufAllocator;
+import com.yy.netty.channel.local.LocalChannel;
+import com.yy.netty.channel.nio.NioEventLoopGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 写缓冲区的待写字节数统计和高低水位线
+ */
+public class ChannelOutboundBufferTest {
+
+    private static final int OVERHEAD = ChannelOutboundBuffer.CHANNEL_OUTBOUND_BUFFER_ENTRY_OVERHEAD;
+
+    private static NioEventLoopGroup group;
+    private static EventLoop loop;
+
+    @BeforeClass
+    public static void setUp() {
+        group = new NioEventLoopGroup(1);
+        loop = group.next();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        group.shutdownGracefully();
+    }
+
+    @Test(timeout = 5000)
+    public void testWritabilityFollowsWatermarks() throws Exception {
+        final Channel ch = newRegisteredChannel();
+        final AtomicInteger changes = new AtomicInteger();
+        ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+                changes.incrementAndGet();
+            }
+        });
+        // 每个消息100字节，加上Entry本身的开销
+        final int entrySize = 100 + OVERHEAD;
+        ch.config().setWriteBufferWaterMark(new WriteBufferWaterMark(entrySize + 1, entrySize * 2));
+
+        runInLoop(new Callable<Void>() {
+            @Override
+            public Void call() {
+                ChannelOutboundBuffer buffer = ch.unsafe().outboundBuffer();
+                buffer.addMessage(newBuffer(100), 100, ch.voidPromise());
+                buffer.addMessage(newBuffer(100), 100, ch.voidPromise());
+                // 刚好等于高水位线，还是可写的
+                assertEquals(entrySize * 2, buffer.totalPendingWriteBytes());
+                assertTrue(ch.isWritable());
+                assertEquals(0, changes.get());
+
+                buffer.addMessage(newBuffer(100), 100, ch.voidPromise());
+                assertFalse(ch.isWritable());
+                assertEquals(1, changes.get());
+                assertEquals(0, ch.bytesBeforeUnwritable());
+                assertEquals(entrySize * 3 - (entrySize + 1), ch.bytesBeforeWritable());
+
+                // 继续写不会重复触发事件
+                buffer.addMessage(newBuffer(100), 100, ch.voidPromise());
+                assertEquals(1, changes.get());
+
+                buffer.addFlush();
+                buffer.remove();
+                buffer.remove();
+                // 还没降到低水位线以下
+                assertFalse(ch.isWritable());
+                buffer.remove();
+                assertTrue(ch.isWritable());
+                assertEquals(2, changes.get());
+                assertEquals(entrySize, buffer.totalPendingWriteBytes());
+                assertEquals(entrySize, ch.bytesBeforeUnwritable());
+                assertEquals(0, ch.bytesBeforeWritable());
+
+                buffer.remove();
+                assertEquals(0, buffer.totalPendingWriteBytes());
+                return null;
+            }
+        });
+        close(ch);
+    }
+
+    @Test(timeout = 5000)
+    public void testWriteFromOtherThreadCountedBeforeRunning() throws Exception {
+        final Channel ch = newRegisteredChannel();
+        ch.config().setWriteBufferWaterMark(new WriteBufferWaterMark(16, 32));
+
+        // 先把EventLoop堵住，写任务就只能在任务队列里排队
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(blocked.await(1, TimeUnit.SECONDS));
+
+        ch.write(newBuffer(64));
+        try {
+            // 写任务还没执行，待写字节数已经算进去了，channel马上就变为不可写
+            assertTrue(ch.unsafe().outboundBuffer().totalPendingWriteBytes() >= 64);
+            assertFalse(ch.isWritable());
+        } finally {
+            release.countDown();
+        }
+
+        // 写任务执行之后，消息进了写缓冲区，待写字节数不会被重复统计
+        long pending = runInLoop(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return ch.unsafe().outboundBuffer().totalPendingWriteBytes();
+            }
+        });
+        assertEquals(64 + OVERHEAD, pending);
+        close(ch);
+    }
+
+    @Test(timeout = 5000)
+    public void testClosedChannelIsNotWritable() throws Exception {
+        Channel ch = newRegisteredChannel();
+        assertTrue(ch.isWritable());
+        close(ch);
+        assertFalse(ch.isWritable());
+        assertEquals(0, ch.bytesBeforeUnwritable());
+        assertEquals(Long.MAX_VALUE, ch.bytesBeforeWritable());
+    }
+
+    private static Channel newRegisteredChannel() throws Exception {
+        Channel ch = new LocalChannel();
+        assertTrue(loop.register(ch).await(1000, TimeUnit.MILLISECONDS));
+        return ch;
+    }
+
+    private static ByteBuf newBuffer(int size) {
+        ByteBuf buf = ByteBufAllocator.DEFAULT.buffer(size);
+        buf.writeBytes(new byte[size]);
+        return buf;
+    }
+
+    private static <T> T runInLoop(Callable<T> task) throws Exception {
+        return loop.schedule(task, 0, TimeUnit.MILLISECONDS).get();
+    }
+
+    private static void close(Channel ch) throws Exception {
+        assertTrue(ch.close().await(1000, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,132 @@
+package com.yy.netty.channel;
+
+import com.yy.netty.buffer.ByteBuf;
+import com.yy.netty.buffer.ByteBufAllocator;
+import com.yy.netty.channel.local.LocalChannel;
+import com.yy.netty.channel.nio.NioEventLoopGroup;
+import com.yy.netty.util.concurrent.Future;
+import com.yy.netty.util.concurrent.GenericFutureListener;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.channels.NotYetConnectedException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VoidChannelPromiseTest {
+
+    private static NioEventLoopGroup group;
+
+    @BeforeClass
+    public static void setUp() {
+        group = new NioEventLoopGroup(1);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        group.shutdownGracefully();
+    }
+
+    @Test
+    public void testNeverCompletes() {
+        VoidChannelPromise promise = new VoidChannelPromise(new LocalChannel(), false);
+        assertTrue(promise.isVoid());
+        assertTrue(promise.setUncancellable());
+        assertFalse(promise.trySuccess());
+        assertFalse(promise.tryFailure(new Exception()));
+        promise.setSuccess();
+        assertFalse(promise.isDone());
+        assertFalse(promise.isSuccess());
+        assertFalse(promise.cancel(false));
+        assertNull(promise.cause());
+    }
+
+    @Test
+    public void testListenersAndBlockingAreRejected() throws Exception {
+        VoidChannelPromise promise = new VoidChannelPromise(new LocalChannel(), false);
+        try {
+            promise.addListener(new GenericFutureListener<Future<Void>>() {
+                @Override
+                public void operationComplete(Future<Void> future) {
+                }
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+            // 不能添加监听器
+        }
+        try {
+            promise.await(1, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (IllegalStateException expected) {
+            // 永远不会结束，不能阻塞等待
+        }
+        try {
+            promise.sync();
+            fail();
+        } catch (IllegalStateException expected) {
+            // 同上
+        }
+        // 监听器本来就不会被保存，删除什么也不做
+        promise.removeListener(null);
+    }
+
+    @Test(timeout = 5000)
+    public void testFailedWriteFiresExceptionCaught() throws Exception {
+        final BlockingQueue<Throwable> caught = new LinkedBlockingQueue<Throwable>();
+        Channel ch = newRegisteredChannel(caught);
+
+        // 还没连接上，写失败的异常要传播到pipeline中，不能被悄悄吞掉
+        ByteBuf buf = ByteBufAllocator.DEFAULT.buffer(4).writeInt(1);
+        ch.writeAndFlush(buf, ch.voidPromise());
+        assertTrue(caught.poll(1, TimeUnit.SECONDS) instanceof NotYetConnectedException);
+        assertEquals(0, buf.refCnt());
+
+        assertTrue(ch.close().await(1000, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void testUnvoidNotifiesAndFiresException() throws Exception {
+        final BlockingQueue<Throwable> caught = new LinkedBlockingQueue<Throwable>();
+        Channel ch = newRegisteredChannel(caught);
+
+        ChannelPromise promise = ch.voidPromise().unvoid();
+        assertFalse(promise.isVoid());
+        Exception cause = new Exception("boom");
+        promise.setFailure(cause);
+        assertSame(cause, promise.cause());
+        assertSame(cause, caught.poll(1, TimeUnit.SECONDS));
+
+        assertTrue(ch.close().await(1000, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotAllowedForClose() throws Exception {
+        Channel ch = newRegisteredChannel(new LinkedBlockingQueue<Throwable>());
+        try {
+            ch.close(ch.voidPromise());
+        } finally {
+            ch.close().await(1000, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static Channel newRegisteredChannel(final BlockingQueue<Throwable> caught) throws Exception {
+        Channel ch = new LocalChannel();
+        ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                caught.add(cause);
+            }
+        });
+        assertTrue(group.next().register(ch).await(1000, TimeUnit.MILLISECONDS));
+        return ch;
+    }
+}
@@ -0,0 +1,101 @@
+package com.yy.netty.channel.epoll;
+
+import com.yy.netty.bootstrap.ServerBootstrap;
+import com.yy.netty.channel.Channel;
+import com.yy.netty.channel.ChannelHandlerContext;
+import com.yy.netty.channel.ChannelInboundHandlerAdapter;
+import com.yy.netty.channel.ChannelInitializer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 对端关闭或者重置了连接，epoll channel要走完整的close流程，只在epoll可用时运行
+ */
+public class EpollSocketChannelTest {
+
+    private static EpollEventLoopGroup group;
+
+    @BeforeClass
+    public static void setUp() {
+        assumeTrue(Epoll.isAvailable());
+        group = new EpollEventLoopGroup(1);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (group != null) {
+            group.shutdownGracefully();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testPeerCloseClosesChannel() throws Exception {
+        testPeerClose(false);
+    }
+
+    @Test(timeout = 10000)
+    public void testPeerResetClosesChannel() throws Exception {
+        testPeerClose(true);
+    }
+
+    private void testPeerClose(boolean reset) throws Exception {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+        final BlockingQueue<Channel> children = new LinkedBlockingQueue<Channel>();
+        Channel server = new ServerBootstrap().group(group, group).channel(EpollServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        children.add(ch);
+                        ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void channelInactive(ChannelHandlerContext ctx) {
+                                events.add("inactive");
+                            }
+
+                            @Override
+                            public void channelUnregistered(ChannelHandlerContext ctx) {
+                                events.add("unregistered");
+                            }
+
+                            @Override
+                            public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                                // 连接被重置时会先收到IOException
+                            }
+                        });
+                    }
+                }).bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+        Socket socket = new Socket();
+        try {
+            socket.connect(server.localAddress());
+            Channel child = children.poll(3, TimeUnit.SECONDS);
+            assertNotNull(child);
+            if (reset) {
+                // SO_LINGER为0时close会直接发送RST
+                socket.setSoLinger(true, 0);
+            }
+            socket.close();
+
+            assertTrue(child.closeFuture().await(3000, TimeUnit.MILLISECONDS));
+            assertFalse(child.isOpen());
+            assertEquals("inactive", events.poll(3, TimeUnit.SECONDS));
+            assertEquals("unregistered", events.poll(3, TimeUnit.SECONDS));
+            assertFalse(child.isRegistered());
+        } finally {
+            socket.close();
+            assertTrue(server.close().await(3000, TimeUnit.MILLISECONDS));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.yy.netty.channel.local;
+
+import com.yy.netty.bootstrap.Bootstrap;
+import com.yy.netty.bootstrap.ServerBootstrap;
+import com.yy.netty.buffer.ByteBuf;
+import com.yy.netty.buffer.ByteBufAllocator;
+import com.yy.netty.channel.Channel;
+import com.yy.netty.channel.ChannelFuture;
+import com.yy.netty.channel.ChannelHandlerContext;
+import com.yy.netty.channel.ChannelInboundHandlerAdapter;
+import com.yy.netty.channel.ChannelInitializer;
+import com.yy.netty.channel.nio.NioEventLoopGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class LocalChannelTest {
+
+    private static NioEventLoopGroup group;
+
+    @BeforeClass
+    public static void setUp() {
+        group = new NioEventLoopGroup(2);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        group.shutdownGracefully();
+    }
+
+    @Test(timeout = 10000)
+    public void testEchoAndCloseFiresInactiveOnBothSides() throws Exception {
+        final BlockingQueue<Channel> children = new LinkedBlockingQueue<Channel>();
+        final CountDownLatch serverInactive = new CountDownLatch(1);
+        final CountDownLatch serverUnregistered = new CountDownLatch(1);
+        LocalAddress addr = new LocalAddress("LocalChannelTest.echo");
+        ChannelFuture bf = new ServerBootstrap().group(group, group).channel(LocalServerChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        children.add(ch);
+                        ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                ctx.writeAndFlush(msg);
+                            }
+
+                            @Override
+                            public void channelInactive(ChannelHandlerContext ctx) {
+                                serverInactive.countDown();
+                            }
+
+                            @Override
+                            public void channelUnregistered(ChannelHandlerContext ctx) {
+                                serverUnregistered.countDown();
+                            }
+                        });
+                    }
+                }).bind(addr).sync();
+        Channel server = bf.channel();
+        try {
+            final Channel client = new Bootstrap().group(group).channel(LocalChannel.class).connect(addr).sync().channel();
+            final BlockingQueue<Integer> received = new LinkedBlockingQueue<Integer>();
+            final CountDownLatch clientInactive = new CountDownLatch(1);
+            client.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                @Override
+                public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                    ByteBuf buf = (ByteBuf) msg;
+                    received.add(buf.readInt());
+                    buf.release();
+                }
+
+                @Override
+                public void channelInactive(ChannelHandlerContext ctx) {
+                    clientInactive.countDown();
+                }
+            });
+            assertTrue(client.isActive());
+
+            for (int i = 0; i < 100; i++) {
+                ByteBuf buf = ByteBufAllocator.DEFAULT.buffer(4);
+                buf.writeInt(i);
+                client.writeAndFlush(buf);
+            }
+            for (int i = 0; i < 100; i++) {
+                assertEquals(Integer.valueOf(i), received.poll(3, TimeUnit.SECONDS));
+            }
+
+            Channel child = children.poll(3, TimeUnit.SECONDS);
+            assertNotNull(child);
+
+            // 主动关闭客户端，自己和对端都要触发channelInactive并完成closeFuture
+            assertTrue(client.close().await(3000, TimeUnit.MILLISECONDS));
+            assertFalse(client.isOpen());
+            assertTrue(client.closeFuture().isDone());
+            assertTrue(clientInactive.await(3, TimeUnit.SECONDS));
+
+            assertTrue(child.closeFuture().await(3000, TimeUnit.MILLISECONDS));
+            assertFalse(child.isOpen());
+            assertTrue(serverInactive.await(3, TimeUnit.SECONDS));
+            assertTrue(serverUnregistered.await(3, TimeUnit.SECONDS));
+            assertFalse(child.isRegistered());
+
+            // 重复关闭直接成功
+            assertTrue(client.close().await(3000, TimeUnit.MILLISECONDS));
+        } finally {
+            server.close().await(3000, TimeUnit.MILLISECONDS);
+        }
+        assertFalse(server.isOpen());
+        assertTrue(server.closeFuture().isDone());
+    }
+
+    @Test(timeout = 10000)
+    public void testConnectRefusedClosesClient() throws Exception {
+        final CountDownLatch unregistered = new CountDownLatch(1);
+        Channel client = new LocalChannel();
+        client.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelUnregistered(ChannelHandlerContext ctx) {
+                unregistered.countDown();
+            }
+        });
+        assertTrue(group.next().register(client).await(3000, TimeUnit.MILLISECONDS));
+
+        // 不经过Bootstrap，它会给connect的future加上失败就关闭channel的监听器
+        ChannelFuture f = client.connect(new LocalAddress("LocalChannelTest.refused"), null, client.newPromise());
+        assertTrue(f.await(3000, TimeUnit.MILLISECONDS));
+        assertTrue(f.cause() instanceof ConnectException);
+
+        // 连接失败的channel要走完整的close流程：完成closeFuture，并从EventLoop上注销
+        assertTrue(client.closeFuture().await(3000, TimeUnit.MILLISECONDS));
+        assertFalse(client.isOpen());
+        assertTrue(unregistered.await(3, TimeUnit.SECONDS));
+        assertFalse(client.isRegistered());
+    }
+
+    @Test(timeout = 10000)
+    public void testCloseServerReleasesAddress() throws Exception {
+        LocalAddress addr = new LocalAddress("LocalChannelTest.rebind");
+        ChannelInitializer<Channel> initializer = new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel ch) {
+            }
+        };
+        Channel server = new ServerBootstrap().group(group, group).channel(LocalServerChannel.class)
+                .childHandler(initializer).bind(addr).sync().channel();
+        server.close().sync();
+        assertFalse(server.isOpen());
+
+        // 关闭之后地址就释放了，可以重新绑定
+        Channel server2 = new ServerBootstrap().group(group, group).channel(LocalServerChannel.class)
+                .childHandler(initializer).bind(addr).sync().channel();
+        server2.close().sync();
+    }
+}
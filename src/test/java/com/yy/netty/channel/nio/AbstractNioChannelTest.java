@@ -0,0 +1,244 @@
+package com.yy.netty.channel.nio;
+
+import com.yy.netty.bootstrap.ServerBootstrap;
+import com.yy.netty.buffer.ByteBuf;
+import com.yy.netty.channel.Channel;
+import com.yy.netty.channel.ChannelFuture;
+import com.yy.netty.channel.ChannelHandler;
+import com.yy.netty.channel.ChannelHandlerContext;
+import com.yy.netty.channel.ChannelInboundHandlerAdapter;
+import com.yy.netty.channel.ChannelInitializer;
+import com.yy.netty.channel.socket.nio.NioServerSocketChannel;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 关闭自动读之后，读事件要从selector上移除
+ */
+public class AbstractNioChannelTest {
+
+    private static NioEventLoopGroup group;
+
+    @BeforeClass
+    public static void setUp() {
+        group = new NioEventLoopGroup(1);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        group.shutdownGracefully();
+    }
+
+    @Test(timeout = 10000)
+    public void testAcceptErrorPausesOpAccept() throws Exception {
+        ChannelFuture f = new ServerBootstrap().group(group, group).channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                    }
+                }).bind(new InetSocketAddress("127.0.0.1", 0)).sync();
+        final AbstractNioChannel server = (AbstractNioChannel) f.channel();
+        try {
+            assertTrue(waitForInterest(server, SelectionKey.OP_ACCEPT, true, 1000));
+
+            // 模拟accept时文件描述符用完了，ServerBootstrapAcceptor会暂停接受连接1秒
+            server.eventLoop().execute(new Runnable() {
+                @Override
+                public void run() {
+                    server.pipeline().fireExceptionCaught(new IOException("Too many open files"));
+                }
+            });
+
+            assertTrue("OP_ACCEPT should be removed while paused",
+                    waitForInterest(server, SelectionKey.OP_ACCEPT, false, 500));
+            assertFalse(server.config().isAutoRead());
+
+            // 暂停结束后重新开启自动读，OP_ACCEPT又加回来了
+            assertTrue("OP_ACCEPT should be restored after the pause",
+                    waitForInterest(server, SelectionKey.OP_ACCEPT, true, 3000));
+            assertTrue(server.config().isAutoRead());
+        } finally {
+            close(server);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testAutoReadOffRemovesOpRead() throws Exception {
+        final BlockingQueue<Channel> children = new LinkedBlockingQueue<Channel>();
+        final BlockingQueue<Integer> received = new LinkedBlockingQueue<Integer>();
+        final ChannelHandler handler = new PauseOnReadHandler(children, received);
+        ChannelFuture f = new ServerBootstrap().group(group, group).channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(handler);
+                    }
+                }).bind(new InetSocketAddress("127.0.0.1", 0)).sync();
+        final AbstractNioChannel server = (AbstractNioChannel) f.channel();
+        Socket socket = new Socket();
+        try {
+            socket.connect(server.localAddress());
+            OutputStream out = socket.getOutputStream();
+            out.write(1);
+            out.flush();
+
+            assertEquals(Integer.valueOf(1), received.poll(3, TimeUnit.SECONDS));
+            AbstractNioChannel child = (AbstractNioChannel) children.poll(3, TimeUnit.SECONDS);
+            assertNotNull(child);
+            assertTrue("OP_READ should be removed after autoRead is cleared",
+                    waitForInterest(child, SelectionKey.OP_READ, false, 1000));
+
+            // 关闭自动读期间写过来的数据不会被读取
+            out.write(2);
+            out.flush();
+            assertNull(received.poll(300, TimeUnit.MILLISECONDS));
+
+            // 重新开启自动读，之前没读的数据马上就会被读到
+            child.config().setAutoRead(true);
+            assertEquals(Integer.valueOf(2), received.poll(3, TimeUnit.SECONDS));
+        } finally {
+            socket.close();
+            close(server);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testPeerCloseClosesChannel() throws Exception {
+        testPeerClose(false);
+    }
+
+    @Test(timeout = 10000)
+    public void testPeerResetClosesChannel() throws Exception {
+        testPeerClose(true);
+    }
+
+    /**
+     * 对端关闭或者重置了连接，本端要走完整的close流程：触发channelInactive、channelUnregistered，完成closeFuture
+     */
+    private void testPeerClose(boolean reset) throws Exception {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+        final BlockingQueue<Channel> children = new LinkedBlockingQueue<Channel>();
+        ChannelFuture f = new ServerBootstrap().group(group, group).channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        children.add(ch);
+                        ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void channelInactive(ChannelHandlerContext ctx) {
+                                events.add("inactive");
+                            }
+
+                            @Override
+                            public void channelUnregistered(ChannelHandlerContext ctx) {
+                                events.add("unregistered");
+                            }
+
+                            @Override
+                            public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                                // 连接被重置时会先收到IOException
+                            }
+                        });
+                    }
+                }).bind(new InetSocketAddress("127.0.0.1", 0)).sync();
+        final AbstractNioChannel server = (AbstractNioChannel) f.channel();
+        Socket socket = new Socket();
+        try {
+            socket.connect(server.localAddress());
+            Channel child = children.poll(3, TimeUnit.SECONDS);
+            assertNotNull(child);
+            if (reset) {
+                // SO_LINGER为0时close会直接发送RST
+                socket.setSoLinger(true, 0);
+            }
+            socket.close();
+
+            assertTrue(child.closeFuture().await(3000, TimeUnit.MILLISECONDS));
+            assertFalse(child.isOpen());
+            assertEquals("inactive", events.poll(3, TimeUnit.SECONDS));
+            assertEquals("unregistered", events.poll(3, TimeUnit.SECONDS));
+            assertFalse(child.isRegistered());
+        } finally {
+            socket.close();
+            close(server);
+        }
+    }
+
+    /**
+     * 读到数据后关闭自动读
+     */
+    @ChannelHandler.Sharable
+    private static final class PauseOnReadHandler extends ChannelInboundHandlerAdapter {
+
+        private final BlockingQueue<Channel> children;
+        private final BlockingQueue<Integer> received;
+
+        PauseOnReadHandler(BlockingQueue<Channel> children, BlockingQueue<Integer> received) {
+            this.children = children;
+            this.received = received;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ByteBuf buf = (ByteBuf) msg;
+            try {
+                while (buf.isReadable()) {
+                    received.add((int) buf.readByte());
+                }
+            } finally {
+                buf.release();
+            }
+            if (ctx.channel().config().isAutoRead()) {
+                ctx.channel().config().setAutoRead(false);
+                children.add(ctx.channel());
+            }
+        }
+    }
+
+    private static boolean waitForInterest(final AbstractNioChannel ch, final int op, boolean expected, long timeoutMillis)
+            throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (;;) {
+            // 在channel的EventLoop中读取，和修改interestOps的线程保持一致
+            boolean set = ch.eventLoop().schedule(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return (ch.selectionKey().interestOps() & op) != 0;
+                }
+            }, 0, TimeUnit.MILLISECONDS).get();
+            if (set == expected) {
+                return true;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static void close(final Channel ch) {
+        ch.eventLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                ch.unsafe().closeForcibly();
+            }
+        });
+    }
+}
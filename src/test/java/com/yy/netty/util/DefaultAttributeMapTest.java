@@ -0,0 +1,115 @@
+package com.yy.netty.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DefaultAttributeMapTest {
+
+    @Test
+    public void testGetSetAndRemove() {
+        DefaultAttributeMap map = new DefaultAttributeMap();
+        AttributeKey<String> key = AttributeKey.newInstance("DefaultAttributeMapTest.str");
+        assertFalse(map.hasAttr(key));
+
+        Attribute<String> attr = map.attr(key);
+        assertSame(attr, map.attr(key));
+        assertTrue(map.hasAttr(key));
+        assertNull(attr.get());
+
+        attr.set("a");
+        assertEquals("a", map.attr(key).get());
+        assertEquals("a", attr.setIfAbsent("b"));
+        assertTrue(attr.compareAndSet("a", "c"));
+        assertEquals("c", attr.getAndSet("d"));
+
+        assertEquals("d", attr.getAndRemove());
+        assertFalse(map.hasAttr(key));
+
+        // 删除之后再取得到的是一个新的属性
+        Attribute<String> attr2 = map.attr(key);
+        assertNotSame(attr, attr2);
+        assertNull(attr2.get());
+    }
+
+    @Test
+    public void testManyKeysInAnyOrder() {
+        DefaultAttributeMap map = new DefaultAttributeMap();
+        List<AttributeKey<Integer>> keys = new ArrayList<AttributeKey<Integer>>();
+        for (int i = 0; i < 64; i++) {
+            keys.add(AttributeKey.<Integer>newInstance("DefaultAttributeMapTest.many" + i));
+        }
+        // 不按id的顺序插入，数组也要保持有序，二分查找才能找到
+        for (int i = 0; i < 64; i += 2) {
+            map.attr(keys.get(i)).set(i);
+        }
+        for (int i = 63; i > 0; i -= 2) {
+            map.attr(keys.get(i)).set(i);
+        }
+        for (int i = 0; i < 64; i++) {
+            assertEquals(Integer.valueOf(i), map.attr(keys.get(i)).get());
+        }
+
+        for (int i = 0; i < 64; i += 3) {
+            map.attr(keys.get(i)).remove();
+        }
+        for (int i = 0; i < 64; i++) {
+            assertEquals(i % 3 != 0, map.hasAttr(keys.get(i)));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentAttrReturnsSameAttribute() throws Exception {
+        final int threads = 8;
+        for (int round = 0; round < 100; round++) {
+            final DefaultAttributeMap map = new DefaultAttributeMap();
+            final List<AttributeKey<Integer>> keys = new ArrayList<AttributeKey<Integer>>();
+            for (int i = 0; i < 8; i++) {
+                keys.add(AttributeKey.<Integer>newInstance("DefaultAttributeMapTest.concurrent" + round + "." + i));
+            }
+            final CyclicBarrier barrier = new CyclicBarrier(threads);
+            final AtomicInteger winners = new AtomicInteger();
+            List<Thread> list = new ArrayList<Thread>();
+            for (int t = 0; t < threads; t++) {
+                final int id = t;
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            barrier.await();
+                        } catch (Exception e) {
+                            return;
+                        }
+                        // 所有线程同时添加不同的key，cas失败的要基于新数组重试，不能把别人加的属性弄丢
+                        for (AttributeKey<Integer> key : keys) {
+                            if (map.attr(key).setIfAbsent(id) == null) {
+                                winners.incrementAndGet();
+                            }
+                        }
+                    }
+                });
+                list.add(thread);
+                thread.start();
+            }
+            for (Thread thread : list) {
+                thread.join();
+            }
+            // 每个key只有一个线程设置成功，说明所有线程拿到的都是同一个属性对象
+            assertEquals(keys.size(), winners.get());
+            for (AttributeKey<Integer> key : keys) {
+                assertTrue(map.hasAttr(key));
+                assertTrue(map.attr(key).get() != null);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.yy.netty.util;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HashedWheelTimerTest {
+
+    @Test(timeout = 5000)
+    public void testTimeoutsExpireNoEarlierThanDelay() throws Exception {
+        HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 8);
+        try {
+            final BlockingQueue<long[]> fired = new LinkedBlockingQueue<long[]>();
+            final long start = System.nanoTime();
+            // 延迟超过一圈（8格 * 10ms），要在后面的圈数中才到期
+            final long[] delays = {30, 150, 300};
+            for (final long delay : delays) {
+                timer.newTimeout(new TimerTask() {
+                    @Override
+                    public void run(Timeout timeout) {
+                        fired.add(new long[]{delay, System.nanoTime() - start});
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+            for (long delay : delays) {
+                long[] f = fired.poll(2, TimeUnit.SECONDS);
+                assertEquals(delay, f[0]);
+                assertTrue(f[1] >= TimeUnit.MILLISECONDS.toNanos(delay));
+            }
+            assertEquals(0, timer.pendingTimeouts());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testCancelledTimeoutDoesNotFire() throws Exception {
+        HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+        try {
+            final AtomicInteger cancelledRuns = new AtomicInteger();
+            Timeout timeout = timer.newTimeout(new TimerTask() {
+                @Override
+                public void run(Timeout timeout) {
+                    cancelledRuns.incrementAndGet();
+                }
+            }, 50, TimeUnit.MILLISECONDS);
+            assertTrue(timeout.cancel());
+            assertTrue(timeout.isCancelled());
+            assertFalse(timeout.cancel());
+
+            final CountDownLatch later = new CountDownLatch(1);
+            timer.newTimeout(new TimerTask() {
+                @Override
+                public void run(Timeout timeout) {
+                    later.countDown();
+                }
+            }, 100, TimeUnit.MILLISECONDS);
+            assertTrue(later.await(2, TimeUnit.SECONDS));
+            assertEquals(0, cancelledRuns.get());
+            assertEquals(0, timer.pendingTimeouts());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testManyTimeouts() throws Exception {
+        HashedWheelTimer timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS);
+        try {
+            final int n = 10000;
+            final CountDownLatch latch = new CountDownLatch(n);
+            TimerTask task = new TimerTask() {
+                @Override
+                public void run(Timeout timeout) {
+                    latch.countDown();
+                }
+            };
+            for (int i = 0; i < n; i++) {
+                timer.newTimeout(task, i % 100, TimeUnit.MILLISECONDS);
+            }
+            assertTrue(latch.await(3, TimeUnit.SECONDS));
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testRejectsWhenTooManyPending() {
+        HashedWheelTimer timer = new HashedWheelTimer(Executors.defaultThreadFactory(), 10, TimeUnit.MILLISECONDS, 8, 2);
+        try {
+            TimerTask task = new TimerTask() {
+                @Override
+                public void run(Timeout timeout) {
+                }
+            };
+            timer.newTimeout(task, 10, TimeUnit.SECONDS);
+            timer.newTimeout(task, 10, TimeUnit.SECONDS);
+            try {
+                timer.newTimeout(task, 10, TimeUnit.SECONDS);
+                fail();
+            } catch (RejectedExecutionException expected) {
+                // 超过了等待中的任务数上限
+            }
+            assertEquals(2, timer.pendingTimeouts());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testStopReturnsUnprocessedTimeouts() throws Exception {
+        HashedWheelTimer timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+        final AtomicInteger runs = new AtomicInteger();
+        TimerTask task = new TimerTask() {
+            @Override
+            public void run(Timeout timeout) {
+                runs.incrementAndGet();
+            }
+        };
+        Timeout t1 = timer.newTimeout(task, 10, TimeUnit.SECONDS);
+        Timeout t2 = timer.newTimeout(task, 20, TimeUnit.SECONDS);
+        Set<Timeout> unprocessed = timer.stop();
+        assertEquals(2, unprocessed.size());
+        assertTrue(unprocessed.contains(t1));
+        assertTrue(unprocessed.contains(t2));
+        assertEquals(0, runs.get());
+
+        try {
+            timer.newTimeout(task, 1, TimeUnit.SECONDS);
+            fail();
+        } catch (IllegalStateException expected) {
+            // 停止之后不能再添加任务
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.yy.netty.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class RecyclerTest {
+
+    private static Recycler<PooledObject> newRecycler(int maxCapacity, int ratio) {
+        return new Recycler<PooledObject>(maxCapacity, 2, ratio, 8, ratio) {
+            @Override
+            protected PooledObject newObject(Handle<PooledObject> handle) {
+                return new PooledObject(handle);
+            }
+        };
+    }
+
+    @Test
+    public void testRecycleOnSameThread() {
+        Recycler<PooledObject> recycler = newRecycler(256, 0);
+        PooledObject o1 = recycler.get();
+        o1.recycle();
+        PooledObject o2 = recycler.get();
+        assertSame(o1, o2);
+        o2.recycle();
+    }
+
+    @Test
+    public void testRecycleTwiceThrows() {
+        Recycler<PooledObject> recycler = newRecycler(256, 0);
+        PooledObject o = recycler.get();
+        o.recycle();
+        try {
+            o.recycle();
+            fail();
+        } catch (IllegalStateException expected) {
+            // 重复回收
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testRecycleOnOtherThread() throws Exception {
+        Recycler<PooledObject> recycler = newRecycler(256, 0);
+        final PooledObject o = recycler.get();
+        // 在其他线程回收，先放进WeakOrderQueue，当前线程get的时候再转移回来
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                o.recycle();
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertSame(o, recycler.get());
+        assertNotSame(o, recycler.get());
+    }
+
+    @Test
+    public void testDisabledPoolAlwaysCreates() {
+        Recycler<PooledObject> recycler = newRecycler(0, 0);
+        PooledObject o1 = recycler.get();
+        o1.recycle();
+        assertNotSame(o1, recycler.get());
+    }
+
+    @Test
+    public void testMaxCapacity() {
+        Recycler<PooledObject> recycler = newRecycler(4, 0);
+        List<PooledObject> objects = new ArrayList<PooledObject>();
+        for (int i = 0; i < 10; i++) {
+            objects.add(recycler.get());
+        }
+        for (PooledObject o : objects) {
+            o.recycle();
+        }
+        // 只保留了maxCapacity个
+        assertEquals(4, countReused(recycler, objects, 10));
+    }
+
+    @Test
+    public void testRatioKeepsOneOfEveryRatioPlusOneNewObjects() {
+        Recycler<PooledObject> recycler = newRecycler(256, 8);
+        List<PooledObject> objects = new ArrayList<PooledObject>();
+        for (int i = 0; i < 18; i++) {
+            objects.add(recycler.get());
+        }
+        for (PooledObject o : objects) {
+            o.recycle();
+        }
+        // 第一个新对象保留，之后每9个保留1个
+        assertEquals(2, countReused(recycler, objects, 18));
+    }
+
+    private static int countReused(Recycler<PooledObject> recycler, List<PooledObject> objects, int n) {
+        Map<PooledObject, Boolean> old = new IdentityHashMap<PooledObject, Boolean>();
+        for (PooledObject o : objects) {
+            old.put(o, Boolean.TRUE);
+        }
+        int reused = 0;
+        for (int i = 0; i < n; i++) {
+            if (old.containsKey(recycler.get())) {
+                reused++;
+            }
+        }
+        return reused;
+    }
+
+    private static final class PooledObject {
+
+        private final Recycler.Handle<PooledObject> handle;
+
+        PooledObject(Recycler.Handle<PooledObject> handle) {
+            this.handle = handle;
+        }
+
+        void recycle() {
+            handle.recycle(this);
+        }
+    }
+}
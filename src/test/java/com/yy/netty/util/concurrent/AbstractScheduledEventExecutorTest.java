@@ -0,0 +1,170 @@
+package com.yy.netty.util.concurrent;
+
+import com.yy.netty.channel.nio.NioEventLoopGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * EventLoop上的定时任务
+ */
+public class AbstractScheduledEventExecutorTest {
+
+    private static NioEventLoopGroup group;
+    private static EventExecutor executor;
+
+    @BeforeClass
+    public static void setUp() {
+        group = new NioEventLoopGroup(1);
+        executor = group.next();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        group.shutdownGracefully();
+    }
+
+    @Test(timeout = 5000)
+    public void testRunsInDeadlineOrder() throws Exception {
+        final BlockingQueue<Integer> order = new LinkedBlockingQueue<Integer>();
+        // 倒着提交，截止时间早的先执行
+        for (int i = 4; i >= 0; i--) {
+            final int id = i;
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    order.add(id);
+                }
+            }, 20 + i * 20, TimeUnit.MILLISECONDS);
+        }
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Integer.valueOf(i), order.poll(2, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testSameDeadlineRunsInSubmissionOrder() throws Exception {
+        final List<Integer> order = new ArrayList<Integer>();
+        final CountDownLatch done = new CountDownLatch(1);
+        // 在EventLoop中提交，保证截止时间相同
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 10; i++) {
+                    final int id = i;
+                    executor.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            order.add(id);
+                            if (order.size() == 10) {
+                                done.countDown();
+                            }
+                        }
+                    }, 0, TimeUnit.MILLISECONDS);
+                }
+            }
+        });
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.valueOf(i), order.get(i));
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testScheduleFromOtherThreadWakesUpSelect() throws Exception {
+        // 让EventLoop先空闲下来，进入阻塞的select
+        Thread.sleep(100);
+        long start = System.nanoTime();
+        String result = executor.schedule(new Callable<String>() {
+            @Override
+            public String call() {
+                return "ok";
+            }
+        }, 10, TimeUnit.MILLISECONDS).get();
+        assertEquals("ok", result);
+        // 没有被唤醒的话要等到select超时（1秒）才会执行
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+    }
+
+    @Test(timeout = 5000)
+    public void testCancelledTaskDoesNotRun() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        ScheduledFuture<?> future = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        }, 100, TimeUnit.MILLISECONDS);
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+
+        // 排在被取消的任务后面的任务照常执行
+        final CountDownLatch later = new CountDownLatch(1);
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                later.countDown();
+            }
+        }, 200, TimeUnit.MILLISECONDS);
+        assertTrue(later.await(2, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+    }
+
+    @Test(timeout = 5000)
+    public void testFixedRateRepeatsUntilCancelled() throws Exception {
+        final BlockingQueue<Long> ticks = new LinkedBlockingQueue<Long>();
+        ScheduledFuture<?> future = executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                ticks.add(System.nanoTime());
+            }
+        }, 0, 20, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(ticks.poll(1, TimeUnit.SECONDS) != null);
+        }
+        assertFalse(future.isDone());
+        assertTrue(future.cancel(false));
+
+        // 取消之后最多还有一个已经在执行的，之后就不会再执行了
+        Thread.sleep(100);
+        ticks.clear();
+        Thread.sleep(100);
+        assertNull(ticks.poll());
+    }
+
+    @Test(timeout = 5000)
+    public void testFixedDelayRepeats() throws Exception {
+        final CountDownLatch runs = new CountDownLatch(3);
+        ScheduledFuture<?> future = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                runs.countDown();
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+        assertTrue(runs.await(2, TimeUnit.SECONDS));
+        assertTrue(future.cancel(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositivePeriod() {
+        executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, 0, 0, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,267 @@
+package com.yy.netty.util.concurrent;
+
+import com.yy.netty.channel.nio.NioEventLoopGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 无锁的promise：结果只能设置一次，等待的线程都要被唤醒，监听器按添加顺序在执行器线程中回调且只回调一次
+ */
+public class DefaultPromiseTest {
+
+    private static NioEventLoopGroup group;
+    private static EventExecutor executor;
+
+    @BeforeClass
+    public static void setUp() {
+        group = new NioEventLoopGroup(1);
+        executor = group.next();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        group.shutdownGracefully();
+    }
+
+    @Test(timeout = 5000)
+    public void testListenersNotifiedInOrderOnExecutor() throws Exception {
+        final DefaultPromise<String> promise = new DefaultPromise<String>(executor);
+        final BlockingQueue<Integer> order = new LinkedBlockingQueue<Integer>();
+        final AtomicInteger wrongThread = new AtomicInteger();
+        for (int i = 0; i < 5; i++) {
+            final int id = i;
+            promise.addListener(new GenericFutureListener<Future<String>>() {
+                @Override
+                public void operationComplete(Future<String> future) {
+                    if (!executor.inEventLoop(Thread.currentThread())) {
+                        wrongThread.incrementAndGet();
+                    }
+                    order.add(id);
+                }
+            });
+        }
+        promise.setSuccess("ok");
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Integer.valueOf(i), order.poll(1, TimeUnit.SECONDS));
+        }
+        assertEquals(0, wrongThread.get());
+        assertEquals("ok", promise.getNow());
+
+        // 已经完成之后再添加的监听器也会被回调
+        promise.addListener(new GenericFutureListener<Future<String>>() {
+            @Override
+            public void operationComplete(Future<String> future) {
+                order.add(5);
+            }
+        });
+        assertEquals(Integer.valueOf(5), order.poll(1, TimeUnit.SECONDS));
+        // 每个监听器只回调一次
+        assertNull(order.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void testListenerAddedDuringNotificationIsNotified() throws Exception {
+        final DefaultPromise<Void> promise = new DefaultPromise<Void>(executor);
+        final CountDownLatch nested = new CountDownLatch(1);
+        promise.addListener(new GenericFutureListener<Future<Void>>() {
+            @Override
+            public void operationComplete(Future<Void> future) {
+                promise.addListener(new GenericFutureListener<Future<Void>>() {
+                    @Override
+                    public void operationComplete(Future<Void> future) {
+                        nested.countDown();
+                    }
+                });
+            }
+        });
+        promise.setSuccess(null);
+        assertTrue(nested.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void testRemovedListenerIsNotNotified() throws Exception {
+        DefaultPromise<Void> promise = new DefaultPromise<Void>(executor);
+        final AtomicInteger removedCalls = new AtomicInteger();
+        final CountDownLatch kept = new CountDownLatch(1);
+        GenericFutureListener<Future<Void>> removed = new GenericFutureListener<Future<Void>>() {
+            @Override
+            public void operationComplete(Future<Void> future) {
+                removedCalls.incrementAndGet();
+            }
+        };
+        promise.addListener(removed);
+        promise.addListener(new GenericFutureListener<Future<Void>>() {
+            @Override
+            public void operationComplete(Future<Void> future) {
+                kept.countDown();
+            }
+        });
+        promise.removeListener(removed);
+        promise.setSuccess(null);
+
+        assertTrue(kept.await(1, TimeUnit.SECONDS));
+        assertEquals(0, removedCalls.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testOnlyOneCompleterWins() throws Exception {
+        final int threads = 8;
+        for (int round = 0; round < 200; round++) {
+            final DefaultPromise<Integer> promise = new DefaultPromise<Integer>(executor);
+            final CyclicBarrier barrier = new CyclicBarrier(threads);
+            final AtomicInteger winners = new AtomicInteger();
+            List<Thread> list = new ArrayList<Thread>();
+            for (int i = 0; i < threads; i++) {
+                final int id = i;
+                Thread t = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            barrier.await();
+                        } catch (Exception e) {
+                            return;
+                        }
+                        boolean won = id % 2 == 0 ? promise.trySuccess(id) : promise.tryFailure(new Exception());
+                        if (won) {
+                            winners.incrementAndGet();
+                        }
+                    }
+                });
+                list.add(t);
+                t.start();
+            }
+            for (Thread t : list) {
+                t.join();
+            }
+            assertEquals(1, winners.get());
+            assertTrue(promise.isDone());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testAllWaitersWokenUp() throws Exception {
+        final DefaultPromise<String> promise = new DefaultPromise<String>(executor);
+        final int threads = 16;
+        final CountDownLatch started = new CountDownLatch(threads);
+        final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+        List<Thread> list = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            final boolean timed = i % 2 == 0;
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        if (timed) {
+                            assertTrue(promise.await(5000, TimeUnit.MILLISECONDS));
+                        } else {
+                            promise.awaitUninterruptibly();
+                        }
+                        results.add(promise.getNow());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            list.add(t);
+            t.start();
+        }
+        started.await();
+        Thread.sleep(50);
+        promise.setSuccess("done");
+        for (Thread t : list) {
+            t.join(3000);
+            assertFalse(t.isAlive());
+        }
+        assertEquals(threads, results.size());
+    }
+
+    @Test(timeout = 5000)
+    public void testTimedAwaitAndInterrupt() throws Exception {
+        DefaultPromise<Void> promise = new DefaultPromise<Void>(executor);
+        long start = System.nanoTime();
+        assertFalse(promise.await(50, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        Thread.currentThread().interrupt();
+        try {
+            promise.await();
+            fail();
+        } catch (InterruptedException expected) {
+            // 等待的线程被中断
+        }
+
+        // 超时和中断的等待线程不能影响之后的结果设置
+        promise.setSuccess(null);
+        assertTrue(promise.await(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void testAwaitInExecutorThreadIsRejected() throws Exception {
+        final DefaultPromise<Void> promise = new DefaultPromise<Void>(executor);
+        Throwable cause = executor.schedule(new Callable<Throwable>() {
+            @Override
+            public Throwable call() {
+                try {
+                    promise.await();
+                    return null;
+                } catch (Throwable t) {
+                    return t;
+                }
+            }
+        }, 0, TimeUnit.MILLISECONDS).get();
+        assertTrue(cause instanceof BlockingOperationException);
+    }
+
+    @Test
+    public void testCancelAndUncancellable() {
+        DefaultPromise<Void> cancellable = new DefaultPromise<Void>(executor);
+        assertTrue(cancellable.cancel(false));
+        assertTrue(cancellable.isCancelled());
+        assertTrue(cancellable.cause() instanceof CancellationException);
+        assertFalse(cancellable.trySuccess(null));
+
+        DefaultPromise<Void> uncancellable = new DefaultPromise<Void>(executor);
+        assertTrue(uncancellable.setUncancellable());
+        assertFalse(uncancellable.cancel(false));
+        assertFalse(uncancellable.isDone());
+        assertTrue(uncancellable.trySuccess(null));
+        assertFalse(uncancellable.setUncancellable());
+    }
+
+    @Test
+    public void testFailure() {
+        DefaultPromise<Void> promise = new DefaultPromise<Void>(executor);
+        Exception cause = new Exception("boom");
+        promise.setFailure(cause);
+        assertFalse(promise.isSuccess());
+        assertSame(cause, promise.cause());
+        try {
+            promise.setSuccess(null);
+            fail();
+        } catch (IllegalStateException expected) {
+            // 结果只能设置一次
+        }
+    }
+}
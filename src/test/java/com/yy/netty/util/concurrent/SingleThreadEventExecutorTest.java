@@ -0,0 +1,89 @@
+package com.yy.netty.util.concurrent;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SingleThreadEventExecutorTest {
+
+    @Test
+    public void testBusyRatioConvergesToSteadySample() {
+        TestExecutor executor = new TestExecutor(new ArrayDeque<Runnable>());
+        for (int i = 0; i < 200; i++) {
+            executor.recordBusyTime(300, 1000);
+        }
+        assertEquals(300, executor.busyRatio());
+
+        for (int i = 0; i < 200; i++) {
+            executor.recordBusyTime(1000, 1000);
+        }
+        assertEquals(1000, executor.busyRatio());
+
+        for (int i = 0; i < 200; i++) {
+            executor.recordBusyTime(7, 1000);
+        }
+        assertEquals(7, executor.busyRatio());
+
+        for (int i = 0; i < 200; i++) {
+            executor.recordBusyTime(0, 1000);
+        }
+        assertEquals(0, executor.busyRatio());
+    }
+
+    @Test
+    public void testRunAllTasksWithoutBudgetRunsOneBatch() {
+        Queue<Runnable> taskQueue = new ArrayDeque<Runnable>();
+        TestExecutor executor = new TestExecutor(taskQueue);
+        final int[] ran = new int[1];
+        for (int i = 0; i < 200; i++) {
+            taskQueue.add(new Runnable() {
+                @Override
+                public void run() {
+                    ran[0]++;
+                }
+            });
+        }
+
+        // 没有时间预算时只执行一批（64个），剩下的留到下一轮
+        assertTrue(executor.runAllTasks(0));
+        assertEquals(64, ran[0]);
+
+        // 预算很小的时候也一样，第一次检查时就已经超时了
+        assertTrue(executor.runAllTasks(1));
+        assertEquals(128, ran[0]);
+
+        executor.runAllTasks();
+        assertEquals(200, ran[0]);
+        assertFalse(executor.runAllTasks(0));
+    }
+
+    /**
+     * 在执行线程之外创建，不会启动线程，直接在测试线程中调用受保护的方法
+     */
+    private static final class TestExecutor extends SingleThreadEventExecutor {
+
+        TestExecutor(Queue<Runnable> taskQueue) {
+            super(null, Executors.newSingleThreadExecutor(), true, taskQueue, RejectedExecutionHandlers.reject());
+        }
+
+        @Override
+        protected void run() {
+        }
+
+        @Override
+        public EventExecutorGroup parent() {
+            return null;
+        }
+
+        @Override
+        public EventExecutor next() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.yy.netty.util.internal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CyclicBarrier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 多生产者单消费者队列：单线程下是FIFO，多个生产者并发offer时不丢不重，每个生产者自己的顺序不变
+ */
+public class MpscQueueTest {
+
+    @Test
+    public void testUnboundedFifoAcrossChunks() {
+        Queue<Integer> queue = new MpscUnboundedArrayQueue<Integer>(16);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        // 跨越多个数组块
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertEquals(1000, queue.size());
+        assertEquals(Integer.valueOf(0), queue.peek());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testChunkedQueueRejectsWhenFull() {
+        MpscChunkedArrayQueue<Integer> queue = new MpscChunkedArrayQueue<Integer>(16, 64);
+        assertEquals(64, queue.capacity());
+        for (int i = 0; i < 64; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(64));
+
+        // 消费掉一个之后又可以放了
+        assertEquals(Integer.valueOf(0), queue.poll());
+        assertTrue(queue.offer(64));
+        for (int i = 1; i <= 64; i++) {
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testArrayQueueRejectsWhenFull() {
+        MpscArrayQueue<Integer> queue = new MpscArrayQueue<Integer>(6);
+        // 容量向上取整到2的幂
+        assertEquals(8, queue.capacity());
+        for (int i = 0; i < 8; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(8));
+        assertEquals(8, queue.size());
+        // 绕环之后顺序不变
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 8; i++) {
+                assertEquals(Integer.valueOf(round * 8 + i), queue.poll());
+                assertTrue(queue.offer(round * 8 + i + 8));
+            }
+        }
+        queue.clear();
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullRejected() {
+        PlatformDependent.newMpscQueue().offer(null);
+    }
+
+    @Test(timeout = 20000)
+    public void testUnboundedConcurrentProducers() throws Exception {
+        testConcurrentProducers(PlatformDependent.<long[]>newMpscQueue());
+    }
+
+    @Test(timeout = 20000)
+    public void testBoundedConcurrentProducers() throws Exception {
+        testConcurrentProducers(PlatformDependent.<long[]>newMpscQueue(4096));
+    }
+
+    @Test(timeout = 20000)
+    public void testArrayConcurrentProducers() throws Exception {
+        testConcurrentProducers(new MpscArrayQueue<long[]>(1024));
+    }
+
+    private static void testConcurrentProducers(final Queue<long[]> queue) throws Exception {
+        final int producers = 4;
+        final int perProducer = 100000;
+        final CyclicBarrier barrier = new CyclicBarrier(producers);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            final int id = p;
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        barrier.await();
+                    } catch (Exception e) {
+                        return;
+                    }
+                    for (int i = 0; i < perProducer; i++) {
+                        long[] e = {id, i};
+                        // 有界队列满了就让一让，等消费者取走
+                        while (!queue.offer(e)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+
+        // 当前线程是唯一的消费者
+        long[] next = new long[producers];
+        int received = 0;
+        while (received < producers * perProducer) {
+            long[] e = queue.poll();
+            if (e == null) {
+                Thread.yield();
+                continue;
+            }
+            int id = (int) e[0];
+            assertEquals(next[id], e[1]);
+            next[id]++;
+            received++;
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertNull(queue.poll());
+        for (int p = 0; p < producers; p++) {
+            assertEquals(perProducer, next[p]);
+        }
+    }
+}